@@ -0,0 +1,118 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.benchmarks.form.behavior;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.pushinginertia.wicket.core.form.behavior.IllegalValueMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link IllegalValueMatcher#matches(CharSequence)} against the token by token lookup that it replaced, for
+ * dictionaries of random words of various sizes. Each invocation checks the next name in the sample, one in ten of
+ * which contains a word of the dictionary.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IllegalValueMatcherBenchmark {
+	/**
+	 * Number of names generated; a power of two so that the next index is a cheap mask.
+	 */
+	private static final int SAMPLE_SIZE = 1024;
+	private static final long SEED = 20180101L;
+	private static final Splitter SPLITTER = Splitter.on(CharMatcher.anyOf(". -&/")).omitEmptyStrings().trimResults();
+
+	private static final String[] NAMES = {
+			"John Smith", "Mary-Anne O'Brien", "Jean Paul van der Berg", "Émilie Dubois", "Nguyen Van Anh",
+			"Muhammad Al-Farsi", "Anna Maria Kowalska", "Li Wei"
+	};
+
+	@Param({"100", "10000", "50000"})
+	public int dictionarySize;
+
+	private Set<String> tokens;
+	private IllegalValueMatcher matcher;
+	private String[] names;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(SEED);
+		final List<String> words = new ArrayList<>(dictionarySize);
+		while (words.size() < dictionarySize) {
+			final char[] word = new char[4 + random.nextInt(7)];
+			for (int i = 0; i < word.length; i++) {
+				word[i] = (char) ('a' + random.nextInt(26));
+			}
+			words.add(new String(word));
+		}
+		tokens = new HashSet<>(words);
+		matcher = IllegalValueMatcher.ofWords(words);
+
+		names = new String[SAMPLE_SIZE];
+		for (int i = 0; i < names.length; i++) {
+			final String name = NAMES[random.nextInt(NAMES.length)];
+			names[i] = random.nextInt(10) == 0 ? name + ' ' + words.get(random.nextInt(words.size())) : name;
+			if (containsToken(names[i]) != matcher.matches(names[i])) {
+				throw new IllegalStateException("Implementations disagree on [" + names[i] + "]");
+			}
+		}
+	}
+
+	private boolean containsToken(final String name) {
+		for (final String token: SPLITTER.split(name.toLowerCase())) {
+			if (tokens.contains(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Benchmark
+	public boolean tokens() {
+		final String name = names[next];
+		next = (next + 1) & (SAMPLE_SIZE - 1);
+		return containsToken(name);
+	}
+
+	@Benchmark
+	public boolean automaton() {
+		final String name = names[next];
+		next = (next + 1) & (SAMPLE_SIZE - 1);
+		return matcher.matches(name);
+	}
+}
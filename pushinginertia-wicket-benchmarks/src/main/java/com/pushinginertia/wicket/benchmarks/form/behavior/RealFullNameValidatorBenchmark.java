@@ -0,0 +1,206 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.benchmarks.form.behavior;
+
+import com.google.common.collect.ImmutableSet;
+import com.pushinginertia.commons.lang.CharUtils;
+import com.pushinginertia.commons.lang.StringUtils;
+import com.pushinginertia.wicket.core.form.behavior.FullName;
+import com.pushinginertia.wicket.core.form.behavior.NameRule;
+import com.pushinginertia.wicket.core.form.behavior.RealFullNameValidator;
+import com.pushinginertia.wicket.core.form.behavior.StandardNameRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.Nonnull;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the {@link StandardNameRule}s applied by {@link RealFullNameValidator} against the rules as they were
+ * implemented before, one pass (and for some rules one copy of the name) per rule, over a corpus of names entered in
+ * signup forms. Each invocation checks the next first and family name in the sample with every rule that looks at a
+ * name on its own, so the score is the number of full names checked per second. The setup fails if the two
+ * implementations disagree on any full name in the sample.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RealFullNameValidatorBenchmark {
+	/**
+	 * Number of names generated; a power of two so that the next index is a cheap mask.
+	 */
+	private static final int SAMPLE_SIZE = 1024;
+	private static final long SEED = 20180101L;
+
+	/**
+	 * The standard rules other than the comparison of the two names, which the legacy rules don't cover.
+	 */
+	private static final StandardNameRule[] RULES =
+			EnumSet.complementOf(EnumSet.of(StandardNameRule.DISTINCT)).toArray(new StandardNameRule[0]);
+
+	private static final String[] NAMES = {
+			"John", "Mary", "Smith", "O'Brien", "Anne-Marie", "van der Berg", "Jean Paul", "Muhammad", "Nguyen",
+			"Ly", "Ng", "Wu", "Émilie", "François", "Müller", "Björk", "José", "Łukasz",
+			"Zoë", "Søren", "李", "王小明", "田中", "김민준",
+			"Иван", "Петрова"
+	};
+	private static final String[] JUNK = {
+			"Mr. Smith", "Dr", "Mrs John", "asdf", "aaa", "qwrt", "john123", "john@example", "example.com",
+			"me.at.gmail", "A & B & C", "a/b/c", "x", ".j", "-john-", "N/A", "test!!"
+	};
+
+	/**
+	 * The rules as they were implemented before they were evaluated in a single pass.
+	 */
+	private static final class LegacyRules {
+		private static final char[] ILLEGAL_CHARS = "0123456789!@#$%^*()+_=<>?:;\"[]{}|~\\".toCharArray();
+		private static final char[] MAX_ONE_CHARS = {'&', '/'};
+		private static final char[] VOWELS = "aeiou".toCharArray();
+		private static final char[] CONSONANTS = "bcdfghjklmnpqrstvwxz".toCharArray();
+		private static final ImmutableSet<String> TITLES = ImmutableSet.of("MR", "MRS", "MS", "MISS", "DR");
+
+		static boolean isPlausibleName(@Nonnull final String input, final boolean firstName) {
+			return satisfiesLengthWithoutDot(input) &&
+					CharUtils.inCharArray(input, ILLEGAL_CHARS) < 0 &&
+					!(firstName && containsTitle(input)) &&
+					!allVowelsOrConsonants(input) &&
+					!Pattern.matches(".*[a-z0-9]\\.[a-z]{2}.*", input) &&
+					!exceedsOneCharLimits(input) &&
+					firstAndLastAreLetters(input);
+		}
+
+		private static boolean satisfiesLengthWithoutDot(@Nonnull final String input) {
+			if (input.length() < (StringUtils.isLatin(input) ? 2 : 1)) {
+				return false;
+			}
+			return input.length() != 2 || input.indexOf('.') < 0;
+		}
+
+		private static boolean containsTitle(@Nonnull final String input) {
+			final String upper = input.toUpperCase();
+			int idx = upper.indexOf('.');
+			final int space = upper.indexOf(' ');
+			if (idx < 0 || space >= 0 && space < idx) {
+				idx = space;
+			}
+			return TITLES.contains(idx < 0 ? upper : upper.substring(0, idx));
+		}
+
+		private static boolean allVowelsOrConsonants(@Nonnull final String input) {
+			int vowels = 0;
+			int consonants = 0;
+			int either = 0;
+			for (final char c: org.apache.commons.lang3.StringUtils.stripAccents(input).toLowerCase().toCharArray()) {
+				if (CharUtils.inCharArray(c, VOWELS) >= 0) {
+					vowels++;
+					either++;
+				} else if (CharUtils.inCharArray(c, CONSONANTS) >= 0) {
+					consonants++;
+					either++;
+				} else if (c != ' ' && c != '.') {
+					either++;
+				}
+			}
+			return vowels == either || consonants == either;
+		}
+
+		private static boolean exceedsOneCharLimits(@Nonnull final String input) {
+			for (final char c: MAX_ONE_CHARS) {
+				if (StringUtils.charFrequencyInString(c, input) > 1) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static boolean firstAndLastAreLetters(@Nonnull final String input) {
+			return input.isEmpty() ||
+					Character.isLetter(Character.toLowerCase(input.charAt(0))) &&
+					Character.isLetter(Character.toLowerCase(input.charAt(input.length() - 1)));
+		}
+	}
+
+	private String[] firstNames;
+	private String[] familyNames;
+	private int next;
+
+	/**
+	 * Generates the sample: mostly real names in various scripts, one in ten of them junk.
+	 */
+	@Setup
+	public void setUp() {
+		final Random random = new Random(SEED);
+		firstNames = new String[SAMPLE_SIZE];
+		familyNames = new String[SAMPLE_SIZE];
+		for (int i = 0; i < SAMPLE_SIZE; i++) {
+			firstNames[i] = randomName(random);
+			familyNames[i] = randomName(random);
+		}
+		for (int i = 0; i < SAMPLE_SIZE; i++) {
+			if (legacy(firstNames[i], familyNames[i]) != table(firstNames[i], familyNames[i])) {
+				throw new IllegalStateException(
+						"Implementations disagree on [" + firstNames[i] + "] [" + familyNames[i] + ']');
+			}
+		}
+	}
+
+	@Nonnull
+	private static String randomName(@Nonnull final Random random) {
+		return random.nextInt(10) == 0 ? JUNK[random.nextInt(JUNK.length)] : NAMES[random.nextInt(NAMES.length)];
+	}
+
+	private static boolean legacy(@Nonnull final String firstName, @Nonnull final String familyName) {
+		return LegacyRules.isPlausibleName(firstName, true) && LegacyRules.isPlausibleName(familyName, false);
+	}
+
+	private static boolean table(@Nonnull final String firstName, @Nonnull final String familyName) {
+		final FullName name = new FullName(firstName, familyName);
+		for (final StandardNameRule rule: RULES) {
+			if (rule.apply(name) != NameRule.Result.PASS) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Benchmark
+	public boolean legacy() {
+		final int i = next;
+		next = (next + 1) & (SAMPLE_SIZE - 1);
+		return legacy(firstNames[i], familyNames[i]);
+	}
+
+	@Benchmark
+	public boolean table() {
+		final int i = next;
+		next = (next + 1) & (SAMPLE_SIZE - 1);
+		return table(firstNames[i], familyNames[i]);
+	}
+}
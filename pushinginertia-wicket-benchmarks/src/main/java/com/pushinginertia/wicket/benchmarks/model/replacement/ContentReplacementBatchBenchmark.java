@@ -0,0 +1,89 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.benchmarks.model.replacement;
+
+import com.pushinginertia.wicket.core.model.replacement.ContentReplacementBatch;
+import com.pushinginertia.wicket.core.model.replacement.ContentReplacerList;
+import com.pushinginertia.wicket.core.model.replacement.EmailToLinkContentReplacer;
+import com.pushinginertia.wicket.core.model.replacement.NewlineContentReplacer;
+import com.pushinginertia.wicket.core.model.replacement.NumberSequenceToLinkContentReplacer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ContentReplacementBatch} over a batch of texts from a {@link Corpus} with different numbers of
+ * worker threads, to show how throughput scales with cores. The score is the time taken for the whole batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentReplacementBatchBenchmark {
+	private static final int BATCH_SIZE = 20000;
+
+	@Param
+	public Corpus corpus;
+
+	@Param({"1", "2", "4", "8"})
+	public int parallelism;
+
+	@Param({"true", "false"})
+	public boolean ordered;
+
+	private String[] texts;
+	private ForkJoinPool pool;
+	private ContentReplacementBatch batch;
+
+	@Setup
+	public void setUp() {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(new EmailToLinkContentReplacer("/contact", "email link"));
+		builder.add(new NumberSequenceToLinkContentReplacer(7, "/contact", "number link"));
+		builder.add(NewlineContentReplacer.INSTANCE);
+
+		texts = corpus.texts(BATCH_SIZE);
+		pool = new ForkJoinPool(parallelism);
+		batch = ContentReplacementBatch.builder(builder.build()).executor(pool).ordered(ordered).build();
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public long process(final Blackhole blackhole) throws InterruptedException {
+		return batch.process(Arrays.asList(texts).iterator(), s -> s, (s, result) -> blackhole.consume(result))
+				.getTexts();
+	}
+}
@@ -0,0 +1,248 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.benchmarks.model.replacement;
+
+import com.pushinginertia.wicket.core.model.replacement.ContentReplacementModel;
+import com.pushinginertia.wicket.core.model.replacement.ContentReplacer;
+import com.pushinginertia.wicket.core.model.replacement.ContentReplacerList;
+import com.pushinginertia.wicket.core.model.replacement.EmailContentReplacerPatternProvider;
+import com.pushinginertia.wicket.core.model.replacement.EmailToLinkContentReplacer;
+import com.pushinginertia.wicket.core.model.replacement.LinearEmailContentReplacerPatternProvider;
+import com.pushinginertia.wicket.core.model.replacement.NewlineContentReplacer;
+import com.pushinginertia.wicket.core.model.replacement.NumberSequenceToLinkContentReplacer;
+import com.pushinginertia.wicket.core.model.replacement.WeChatContentReplacer;
+import com.pushinginertia.wicket.core.model.replacement.WebLinkContentReplacer;
+import org.apache.wicket.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ContentReplacementModel#getObject()} for each built-in replacer (and all of them combined) over the
+ * texts of a {@link Corpus}. Each invocation renders the next text in the corpus sample, so the score is the number of
+ * texts rendered per second. Run with {@code -prof gc} to also report the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContentReplacementBenchmark {
+	/**
+	 * Number of texts generated per corpus; a power of two so that the next index is a cheap mask.
+	 */
+	private static final int SAMPLE_SIZE = 256;
+
+	/**
+	 * A domain list of realistic length: the common webmail domains followed by random made-up ones.
+	 */
+	private static final List<String> EMAIL_DOMAIN_LIST = emailDomains(400);
+
+	@Nonnull
+	private static List<String> emailDomains(final int count) {
+		final List<String> domains = new ArrayList<>(
+				Arrays.asList("gmail", "hotmail", "yahoo", "outlook", "live", "aol", "icloud", "qq", "163", "mail"));
+		final Random random = new Random(400L);
+		while (domains.size() < count) {
+			final char[] domain = new char[4 + random.nextInt(7)];
+			for (int i = 0; i < domain.length; i++) {
+				domain[i] = (char) ('a' + random.nextInt(26));
+			}
+			domains.add(new String(domain));
+		}
+		return domains;
+	}
+
+	public enum ReplacerSet {
+		EMAIL {
+			@Nonnull
+			@Override
+			ContentReplacer[] replacers() {
+				return new ContentReplacer[] {new EmailToLinkContentReplacer("/contact", "email link")};
+			}
+		},
+		EMAIL_LINEAR {
+			@Nonnull
+			@Override
+			ContentReplacer[] replacers() {
+				return new ContentReplacer[] {
+						new EmailToLinkContentReplacer(
+								"/contact",
+								"email link",
+								LinearEmailContentReplacerPatternProvider.forDefaultRegex())
+				};
+			}
+		},
+		EMAIL_DOMAINS {
+			@Nonnull
+			@Override
+			ContentReplacer[] replacers() {
+				return new ContentReplacer[] {
+						new EmailToLinkContentReplacer(
+								"/contact",
+								"email link",
+								new EmailContentReplacerPatternProvider(EMAIL_DOMAIN_LIST))
+				};
+			}
+		},
+		EMAIL_DOMAIN_TRIE {
+			@Nonnull
+			@Override
+			ContentReplacer[] replacers() {
+				return new ContentReplacer[] {
+						new EmailToLinkContentReplacer(
+								"/contact",
+								"email link",
+								EmailContentReplacerPatternProvider.forDomainTrie(EMAIL_DOMAIN_LIST))
+				};
+			}
+		},
+		NUMBER_SEQUENCE {
+			@Nonnull
+			@Override
+			ContentReplacer[] replacers() {
+				return new ContentReplacer[] {new NumberSequenceToLinkContentReplacer(7, "/contact", "number link")};
+			}
+		},
+		WEB_LINK {
+			@Nonnull
+			@Override
+			ContentReplacer[] replacers() {
+				return new ContentReplacer[] {new BlockedWebLinkContentReplacer(true)};
+			}
+		},
+		WEB_LINK_REGEX {
+			@Nonnull
+			@Override
+			ContentReplacer[] replacers() {
+				return new ContentReplacer[] {new BlockedWebLinkContentReplacer(false)};
+			}
+		},
+		WECHAT {
+			@Nonnull
+			@Override
+			ContentReplacer[] replacers() {
+				return new ContentReplacer[] {new BlockedWeChatContentReplacer()};
+			}
+		},
+		NEWLINE {
+			@Nonnull
+			@Override
+			ContentReplacer[] replacers() {
+				return new ContentReplacer[] {NewlineContentReplacer.INSTANCE};
+			}
+		},
+		ALL {
+			@Nonnull
+			@Override
+			ContentReplacer[] replacers() {
+				return new ContentReplacer[] {
+						new EmailToLinkContentReplacer("/contact", "email link"),
+						new NumberSequenceToLinkContentReplacer(7, "/contact", "number link"),
+						new BlockedWebLinkContentReplacer(true),
+						new BlockedWeChatContentReplacer(),
+						NewlineContentReplacer.INSTANCE
+				};
+			}
+		};
+
+		@Nonnull
+		abstract ContentReplacer[] replacers();
+	}
+
+	private static class BlockedWebLinkContentReplacer extends WebLinkContentReplacer {
+		private static final long serialVersionUID = 1L;
+
+		BlockedWebLinkContentReplacer(final boolean useScanner) {
+			super(useScanner);
+		}
+
+		@Nonnull
+		@Override
+		public String replacement() {
+			return "[web link]";
+		}
+	}
+
+	private static class BlockedWeChatContentReplacer extends WeChatContentReplacer {
+		private static final long serialVersionUID = 1L;
+
+		@Nonnull
+		@Override
+		public String replacement() {
+			return "[blocked]";
+		}
+	}
+
+	@Param
+	public Corpus corpus;
+
+	@Param
+	public ReplacerSet replacerSet;
+
+	@Param
+	public ContentReplacerList.Mode mode;
+
+	@Param({"false", "true"})
+	public boolean escapeModelString;
+
+	@Param({"false", "true"})
+	public boolean fusedEscape;
+
+	private ContentReplacementModel[] models;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		for (final ContentReplacer replacer: replacerSet.replacers()) {
+			builder.add(replacer);
+		}
+		builder.setMode(mode);
+		final ContentReplacerList replacerList = builder.build();
+
+		final String[] texts = corpus.texts(SAMPLE_SIZE);
+		models = new ContentReplacementModel[texts.length];
+		for (int i = 0; i < texts.length; i++) {
+			models[i] = new ContentReplacementModel(Model.of(texts[i]), replacerList);
+			models[i].setEscapeModelString(escapeModelString);
+			models[i].setFusedEscape(fusedEscape);
+		}
+	}
+
+	@Benchmark
+	public String getObject() {
+		final ContentReplacementModel model = models[next];
+		next = (next + 1) & (SAMPLE_SIZE - 1);
+		return model.getObject();
+	}
+}
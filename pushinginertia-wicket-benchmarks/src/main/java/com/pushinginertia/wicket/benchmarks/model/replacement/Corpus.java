@@ -0,0 +1,191 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.benchmarks.model.replacement;
+
+import javax.annotation.Nonnull;
+import java.util.Random;
+
+/**
+ * Generates realistic user-written texts for the content replacement benchmarks. Texts are generated from a fixed
+ * seed so that every run of a benchmark sees the same input.
+ */
+public enum Corpus {
+	/**
+	 * Short chat messages, a few of which contain contact details.
+	 */
+	SHORT_CHAT {
+		@Nonnull
+		@Override
+		String next(@Nonnull final Random random) {
+			final String message = pick(random, CHAT_SENTENCES);
+			if (random.nextInt(10) == 0) {
+				return message + ' ' + pick(random, CONTACT_DETAILS);
+			}
+			return message;
+		}
+	},
+	/**
+	 * Long multi-paragraph profile descriptions of a few kilobytes with the odd contact detail.
+	 */
+	LONG_PROFILE {
+		@Nonnull
+		@Override
+		String next(@Nonnull final Random random) {
+			final StringBuilder sb = new StringBuilder();
+			final int paragraphs = 3 + random.nextInt(4);
+			for (int p = 0; p < paragraphs; p++) {
+				final int sentences = 4 + random.nextInt(6);
+				for (int s = 0; s < sentences; s++) {
+					sb.append(pick(random, PROFILE_SENTENCES)).append(' ');
+				}
+				if (random.nextInt(4) == 0) {
+					sb.append(pick(random, CONTACT_DETAILS)).append(' ');
+				}
+				sb.append("\n\n");
+			}
+			return sb.toString();
+		}
+	},
+	/**
+	 * Chinese text mixing fullwidth punctuation, fullwidth digits and WeChat references.
+	 */
+	CJK {
+		@Nonnull
+		@Override
+		String next(@Nonnull final Random random) {
+			final StringBuilder sb = new StringBuilder();
+			final int sentences = 2 + random.nextInt(8);
+			for (int s = 0; s < sentences; s++) {
+				sb.append(pick(random, CJK_SENTENCES));
+			}
+			if (random.nextInt(5) == 0) {
+				sb.append(pick(random, CJK_CONTACT_DETAILS));
+			}
+			return sb.toString();
+		}
+	},
+	/**
+	 * Inputs crafted to trigger heavy backtracking in the replacer regexes: long runs of spaced out letters,
+	 * almost-emails without a domain, separator-heavy digit runs and repeated "www." prefixes.
+	 */
+	ADVERSARIAL {
+		@Nonnull
+		@Override
+		String next(@Nonnull final Random random) {
+			final String unit = pick(random, ADVERSARIAL_UNITS);
+			final StringBuilder sb = new StringBuilder(ADVERSARIAL_LENGTH + unit.length());
+			while (sb.length() < ADVERSARIAL_LENGTH) {
+				sb.append(unit);
+			}
+			return sb.toString();
+		}
+	};
+
+	private static final long SEED = 20180101L;
+	/**
+	 * Length of each adversarial input. Kept at about one kilobyte so that a benchmark iteration completes in a
+	 * reasonable time with the current regexes.
+	 */
+	private static final int ADVERSARIAL_LENGTH = 1024;
+
+	private static final String[] CHAT_SENTENCES = {
+			"hi there, how are you?",
+			"Are you free this Saturday afternoon?",
+			"Thanks for the message, I'll get back to you tomorrow.",
+			"The apartment is still available, when would you like to see it?",
+			"Sounds good :) see you at 7",
+			"Is the price negotiable? I can pay 3 months in advance.",
+			"I'm at the station now, running 10 minutes late",
+			"ok",
+			"Could you send me more photos of the kitchen & bathroom?",
+			"We eat meat every night, hope that's fine."
+	};
+
+	private static final String[] PROFILE_SENTENCES = {
+			"I moved to the city two years ago for work and I love exploring new neighbourhoods on weekends.",
+			"I'm a quiet, tidy person who enjoys cooking, reading and the occasional board game night.",
+			"Good transportation. Bus stop nearby and the subway is a 5 minute walk.",
+			"I work as a software developer and usually get home around 6pm.",
+			"The room has a private bathroom. There are other shared spaces like the kitchen and the balcony.",
+			"I don't smoke and I prefer a non-smoking household.",
+			"My favourite places to eat are the little noodle shops on 3rd street.",
+			"Pets are welcome as long as they're friendly with my cat!",
+			"I speak English, French and a bit of Mandarin, and I'm always happy to practice.",
+			"In my free time I volunteer at the community garden (every second Sunday)."
+	};
+
+	private static final String[] CONTACT_DETAILS = {
+			"email me at someone.special@gmail.com",
+			"you can reach me at user at hotmail dot com",
+			"u s e r @ g m a i l . c o m",
+			"call me: (604) 555-0199",
+			"text me on oh six zero four five five five zero one nine nine",
+			"check out www.example.com/photos for pictures",
+			"my site is https://www.example.org/about-me",
+			"wechat: user_1234"
+	};
+
+	private static final String[] CJK_SENTENCES = {
+			"你好，我是学生，想找一个安静的房间。",
+			"房间很干净，交通也很方便，附近有地铁站。",
+			"我每天早上七点起床，晚上十一点睡觉。",
+			"请问这个房子还在出租吗？",
+			"周末我喜欢去公园散步，有时候也会去图书馆。",
+			"厨房和客厅是公用的，卫生间是独立的。",
+			"我不抽烟，也不养宠物。"
+	};
+
+	private static final String[] CJK_CONTACT_DETAILS = {
+			"微信：user_9876（微信）",
+			"微 信号: Username1234",
+			"电话：１３８　１２３４　５６７８",
+			"电话 一三八一二三四五六七八"
+	};
+
+	private static final String[] ADVERSARIAL_UNITS = {
+			"a ",
+			"a.b.c ",
+			"1 - ",
+			"www . ",
+			"x at y dot "
+	};
+
+	/**
+	 * Generates the next text of this corpus.
+	 */
+	@Nonnull
+	abstract String next(@Nonnull Random random);
+
+	/**
+	 * Generates a fixed sample of texts from this corpus.
+	 * @param count Number of texts to generate.
+	 * @return Texts that are identical between runs.
+	 */
+	@Nonnull
+	public String[] texts(final int count) {
+		final Random random = new Random(SEED + ordinal());
+		final String[] texts = new String[count];
+		for (int i = 0; i < count; i++) {
+			texts[i] = next(random);
+		}
+		return texts;
+	}
+
+	@Nonnull
+	private static String pick(@Nonnull final Random random, @Nonnull final String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+}
@@ -0,0 +1,110 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.benchmarks.model.replacement;
+
+import com.pushinginertia.wicket.core.model.replacement.ContentReplacerList;
+import com.pushinginertia.wicket.core.model.replacement.EmailToLinkContentReplacer;
+import com.pushinginertia.wicket.core.model.replacement.IncrementalContentReplacement;
+import com.pushinginertia.wicket.core.model.replacement.NewlineContentReplacer;
+import com.pushinginertia.wicket.core.model.replacement.NumberSequenceToLinkContentReplacer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares replacing a whole document after each small edit with {@link IncrementalContentReplacement}, as when a
+ * long message is previewed on every autosave. Each invocation types or deletes one character at a position that
+ * moves through the document, so the document keeps its length.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IncrementalContentReplacementBenchmark {
+	/**
+	 * Distance between successive edit positions; a prime so that the edits cover the whole document.
+	 */
+	private static final int STRIDE = 997;
+
+	@Param({"4096", "65536"})
+	public int length;
+
+	private ContentReplacerList replacerList;
+	private IncrementalContentReplacement incremental;
+	private String text;
+	private int position;
+	private boolean inserted;
+
+	@Setup
+	public void setUp() {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(new EmailToLinkContentReplacer("/contact", "email link"));
+		builder.add(new NumberSequenceToLinkContentReplacer(7, "/contact", "number link"));
+		builder.add(NewlineContentReplacer.INSTANCE);
+		builder.setMode(ContentReplacerList.Mode.SINGLE_PASS);
+		replacerList = builder.build();
+
+		final StringBuilder sb = new StringBuilder(length + 1024);
+		final String[] paragraphs = Corpus.LONG_PROFILE.texts(256);
+		for (int i = 0; sb.length() < length; i++) {
+			sb.append(paragraphs[i % paragraphs.length]).append('\n');
+		}
+		text = sb.substring(0, length);
+		incremental = new IncrementalContentReplacement(replacerList, true);
+		incremental.reset(text);
+	}
+
+	/**
+	 * Applies the next edit to {@link #text}.
+	 * @return Index of the edit.
+	 */
+	private int nextEdit() {
+		if (inserted) {
+			text = text.substring(0, position) + text.substring(position + 1);
+			inserted = false;
+			return position;
+		}
+		position = (position + STRIDE) % length;
+		text = text.substring(0, position) + 'x' + text.substring(position);
+		inserted = true;
+		return position;
+	}
+
+	@Benchmark
+	public String fullReplacement() {
+		nextEdit();
+		return replacerList.replaceEscaped(text);
+	}
+
+	@Benchmark
+	public String incrementalEdit() {
+		final boolean insert = !inserted;
+		final int p = nextEdit();
+		return insert ? incremental.edit(p, p, "x") : incremental.edit(p, p + 1, "");
+	}
+}
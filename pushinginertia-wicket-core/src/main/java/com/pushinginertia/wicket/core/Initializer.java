@@ -15,15 +15,21 @@
  */
 package com.pushinginertia.wicket.core;
 
+import com.pushinginertia.wicket.core.model.replacement.ContentReplacementCache;
+import com.pushinginertia.wicket.core.model.replacement.ContentReplacerList;
+import com.pushinginertia.wicket.core.model.replacement.ContentReplacerRegistry;
 import org.apache.wicket.Application;
 import org.apache.wicket.IInitializer;
 
 /**
- * Initializer for the package.
+ * Initializer for the package. It doesn't register anything by default; when the application is destroyed it clears
+ * the {@link ContentReplacementCache} and stops the {@link ContentReplacerRegistry} watcher the application may have
+ * registered, and clears the pattern caches of {@link ContentReplacerList}.
  */
 public class Initializer implements IInitializer {
 	@Override
 	public void init(final Application application) {
+		// the content replacement cache and registry are opt-in: the application registers them in its init()
 	}
 
 	@Override
@@ -33,5 +39,16 @@ public class Initializer implements IInitializer {
 
 	@Override
 	public void destroy(final Application application) {
+		final ContentReplacementCache cache = ContentReplacementCache.get(application);
+		if (cache != null) {
+			cache.invalidateAll();
+			ContentReplacementCache.set(application, null);
+		}
+		final ContentReplacerRegistry registry = ContentReplacerRegistry.get(application);
+		if (registry != null) {
+			registry.stopWatching();
+			ContentReplacerRegistry.set(application, null);
+		}
+		ContentReplacerList.clearCaches();
 	}
 }
@@ -0,0 +1,67 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.form.behavior;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The first and family names that a {@link NameRule} is applied to. The {@link NameFeatures} of each name are computed
+ * the first time that a rule asks for them and then shared by all of the other rules.
+ */
+public final class FullName {
+	private final String firstName;
+	private final String familyName;
+	private NameFeatures firstNameFeatures;
+	private NameFeatures familyNameFeatures;
+
+	public FullName(@Nonnull final String firstName, @Nonnull final String familyName) {
+		this.firstName = ValidateAs.notNull(firstName, "firstName");
+		this.familyName = ValidateAs.notNull(familyName, "familyName");
+	}
+
+	@Nonnull
+	public String getFirstName() {
+		return firstName;
+	}
+
+	@Nonnull
+	public String getFamilyName() {
+		return familyName;
+	}
+
+	@Nonnull
+	NameFeatures getFirstNameFeatures() {
+		if (firstNameFeatures == null) {
+			firstNameFeatures = new NameFeatures(firstName);
+		}
+		return firstNameFeatures;
+	}
+
+	@Nonnull
+	NameFeatures getFamilyNameFeatures() {
+		if (familyNameFeatures == null) {
+			familyNameFeatures = new NameFeatures(familyName);
+		}
+		return familyNameFeatures;
+	}
+
+	@Override
+	public String toString() {
+		return "FullName{firstName=[" + firstName + "], familyName=[" + familyName + "]}";
+	}
+}
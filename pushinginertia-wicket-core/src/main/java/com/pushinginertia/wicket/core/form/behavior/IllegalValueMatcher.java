@@ -0,0 +1,553 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.form.behavior;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.pushinginertia.commons.core.validation.ValidateAs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Finds illegal values in a name in a single pass over it, regardless of case, using an Aho-Corasick automaton that
+ * is built once from all of the values. A value is either a word, which only matches whole words of the name, or a
+ * substring, which matches anywhere. A word may be a phrase of several words.
+ * <p>
+ * Words are separated by any of the characters ". -&amp;/" and by whitespace. The automaton sees a run of separators
+ * as one separator symbol, and the start and end of the name as separators too, so a word value is stored as the
+ * word with a separator on each side. Characters are folded to lower case one at a time and mapped to a compressed
+ * alphabet that only contains the characters of the values, with one symbol for all other characters.
+ * <p>
+ * A matcher with tens of thousands of values is worth building once and sharing between validators, such as by
+ * passing it to {@link IllegalValuesNameRule#IllegalValuesNameRule(IllegalValueMatcher)}. Its tables would then
+ * still be written out with every page that a validator is serialized with, unless the matcher is registered: a
+ * matcher built with {@link Builder#key(String)} is serialized as its key alone and resolves to the registered
+ * matcher when it's read back, so register it when the application starts; reading back a key that nothing is
+ * registered under fails with an {@link InvalidObjectException}. A matcher returned by
+ * {@link #internWords(Collection)} is serialized as its words instead, which are interned again when it's read back.
+ */
+public final class IllegalValueMatcher implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final Logger LOG = LoggerFactory.getLogger(IllegalValueMatcher.class);
+
+	private static final ConcurrentMap<String, IllegalValueMatcher> REGISTRY = new ConcurrentHashMap<>();
+	/**
+	 * Interned matchers by key, held weakly so that a set of words that's no longer used doesn't stay in memory.
+	 */
+	private static final ConcurrentMap<String, IllegalValueMatcher> INTERNED =
+			CacheBuilder.newBuilder().weakValues().<String, IllegalValueMatcher>build().asMap();
+
+	private static final String SEPARATORS = ". -&/";
+	/**
+	 * Symbol of every character that doesn't appear in any value.
+	 */
+	private static final int OTHER = 0;
+	private static final int SEPARATOR = 1;
+	private static final int ROOT = 0;
+
+	public static class Builder {
+		private final List<int[]> patterns = new ArrayList<>();
+		/**
+		 * Symbols of the folded characters of the values, from 2 up.
+		 */
+		private final Map<Character, Integer> symbols = new HashMap<>();
+		private String key;
+
+		private Builder() {
+		}
+
+		/**
+		 * Registers the matcher under a key, so that it's shared when it's deserialized (see
+		 * {@link IllegalValueMatcher}). Building a second matcher with the same key replaces the first one in the
+		 * registry.
+		 */
+		public Builder key(@Nonnull final String key) {
+			this.key = ValidateAs.notNull(key, "key");
+			return this;
+		}
+
+		/**
+		 * Adds a word or phrase that only matches whole words of a name.
+		 */
+		public Builder addWord(@Nonnull final String word) {
+			add(word, true);
+			return this;
+		}
+
+		public Builder addWords(@Nonnull final Iterable<String> words) {
+			for (final String word: words) {
+				addWord(word);
+			}
+			return this;
+		}
+
+		/**
+		 * Adds a value that matches anywhere in a name, even within a word.
+		 */
+		public Builder addSubstring(@Nonnull final String substring) {
+			add(substring, false);
+			return this;
+		}
+
+		private void add(@Nonnull final String value, final boolean word) {
+			ValidateAs.notNull(value, "value");
+			final int[] pattern = new int[value.length() + 2];
+			int length = 0;
+			if (word) {
+				pattern[length++] = SEPARATOR;
+			}
+			for (int i = 0; i < value.length(); i++) {
+				final char c = fold(value.charAt(i));
+				if (isSeparator(c)) {
+					if (length > 0 && pattern[length - 1] != SEPARATOR) {
+						pattern[length++] = SEPARATOR;
+					}
+				} else {
+					pattern[length++] = symbols.computeIfAbsent(c, k -> symbols.size() + 2);
+				}
+			}
+			if (length > 0 && pattern[length - 1] == SEPARATOR) {
+				length--;
+			}
+			if (length == 0 || word && length == 1) {
+				// nothing but separators, which the old token match never matched either
+				return;
+			}
+			if (word) {
+				pattern[length++] = SEPARATOR;
+			}
+			patterns.add(Arrays.copyOf(pattern, length));
+		}
+
+		public IllegalValueMatcher build() {
+			final IllegalValueMatcher matcher = new IllegalValueMatcher(this, key, null);
+			if (key != null && REGISTRY.put(key, matcher) != null) {
+				LOG.info("Replaced illegal values [{}]", key);
+			}
+			return matcher;
+		}
+	}
+
+	/**
+	 * Node of the trie while the automaton is built, with its children in ascending order of symbol.
+	 */
+	private static final class Node {
+		private int[] symbols = new int[1];
+		private Node[] children = new Node[1];
+		private int size;
+		private int id;
+		private boolean match;
+
+		@Nonnull
+		private Node child(final int symbol) {
+			int i = 0;
+			while (i < size && symbols[i] < symbol) {
+				i++;
+			}
+			if (i < size && symbols[i] == symbol) {
+				return children[i];
+			}
+			if (size == symbols.length) {
+				symbols = Arrays.copyOf(symbols, size * 2);
+				children = Arrays.copyOf(children, size * 2);
+			}
+			System.arraycopy(symbols, i, symbols, i + 1, size - i);
+			System.arraycopy(children, i, children, i + 1, size - i);
+			symbols[i] = symbol;
+			children[i] = new Node();
+			size++;
+			return children[i];
+		}
+	}
+
+	/**
+	 * States with at least this many children get a row of transitions for the whole alphabet, as do the root and
+	 * the state after the first separator, which are visited the most.
+	 */
+	private static final int DENSE_CHILDREN = 8;
+
+	/**
+	 * Key that the matcher is registered or interned under, or null.
+	 */
+	private final String key;
+	/**
+	 * The words that an interned matcher was built from, or null.
+	 */
+	private final ImmutableList<String> words;
+	private final int patternCount;
+	private final int alphabetSize;
+	/**
+	 * Symbols of the ASCII characters, with upper case letters and separators mapped already.
+	 */
+	private final int[] asciiSymbols = new int[128];
+	/**
+	 * The other folded characters of the values in ascending order, and their symbols.
+	 */
+	private final char[] chars;
+	private final int[] charSymbols;
+	/**
+	 * Edges of the sparse states as pairs of symbol and target, ordered by state and then symbol: those of state s
+	 * start at index 2 * edgeStart[s] and end before index 2 * edgeStart[s + 1].
+	 */
+	private final int[] edgeStart;
+	private final int[] edges;
+	private final int[] fail;
+	/**
+	 * Start of each dense state's row in {@link #dense}, or -1 for a sparse state. A row holds the next state for
+	 * every symbol with the failure transitions already followed.
+	 */
+	private final int[] denseRow;
+	private final int[] dense;
+	/**
+	 * True for each state in which a value ends, either at the state itself or at one of its failure states.
+	 */
+	private final boolean[] match;
+
+	private IllegalValueMatcher(
+			@Nonnull final Builder builder,
+			@Nullable final String key,
+			@Nullable final ImmutableList<String> words) {
+		this.key = key;
+		this.words = words;
+		this.patternCount = builder.patterns.size();
+		this.alphabetSize = builder.symbols.size() + 2;
+		final List<Character> nonAscii = new ArrayList<>();
+		for (final Map.Entry<Character, Integer> entry: builder.symbols.entrySet()) {
+			if (entry.getKey() >= asciiSymbols.length) {
+				nonAscii.add(entry.getKey());
+			}
+		}
+		for (char c = 0; c < asciiSymbols.length; c++) {
+			final Integer symbol = builder.symbols.get(fold(c));
+			asciiSymbols[c] = isSeparator(c) ? SEPARATOR : symbol == null ? OTHER : symbol;
+		}
+		nonAscii.sort(null);
+		this.chars = new char[nonAscii.size()];
+		this.charSymbols = new int[nonAscii.size()];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = nonAscii.get(i);
+			charSymbols[i] = builder.symbols.get(chars[i]);
+		}
+
+		// 1. trie of the values
+		final Node root = new Node();
+		for (final int[] pattern: builder.patterns) {
+			Node node = root;
+			for (final int symbol: pattern) {
+				node = node.child(symbol);
+			}
+			node.match = true;
+		}
+
+		// 2. number the states breadth first, so that a state's failure state always comes before it
+		final List<Node> nodes = new ArrayList<>();
+		final Queue<Node> queue = new ArrayDeque<>();
+		queue.add(root);
+		int edgeCount = 0;
+		int denseCount = 0;
+		while (!queue.isEmpty()) {
+			final Node node = queue.remove();
+			node.id = nodes.size();
+			nodes.add(node);
+			for (int i = 0; i < node.size; i++) {
+				queue.add(node.children[i]);
+			}
+			if (isDense(node)) {
+				denseCount++;
+			} else {
+				edgeCount += node.size;
+			}
+		}
+
+		// 3. flatten the edges of the sparse states
+		final int states = nodes.size();
+		this.edgeStart = new int[states + 1];
+		this.edges = new int[edgeCount * 2];
+		this.denseRow = new int[states];
+		this.dense = new int[denseCount * alphabetSize];
+		int edge = 0;
+		int row = 0;
+		for (final Node node: nodes) {
+			edgeStart[node.id] = edge;
+			if (isDense(node)) {
+				denseRow[node.id] = row;
+				row += alphabetSize;
+			} else {
+				denseRow[node.id] = -1;
+				for (int i = 0; i < node.size; i++) {
+					edges[2 * edge] = node.symbols[i];
+					edges[2 * edge + 1] = node.children[i].id;
+					edge++;
+				}
+			}
+		}
+		edgeStart[states] = edge;
+
+		// 4. failure states, dense rows and matches, in breadth first order: the failure state of a child is no
+		// deeper than the child's parent, so it was set up while an earlier state was processed
+		this.fail = new int[states];
+		this.match = new boolean[states];
+		for (final Node node: nodes) {
+			if (denseRow[node.id] >= 0) {
+				final int start = denseRow[node.id];
+				for (int symbol = 0; symbol < alphabetSize; symbol++) {
+					dense[start + symbol] = node.id == ROOT ? ROOT : next(fail[node.id], symbol);
+				}
+				for (int i = 0; i < node.size; i++) {
+					dense[start + node.symbols[i]] = node.children[i].id;
+				}
+			}
+			for (int i = 0; i < node.size; i++) {
+				final int target = node.children[i].id;
+				fail[target] = node.id == ROOT ? ROOT : next(fail[node.id], node.symbols[i]);
+				match[target] = node.children[i].match || match[fail[target]];
+			}
+		}
+	}
+
+	private static boolean isDense(@Nonnull final Node node) {
+		return node.id <= 1 || node.size >= DENSE_CHILDREN;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Builds a matcher of whole words.
+	 */
+	@Nonnull
+	public static IllegalValueMatcher ofWords(@Nonnull final Iterable<String> words) {
+		return builder().addWords(words).build();
+	}
+
+	/**
+	 * Returns the matcher of a set of whole words, building it the first time that the set is seen. The key is a hash
+	 * of the words, so any collection of the same words (in any order) returns the same matcher for as long as the
+	 * matcher is referenced.
+	 * <p>
+	 * An interned matcher is serialized as its words rather than its tables, and is interned again when it's read
+	 * back, so it doesn't need to be registered in the JVM that reads it.
+	 */
+	@Nonnull
+	public static IllegalValueMatcher internWords(@Nonnull final Collection<String> words) {
+		final ImmutableList<String> sorted = ImmutableSortedSet.copyOf(words).asList();
+		final Hasher hasher = Hashing.sha256().newHasher();
+		for (final String word: sorted) {
+			hasher.putInt(word.length()).putUnencodedChars(word);
+		}
+		final String key = "words:" + hasher.hash();
+		return INTERNED.computeIfAbsent(key, k -> new IllegalValueMatcher(builder().addWords(sorted), k, sorted));
+	}
+
+	/**
+	 * Looks up a registered or interned matcher.
+	 * @param key key given to {@link Builder#key(String)} or returned by {@link #getKey()}
+	 * @return null if no matcher is registered or interned under the key
+	 */
+	@Nullable
+	public static IllegalValueMatcher get(@Nonnull final String key) {
+		final IllegalValueMatcher matcher = REGISTRY.get(key);
+		return matcher == null ? INTERNED.get(key) : matcher;
+	}
+
+	/**
+	 * Removes a matcher from the registry, such as when the application is destroyed.
+	 * @param key key given to {@link Builder#key(String)} or returned by {@link #getKey()}
+	 */
+	public static void unregister(@Nonnull final String key) {
+		REGISTRY.remove(key);
+		INTERNED.remove(key);
+	}
+
+	/**
+	 * Key that the matcher is registered or interned under.
+	 * @return null if it's neither
+	 */
+	@Nullable
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * True if the matcher was returned by {@link #internWords(Collection)}.
+	 */
+	boolean isInterned() {
+		return words != null;
+	}
+
+	/**
+	 * Tests if a name contains any of the values.
+	 * @param input name to search
+	 * @return true iff a value was found
+	 */
+	public boolean matches(@Nonnull final CharSequence input) {
+		int state = next(ROOT, SEPARATOR);
+		boolean separator = true;
+		for (int i = 0; i < input.length(); i++) {
+			final int symbol = symbol(input.charAt(i));
+			if (symbol == SEPARATOR) {
+				if (separator) {
+					continue;
+				}
+				separator = true;
+			} else {
+				separator = false;
+			}
+			state = next(state, symbol);
+			if (match[state]) {
+				return true;
+			}
+		}
+		return !separator && match[next(state, SEPARATOR)];
+	}
+
+	/**
+	 * Follows the goto and failure transitions from a state for one symbol.
+	 */
+	private int next(int state, final int symbol) {
+		while (true) {
+			final int row = denseRow[state];
+			if (row >= 0) {
+				return dense[row + symbol];
+			}
+			final int target = child(state, symbol);
+			if (target >= 0) {
+				return target;
+			}
+			state = fail[state];
+		}
+	}
+
+	private int child(final int state, final int symbol) {
+		int low = edgeStart[state];
+		int high = edgeStart[state + 1] - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int s = edges[2 * mid];
+			if (s < symbol) {
+				low = mid + 1;
+			} else if (s > symbol) {
+				high = mid - 1;
+			} else {
+				return edges[2 * mid + 1];
+			}
+		}
+		return -1;
+	}
+
+	private int symbol(final char c) {
+		if (c < asciiSymbols.length) {
+			return asciiSymbols[c];
+		}
+		final char folded = fold(c);
+		if (folded < asciiSymbols.length) {
+			// such as the long s
+			return asciiSymbols[folded];
+		}
+		if (isSeparator(folded)) {
+			return SEPARATOR;
+		}
+		final int i = Arrays.binarySearch(chars, folded);
+		return i < 0 ? OTHER : charSymbols[i];
+	}
+
+	/**
+	 * Folds the case of a character, through upper case first so that characters such as the long s and the final
+	 * sigma fold to the same character as their other forms.
+	 */
+	private static char fold(final char c) {
+		if (c < 128) {
+			return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		}
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	private static boolean isSeparator(final char c) {
+		return SEPARATORS.indexOf(c) >= 0 || Character.isWhitespace(c) || Character.isSpaceChar(c);
+	}
+
+	/**
+	 * Writes a registered matcher as a {@link Reference} to its key and an interned matcher as its {@link Words}.
+	 */
+	private Object writeReplace() {
+		if (words != null) {
+			return new Words(words);
+		}
+		return key == null ? this : new Reference(key);
+	}
+
+	/**
+	 * Serialized form of a registered matcher.
+	 */
+	private static final class Reference implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final String key;
+
+		private Reference(@Nonnull final String key) {
+			this.key = key;
+		}
+
+		private Object readResolve() throws InvalidObjectException {
+			final IllegalValueMatcher matcher = REGISTRY.get(key);
+			if (matcher == null) {
+				throw new InvalidObjectException("No illegal values are registered under key: " + key);
+			}
+			return matcher;
+		}
+	}
+
+	/**
+	 * Serialized form of an interned matcher.
+	 */
+	private static final class Words implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final ImmutableList<String> words;
+
+		private Words(@Nonnull final ImmutableList<String> words) {
+			this.words = words;
+		}
+
+		private Object readResolve() {
+			return internWords(words);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "IllegalValueMatcher{key=" + key + ", values=" + patternCount + ", states=" + fail.length + '}';
+	}
+}
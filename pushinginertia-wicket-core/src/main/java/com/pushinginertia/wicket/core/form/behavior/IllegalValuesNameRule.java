@@ -0,0 +1,62 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.form.behavior;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+
+/**
+ * Rejects a name if it contains any of the values of an {@link IllegalValueMatcher}, regardless of case.
+ */
+public class IllegalValuesNameRule implements NameRule {
+	private static final long serialVersionUID = 1L;
+
+	private final IllegalValueMatcher matcher;
+
+	/**
+	 * @param illegalValues case insensitive words (or phrases) that mustn't appear as whole words of a name, interned
+	 * with {@link IllegalValueMatcher#internWords(Collection)}
+	 */
+	public IllegalValuesNameRule(@Nonnull final Collection<String> illegalValues) {
+		this(IllegalValueMatcher.internWords(illegalValues));
+	}
+
+	/**
+	 * @param matcher matcher of the illegal values, which may be shared with other rules
+	 */
+	public IllegalValuesNameRule(@Nonnull final IllegalValueMatcher matcher) {
+		this.matcher = ValidateAs.notNull(matcher, "matcher");
+	}
+
+	@Nonnull
+	@Override
+	public Result apply(@Nonnull final FullName name) {
+		if (matcher.matches(name.getFirstName())) {
+			return Result.REJECT_FIRST_NAME;
+		}
+		if (matcher.matches(name.getFamilyName())) {
+			return Result.REJECT_FAMILY_NAME;
+		}
+		return Result.PASS;
+	}
+
+	@Override
+	public String toString() {
+		return "IllegalValuesNameRule{" + matcher + '}';
+	}
+}
@@ -0,0 +1,269 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.form.behavior;
+
+import com.pushinginertia.commons.lang.StringUtils;
+
+import javax.annotation.Nonnull;
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Everything that {@link RealFullNameValidator} needs to know about one name, computed in a single pass over its
+ * characters. Each character is classified by a lookup in a table that covers the whole BMP, so the pass makes no
+ * copies of the name: the table already accounts for the accents that
+ * {@link org.apache.commons.lang3.StringUtils#stripAccents(String)} would strip and for lower casing. An entry is
+ * filled in the first time its character is seen, as stripping the accents from every character up front would take
+ * hundreds of milliseconds.
+ */
+final class NameFeatures {
+	/**
+	 * Dot (.) is okay as it may be written in a name like "John Jr."
+	 */
+	private static final char[] ILLEGAL_CHARS =
+			{'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+			 '!', '@', '#', '$', '%', '^', '*', '(', ')', '+',
+			 '_', '=', '<', '>', '?', ':', ';', '"', '[', ']',
+			 '{', '}', '|', '~', '\\'};
+	/**
+	 * Characters that can appear at most once in a name.
+	 */
+	private static final char[] MAX_ONE_CHARS = {'&', '/'};
+	private static final String VOWELS = "aeiou";
+	private static final String CONSONANTS = "bcdfghjklmnpqrstvwxz";
+	/**
+	 * Titles that can't start a first name, in upper case.
+	 */
+	private static final String[] TITLES = {"MR", "MRS", "MS", "MISS", "DR"};
+	private static final int MAX_TITLE_LENGTH = 4;
+
+	private static final int ILLEGAL = 0x01;
+	/**
+	 * With accents stripped and in lower case, the character is or contains a vowel.
+	 */
+	private static final int VOWEL = 0x02;
+	/**
+	 * With accents stripped and in lower case, the character is or contains a consonant.
+	 */
+	private static final int CONSONANT = 0x04;
+	/**
+	 * With accents stripped and in lower case, the character is or contains something other than a vowel, a
+	 * consonant, a space or a dot.
+	 */
+	private static final int OTHER = 0x08;
+	/**
+	 * [a-z0-9]
+	 */
+	private static final int LOWER_ALNUM = 0x10;
+	/**
+	 * [a-z]
+	 */
+	private static final int LOWER = 0x20;
+	/**
+	 * A character that '.' doesn't match in a regex.
+	 */
+	private static final int LINE_TERMINATOR = 0x40;
+	private static final int MAX_ONE = 0x80;
+	/**
+	 * Set in every entry of the table that has been filled in.
+	 */
+	private static final int CLASSIFIED = 0x100;
+
+	/**
+	 * Classes of each character, filled in by {@link #classes(char)}. Threads that race to fill in the same entry
+	 * write the same value.
+	 */
+	private static final char[] CLASSES = new char[Character.MAX_VALUE + 1];
+
+	/**
+	 * The name must be at least two characters long (one if it isn't Latin), and two characters can't include a dot.
+	 */
+	final boolean satisfiesLengthWithoutDot;
+	final boolean containsIllegalChar;
+	/**
+	 * The name starts with a title like "Mr" or "Mrs", followed by a dot or space or nothing else.
+	 */
+	final boolean containsTitle;
+	/**
+	 * All characters other than spaces and dots are vowels or all are consonants, once accents are stripped. 'Y' is
+	 * considered neither so that a name like "Ly" or "Ay" doesn't count.
+	 */
+	final boolean allVowelsOrConsonants;
+	/**
+	 * The name contains a dot between a letter or digit and two letters, as in a domain.
+	 */
+	final boolean isDomain;
+	final boolean exceedsOneCharLimits;
+	final boolean firstAndLastAreLetters;
+
+	NameFeatures(@Nonnull final String name) {
+		final int length = name.length();
+		int seen = 0;
+		int maxOneSeen = 0;
+		boolean exceedsOneCharLimits = false;
+		int titleEnd = -1;
+		boolean dot = false;
+		// the previous three characters and their classes, most recent first
+		char c1 = 0;
+		char c2 = 0;
+		int classes1 = 0;
+		int classes2 = 0;
+		int classes3 = 0;
+		boolean domainSequence = false;
+		for (int i = 0; i < length; i++) {
+			final char c = name.charAt(i);
+			final int classes = classes(c);
+			seen |= classes;
+			if (c == '.' || c == ' ') {
+				if (titleEnd < 0) {
+					titleEnd = i;
+				}
+				dot |= c == '.';
+			}
+			if ((classes & MAX_ONE) != 0) {
+				final int bit = 1 << indexOf(MAX_ONE_CHARS, c);
+				exceedsOneCharLimits |= (maxOneSeen & bit) != 0;
+				maxOneSeen |= bit;
+			}
+			// [a-z0-9]\.[a-z]{2}
+			domainSequence |=
+					(classes & LOWER) != 0 &&
+					(classes1 & LOWER) != 0 &&
+					c2 == '.' &&
+					(classes3 & LOWER_ALNUM) != 0;
+			c2 = c1;
+			c1 = c;
+			classes3 = classes2;
+			classes2 = classes1;
+			classes1 = classes;
+		}
+
+		this.satisfiesLengthWithoutDot = satisfiesLengthWithoutDot(name, dot);
+		this.containsIllegalChar = (seen & ILLEGAL) != 0;
+		this.containsTitle = startsWithTitle(name, titleEnd < 0 ? length : titleEnd);
+		this.allVowelsOrConsonants = (seen & OTHER) == 0 && ((seen & VOWEL) == 0 || (seen & CONSONANT) == 0);
+		this.isDomain = domainSequence && (seen & LINE_TERMINATOR) == 0;
+		this.exceedsOneCharLimits = exceedsOneCharLimits;
+		this.firstAndLastAreLetters =
+				length == 0 ||
+				Character.isLetter(Character.toLowerCase(name.charAt(0))) &&
+				Character.isLetter(Character.toLowerCase(name.charAt(length - 1)));
+	}
+
+	private static boolean satisfiesLengthWithoutDot(@Nonnull final String name, final boolean dot) {
+		switch (name.length()) {
+			case 0:
+				return false;
+			case 1:
+				// some languages can represent a name with only one character
+				return !StringUtils.isLatin(name);
+			case 2:
+				return !dot;
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * Compares the start of a name to the titles as {@link String#toUpperCase()} would, without making a copy.
+	 */
+	private static boolean startsWithTitle(@Nonnull final String name, final int end) {
+		if (end > MAX_TITLE_LENGTH) {
+			return false;
+		}
+		for (final String title: TITLES) {
+			int j = 0;
+			for (int i = 0; i < end && j >= 0; i++) {
+				final char c = name.charAt(i);
+				if (c == '\u00df') {
+					// sharp s is the only character that upper cases to more than one letter of a title
+					j = title.startsWith("SS", j) ? j + 2 : -1;
+				} else {
+					j = j < title.length() && Character.toUpperCase(c) == title.charAt(j) ? j + 1 : -1;
+				}
+			}
+			if (j == title.length()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int classes(final char c) {
+		int classes = CLASSES[c];
+		if (classes == 0) {
+			classes = classify(c) | CLASSIFIED;
+			CLASSES[c] = (char) classes;
+		}
+		return classes;
+	}
+
+	private static int classify(final char c) {
+		int flags = 0;
+		final String stripped = stripAccents(c).toLowerCase(Locale.ROOT);
+		for (int i = 0; i < stripped.length(); i++) {
+			final char s = stripped.charAt(i);
+			if (VOWELS.indexOf(s) >= 0) {
+				flags |= VOWEL;
+			} else if (CONSONANTS.indexOf(s) >= 0) {
+				flags |= CONSONANT;
+			} else if (s != ' ' && s != '.') {
+				flags |= OTHER;
+			}
+		}
+		if (c >= 'a' && c <= 'z') {
+			flags |= LOWER | LOWER_ALNUM;
+		} else if (c >= '0' && c <= '9') {
+			flags |= LOWER_ALNUM;
+		}
+		if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+			flags |= LINE_TERMINATOR;
+		}
+		if (indexOf(ILLEGAL_CHARS, c) >= 0) {
+			flags |= ILLEGAL;
+		}
+		if (indexOf(MAX_ONE_CHARS, c) >= 0) {
+			flags |= MAX_ONE;
+		}
+		return flags;
+	}
+
+	private static int indexOf(@Nonnull final char[] chars, final char c) {
+		for (int i = 0; i < chars.length; i++) {
+			if (chars[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Strips the accents from one character. Characters that {@link org.apache.commons.lang3.StringUtils#stripAccents}
+	 * can't change are returned as they are without calling it, as it's slow enough to matter for the whole BMP: it
+	 * only changes characters with a canonical decomposition, the combining diacritical marks themselves and a few
+	 * Latin letters without a decomposition such as '\u0141'.
+	 */
+	@Nonnull
+	private static String stripAccents(final char c) {
+		final String s = String.valueOf(c);
+		final boolean latin = c >= '\u0080' && c < '\u0250' || c >= '\u1e00' && c < '\u1f00' ||
+				c >= '\u2c60' && c < '\u2c80' || c >= '\ua720' && c < '\ua800';
+		if (latin || c >= '\u0300' && c < '\u0370' || !Normalizer.isNormalized(s, Normalizer.Form.NFD)) {
+			return org.apache.commons.lang3.StringUtils.stripAccents(s);
+		}
+		return s;
+	}
+}
@@ -0,0 +1,42 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.form.behavior;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+
+/**
+ * One of the rules applied by {@link RealFullNameValidator}. A rule is created once, when the validator is
+ * constructed, and then applied to every pair of names submitted, so anything expensive (such as compiling a pattern)
+ * belongs in its constructor. Rules are serialized with the validator's page.
+ * @see StandardNameRule
+ */
+@FunctionalInterface
+public interface NameRule extends Serializable {
+	enum Result {
+		PASS,
+		REJECT_FIRST_NAME,
+		REJECT_FAMILY_NAME
+	}
+
+	/**
+	 * Applies this rule to a full name.
+	 * @param name names to check
+	 * @return which of the two names the rule rejects, if any
+	 */
+	@Nonnull
+	Result apply(@Nonnull FullName name);
+}
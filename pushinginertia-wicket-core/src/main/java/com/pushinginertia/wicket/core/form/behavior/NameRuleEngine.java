@@ -0,0 +1,426 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.form.behavior;
+
+import com.google.common.cache.CacheBuilder;
+import com.pushinginertia.commons.core.validation.ValidateAs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies an ordered list of {@link NameRule}s to a full name until one of them rejects it, counting how often each
+ * rule is applied and rejects a name, and how long it takes. Rules can be enabled and disabled while the application
+ * is running.
+ * <p>
+ * An engine can optionally reorder its rules as it goes, so that the rules that reject the most names for the least
+ * time run first. Whether a name passes doesn't depend on the order, as every enabled rule has to pass, but when a
+ * name breaks several rules the order decides which of the two inputs is reported.
+ * <p>
+ * Give an engine a name with {@link Builder#name(String)} to share one set of counters between all of the validators
+ * that use it: named engines are registered when they're built, and a copy made when a page is deserialized resolves
+ * to the registered engine. The registry holds engines weakly, so an engine stays registered for as long as a
+ * validator (or its MXBean) refers to it. A named engine can also be published as an MXBean with
+ * {@link #registerMBean()}.
+ */
+public final class NameRuleEngine implements NameRuleEngineMXBean, Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final Logger LOG = LoggerFactory.getLogger(NameRuleEngine.class);
+
+	/**
+	 * One in this many applications (a power of two) is timed, to keep the clock off the common path.
+	 */
+	private static final int TIMING_INTERVAL = 64;
+
+	/**
+	 * Domain of the name that {@link #registerMBean()} registers the MXBean under.
+	 */
+	public static final String OBJECT_NAME_DOMAIN = "com.pushinginertia.wicket";
+
+	private static final ConcurrentMap<String, NameRuleEngine> ENGINES =
+			CacheBuilder.newBuilder().weakValues().<String, NameRuleEngine>build().asMap();
+
+	public static class Builder {
+		private final List<NameRule> rules = new ArrayList<>();
+		private final List<NameRule> disabled = new ArrayList<>();
+		private String name;
+		private int reorderInterval;
+
+		private Builder() {
+		}
+
+		/**
+		 * Names the engine so that it's shared (see {@link NameRuleEngine}). Building a second engine with the same
+		 * name replaces the first one in the registry.
+		 */
+		public Builder name(@Nonnull final String name) {
+			this.name = ValidateAs.notNull(name, "name");
+			return this;
+		}
+
+		/**
+		 * Adds a rule after the ones already added.
+		 */
+		public Builder add(@Nonnull final NameRule rule) {
+			rules.add(ValidateAs.notNull(rule, "rule"));
+			return this;
+		}
+
+		/**
+		 * Adds all of the {@link StandardNameRule}s in their natural order.
+		 */
+		public Builder addStandardRules() {
+			rules.addAll(Arrays.asList(StandardNameRule.values()));
+			return this;
+		}
+
+		/**
+		 * Starts a rule that has been added as disabled.
+		 */
+		public Builder disable(@Nonnull final NameRule rule) {
+			disabled.add(ValidateAs.notNull(rule, "rule"));
+			return this;
+		}
+
+		/**
+		 * Reorders the rules after every so many applications, by the average time that each rule takes divided by
+		 * the proportion of names that it rejects. By default, the rules are applied in the order they were added.
+		 * @param reorderInterval number of applications between reorderings
+		 */
+		public Builder adaptive(final int reorderInterval) {
+			this.reorderInterval = ValidateAs.positive(reorderInterval, "reorderInterval");
+			return this;
+		}
+
+		public NameRuleEngine build() {
+			final NameRuleEngine engine = new NameRuleEngine(this);
+			if (name != null && ENGINES.put(name, engine) != null) {
+				LOG.info("Replaced name rule engine [{}]", name);
+			}
+			return engine;
+		}
+	}
+
+	/**
+	 * The rule that rejected a full name.
+	 */
+	public static final class Rejection {
+		private final NameRule rule;
+		private final NameRule.Result result;
+
+		private Rejection(@Nonnull final NameRule rule, @Nonnull final NameRule.Result result) {
+			this.rule = rule;
+			this.result = result;
+		}
+
+		@Nonnull
+		public NameRule getRule() {
+			return rule;
+		}
+
+		/**
+		 * Either {@link NameRule.Result#REJECT_FIRST_NAME} or {@link NameRule.Result#REJECT_FAMILY_NAME}.
+		 */
+		@Nonnull
+		public NameRule.Result getResult() {
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return "Rejection{rule=" + rule + ", result=" + result + '}';
+		}
+	}
+
+	/**
+	 * A rule and its counters.
+	 */
+	private static final class RuleState implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final NameRule rule;
+		private volatile boolean enabled;
+		private final LongAdder applications = new LongAdder();
+		private final LongAdder rejections = new LongAdder();
+		private final LongAdder timedApplications = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+
+		private RuleState(@Nonnull final NameRule rule, final boolean enabled) {
+			this.rule = rule;
+			this.enabled = enabled;
+		}
+
+		/**
+		 * Expected time spent on this rule for each name that it rejects. Both counts are smoothed so that a rule that
+		 * hasn't been applied yet scores zero and is moved to the front to be measured.
+		 */
+		private double score() {
+			final long timed = timedApplications.sum();
+			final double averageNanos = timed == 0 ? 0 : (double) nanos.sum() / timed;
+			return averageNanos * (applications.sum() + 2) / (rejections.sum() + 1);
+		}
+
+		@Nonnull
+		private NameRuleStatistics toStatistics() {
+			return new NameRuleStatistics(
+					rule.toString(),
+					enabled,
+					applications.sum(),
+					rejections.sum(),
+					timedApplications.sum(),
+					nanos.sum());
+		}
+	}
+
+	private final String name;
+	private final int reorderInterval;
+	private final AtomicLong applications = new AtomicLong();
+	/**
+	 * The rules in the order that they're applied. Replaced as a whole when the rules are reordered.
+	 */
+	private volatile RuleState[] order;
+	/**
+	 * True while this engine is registered as an MXBean by {@link #registerMBean()}.
+	 */
+	private transient volatile boolean registered;
+
+	private NameRuleEngine(@Nonnull final Builder builder) {
+		this.name = builder.name;
+		this.reorderInterval = builder.reorderInterval;
+		final RuleState[] order = new RuleState[builder.rules.size()];
+		for (int i = 0; i < order.length; i++) {
+			final NameRule rule = builder.rules.get(i);
+			order[i] = new RuleState(rule, !builder.disabled.contains(rule));
+		}
+		for (final NameRule rule: builder.disabled) {
+			if (!builder.rules.contains(rule)) {
+				throw new IllegalArgumentException("Disabled rule hasn't been added: " + rule);
+			}
+		}
+		this.order = order;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Looks up a named engine.
+	 * @param name name given to {@link Builder#name(String)}
+	 * @return null if no engine with that name has been built or it's no longer referenced
+	 */
+	@Nullable
+	public static NameRuleEngine get(@Nonnull final String name) {
+		return ENGINES.get(name);
+	}
+
+	/**
+	 * Applies the enabled rules to a full name in order, stopping at the first one that rejects it.
+	 * @param name names to check
+	 * @return the rejection, or null if every enabled rule passes
+	 */
+	@Nullable
+	public Rejection apply(@Nonnull final FullName name) {
+		final long n = applications.incrementAndGet();
+		if (reorderInterval > 0 && n % reorderInterval == 0) {
+			reorder();
+		}
+		final boolean timed = (n & (TIMING_INTERVAL - 1)) == 0;
+		if (timed) {
+			// the features are shared by the standard rules, so they'd otherwise all be charged to whichever runs first
+			name.getFirstNameFeatures();
+			name.getFamilyNameFeatures();
+		}
+		for (final RuleState state: order) {
+			if (!state.enabled) {
+				continue;
+			}
+			final long start = timed ? System.nanoTime() : 0;
+			final NameRule.Result result = state.rule.apply(name);
+			if (timed) {
+				state.nanos.add(System.nanoTime() - start);
+				state.timedApplications.increment();
+			}
+			state.applications.increment();
+			if (result != NameRule.Result.PASS) {
+				state.rejections.increment();
+				return new Rejection(state.rule, result);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Sorts the rules by {@link RuleState#score()}. The scores are taken once up front, as the counters keep changing
+	 * during the sort. It's an insertion sort, as there are only a handful of rules and it keeps rules with the same
+	 * score in their relative order.
+	 */
+	private synchronized void reorder() {
+		final RuleState[] sorted = order.clone();
+		final double[] scores = new double[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			scores[i] = sorted[i].score();
+		}
+		for (int i = 1; i < sorted.length; i++) {
+			final RuleState state = sorted[i];
+			final double score = scores[i];
+			int j = i - 1;
+			while (j >= 0 && scores[j] > score) {
+				sorted[j + 1] = sorted[j];
+				scores[j + 1] = scores[j];
+				j--;
+			}
+			sorted[j + 1] = state;
+			scores[j + 1] = score;
+		}
+		order = sorted;
+	}
+
+	/**
+	 * Enables or disables a rule while the application is running.
+	 * @param rule a rule that was added to the engine
+	 * @param enabled false to skip the rule
+	 * @throws IllegalArgumentException if the rule wasn't added to the engine
+	 */
+	public void setEnabled(@Nonnull final NameRule rule, final boolean enabled) {
+		for (final RuleState state: order) {
+			if (state.rule.equals(rule)) {
+				state.enabled = enabled;
+				LOG.info("Name rule [{}] {}", rule, enabled ? "enabled" : "disabled");
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Unknown rule: " + rule);
+	}
+
+	@Override
+	public void setRuleEnabled(final String rule, final boolean enabled) {
+		for (final RuleState state: order) {
+			if (state.rule.toString().equals(rule)) {
+				setEnabled(state.rule, enabled);
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Unknown rule: " + rule);
+	}
+
+	/**
+	 * Name given to {@link Builder#name(String)}.
+	 * @return null if the engine has no name
+	 */
+	@Nullable
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getApplications() {
+		return applications.get();
+	}
+
+	@Override
+	public List<NameRuleStatistics> getRules() {
+		final RuleState[] order = this.order;
+		final List<NameRuleStatistics> statistics = new ArrayList<>(order.length);
+		for (final RuleState state: order) {
+			statistics.add(state.toStatistics());
+		}
+		return statistics;
+	}
+
+	/**
+	 * The rules in the order that they're currently applied, including disabled ones.
+	 */
+	@Nonnull
+	public List<NameRule> getOrder() {
+		final RuleState[] order = this.order;
+		final List<NameRule> rules = new ArrayList<>(order.length);
+		for (final RuleState state: order) {
+			rules.add(state.rule);
+		}
+		return rules;
+	}
+
+	/**
+	 * Registers this named engine as an MXBean with the platform MBean server.
+	 * @throws IllegalStateException if the engine has no name or the MXBean can't be registered
+	 */
+	public void registerMBean() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName());
+		} catch (final JMException e) {
+			throw new IllegalStateException("Unable to register MXBean for name rule engine: " + name, e);
+		}
+		registered = true;
+	}
+
+	/**
+	 * Unregisters the MXBean registered by {@link #registerMBean()}, if any. An MXBean that something else registered
+	 * under the same name is left alone.
+	 */
+	public void unregisterMBean() {
+		if (!registered) {
+			return;
+		}
+		registered = false;
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName objectName = objectName();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (final JMException e) {
+			throw new IllegalStateException("Unable to unregister MXBean for name rule engine: " + name, e);
+		}
+	}
+
+	@Nonnull
+	private ObjectName objectName() throws JMException {
+		if (name == null) {
+			throw new IllegalStateException("Only a named engine can be registered as an MXBean");
+		}
+		return new ObjectName(OBJECT_NAME_DOMAIN + ":type=NameRuleEngine,name=" + ObjectName.quote(name));
+	}
+
+	/**
+	 * Resolves a deserialized copy of a named engine to the registered engine, so that they share their counters.
+	 */
+	private Object readResolve() {
+		if (name == null) {
+			return this;
+		}
+		final NameRuleEngine registered = ENGINES.putIfAbsent(name, this);
+		return registered == null ? this : registered;
+	}
+
+	@Override
+	public String toString() {
+		return "NameRuleEngine{name=" + name + ", rules=" + getOrder() + ", reorderInterval=" + reorderInterval + '}';
+	}
+}
@@ -0,0 +1,41 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.form.behavior;
+
+import java.util.List;
+
+/**
+ * Management interface of a named {@link NameRuleEngine}, registered with {@link NameRuleEngine#registerMBean()}.
+ */
+public interface NameRuleEngineMXBean {
+	/**
+	 * Number of full names that the engine has been applied to.
+	 */
+	long getApplications();
+
+	/**
+	 * Statistics of each rule, in the order that the rules are currently applied.
+	 */
+	List<NameRuleStatistics> getRules();
+
+	/**
+	 * Enables or disables a rule while the application is running.
+	 * @param rule value of {@link NameRuleStatistics#getRule()}
+	 * @param enabled false to skip the rule
+	 * @throws IllegalArgumentException if the engine has no rule with that name
+	 */
+	void setRuleEnabled(String rule, boolean enabled);
+}
@@ -0,0 +1,91 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.form.behavior;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A snapshot of the counters that a {@link NameRuleEngine} keeps for one of its rules. Times are in nanoseconds and
+ * are only measured for a sample of the applications.
+ */
+public final class NameRuleStatistics {
+	private final String rule;
+	private final boolean enabled;
+	private final long applications;
+	private final long rejections;
+	private final long timedApplications;
+	private final long nanos;
+
+	NameRuleStatistics(
+			@Nonnull final String rule,
+			final boolean enabled,
+			final long applications,
+			final long rejections,
+			final long timedApplications,
+			final long nanos) {
+		this.rule = rule;
+		this.enabled = enabled;
+		this.applications = applications;
+		this.rejections = rejections;
+		this.timedApplications = timedApplications;
+		this.nanos = nanos;
+	}
+
+	/**
+	 * The rule's {@link Object#toString()}.
+	 */
+	public String getRule() {
+		return rule;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Number of full names that the rule was applied to.
+	 */
+	public long getApplications() {
+		return applications;
+	}
+
+	/**
+	 * Number of full names that the rule rejected.
+	 */
+	public long getRejections() {
+		return rejections;
+	}
+
+	/**
+	 * Number of applications that were timed.
+	 */
+	public long getTimedApplications() {
+		return timedApplications;
+	}
+
+	/**
+	 * Time spent in the timed applications.
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	@Override
+	public String toString() {
+		return "NameRuleStatistics{rule=" + rule + ", enabled=" + enabled + ", applications=" + applications +
+				", rejections=" + rejections + ", timedApplications=" + timedApplications + ", nanos=" + nanos + '}';
+	}
+}
@@ -15,27 +15,25 @@
  */
 package com.pushinginertia.wicket.core.form.behavior;
 
-import com.google.common.base.CharMatcher;
-import com.google.common.base.Splitter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.pushinginertia.commons.core.validation.ValidateAs;
 import com.pushinginertia.commons.domain.util.ModelInputNormalizationUtils;
-import com.pushinginertia.commons.lang.CharUtils;
-import com.pushinginertia.commons.lang.StringUtils;
 import org.apache.wicket.markup.html.form.Form;
 import org.apache.wicket.markup.html.form.FormComponent;
 import org.apache.wicket.markup.html.form.TextField;
 import org.apache.wicket.markup.html.form.validation.AbstractFormValidator;
-import org.apache.wicket.util.lang.Objects;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Performs validation on inputs for first and family names, ensuring that the following rules are followed.
@@ -53,39 +51,68 @@ import java.util.stream.Collectors;
  * </ul>
  * If CJK (Chinese, Japanese, Korean) characters are entered, the minimum length of two characters is not enforced.
  * This is because it's common for a name to appear as only one character in these languages.
+ * <p>
+ * Each of these rules is a {@link NameRule} object created once with the validator (see {@link StandardNameRule} and
+ * {@link IllegalValuesNameRule}), and custom rules can be passed in instead. The rules are applied by a
+ * {@link NameRuleEngine}, which counts the names that each rule rejects and can reorder the rules accordingly. All of
+ * the standard rules that look at one name on its own are answered from a single pass over the name (see
+ * {@link NameFeatures}).
+ * <p>
+ * The validators that use the standard rules share one engine, named {@link #ENGINE_NAME}, and the validators that
+ * use the same {@link IllegalValueMatcher} share an engine, which is named after it and the key of a matcher built
+ * with {@link IllegalValueMatcher.Builder#key(String)}. These engines aren't serialized with the validator but looked
+ * up again when it's read back. The engines of interned matchers aren't named, so that they (and the matcher) are
+ * dropped along with the last validator that uses them. The named engines can be published as MXBeans with the
+ * platform MBean server by calling {@link #registerMBeans()} in {@code Application.init()} and
+ * {@link #unregisterMBeans()} in {@code Application.onDestroy()}; nothing is registered otherwise.
  */
 public class RealFullNameValidator extends AbstractFormValidator {
 	private static final long serialVersionUID = 1L;
 	private static final Logger LOG = LoggerFactory.getLogger(RealFullNameValidator.class);
 
 	/**
-	 * Dot (.) is okay as it may be written in a name like "John Jr."
+	 * Name of the engine with the standard rules. The engine for the illegal values of a matcher built with a key is
+	 * named this followed by ':' and the key.
 	 */
-	private static final char[] ILLEGAL_CHARS =
-			{'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
-			 '!', '@', '#', '$', '%', '^', '*', '(', ')', '+',
-			 '_', '=', '<', '>', '?', ':', ';', '"', '[', ']',
-			 '{', '}', '|', '~', '\\'};
+	public static final String ENGINE_NAME = "RealFullNameValidator";
+
 	/**
-	 * Characters that can appear at most once in a name.
+	 * The default engines that have been registered as MXBeans, or have failed to be.
 	 */
-	private static final char[] MAX_ONE_CHARS = {'&', '/',};
-	private static final Set<String> TITLES = new HashSet<>();
-	static {
-		TITLES.add("MR");
-		TITLES.add("MRS");
-		TITLES.add("MS");
-		TITLES.add("MISS");
-		TITLES.add("DR");
-	}
+	private static final Set<NameRuleEngine> MBEAN_ENGINES = ConcurrentHashMap.newKeySet();
+	/**
+	 * Set by {@link #registerMBeans()}, so that the named default engines built from then on are registered too.
+	 */
+	private static volatile boolean mbeansEnabled;
+
+	/**
+	 * Engine with the standard rules, shared by the validators that don't have any other rules.
+	 */
+	private static final NameRuleEngine STANDARD_ENGINE =
+			NameRuleEngine.builder().name(ENGINE_NAME).addStandardRules().build();
+	/**
+	 * Engines with the standard rules followed by the illegal values of a matcher, shared by the validators that use
+	 * the same matcher. Keys are compared by identity, and both keys and engines are weakly referenced, as an engine
+	 * refers to its matcher.
+	 */
+	private static final LoadingCache<IllegalValueMatcher, NameRuleEngine> ILLEGAL_VALUES_ENGINES =
+			CacheBuilder.newBuilder()
+					.weakKeys()
+					.weakValues()
+					.build(CacheLoader.from(RealFullNameValidator::newIllegalValuesEngine));
 
 	private final TextField<String> firstName;
 	private final TextField<String> familyName;
 	/**
-	 * A collection of case insensitive exact-match values that will trigger the validator to report an error on the
-	 * input.
+	 * Matcher that the default engine was looked up for, or null.
 	 */
-	private final Set<String> illegalValues;
+	private final IllegalValueMatcher illegalValues;
+	/**
+	 * Engine passed in or built from custom rules, which is serialized with the validator, or null if the validator
+	 * uses a default engine.
+	 */
+	private final NameRuleEngine customEngine;
+	private transient NameRuleEngine engine;
 
 	/**
 	 * Performs validation on inputs for first and family names, ensuring that a set of rules are followed.
@@ -98,131 +125,212 @@ public class RealFullNameValidator extends AbstractFormValidator {
 			@Nonnull final TextField<String> familyName) {
 		this.firstName = ValidateAs.notNull(firstName, "firstName");
 		this.familyName = ValidateAs.notNull(familyName, "familyName");
-		this.illegalValues = Collections.emptySet();
+		this.illegalValues = null;
+		this.customEngine = null;
+		this.engine = defaultEngine(null);
 	}
 
 	/**
 	 * Performs validation on inputs for first and family names, ensuring that a set of rules are followed.
 	 * @param firstName input for the user's first name
 	 * @param familyName input for the user's family name
+	 * @param illegalValues case insensitive words that mustn't appear in either name, interned with
+	 * {@link IllegalValueMatcher#internWords(Collection)} so that validators given the same words share them
 	 * @see RealFullNameValidator
 	 */
 	public RealFullNameValidator(
 			@Nonnull final TextField<String> firstName,
 			@Nonnull final TextField<String> familyName,
 			@Nonnull final Collection<String> illegalValues) {
+		this(firstName, familyName, IllegalValueMatcher.internWords(illegalValues));
+	}
+
+	/**
+	 * Performs validation on inputs for first and family names, ensuring that a set of rules are followed.
+	 * @param firstName input for the user's first name
+	 * @param familyName input for the user's family name
+	 * @param illegalValues values that mustn't appear in either name, built once and shared between validators
+	 * @see RealFullNameValidator
+	 */
+	public RealFullNameValidator(
+			@Nonnull final TextField<String> firstName,
+			@Nonnull final TextField<String> familyName,
+			@Nonnull final IllegalValueMatcher illegalValues) {
 		this.firstName = ValidateAs.notNull(firstName, "firstName");
 		this.familyName = ValidateAs.notNull(familyName, "familyName");
-		this.illegalValues = illegalValues.stream().map(String::toLowerCase).collect(Collectors.toSet());
+		this.illegalValues = ValidateAs.notNull(illegalValues, "illegalValues");
+		this.customEngine = null;
+		this.engine = defaultEngine(illegalValues);
 	}
 
-	@Override
-	public FormComponent<?>[] getDependentFormComponents() {
-		return new TextField[] {firstName, familyName};
+	/**
+	 * Performs validation on inputs for first and family names, ensuring that a set of rules are followed.
+	 * @param firstName input for the user's first name
+	 * @param familyName input for the user's family name
+	 * @param illegalValuesKey key of the registered {@link IllegalValueMatcher} of values that mustn't appear in
+	 * either name
+	 * @throws IllegalArgumentException if no matcher is registered under the key
+	 * @see IllegalValueMatcher.Builder#key(String)
+	 */
+	public RealFullNameValidator(
+			@Nonnull final TextField<String> firstName,
+			@Nonnull final TextField<String> familyName,
+			@Nonnull final String illegalValuesKey) {
+		this(firstName, familyName, registeredMatcher(illegalValuesKey));
 	}
 
-	@Override
-	public void validate(final Form<?> form) {
-		// remove duplicate names in the two inputs
-		removeNameDupes();
-
-		// 1. minimum length and no dot
-		if (!satisfiesLengthWithoutDot(firstName)) {
-			LOG.info(toLogString(form, firstName));
-			error(firstName);
-			return;
+	@Nonnull
+	private static IllegalValueMatcher registeredMatcher(@Nonnull final String key) {
+		final IllegalValueMatcher matcher = IllegalValueMatcher.get(ValidateAs.notNull(key, "illegalValuesKey"));
+		if (matcher == null) {
+			throw new IllegalArgumentException("No illegal values are registered under key: " + key);
 		}
-		if (!satisfiesLengthWithoutDot(familyName)) {
-			LOG.info(toLogString(form, familyName));
-			error(familyName);
-			return;
+		return matcher;
+	}
+
+	/**
+	 * Performs validation on inputs for first and family names, applying a custom set of rules.
+	 * @param firstName input for the user's first name
+	 * @param familyName input for the user's family name
+	 * @param rules rules to apply, in order, until one of them rejects a name
+	 * @see StandardNameRule
+	 */
+	public RealFullNameValidator(
+			@Nonnull final TextField<String> firstName,
+			@Nonnull final TextField<String> familyName,
+			@Nonnull final NameRule... rules) {
+		this.firstName = ValidateAs.notNull(firstName, "firstName");
+		this.familyName = ValidateAs.notNull(familyName, "familyName");
+		final NameRuleEngine.Builder builder = NameRuleEngine.builder();
+		for (final NameRule rule: rules) {
+			builder.add(rule);
 		}
+		this.illegalValues = null;
+		this.customEngine = builder.build();
+		this.engine = customEngine;
+	}
 
-		final String firstNameInput = firstName.getConvertedInput();
-		final String familyNameInput = familyName.getConvertedInput();
+	/**
+	 * Performs validation on inputs for first and family names, applying the rules of an engine. Use this to share
+	 * an engine's counters between validators and to adjust its rules while the application is running.
+	 * @param firstName input for the user's first name
+	 * @param familyName input for the user's family name
+	 * @param engine rules to apply
+	 */
+	public RealFullNameValidator(
+			@Nonnull final TextField<String> firstName,
+			@Nonnull final TextField<String> familyName,
+			@Nonnull final NameRuleEngine engine) {
+		this.firstName = ValidateAs.notNull(firstName, "firstName");
+		this.familyName = ValidateAs.notNull(familyName, "familyName");
+		this.illegalValues = null;
+		this.customEngine = ValidateAs.notNull(engine, "engine");
+		this.engine = engine;
+	}
 
-		// 2. check equality
-		if (Objects.equal(firstNameInput.toLowerCase(), familyNameInput.toLowerCase())) {
-			LOG.info(toLogString(form, firstName));
-			error(firstName);
-			return;
+	@Nonnull
+	private static NameRuleEngine newIllegalValuesEngine(@Nonnull final IllegalValueMatcher matcher) {
+		final NameRuleEngine.Builder builder =
+				NameRuleEngine.builder().addStandardRules().add(new IllegalValuesNameRule(matcher));
+		final String key = matcher.getKey();
+		if (key != null && !matcher.isInterned()) {
+			builder.name(ENGINE_NAME + ':' + key);
 		}
+		return builder.build();
+	}
 
-		// 3. check for illegal characters
-		if (CharUtils.inCharArray(firstNameInput, ILLEGAL_CHARS) >= 0) {
-			LOG.info(toLogString(form, firstName));
-			error(firstName);
-			return;
-		}
-		if (CharUtils.inCharArray(familyNameInput, ILLEGAL_CHARS) >= 0) {
-			LOG.info(toLogString(form, familyName));
-			error(familyName);
-			return;
+	/**
+	 * Looks up the default engine for a matcher, registering it as an MXBean if {@link #registerMBeans()} was called.
+	 * @param illegalValues matcher of the illegal values, or null for the standard rules alone
+	 */
+	@Nonnull
+	private static NameRuleEngine defaultEngine(@Nullable final IllegalValueMatcher illegalValues) {
+		final NameRuleEngine engine =
+				illegalValues == null ? STANDARD_ENGINE : ILLEGAL_VALUES_ENGINES.getUnchecked(illegalValues);
+		if (mbeansEnabled) {
+			registerMBean(engine);
 		}
+		return engine;
+	}
 
-		// 4. check for title in the first name such as "Mr." or "Mrs."
-		if (containsTitle(firstName)) {
-			LOG.info(toLogString(form, firstName));
-			error(firstName);
-			return;
+	/**
+	 * Registers a named engine as an MXBean the first time that it's seen. A failure to register, such as when another
+	 * application in the JVM has registered an engine with the same name, is logged rather than thrown, as the engine
+	 * works without the MXBean; the other application's MXBean is left in place.
+	 */
+	private static void registerMBean(@Nonnull final NameRuleEngine engine) {
+		if (engine.getName() != null && MBEAN_ENGINES.add(engine)) {
+			try {
+				engine.registerMBean();
+			} catch (final IllegalStateException e) {
+				LOG.warn("Unable to register MXBean for " + engine, e);
+			}
 		}
+	}
 
-		// 5. check for all vowels or consonants in the name
-		if (allVowelsOrConsonants(firstNameInput)) {
-			LOG.info(toLogString(form, firstName));
-			error(firstName);
-			return;
-		}
-		if (allVowelsOrConsonants(familyNameInput)) {
-			LOG.info(toLogString(form, familyName));
-			error(familyName);
+	/**
+	 * Registers the named default engines as MXBeans with the platform MBean server (see
+	 * {@link NameRuleEngine#registerMBean()}), including the ones built later, until {@link #unregisterMBeans()} is
+	 * called. Meant to be called from {@code Application.init()}.
+	 */
+	public static void registerMBeans() {
+		mbeansEnabled = true;
+		registerMBean(STANDARD_ENGINE);
+		for (final NameRuleEngine engine: ILLEGAL_VALUES_ENGINES.asMap().values()) {
+			registerMBean(engine);
 		}
+	}
 
-		// 6. reject domains
-		if (isDomain(firstNameInput)) {
-			LOG.info(toLogString(form, firstName));
-			error(firstName);
-			return;
-		}
-		if (isDomain(familyNameInput)) {
-			LOG.info(toLogString(form, familyName));
-			error(familyName);
-			return;
+	/**
+	 * Unregisters the MXBeans registered by {@link #registerMBeans()}, such as when the application is destroyed, so
+	 * that the MBean server doesn't keep the engines (and their class loader) alive. MXBeans registered by anything
+	 * else under the same names are left alone.
+	 */
+	public static void unregisterMBeans() {
+		mbeansEnabled = false;
+		for (final NameRuleEngine engine: MBEAN_ENGINES) {
+			try {
+				engine.unregisterMBean();
+			} catch (final IllegalStateException e) {
+				LOG.warn("Unable to unregister MXBean for " + engine, e);
+			}
+			MBEAN_ENGINES.remove(engine);
 		}
+	}
 
-		// 7. check for one character limits
-		if (exceedsOneCharLimits(firstNameInput)) {
-			LOG.info(toLogString(form, firstName));
-			error(firstName);
-			return;
-		}
-		if (exceedsOneCharLimits(familyNameInput)) {
-			LOG.info(toLogString(form, familyName));
-			error(familyName);
-			return;
-		}
+	/**
+	 * Looks up the default engine again, so that a deserialized validator shares it with the other validators.
+	 */
+	private void readObject(@Nonnull final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		engine = customEngine == null ? defaultEngine(illegalValues) : customEngine;
+	}
 
-		// 8. check that first and last characters are letters
-		if (!firstAndLastAreLetters(firstNameInput)) {
-			LOG.info(toLogString(form, firstName));
-			error(firstName);
-			return;
-		}
-		if (!firstAndLastAreLetters(familyNameInput)) {
-			LOG.info(toLogString(form, familyName));
-			error(familyName);
-			return;
-		}
+	/**
+	 * The engine that applies the rules.
+	 */
+	@Nonnull
+	NameRuleEngine getEngine() {
+		return engine;
+	}
 
-		// 9. check for illegal values passed in via class constructor
-		if (containsIllegalValue(illegalValues, firstNameInput)) {
-			LOG.info(toLogString(form, firstName));
-			error(firstName);
-			return;
-		}
-		if (containsIllegalValue(illegalValues, familyNameInput)) {
-			LOG.info(toLogString(form, familyName));
-			error(familyName);
+	@Override
+	public FormComponent<?>[] getDependentFormComponents() {
+		return new TextField[] {firstName, familyName};
+	}
+
+	@Override
+	public void validate(final Form<?> form) {
+		// remove duplicate names in the two inputs
+		removeNameDupes();
+
+		final FullName name = new FullName(firstName.getConvertedInput(), familyName.getConvertedInput());
+		final NameRuleEngine.Rejection rejection = engine.apply(name);
+		if (rejection != null) {
+			final TextField<String> input =
+					rejection.getResult() == NameRule.Result.REJECT_FIRST_NAME ? firstName : familyName;
+			LOG.info(toLogString(form, input, rejection.getRule()));
+			error(input);
 		}
 	}
 
@@ -235,20 +343,11 @@ public class RealFullNameValidator extends AbstractFormValidator {
 		familyName.setConvertedInput(names[1]);
 	}
 
-	static boolean containsIllegalValue(final Set<String> illegalValuesLowerCase, final String input) {
-		final Splitter splitter = Splitter.on(CharMatcher.anyOf(". -&/")).omitEmptyStrings().trimResults();
-		for (final String token: splitter.split(input.toLowerCase())) {
-			if (illegalValuesLowerCase.contains(token)) {
-				return true;
-			}
-		}
-		return false;
-	}
-
-	private String toLogString(final Form form, final TextField<String> errorComponent) {
+	private String toLogString(final Form form, final TextField<String> errorComponent, final NameRule rule) {
 		final String id = errorComponent.getId();
 		final String pageClass = form.getPage().getClass().getSimpleName();
-		return pageClass + " failed validation on input [" + id + "]: " + toString(firstName) + ", " + toString(familyName);
+		return pageClass + " failed validation on input [" + id + "] by rule " + rule + ": " + toString(firstName) +
+				", " + toString(familyName);
 	}
 
 	private String toString(final TextField<String> tf) {
@@ -258,31 +357,31 @@ public class RealFullNameValidator extends AbstractFormValidator {
 	}
 
 	/**
-	 * Tests that the first and last characters in the input string are A-Z letters (case insensitive).
+	 * Tests a name against the rules that apply to it on its own, which are all of the rules except the comparison with
+	 * the other name and the illegal values.
+	 * @param name input to test
+	 * @param firstName true if the name is a first name, which mustn't start with a title
+	 * @return true iff the name passes all of these rules
 	 */
-	static boolean firstAndLastAreLetters(final String input) {
-		if (input.length() == 0) {
-			return true;
-		}
-		final char first = Character.toLowerCase(input.charAt(0));
-		if (!Character.isLetter(first)) {
-			return false;
+	static boolean isPlausibleName(@Nonnull final String name, final boolean firstName) {
+		final NameFeatures features = new NameFeatures(name);
+		for (final StandardNameRule rule: StandardNameRule.values()) {
+			if (rule.rejects(features, firstName)) {
+				return false;
+			}
 		}
-		final char last = Character.toLowerCase(input.charAt(input.length() - 1));
-		return (Character.isLetter(last));
+		return true;
 	}
 
-	private static boolean containsTitle(final TextField<String> tf) {
-		return containsTitle(tf.getConvertedInput());
+	/**
+	 * Tests that the first and last characters in the input string are letters.
+	 */
+	static boolean firstAndLastAreLetters(final String input) {
+		return new NameFeatures(input).firstAndLastAreLetters;
 	}
 
 	static boolean exceedsOneCharLimits(final String input) {
-		for (final char c: MAX_ONE_CHARS) {
-			if (StringUtils.charFrequencyInString(c, input) > 1) {
-				return true;
-			}
-		}
-		return false;
+		return new NameFeatures(input).exceedsOneCharLimits;
 	}
 
 	/**
@@ -291,13 +390,9 @@ public class RealFullNameValidator extends AbstractFormValidator {
 	 * @return true iff the input looks like a domain
 	 */
 	static boolean isDomain(final String input) {
-		return Pattern.matches(".*[a-z0-9]\\.[a-z]{2}.*", input);
+		return new NameFeatures(input).isDomain;
 	}
 
-	private static final char[] VOWELS = {'a', 'e', 'i', 'o', 'u'};
-	private static final char[] CONSONANTS =
-			{'b', 'c', 'd', 'f', 'g', 'h', 'j', 'k', 'l', 'm', 'n', 'p', 'q', 'r', 's', 't', 'v', 'w', 'x', 'z'};
-
 	/**
 	 * Checks if all characters in the input are consonants or vowels. 'Y' is considered neither so that a name like
 	 * "Ly" or "Ay" would not return true.
@@ -305,27 +400,7 @@ public class RealFullNameValidator extends AbstractFormValidator {
 	 * @return true iff all characters are vowels or consonants
 	 */
 	static boolean allVowelsOrConsonants(final String input) {
-		// 1. strip out accents for the purpose of comparison
-		final String strippedInput = org.apache.commons.lang3.StringUtils.stripAccents(input);
-
-		// 2. count the vowels and consonants
-		int vowels = 0;
-		int consonants = 0;
-		int either = 0;
-		for (char c: strippedInput.toLowerCase().toCharArray()) {
-			if (CharUtils.inCharArray(c, VOWELS) >= 0) {
-				vowels++;
-				either++;
-			} else if (CharUtils.inCharArray(c, CONSONANTS) >= 0) {
-				consonants++;
-				either++;
-			} else if (c != ' ' && c != '.') {
-				either++;
-			}
-		}
-
-		// 3. see if all characters other than spaces/periods are vowels or consonants
-		return vowels == either || consonants == either;
+		return new NameFeatures(input).allVowelsOrConsonants;
 	}
 
 	/**
@@ -333,41 +408,11 @@ public class RealFullNameValidator extends AbstractFormValidator {
 	 * contain the title as a prefix, followed by a dot or space.
 	 */
 	static boolean containsTitle(final String input) {
-		final String input2 = input.toUpperCase();
-		final int idx = CharMatcher.anyOf(". ").indexIn(input2);
-		if (idx < 0) {
-			return TITLES.contains(input2);
-		}
-		if (idx < input2.length()) {
-			return TITLES.contains(input2.substring(0, idx));
-		}
-		return false;
-	}
-
-	private static boolean satisfiesLengthWithoutDot(final TextField<String> tf) {
-		return satisfiesLengthWithoutDot(tf.getConvertedInput());
+		return new NameFeatures(input).containsTitle;
 	}
 
 	static boolean satisfiesLengthWithoutDot(final String input) {
-		final boolean latin = StringUtils.isLatin(input);
-		if (latin) {
-			// fail if input is less than 2 characters long
-			if (input.length() < 2) {
-				return false;
-			}
-		} else {
-			// fail if input is less than 1 character long when non-latin characters are present
-			// (some languages can represent a name with only one character)
-			if (input.length() < 1) {
-				return false;
-			}
-		}
-
-		// fail if input is 2 characters but contains a dot
-		if (input.length() == 2 && input.indexOf('.') >= 0) {
-			return false;
-		}
-		return true;
+		return new NameFeatures(input).satisfiesLengthWithoutDot;
 	}
 
 	@Override
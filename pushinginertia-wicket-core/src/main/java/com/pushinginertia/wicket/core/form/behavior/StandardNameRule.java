@@ -0,0 +1,126 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.form.behavior;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The rules that {@link RealFullNameValidator} applies by default, in the order that they're applied. All of them
+ * except {@link #DISTINCT} look at each name on its own and are answered from the name's {@link NameFeatures}, so the
+ * whole set costs one pass over each name.
+ */
+public enum StandardNameRule implements NameRule {
+	/**
+	 * Each name is at least two characters long (one if it contains non-Latin characters) and a name of two
+	 * characters doesn't contain a dot.
+	 */
+	LENGTH_WITHOUT_DOT {
+		@Override
+		boolean rejects(@Nonnull final NameFeatures features, final boolean firstName) {
+			return !features.satisfiesLengthWithoutDot;
+		}
+	},
+	/**
+	 * The two names aren't the same, regardless of case.
+	 */
+	DISTINCT {
+		@Nonnull
+		@Override
+		public Result apply(@Nonnull final FullName name) {
+			if (name.getFirstName().toLowerCase().equals(name.getFamilyName().toLowerCase())) {
+				return Result.REJECT_FIRST_NAME;
+			}
+			return Result.PASS;
+		}
+	},
+	/**
+	 * Neither name contains characters that wouldn't exist in a real name, such as digits and most punctuation.
+	 */
+	ILLEGAL_CHARS {
+		@Override
+		boolean rejects(@Nonnull final NameFeatures features, final boolean firstName) {
+			return features.containsIllegalChar;
+		}
+	},
+	/**
+	 * The first name doesn't start with a title such as "Mr." or "Mrs.".
+	 */
+	TITLE {
+		@Override
+		boolean rejects(@Nonnull final NameFeatures features, final boolean firstName) {
+			return firstName && features.containsTitle;
+		}
+	},
+	/**
+	 * Neither name is made up of only vowels or only consonants.
+	 */
+	VOWELS_OR_CONSONANTS {
+		@Override
+		boolean rejects(@Nonnull final NameFeatures features, final boolean firstName) {
+			return features.allVowelsOrConsonants;
+		}
+	},
+	/**
+	 * Neither name looks like a domain.
+	 */
+	DOMAIN {
+		@Override
+		boolean rejects(@Nonnull final NameFeatures features, final boolean firstName) {
+			return features.isDomain;
+		}
+	},
+	/**
+	 * Ampersand and slash appear at most once in each name.
+	 */
+	ONE_CHAR_LIMITS {
+		@Override
+		boolean rejects(@Nonnull final NameFeatures features, final boolean firstName) {
+			return features.exceedsOneCharLimits;
+		}
+	},
+	/**
+	 * Each name starts and ends with a letter.
+	 */
+	FIRST_AND_LAST_LETTERS {
+		@Override
+		boolean rejects(@Nonnull final NameFeatures features, final boolean firstName) {
+			return !features.firstAndLastAreLetters;
+		}
+	};
+
+	/**
+	 * Tests one name on its own. Rules that compare the two names override {@link #apply(FullName)} instead and
+	 * don't reject anything here.
+	 * @param features features of the name
+	 * @param firstName true if the name is the first name
+	 * @return true iff the rule rejects the name
+	 */
+	boolean rejects(@Nonnull final NameFeatures features, final boolean firstName) {
+		return false;
+	}
+
+	@Nonnull
+	@Override
+	public Result apply(@Nonnull final FullName name) {
+		if (rejects(name.getFirstNameFeatures(), true)) {
+			return Result.REJECT_FIRST_NAME;
+		}
+		if (rejects(name.getFamilyNameFeatures(), false)) {
+			return Result.REJECT_FAMILY_NAME;
+		}
+		return Result.PASS;
+	}
+}
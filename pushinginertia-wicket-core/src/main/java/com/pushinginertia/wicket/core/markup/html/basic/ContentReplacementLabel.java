@@ -0,0 +1,61 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.markup.html.basic;
+
+import com.pushinginertia.wicket.core.model.replacement.ContentReplacementModel;
+import org.apache.wicket.markup.ComponentTag;
+import org.apache.wicket.markup.MarkupStream;
+import org.apache.wicket.markup.html.WebComponent;
+import org.apache.wicket.markup.parser.XmlTag;
+import org.apache.wicket.request.Response;
+
+/**
+ * Renders the text of a {@link ContentReplacementModel} like a {@link org.apache.wicket.markup.html.basic.Label},
+ * but writes it straight to the response in chunks instead of first building the whole replaced string. This keeps
+ * large user-entered texts (such as long messages) from being copied several times on every render.
+ * <p>
+ * The text is written exactly as the model produces it: escaping is controlled by
+ * {@link ContentReplacementModel#setEscapeModelString(boolean)} and the component's own
+ * {@link #setEscapeModelStrings(boolean)} has no effect.
+ */
+public class ContentReplacementLabel extends WebComponent {
+	private static final long serialVersionUID = 1L;
+
+	public ContentReplacementLabel(final String id, final ContentReplacementModel model) {
+		super(id, model);
+	}
+
+	public ContentReplacementModel getContentReplacementModel() {
+		return (ContentReplacementModel) getDefaultModel();
+	}
+
+	@Override
+	protected void onComponentTag(final ComponentTag tag) {
+		super.onComponentTag(tag);
+		if (tag.isOpenClose()) {
+			// always transform the tag to <span></span> so even labels defined as <span/> render
+			tag.setType(XmlTag.TagType.OPEN);
+		}
+	}
+
+	@Override
+	public void onComponentTagBody(final MarkupStream markupStream, final ComponentTag openTag) {
+		// skip any body in the markup, then stream the text in its place
+		replaceComponentTagBody(markupStream, openTag, "");
+		final Response response = getResponse();
+		getContentReplacementModel().write(response::write);
+	}
+}
@@ -0,0 +1,73 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+
+/**
+ * A query parameter added to the links written by {@link EmailToLinkContentReplacer} and
+ * {@link NumberSequenceToLinkContentReplacer}, whose value is computed from the matched text. The linked page can use
+ * it to tell which contact was masked, for instance to reveal it to a user who is allowed to see it. The token is
+ * only computed for the matches that are actually replaced, and is appended straight into the output.
+ */
+public interface ContentLinkToken extends Serializable {
+	/**
+	 * Name of the query parameter. It's written into the link as is, so it must not need URL encoding.
+	 * @return Non-null string.
+	 */
+	@Nonnull
+	public String parameterName();
+
+	/**
+	 * Appends the value of the query parameter for a match. It's written into the link as is, so it must not need URL
+	 * encoding or markup escaping. In a {@link ContentReplacerList.Mode#SEQUENTIAL} list the replacers after the one
+	 * that wrote the link read it too, so the value must not contain anything that they match (such as digits, with
+	 * {@link NumberSequenceContentReplacer}); otherwise use {@link ContentReplacerList.Mode#SINGLE_PASS}.
+	 * @param input Text being replaced.
+	 * @param start Index of the first character of the match.
+	 * @param end Index after the last character of the match.
+	 * @param out Output to append to.
+	 */
+	public void append(@Nonnull CharSequence input, int start, int end, @Nonnull StringBuilder out);
+
+	/**
+	 * Identifies the values appended by this token, as required by {@link ContentReplacementWriter#signature()}.
+	 * @return Non-null string.
+	 */
+	@Nonnull
+	public default String signature() {
+		return getClass().getName() + ':' + parameterName();
+	}
+
+	/**
+	 * Creates a token holding 64 bits of a SHA-256 hash of a secret followed by the matched text, as 16 consonants
+	 * (4 bits each, from "bcdfghjkmnpqrstv") that none of the built-in replacers match. The linked page can find the
+	 * masked contact by hashing the candidates in the same way with
+	 * {@link #append(CharSequence, int, int, StringBuilder)}, while the contact can't be recovered from the link.
+	 * <p>
+	 * The secret isn't serialized: the token is serialized as its parameter name and deserialized as the token most
+	 * recently created with that name, so the token must be created again (such as in {@code Application.init()})
+	 * before pages are deserialized in a new JVM, and each secret needs its own parameter name.
+	 * @param parameterName Name of the query parameter.
+	 * @param secret Key mixed into the hash, which should be kept private.
+	 * @return New token.
+	 */
+	@Nonnull
+	public static ContentLinkToken sha256(@Nonnull final String parameterName, @Nonnull final String secret) {
+		return HashedContentLinkToken.create(parameterName, secret);
+	}
+}
@@ -0,0 +1,85 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A match found by one of the replacers in a {@link ContentReplacerList}, as returned by
+ * {@link ContentReplacerList#findFirst(CharSequence)} and {@link ContentReplacerList#findAll(CharSequence)}.
+ */
+public final class ContentMatch {
+	private final int start;
+	private final int end;
+	private final int replacerIndex;
+	private final ContentReplacer replacer;
+
+	ContentMatch(final int start, final int end, final int replacerIndex, @Nonnull final ContentReplacer replacer) {
+		this.start = start;
+		this.end = end;
+		this.replacerIndex = replacerIndex;
+		this.replacer = replacer;
+	}
+
+	/**
+	 * Index of the first character of the match.
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Index after the last character of the match.
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * Position of the replacer that matched, in the order that replacers were added to the list.
+	 */
+	public int getReplacerIndex() {
+		return replacerIndex;
+	}
+
+	@Nonnull
+	public ContentReplacer getReplacer() {
+		return replacer;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ContentMatch)) {
+			return false;
+		}
+		final ContentMatch that = (ContentMatch) o;
+		return start == that.start && end == that.end && replacerIndex == that.replacerIndex &&
+				replacer.equals(that.replacer);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * (31 * start + end) + replacerIndex) + replacer.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "ContentMatch{start=" + start + ", end=" + end + ", replacer=" + replacerIndex + '}';
+	}
+}
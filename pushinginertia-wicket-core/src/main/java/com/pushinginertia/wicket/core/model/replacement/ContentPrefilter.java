@@ -0,0 +1,33 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+
+/**
+ * A cheap test that rules out any match of a {@link ContentReplacer}'s pattern in a string, so that
+ * {@link ContentReplacerList} can skip the regex entirely for most strings. A prefilter may report false positives
+ * but never false negatives: it must return true for every string in which the pattern could match.
+ */
+public interface ContentPrefilter extends Serializable {
+	/**
+	 * Indicates if the replacer's pattern could match anywhere in a string.
+	 * @param input Text to test.
+	 * @return False only if the pattern certainly doesn't match.
+	 */
+	public boolean mightMatch(@Nonnull CharSequence input);
+}
@@ -0,0 +1,298 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Applies a {@link ContentReplacerList} to a large number of texts in parallel, such as when all stored messages are
+ * reprocessed after the replacement rules change. Texts are read from an iterator on the calling thread, grouped
+ * into chunks that are replaced on an executor (the common {@link ForkJoinPool} by default, whose idle workers steal
+ * queued chunks), and the results are passed back to the calling thread either in input order or as soon as each
+ * chunk completes. The number of chunks in flight is bounded, so the iterator can stream from a database without
+ * everything being held in memory.
+ * <p>
+ * Replacing a chunk allocates nothing per text beyond its result: matchers and output buffers are reused by each
+ * worker thread.
+ */
+public class ContentReplacementBatch {
+	private static final Logger LOG = LoggerFactory.getLogger(ContentReplacementBatch.class);
+
+	public static final int DEFAULT_CHUNK_SIZE = 256;
+
+	public static class Builder {
+		private final ContentReplacerList replacerList;
+		private ExecutorService executor;
+		private int chunkSize = DEFAULT_CHUNK_SIZE;
+		private int maxChunksInFlight;
+		private boolean ordered = true;
+		private boolean escape;
+
+		private Builder(@Nonnull final ContentReplacerList replacerList) {
+			this.replacerList = ValidateAs.notNull(replacerList, "replacerList");
+		}
+
+		/**
+		 * Executor that replaces the chunks. The default is {@link ForkJoinPool#commonPool()}. The batch doesn't shut
+		 * the executor down.
+		 */
+		public Builder executor(@Nonnull final ExecutorService executor) {
+			this.executor = ValidateAs.notNull(executor, "executor");
+			return this;
+		}
+
+		/**
+		 * Number of texts replaced by one task. The default is {@link #DEFAULT_CHUNK_SIZE}.
+		 */
+		public Builder chunkSize(final int chunkSize) {
+			this.chunkSize = ValidateAs.positive(chunkSize, "chunkSize");
+			return this;
+		}
+
+		/**
+		 * Maximum number of chunks that have been read but whose results haven't been delivered yet. The default is
+		 * four times the number of available processors.
+		 */
+		public Builder maxChunksInFlight(final int maxChunksInFlight) {
+			this.maxChunksInFlight = ValidateAs.positive(maxChunksInFlight, "maxChunksInFlight");
+			return this;
+		}
+
+		/**
+		 * If true (the default), results are delivered in the same order as the texts were read. If false, each
+		 * chunk's results are delivered as soon as it completes, which keeps the workers busier when some texts take
+		 * much longer than others.
+		 */
+		public Builder ordered(final boolean ordered) {
+			this.ordered = ordered;
+			return this;
+		}
+
+		/**
+		 * If true, texts are escaped in the same pass as replacements are made, as done by
+		 * {@link ContentReplacerList#replaceEscaped(String)}. The default is false.
+		 */
+		public Builder escape(final boolean escape) {
+			this.escape = escape;
+			return this;
+		}
+
+		public ContentReplacementBatch build() {
+			return new ContentReplacementBatch(this);
+		}
+	}
+
+	/**
+	 * Totals for one call to {@link #process(Iterator, Function, BiConsumer)}.
+	 */
+	public static final class Stats {
+		private final long texts;
+		private final long chars;
+		private final long nanos;
+
+		private Stats(final long texts, final long chars, final long nanos) {
+			this.texts = texts;
+			this.chars = chars;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * Number of texts replaced.
+		 */
+		public long getTexts() {
+			return texts;
+		}
+
+		/**
+		 * Total length of the texts replaced.
+		 */
+		public long getChars() {
+			return chars;
+		}
+
+		/**
+		 * Time from the first text being read to the last result being delivered.
+		 */
+		public long getElapsed(@Nonnull final TimeUnit unit) {
+			return unit.convert(nanos, TimeUnit.NANOSECONDS);
+		}
+
+		public double getTextsPerSecond() {
+			return nanos == 0 ? 0 : texts * 1e9 / nanos;
+		}
+
+		public double getCharsPerSecond() {
+			return nanos == 0 ? 0 : chars * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"%d texts (%d chars) in %d ms: %.0f texts/s, %.0f chars/s",
+					texts, chars, getElapsed(TimeUnit.MILLISECONDS), getTextsPerSecond(), getCharsPerSecond());
+		}
+	}
+
+	/**
+	 * A group of items and, once replaced, their results.
+	 */
+	private static final class Chunk<T> {
+		private final List<T> items;
+		private final String[] results;
+		private long chars;
+
+		private Chunk(@Nonnull final List<T> items) {
+			this.items = items;
+			this.results = new String[items.size()];
+		}
+	}
+
+	private final ContentReplacerList replacerList;
+	private final ExecutorService executor;
+	private final int chunkSize;
+	private final int maxChunksInFlight;
+	private final boolean ordered;
+	private final boolean escape;
+
+	private ContentReplacementBatch(@Nonnull final Builder builder) {
+		this.replacerList = builder.replacerList;
+		this.executor = builder.executor == null ? ForkJoinPool.commonPool() : builder.executor;
+		this.chunkSize = builder.chunkSize;
+		this.maxChunksInFlight =
+				builder.maxChunksInFlight > 0 ?
+						builder.maxChunksInFlight :
+						4 * Runtime.getRuntime().availableProcessors();
+		this.ordered = builder.ordered;
+		this.escape = builder.escape;
+	}
+
+	public static Builder builder(@Nonnull final ContentReplacerList replacerList) {
+		return new Builder(replacerList);
+	}
+
+	/**
+	 * Replaces the text of every item. Results are passed to the consumer on the calling thread, so it doesn't need
+	 * to be thread safe. If replacing any text fails, the remaining chunks are cancelled and the exception is
+	 * rethrown.
+	 * @param items Items to process, read on the calling thread.
+	 * @param text Extracts the text to replace from an item, called on a worker thread. Null texts are passed on as
+	 * null results.
+	 * @param results Receives each item with its replaced text.
+	 * @param <T> Type of item, such as a message entity or simply a String.
+	 * @return Totals for this batch.
+	 * @throws InterruptedException If the calling thread is interrupted while waiting for results.
+	 */
+	@Nonnull
+	public <T> Stats process(
+			@Nonnull final Iterator<? extends T> items,
+			@Nonnull final Function<? super T, String> text,
+			@Nonnull final BiConsumer<? super T, String> results) throws InterruptedException {
+		final long start = System.nanoTime();
+		final CompletionService<Chunk<T>> completion = ordered ? null : new ExecutorCompletionService<>(executor);
+		final Deque<Future<Chunk<T>>> inFlight = new ArrayDeque<>();
+		long texts = 0;
+		long chars = 0;
+		try {
+			while (true) {
+				while (inFlight.size() < maxChunksInFlight && items.hasNext()) {
+					final Chunk<T> chunk = readChunk(items);
+					inFlight.add(
+							ordered ?
+									executor.submit(() -> replace(chunk, text)) :
+									completion.submit(() -> replace(chunk, text)));
+				}
+				if (inFlight.isEmpty()) {
+					break;
+				}
+
+				final Future<Chunk<T>> future;
+				if (ordered) {
+					future = inFlight.removeFirst();
+				} else {
+					future = completion.take();
+					inFlight.remove(future);
+				}
+				final Chunk<T> chunk = future.get();
+				for (int i = 0; i < chunk.results.length; i++) {
+					results.accept(chunk.items.get(i), chunk.results[i]);
+				}
+				texts += chunk.results.length;
+				chars += chunk.chars;
+			}
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw cause instanceof RuntimeException ?
+					(RuntimeException) cause :
+					new IllegalStateException("Content replacement failed", cause);
+		} finally {
+			for (final Future<Chunk<T>> future: inFlight) {
+				future.cancel(true);
+			}
+		}
+
+		final Stats stats = new Stats(texts, chars, System.nanoTime() - start);
+		LOG.info("Content replacement batch finished: {}", stats);
+		return stats;
+	}
+
+	@Nonnull
+	private <T> Chunk<T> readChunk(@Nonnull final Iterator<? extends T> items) {
+		final List<T> chunkItems = new ArrayList<>(chunkSize);
+		while (chunkItems.size() < chunkSize && items.hasNext()) {
+			chunkItems.add(items.next());
+		}
+		return new Chunk<>(chunkItems);
+	}
+
+	@Nonnull
+	private <T> Chunk<T> replace(@Nonnull final Chunk<T> chunk, @Nonnull final Function<? super T, String> text) {
+		for (int i = 0; i < chunk.results.length; i++) {
+			final String s = text.apply(chunk.items.get(i));
+			if (s != null) {
+				chunk.results[i] = escape ? replacerList.replaceEscaped(s) : replacerList.replace(s);
+				chunk.chars += s.length();
+			}
+		}
+		return chunk;
+	}
+
+	@Override
+	public String toString() {
+		return "ContentReplacementBatch{chunkSize=" + chunkSize + ", maxChunksInFlight=" + maxChunksInFlight +
+				", ordered=" + ordered + ", escape=" + escape + '}';
+	}
+}
@@ -0,0 +1,305 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+import org.apache.wicket.util.string.Strings;
+import org.apache.wicket.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the CPU time that a {@link ContentReplacementModel} can spend on replacements for one string. The replacer
+ * regexes run against user input, so a pathological string could otherwise tie up a request thread for a long time.
+ * Three limits can be set, any of which trips the budget:
+ * <ul>
+ *     <li>a maximum input length, checked before any matching is done</li>
+ *     <li>a maximum number of character reads made by the matchers across all replacers</li>
+ *     <li>a maximum duration for all replacements</li>
+ * </ul>
+ * When the budget trips, matching is aborted and the model renders the {@link Fallback} instead. Every trip is logged
+ * and counted in {@link #getTripCount()} and the installed {@link ContentReplacementMetrics}. Normal messages are
+ * well within any sensible budget and are unaffected.
+ */
+public class ContentReplacementBudget implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final Logger LOG = LoggerFactory.getLogger(ContentReplacementBudget.class);
+
+	/**
+	 * The clock is read once per this many character reads (a power of two) to keep the check cheap.
+	 */
+	private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+	private static final AtomicLong TRIP_COUNT = new AtomicLong();
+
+	/**
+	 * What to render when the budget trips.
+	 */
+	public enum Fallback {
+		/**
+		 * The text without any replacements. It's still escaped if
+		 * {@link ContentReplacementModel#setEscapeModelString(boolean)} is set.
+		 */
+		UNREPLACED {
+			@Nonnull
+			@Override
+			String apply(@Nonnull final String s) {
+				return s;
+			}
+		},
+		/**
+		 * The text with every character other than whitespace replaced by '*', so that the layout is kept but
+		 * nothing (such as contact details) can be read.
+		 */
+		MASK {
+			@Nonnull
+			@Override
+			String apply(@Nonnull final String s) {
+				final char[] chars = s.toCharArray();
+				for (int i = 0; i < chars.length; i++) {
+					if (!Character.isWhitespace(chars[i])) {
+						chars[i] = '*';
+					}
+				}
+				return new String(chars);
+			}
+		};
+
+		@Nonnull
+		abstract String apply(@Nonnull String s);
+	}
+
+	public static class Builder {
+		private int maxInputLength;
+		private int maxCharReads;
+		private Duration maxDuration;
+		private Fallback fallback = Fallback.UNREPLACED;
+
+		private Builder() {
+		}
+
+		/**
+		 * Strings longer than this aren't matched at all. Zero (the default) means no limit.
+		 */
+		public Builder maxInputLength(final int maxInputLength) {
+			this.maxInputLength = ValidateAs.positive(maxInputLength, "maxInputLength");
+			return this;
+		}
+
+		/**
+		 * Matching is aborted after this many character reads. Zero (the default) means no limit.
+		 */
+		public Builder maxCharReads(final int maxCharReads) {
+			this.maxCharReads = ValidateAs.positive(maxCharReads, "maxCharReads");
+			return this;
+		}
+
+		/**
+		 * Matching is aborted once this much time has passed. Null (the default) means no limit.
+		 */
+		public Builder maxDuration(@Nullable final Duration maxDuration) {
+			this.maxDuration = maxDuration;
+			return this;
+		}
+
+		/**
+		 * What to render when the budget trips. The default is {@link Fallback#UNREPLACED}.
+		 */
+		public Builder fallback(@Nonnull final Fallback fallback) {
+			this.fallback = ValidateAs.notNull(fallback, "fallback");
+			return this;
+		}
+
+		public ContentReplacementBudget build() {
+			return new ContentReplacementBudget(this);
+		}
+	}
+
+	/**
+	 * Thrown from within a matcher when the budget trips. There's no stack trace as it's expected and caught.
+	 */
+	static final class ExceededException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private ExceededException(@Nonnull final String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	/**
+	 * Counts the reads made by all matchers for one call to {@link #replace(ContentReplacerList, String)}.
+	 */
+	private static final class Meter {
+		private final long maxCharReads;
+		private final long deadline;
+		private long charReads;
+
+		private Meter(final long maxCharReads, final long deadline) {
+			this.maxCharReads = maxCharReads;
+			this.deadline = deadline;
+		}
+
+		private void read() {
+			charReads++;
+			if (maxCharReads > 0 && charReads > maxCharReads) {
+				throw new ExceededException("exceeded " + maxCharReads + " character reads");
+			}
+			if (deadline != 0 && (charReads & (CLOCK_CHECK_INTERVAL - 1)) == 0 && System.nanoTime() - deadline > 0) {
+				throw new ExceededException("exceeded time limit after " + charReads + " character reads");
+			}
+		}
+	}
+
+	/**
+	 * A view of a string that reports every character read to a {@link Meter}.
+	 */
+	private static final class MeteredCharSequence implements CharSequence {
+		private final CharSequence s;
+		private final Meter meter;
+
+		private MeteredCharSequence(@Nonnull final CharSequence s, @Nonnull final Meter meter) {
+			this.s = s;
+			this.meter = meter;
+		}
+
+		@Override
+		public int length() {
+			return s.length();
+		}
+
+		@Override
+		public char charAt(final int index) {
+			meter.read();
+			return s.charAt(index);
+		}
+
+		@Override
+		public CharSequence subSequence(final int start, final int end) {
+			return new MeteredCharSequence(s.subSequence(start, end), meter);
+		}
+
+		@Nonnull
+		@Override
+		public String toString() {
+			return s.toString();
+		}
+	}
+
+	private final int maxInputLength;
+	private final int maxCharReads;
+	private final Duration maxDuration;
+	private final Fallback fallback;
+
+	private ContentReplacementBudget(@Nonnull final Builder builder) {
+		this.maxInputLength = builder.maxInputLength;
+		this.maxCharReads = builder.maxCharReads;
+		this.maxDuration = builder.maxDuration;
+		this.fallback = builder.fallback;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Number of times that any budget has tripped since the application started.
+	 */
+	public static long getTripCount() {
+		return TRIP_COUNT.get();
+	}
+
+	public Fallback getFallback() {
+		return fallback;
+	}
+
+	/**
+	 * Applies a list of replacers to a string within this budget.
+	 * @param replacerList Replacers to apply.
+	 * @param input String to apply replacements to.
+	 * @param escape True to escape the input in the same pass, as done by
+	 * {@link ContentReplacerList#replaceEscaped(String)}; the fallback is then escaped too.
+	 * @return Replaced string, or the fallback if the budget tripped.
+	 */
+	@Nonnull
+	String replace(
+			@Nonnull final ContentReplacerList replacerList,
+			@Nonnull final String input,
+			final boolean escape) {
+		final String replaced = replaceOrNull(replacerList, input, escape);
+		return replaced == null ? fallback(input, escape) : replaced;
+	}
+
+	/**
+	 * Applies a list of replacers to a string within this budget, reporting a trip instead of rendering the
+	 * fallback, so that the caller can tell the two apart (such as to not cache the fallback).
+	 * @param replacerList Replacers to apply.
+	 * @param input String to apply replacements to.
+	 * @param escape True to escape the input in the same pass, as done by
+	 * {@link ContentReplacerList#replaceEscaped(String)}.
+	 * @return Replaced string, or null if the budget tripped.
+	 */
+	@Nullable
+	String replaceOrNull(
+			@Nonnull final ContentReplacerList replacerList,
+			@Nonnull final String input,
+			final boolean escape) {
+		if (maxInputLength > 0 && input.length() > maxInputLength) {
+			trip(input, "input length exceeds " + maxInputLength);
+			return null;
+		}
+
+		final long deadline = maxDuration == null ? 0 : System.nanoTime() + maxDuration.getMilliseconds() * 1000000L;
+		final Meter meter = new Meter(maxCharReads, deadline);
+		try {
+			if (escape) {
+				return replacerList.replaceEscaped(input, s -> new MeteredCharSequence(s, meter));
+			}
+			return replacerList.replace(input, s -> new MeteredCharSequence(s, meter));
+		} catch (final ExceededException e) {
+			trip(input, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Renders the fallback for a string that the budget tripped on.
+	 * @param input String that replacements were applied to.
+	 * @param escape True if the input was to be escaped in the same pass.
+	 * @return the fallback, escaped if requested
+	 */
+	@Nonnull
+	String fallback(@Nonnull final String input, final boolean escape) {
+		final String s = fallback.apply(input);
+		return escape ? Strings.escapeMarkup(s, false, false).toString() : s;
+	}
+
+	private void trip(@Nonnull final String input, @Nonnull final String reason) {
+		TRIP_COUNT.incrementAndGet();
+		ContentReplacementMetrics.get().budgetTripped(input.length());
+		LOG.warn("Content replacement budget tripped ({}) on input of length {}", reason, input.length());
+	}
+
+	@Override
+	public String toString() {
+		return "ContentReplacementBudget{maxInputLength=" + maxInputLength + ", maxCharReads=" + maxCharReads +
+				", maxDuration=" + maxDuration + ", fallback=" + fallback + '}';
+	}
+}
@@ -0,0 +1,200 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.pushinginertia.commons.core.validation.ValidateAs;
+import org.apache.wicket.Application;
+import org.apache.wicket.MetaDataKey;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.function.Supplier;
+
+/**
+ * Application-wide cache of the strings rendered by {@link ContentReplacementModel}. The same user-entered text (such
+ * as a profile description) tends to be rendered over and over, and each render escapes the text and runs every
+ * replacer regex over it again; with this cache a repeat render costs one hash of the text.
+ * <p>
+ * Entries are keyed on a SHA-256 digest of the input, the escape flags and the signature of the
+ * {@link ContentReplacerList} (its mode, patterns, replacement strings, writers and scanners), so the input itself
+ * isn't retained and equivalent lists share entries. The cache is bounded by the total number of characters in the
+ * cached results and evicts the least recently used entries first. Inputs longer than a limit aren't cached at all:
+ * they would push out many smaller entries, and are better streamed by
+ * {@link com.pushinginertia.wicket.core.markup.html.basic.ContentReplacementLabel}.
+ * <p>
+ * No cache is registered by default: call {@link #set(Application, ContentReplacementCache)} from
+ * {@link Application#init()} to enable one, for example with {@link #DEFAULT_MAX_CHARS}, and pass null to remove it.
+ * The {@link com.pushinginertia.wicket.core.Initializer} clears a registered cache when the application is destroyed.
+ * If a model has a {@link ContentReplacementBudget} that trips, its fallback isn't cached, as the trip depends on the
+ * load at the time and on the model's budget.
+ */
+public class ContentReplacementCache {
+	/**
+	 * Default bound on the total length of the cached results: 4M characters, or roughly 8MB plus overhead.
+	 */
+	public static final long DEFAULT_MAX_CHARS = 4L * 1024 * 1024;
+
+	/**
+	 * Default length of the longest input that is cached.
+	 */
+	public static final int DEFAULT_MAX_INPUT_LENGTH = 16 * 1024;
+
+	/**
+	 * Approximate size of a key and the cache's bookkeeping for one entry, in characters.
+	 */
+	private static final int ENTRY_OVERHEAD_CHARS = 64;
+
+	private static final HashFunction HASH_FUNCTION = Hashing.sha256();
+
+	private static final MetaDataKey<ContentReplacementCache> KEY = new MetaDataKey<ContentReplacementCache>() {
+		private static final long serialVersionUID = 1L;
+	};
+
+	private final Cache<HashCode, String> cache;
+	private final int maxInputLength;
+
+	/**
+	 * Creates a cache for inputs of up to {@link #DEFAULT_MAX_INPUT_LENGTH} characters.
+	 * @param maxChars Bound on the total length of the cached results.
+	 */
+	public ContentReplacementCache(final long maxChars) {
+		this(maxChars, DEFAULT_MAX_INPUT_LENGTH);
+	}
+
+	/**
+	 * Creates a cache.
+	 * @param maxChars Bound on the total length of the cached results.
+	 * @param maxInputLength Length of the longest input that is cached.
+	 */
+	public ContentReplacementCache(final long maxChars, final int maxInputLength) {
+		if (maxChars <= 0) {
+			throw new IllegalArgumentException("maxChars must be positive: " + maxChars);
+		}
+		this.maxInputLength = ValidateAs.positive(maxInputLength, "maxInputLength");
+		this.cache =
+				CacheBuilder.newBuilder()
+						.maximumWeight(maxChars)
+						.<HashCode, String>weigher((key, value) -> value.length() + ENTRY_OVERHEAD_CHARS)
+						.recordStats()
+						.build();
+	}
+
+	/**
+	 * Retrieves the cache registered for the application of the current thread.
+	 * @return null if there is no application on this thread or no cache is registered
+	 */
+	@Nullable
+	public static ContentReplacementCache get() {
+		return Application.exists() ? get(Application.get()) : null;
+	}
+
+	/**
+	 * Retrieves the cache registered for an application.
+	 * @param application application to look up
+	 * @return null if no cache is registered
+	 */
+	@Nullable
+	public static ContentReplacementCache get(@Nonnull final Application application) {
+		return application.getMetaData(KEY);
+	}
+
+	/**
+	 * Registers the cache used by all {@link ContentReplacementModel}s in an application.
+	 * @param application application to register the cache for
+	 * @param cache cache to use, or null to disable caching
+	 */
+	public static void set(@Nonnull final Application application, @Nullable final ContentReplacementCache cache) {
+		application.setMetaData(KEY, cache);
+	}
+
+	/**
+	 * Indicates if the result for an input is cached.
+	 * @param input text to render
+	 * @return false if the input is too long
+	 */
+	public boolean accepts(@Nonnull final String input) {
+		return input.length() <= maxInputLength;
+	}
+
+	/**
+	 * Returns the cached result for an input or renders and caches it. Inputs that aren't {@link #accepts accepted}
+	 * are rendered without caching.
+	 * @param replacerList replacers that are applied to the input
+	 * @param escapeModelString true if the input is escaped before replacements are made
+	 * @param fusedEscape true if the input is escaped in the same pass as replacements are made
+	 * @param input text to render
+	 * @param renderer produces the result on a cache miss, or null if it mustn't be cached
+	 * @return rendered text, or null if the renderer returned null
+	 */
+	@Nullable
+	String get(
+			@Nonnull final ContentReplacerList replacerList,
+			final boolean escapeModelString,
+			final boolean fusedEscape,
+			@Nonnull final String input,
+			@Nonnull final Supplier<String> renderer) {
+		if (!accepts(input)) {
+			return renderer.get();
+		}
+
+		final Hasher hasher = HASH_FUNCTION.newHasher();
+		replacerList.putSignature(hasher);
+		hasher.putBoolean(escapeModelString).putBoolean(fusedEscape);
+		hasher.putInt(input.length()).putUnencodedChars(input);
+		final HashCode key = hasher.hash();
+
+		final String cached = cache.getIfPresent(key);
+		if (cached != null) {
+			return cached;
+		}
+		// two threads missing on the same key both render it, which is harmless as the result is the same
+		final String rendered = renderer.get();
+		if (rendered != null) {
+			cache.put(key, rendered);
+		}
+		return rendered;
+	}
+
+	/**
+	 * Hit, miss and eviction counts since the cache was created.
+	 */
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	/**
+	 * Approximate number of cached results.
+	 */
+	public long size() {
+		return cache.size();
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public String toString() {
+		return "ContentReplacementCache{size=" + cache.size() + ", stats=" + cache.stats() + '}';
+	}
+}
@@ -0,0 +1,127 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Receives measurements of the work done by {@link ContentReplacerList} and {@link ContentReplacementModel}, so that
+ * the replacers that are expensive in production can be found. One instance is installed for the JVM with
+ * {@link #set(ContentReplacementMetrics)}. The default, {@link #NONE}, records nothing, and while it's installed no
+ * clock is read and nothing is counted: each replacement only reads one volatile field.
+ * {@link JmxContentReplacementMetrics} publishes the measurements as an MBean.
+ * <p>
+ * The methods are called on the rendering threads, so implementations must be thread safe and cheap. Each method
+ * does nothing by default.
+ */
+public abstract class ContentReplacementMetrics {
+	/**
+	 * Passed as the time spent by a replacer when it was matched together with the other replacers in a list, by
+	 * the merged pattern of {@link ContentReplacerList.Mode#SINGLE_PASS}, so its share of the time isn't known.
+	 */
+	public static final long UNKNOWN_NANOS = -1;
+
+	/**
+	 * Records nothing.
+	 */
+	public static final ContentReplacementMetrics NONE = new ContentReplacementMetrics() {
+		@Override
+		public String toString() {
+			return "ContentReplacementMetrics.NONE";
+		}
+	};
+
+	/**
+	 * The installed metrics, or null if they are {@link #NONE}.
+	 */
+	private static volatile ContentReplacementMetrics active;
+
+	/**
+	 * The metrics installed for the JVM.
+	 * @return {@link #NONE} if none are installed
+	 */
+	@Nonnull
+	public static ContentReplacementMetrics get() {
+		final ContentReplacementMetrics metrics = active;
+		return metrics == null ? NONE : metrics;
+	}
+
+	/**
+	 * Installs the metrics that receive all measurements in the JVM.
+	 * @param metrics metrics to install, or null to stop measuring
+	 */
+	public static void set(@Nullable final ContentReplacementMetrics metrics) {
+		active = metrics == NONE ? null : metrics;
+	}
+
+	/**
+	 * The installed metrics, for callers that skip measuring when there are none.
+	 * @return null if {@link #NONE} is installed
+	 */
+	@Nullable
+	static ContentReplacementMetrics active() {
+		return active;
+	}
+
+	/**
+	 * A replacer was applied to a string.
+	 * @param replacer the replacer
+	 * @param inputLength length of the string
+	 * @param matches number of matches replaced
+	 * @param nanos time spent finding and replacing the matches, or {@link #UNKNOWN_NANOS}
+	 */
+	public void replacerApplied(
+			@Nonnull final ContentReplacer replacer,
+			final int inputLength,
+			final int matches,
+			final long nanos) {
+	}
+
+	/**
+	 * A replacer wasn't applied to a string because its {@link ContentPrefilter} ruled out a match.
+	 * @param replacer the replacer
+	 * @param inputLength length of the string
+	 */
+	public void replacerSkipped(@Nonnull final ContentReplacer replacer, final int inputLength) {
+	}
+
+	/**
+	 * A list applied its replacers to a string. When the output is streamed to a consumer, the time includes the
+	 * time taken by the consumer.
+	 * @param list the list
+	 * @param inputLength length of the string
+	 * @param nanos time spent on all replacers, including any escaping done in the same pass
+	 */
+	public void listApplied(@Nonnull final ContentReplacerList list, final int inputLength, final long nanos) {
+	}
+
+	/**
+	 * A model rendered its string, whether the result came from the {@link ContentReplacementCache} or not. When the
+	 * model wrote its output to a consumer, the time includes the time taken by the consumer.
+	 * @param inputLength length of the string in the nested model
+	 * @param nanos time spent escaping, replacing and looking up the cache
+	 */
+	public void modelRendered(final int inputLength, final long nanos) {
+	}
+
+	/**
+	 * A {@link ContentReplacementBudget} tripped.
+	 * @param inputLength length of the string that the replacements were aborted for
+	 */
+	public void budgetTripped(final int inputLength) {
+	}
+}
@@ -0,0 +1,137 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Management interface of {@link JmxContentReplacementMetrics}. Times are in nanoseconds. Histograms count input
+ * lengths in the buckets named by {@link #getInputLengthBuckets()}.
+ */
+public interface ContentReplacementMetricsMXBean {
+	/**
+	 * Measurements of the replacers that have the same class and pattern.
+	 */
+	final class ReplacerStatistics {
+		private final String name;
+		private final long invocations;
+		private final long skipped;
+		private final long matches;
+		private final long timedInvocations;
+		private final long nanos;
+		private final long[] inputLengthHistogram;
+
+		ReplacerStatistics(
+				@Nonnull final String name,
+				final long invocations,
+				final long skipped,
+				final long matches,
+				final long timedInvocations,
+				final long nanos,
+				@Nonnull final long[] inputLengthHistogram) {
+			this.name = name;
+			this.invocations = invocations;
+			this.skipped = skipped;
+			this.matches = matches;
+			this.timedInvocations = timedInvocations;
+			this.nanos = nanos;
+			this.inputLengthHistogram = inputLengthHistogram;
+		}
+
+		/**
+		 * Class of the replacer followed by the hash of its pattern.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Number of strings that the replacer was applied to.
+		 */
+		public long getInvocations() {
+			return invocations;
+		}
+
+		/**
+		 * Number of strings for which the replacer's prefilter ruled out a match.
+		 */
+		public long getSkipped() {
+			return skipped;
+		}
+
+		public long getMatches() {
+			return matches;
+		}
+
+		/**
+		 * Number of invocations whose time is known and included in {@link #getNanos()}. Invocations by the merged
+		 * pattern of {@link ContentReplacerList.Mode#SINGLE_PASS} aren't timed per replacer.
+		 */
+		public long getTimedInvocations() {
+			return timedInvocations;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * Lengths of the strings that the replacer was applied to, including skipped ones.
+		 */
+		public long[] getInputLengthHistogram() {
+			return inputLengthHistogram.clone();
+		}
+	}
+
+	/**
+	 * Names of the input length histogram buckets.
+	 */
+	String[] getInputLengthBuckets();
+
+	/**
+	 * Measurements of each replacer, sorted by name.
+	 */
+	List<ReplacerStatistics> getReplacers();
+
+	/**
+	 * Number of strings that lists applied their replacers to.
+	 */
+	long getListApplications();
+
+	long getListNanos();
+
+	long[] getListInputLengthHistogram();
+
+	/**
+	 * Number of strings rendered by models.
+	 */
+	long getModelRenders();
+
+	long getModelNanos();
+
+	long[] getModelInputLengthHistogram();
+
+	/**
+	 * Number of times that a budget tripped.
+	 */
+	long getBudgetTrips();
+
+	/**
+	 * Sets all measurements back to zero.
+	 */
+	void reset();
+}
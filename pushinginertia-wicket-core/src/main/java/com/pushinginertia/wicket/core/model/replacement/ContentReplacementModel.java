@@ -21,17 +21,28 @@ import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
 import org.apache.wicket.util.string.Strings;
 
+import javax.annotation.Nullable;
+import java.util.function.Consumer;
+
 /**
  * Mutates the text stored within a model by replacing it with something else. This is useful for instances such as
  * presentation of user-entered text where certain character sequences should be blocked or replaced with something else.
  * An example might be masking an email address or adding syntax highlighting to certain keywords.
+ * <p>
+ * Rendered strings are memoized in the application's {@link ContentReplacementCache}, if one is registered.
+ * <p>
+ * The replacers are either given as a {@link ContentReplacerList}, which is serialized with the model, or named as a
+ * rule set in the application's {@link ContentReplacerRegistry}, which lets the rules change without a redeploy.
  */
 public class ContentReplacementModel extends Model<String> {
 	private static final long serialVersionUID = 1L;
 
 	private final IModel<String> nestedModel;
-	private ContentReplacerList replacerList;
+	private final ContentReplacerList replacerList;
+	private final String ruleSetName;
 	private boolean escapeModelString = false;
+	private boolean fusedEscape = false;
+	private ContentReplacementBudget budget;
 
 	/**
 	 * Instantiates the content replacement model with a nested model and list of replacer instances.
@@ -41,6 +52,20 @@ public class ContentReplacementModel extends Model<String> {
 	public ContentReplacementModel(final IModel<String> nestedModel, final ContentReplacerList replacerList) {
 		this.nestedModel = nestedModel;
 		this.replacerList = ValidateAs.notNull(replacerList, "replacerList");
+		this.ruleSetName = null;
+	}
+
+	/**
+	 * Instantiates the content replacement model with a nested model and the name of a rule set in the application's
+	 * {@link ContentReplacerRegistry}. The rule set is looked up each time the model renders, so changes to the
+	 * registry take effect on the next render and only the name is serialized with the page.
+	 * @param nestedModel model containing a string of text
+	 * @param ruleSetName name of the rule set that performs text replacements
+	 */
+	public ContentReplacementModel(final IModel<String> nestedModel, final String ruleSetName) {
+		this.nestedModel = nestedModel;
+		this.replacerList = null;
+		this.ruleSetName = ValidateAs.notNull(ruleSetName, "ruleSetName");
 	}
 
 	/**
@@ -65,20 +90,159 @@ public class ContentReplacementModel extends Model<String> {
 		this.escapeModelString = escapeModelString;
 	}
 
+	/**
+	 * Indicates if escaping and replacements are performed in one pass.
+	 * @return true if they are performed in one pass, else false
+	 * @see #setFusedEscape(boolean)
+	 */
+	public final boolean isFusedEscape() {
+		return fusedEscape;
+	}
+
+	/**
+	 * If true and {@link #setEscapeModelString(boolean)} is set, the string is escaped and replaced in a single pass
+	 * by {@link ContentReplacerList#replaceEscaped(String)} instead of being escaped into a new string that the
+	 * replacers then scan. The patterns are matched against the unescaped text, so a pattern for "&lt;at&gt;" sees
+	 * "&lt;at&gt;" rather than "&amp;lt;at&amp;gt;", and the replacers are applied with
+	 * {@link ContentReplacerList.Mode#SINGLE_PASS} precedence. Has no effect if the string isn't escaped.
+	 * @param fusedEscape true to escape and replace in one pass
+	 */
+	public final void setFusedEscape(final boolean fusedEscape) {
+		this.fusedEscape = fusedEscape;
+	}
+
+	/**
+	 * The limits on the time spent performing replacements, if any.
+	 * @return null if there are no limits
+	 * @see #setBudget(ContentReplacementBudget)
+	 */
+	public final ContentReplacementBudget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Limits the time spent performing replacements on the string in the nested model. This should be set when the
+	 * string is user input that might be crafted to make the replacer regexes run slowly. When the budget trips, the
+	 * budget's {@link ContentReplacementBudget.Fallback} is returned instead of the replaced string; the fallback is
+	 * still escaped if {@link #setEscapeModelString(boolean)} is set.
+	 * @param budget limits to apply, or null (the default) for no limits
+	 */
+	public final void setBudget(final ContentReplacementBudget budget) {
+		this.budget = budget;
+	}
+
 	@Override
 	public final String getObject() {
-		String s = nestedModel.getObject();
+		final String s = nestedModel.getObject();
 		if (s == null) {
 			return null;
 		}
 
-		// escape the model
-		if (escapeModelString) {
-			s = Strings.escapeMarkup(s, false, false).toString();
+		final ContentReplacementMetrics metrics = ContentReplacementMetrics.active();
+		final long start = metrics == null ? 0 : System.nanoTime();
+		final String rendered = render(s, replacerList(), ContentReplacementCache.get());
+		if (metrics != null) {
+			metrics.modelRendered(s.length(), System.nanoTime() - start);
+		}
+		return rendered;
+	}
+
+	/**
+	 * Writes the same text as {@link #getObject()} to a consumer in chunks, as described in
+	 * {@link ContentReplacerList#replace(CharSequence, boolean, Consumer)}, so that a large string isn't copied
+	 * several times. The text is built as a whole string instead if it's short enough to be cached by the
+	 * application's {@link ContentReplacementCache}, or if a {@link ContentReplacementBudget} is set since the budget
+	 * may replace all of the output with its fallback.
+	 * @param sink consumer of the text, which must use each chunk before it returns
+	 */
+	public final void write(final Consumer<CharSequence> sink) {
+		final String s = nestedModel.getObject();
+		if (s == null) {
+			return;
 		}
 
+		final ContentReplacementMetrics metrics = ContentReplacementMetrics.active();
+		final long start = metrics == null ? 0 : System.nanoTime();
+		write(s, sink);
+		if (metrics != null) {
+			metrics.modelRendered(s.length(), System.nanoTime() - start);
+		}
+	}
+
+	private void write(final String s, final Consumer<CharSequence> sink) {
+		final ContentReplacerList list = replacerList();
+		final ContentReplacementCache cache = ContentReplacementCache.get();
+		if (budget != null || (cache != null && cache.accepts(s))) {
+			sink.accept(render(s, list, cache));
+			return;
+		}
+		if (escapeModelString && fusedEscape) {
+			list.replace(s, true, sink);
+			return;
+		}
+		list.replace(escapeModelString ? Strings.escapeMarkup(s, false, false) : s, false, sink);
+	}
+
+	/**
+	 * Returns the list given to the constructor or the current version of the named rule set. The caller must use
+	 * the same list for the whole render so that it's consistent even if the rule set is swapped meanwhile.
+	 */
+	private ContentReplacerList replacerList() {
+		if (ruleSetName == null) {
+			return replacerList;
+		}
+		final ContentReplacerRegistry registry = ContentReplacerRegistry.get();
+		final ContentReplacerList list = registry == null ? null : registry.get(ruleSetName);
+		if (list == null) {
+			throw new IllegalStateException("No content replacer rule set is registered with name: " + ruleSetName);
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the cached result for a string or renders it. The budget's fallback is never cached: whether a budget
+	 * trips depends on the load at the time and on the budget, which isn't part of the cache key.
+	 */
+	private String render(final String s, final ContentReplacerList list, final ContentReplacementCache cache) {
+		final String rendered =
+				cache == null ?
+						render(s, list) :
+						cache.get(list, escapeModelString, fusedEscape, s, () -> render(s, list));
+		return rendered == null ? fallback(s) : rendered;
+	}
+
+	/**
+	 * Escapes the string, if enabled, and performs the replacements.
+	 * @return null if the budget tripped
+	 */
+	@Nullable
+	private String render(final String input, final ContentReplacerList list) {
+		// escape the model and perform replacements in one pass
+		if (escapeModelString && fusedEscape) {
+			if (budget != null) {
+				return budget.replaceOrNull(list, input, true);
+			}
+			return list.replaceEscaped(input);
+		}
+
+		// escape the model
+		final String s = escapeModelString ? Strings.escapeMarkup(input, false, false).toString() : input;
+
 		// perform replacements
-		return replacerList.replace(s);
+		if (budget != null) {
+			return budget.replaceOrNull(list, s, false);
+		}
+		return list.replace(s);
+	}
+
+	/**
+	 * Renders the budget's fallback for a string, escaped in the same way as the replaced string would have been.
+	 */
+	private String fallback(final String input) {
+		if (escapeModelString && fusedEscape) {
+			return budget.fallback(input, true);
+		}
+		return budget.fallback(escapeModelString ? Strings.escapeMarkup(input, false, false).toString() : input, false);
 	}
 
 	@Override
@@ -0,0 +1,73 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.regex.MatchResult;
+
+/**
+ * Writes the replacement for a match straight into the output of a {@link ContentReplacerList}. A
+ * {@link ContentReplacer} that returns a writer from {@link ContentReplacer#writer()} has its matches replaced by the
+ * writer instead of by {@link ContentReplacer#replacement()}, so that a replacement computed from the match (or
+ * assembled from several parts) doesn't need a string to be built for every match. Replacers without a writer are
+ * written by expanding their replacement string, as {@link java.util.regex.Matcher#appendReplacement} does.
+ */
+@FunctionalInterface
+public interface ContentReplacementWriter extends Serializable {
+	/**
+	 * Appends the replacement for a match.
+	 * @param input Text being replaced, which may be a view that mustn't be retained.
+	 * @param match The match, whose groups are numbered as in the replacer's own pattern. It's only valid until this
+	 * method returns.
+	 * @param out Output to append to.
+	 * @param escape True if the output is escaped, in which case any text copied from the input must be escaped with
+	 * {@link #appendText(StringBuilder, CharSequence, int, int, boolean)}.
+	 */
+	public void append(
+			@Nonnull CharSequence input,
+			@Nonnull MatchResult match,
+			@Nonnull StringBuilder out,
+			boolean escape);
+
+	/**
+	 * Identifies the output of this writer in the key of the {@link ContentReplacementCache}: two writers with the same
+	 * signature must write the same replacement for the same match. The default is the class name, which suits writers
+	 * without any configuration.
+	 * @return Non-null string.
+	 */
+	@Nonnull
+	public default String signature() {
+		return getClass().getName();
+	}
+
+	/**
+	 * Appends part of the input, escaping markup in the same way as the text between matches if required.
+	 * @param out Output to append to.
+	 * @param input Text being replaced.
+	 * @param start Index of the first character to append.
+	 * @param end Index after the last character to append.
+	 * @param escape True to escape the text.
+	 */
+	public static void appendText(
+			@Nonnull final StringBuilder out,
+			@Nonnull final CharSequence input,
+			final int start,
+			final int end,
+			final boolean escape) {
+		ContentReplacerList.appendText(out, input, start, end, escape);
+	}
+}
@@ -16,6 +16,7 @@
 package com.pushinginertia.wicket.core.model.replacement;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.Serializable;
 
 /**
@@ -36,4 +37,36 @@ public interface ContentReplacer extends Serializable {
 	 */
 	@Nonnull
 	public String replacement();
+
+	/**
+	 * An alternative matcher for {@link #pattern()} that doesn't rely on {@link java.util.regex}. When present,
+	 * {@link ContentReplacerList} uses it to find matches instead of the compiled pattern; the pattern must still
+	 * describe the same matches.
+	 * @return Scanner, or null to match with {@link #pattern()} (the default).
+	 */
+	@Nullable
+	public default ContentScanner scanner() {
+		return null;
+	}
+
+	/**
+	 * An alternative to {@link #replacement()} that appends the replacement for each match straight into the output.
+	 * When present, {@link ContentReplacerList} uses it instead of expanding the replacement string, which is then only
+	 * used by code that predates writers.
+	 * @return Writer, or null to expand {@link #replacement()} (the default).
+	 */
+	@Nullable
+	public default ContentReplacementWriter writer() {
+		return null;
+	}
+
+	/**
+	 * A cheap test run by {@link ContentReplacerList} before matching, which skips this replacer for strings in which
+	 * {@link #pattern()} can't match.
+	 * @return Prefilter, or null to always match (the default).
+	 */
+	@Nullable
+	public default ContentPrefilter prefilter() {
+		return null;
+	}
 }
\ No newline at end of file
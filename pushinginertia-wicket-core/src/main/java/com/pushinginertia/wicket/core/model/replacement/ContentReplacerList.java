@@ -15,48 +15,1278 @@
  */
 package com.pushinginertia.wicket.core.model.replacement;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.pushinginertia.commons.core.validation.ValidateAs;
-import com.pushinginertia.commons.lang.StringUtils;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- *
+ * An immutable, ordered list of {@link ContentReplacer}s that are applied to a string. The regular expression of each
+ * replacer is compiled once when the list is built and the compiled pattern is shared by all lists and threads that
+ * use the same expression. A replacer is skipped without running its regex when its {@link ContentPrefilter} rules
+ * out a match.
+ * <p>
+ * A list built with a {@link Builder#setKey(String) key} is serialized as just its key and deserialized as the list
+ * built most recently with that key, so that pages referring to the same list don't each store a copy of it.
  */
 public class ContentReplacerList implements Serializable {
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Compiled patterns keyed by their regex. The patterns are held weakly, so the ones left behind when a rule set
+	 * is reloaded with new patterns are dropped along with the last list that uses them.
+	 */
+	private static final ConcurrentMap<String, Pattern> PATTERN_CACHE =
+			CacheBuilder.newBuilder().weakValues().<String, Pattern>build().asMap();
+
+	/**
+	 * Lists built with a key, by key. The lists are held weakly, so the application keeps a list for as long as
+	 * pages may refer to it (see {@link Builder#setKey(String)}).
+	 */
+	private static final ConcurrentMap<String, ContentReplacerList> SHARED =
+			CacheBuilder.newBuilder().weakValues().<String, ContentReplacerList>build().asMap();
+
+	/**
+	 * Output buffer reused by single pass replacements on each thread. A buffer that has grown beyond
+	 * {@link #MAX_REUSED_BUFFER} is dropped after use so that one huge string doesn't pin memory for the thread's
+	 * lifetime.
+	 */
+	private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+	private static final int MAX_REUSED_BUFFER = 64 * 1024;
+
+	/**
+	 * Number of characters that are buffered before they are passed on by
+	 * {@link #replace(CharSequence, boolean, Consumer)}.
+	 */
+	static final int CHUNK_SIZE = 8 * 1024;
+
+	/**
+	 * Matchers reused by {@link Mode#SEQUENTIAL} replacements and the match detection methods on each thread, keyed
+	 * by pattern. Patterns are shared through {@link #PATTERN_CACHE}, so this holds one matcher per distinct regex. A
+	 * matcher refers to its pattern, so the map is emptied once it holds {@link #MAX_REUSED_MATCHERS} of them, which
+	 * lets the patterns of reloaded rule sets go.
+	 */
+	private static final ThreadLocal<Map<Pattern, Matcher>> MATCHERS = ThreadLocal.withInitial(IdentityHashMap::new);
+	private static final int MAX_REUSED_MATCHERS = 64;
+
+	/**
+	 * Strategy used by {@link #replace(String)} to apply the replacers in a list.
+	 */
+	public enum Mode {
+		/**
+		 * Each replacer is applied in turn to the output of the previous replacer. This rescans the whole text once
+		 * per replacer and creates an intermediate string each time.
+		 */
+		SEQUENTIAL,
+		/**
+		 * All patterns are merged into one alternation and the text is scanned once from left to right, writing the
+		 * output into a single buffer. Precedence rules:
+		 * <ul>
+		 *     <li>the match that starts earliest in the text wins, regardless of which replacer it belongs to</li>
+		 *     <li>if several replacers match at the same position, the one added to the list first wins</li>
+		 *     <li>scanning resumes after the end of the winning match, so matched text is never seen by another
+		 *     replacer and the output of a replacement is never rescanned</li>
+		 * </ul>
+		 * When no two replacers match overlapping text, and no replacement produces text that a later replacer
+		 * would match, the result is the same as {@link #SEQUENTIAL}. Patterns used in this mode must not contain
+		 * numbered back-references (such as {@code \1}) because group numbers shift once the patterns are merged;
+		 * group references in replacement strings (such as {@code $1}) are translated automatically.
+		 * <p>
+		 * If any replacer supplies a {@link ContentScanner}, the patterns aren't merged. Instead the next match of
+		 * every replacer is tracked separately and the earliest one is applied, which follows the same precedence
+		 * rules.
+		 */
+		SINGLE_PASS
+	}
+
+	/**
+	 * Tracks the next match of one replacer when replacers are applied in a single pass without merging their
+	 * patterns.
+	 */
+	private static final class Cursor {
+		private final Matcher matcher;
+		private final ContentScanner scanner;
+		private final ScanResult scanResult;
+		/**
+		 * True if the replacer's prefilter ruled out a match, so the cursor was exhausted from the start.
+		 */
+		private final boolean ruledOut;
+		private MatchResult match;
+		private boolean exhausted;
+
+		/**
+		 * @param reuseMatcher True to take the matcher from this thread's {@link #MATCHERS} instead of creating one;
+		 * it must then be released by {@link #release()}.
+		 */
+		private Cursor(
+				@Nonnull final ContentReplacer replacer,
+				@Nonnull final Pattern pattern,
+				@Nonnull final CharSequence input,
+				final boolean reuseMatcher) {
+			this.scanner = replacer.scanner();
+			this.ruledOut = !mightMatch(replacer, input);
+			this.exhausted = ruledOut;
+			if (scanner != null || exhausted) {
+				this.matcher = null;
+			} else if (reuseMatcher) {
+				this.matcher = reusableMatcher(pattern, input);
+			} else {
+				this.matcher = pattern.matcher(input);
+			}
+			this.scanResult = scanner == null ? null : new ScanResult();
+		}
+
+		/**
+		 * Ensures that the cursor holds the leftmost match at or after an index.
+		 * @return False if there are no more matches.
+		 */
+		private boolean advance(@Nonnull final CharSequence input, final int from) {
+			if (exhausted) {
+				return false;
+			}
+			if (match != null && match.start() >= from) {
+				return true;
+			}
+			final boolean found = scanner == null ? matcher.find(from) : scanner.find(input, from, scanResult);
+			if (found) {
+				match = scanner == null ? matcher : scanResult;
+				return true;
+			}
+			exhausted = true;
+			return false;
+		}
+
+		/**
+		 * Drops the matcher's reference to the input so that a reused matcher doesn't keep it from being collected.
+		 */
+		private void release() {
+			if (matcher != null) {
+				matcher.reset("");
+			}
+		}
+	}
+
+	/**
+	 * The merged alternation used in {@link Mode#SINGLE_PASS} mode.
+	 */
+	private static final class CombinedPattern {
+		private final Pattern pattern;
+		/**
+		 * Index of the group enclosing each replacer's pattern in the merged pattern.
+		 */
+		private final int[] groupIndexes;
+		/**
+		 * Number of groups inside each replacer's own pattern.
+		 */
+		private final int[] groupCounts;
+
+		private CombinedPattern(@Nonnull final Pattern[] patterns) {
+			final StringBuilder regex = new StringBuilder();
+			groupIndexes = new int[patterns.length];
+			groupCounts = new int[patterns.length];
+			int group = 1;
+			for (int i = 0; i < patterns.length; i++) {
+				if (i > 0) {
+					regex.append('|');
+				}
+				regex.append("(?<r").append(i).append('>').append(patterns[i].pattern()).append(')');
+				groupIndexes[i] = group;
+				groupCounts[i] = patterns[i].matcher("").groupCount();
+				group += groupCounts[i] + 1;
+			}
+			pattern = compile(regex.toString());
+		}
+
+		/**
+		 * Identifies the replacer whose pattern produced the current match.
+		 */
+		private int matchedReplacer(@Nonnull final Matcher m) {
+			for (int i = 0; i < groupIndexes.length; i++) {
+				if (m.start(groupIndexes[i]) >= 0) {
+					return i;
+				}
+			}
+			throw new IllegalStateException("No replacer group participated in the match: " + m);
+		}
+	}
+
 	private final List<ContentReplacer> replacerList;
+	private final Mode mode;
+	private final String key;
+	/**
+	 * Compiled form of each replacer's pattern, in the same order as {@link #replacerList}. This isn't serialized and
+	 * is rebuilt on first use after deserialization.
+	 */
+	private transient volatile Pattern[] patterns;
+	/**
+	 * Only used in {@link Mode#SINGLE_PASS} mode and rebuilt on first use after deserialization.
+	 */
+	private transient volatile CombinedPattern combined;
+	/**
+	 * Digest of the mode and patterns, used by {@link #putSignature(Hasher)} and rebuilt on first use after
+	 * deserialization.
+	 */
+	private transient volatile HashCode patternDigest;
 
-	private ContentReplacerList(final List<ContentReplacer> replacerList) {
+	private ContentReplacerList(final List<ContentReplacer> replacerList, final Mode mode, final String key) {
 		this.replacerList = new ArrayList<>(replacerList);
+		this.mode = mode;
+		this.key = key;
+		this.patterns = compile(this.replacerList);
+		if (mode == Mode.SINGLE_PASS) {
+			this.combined = new CombinedPattern(this.patterns);
+		}
 	}
 
 	public static class Builder {
 		private final List<ContentReplacer> replacerList = new ArrayList<>();
+		private Mode mode = Mode.SEQUENTIAL;
+		private String key;
 
 		public void add(final ContentReplacer replacer) {
 			replacerList.add(ValidateAs.notNull(replacer, "replacer"));
 		}
 
+		/**
+		 * Sets the strategy used to apply the replacers. The default is {@link Mode#SEQUENTIAL}.
+		 * @param mode Replacement strategy.
+		 */
+		public void setMode(@Nonnull final Mode mode) {
+			this.mode = ValidateAs.notNull(mode, "mode");
+		}
+
+		/**
+		 * Shares the list under a key that is unique within the JVM. The list is serialized as just the key and is
+		 * deserialized as the list most recently built with the same key, which must be built again (with the same
+		 * key) before pages are deserialized in a new JVM. The list is only shared for as long as it's referenced, so
+		 * keep it (such as in a field of the application) while pages may refer to it. By default the list isn't
+		 * shared and is serialized in full.
+		 * @param key Name of the list, or null to not share it.
+		 */
+		public void setKey(@Nullable final String key) {
+			this.key = key;
+		}
+
 		public ContentReplacerList build() {
-			return new ContentReplacerList(replacerList);
+			final ContentReplacerList list = new ContentReplacerList(replacerList, mode, key);
+			if (key != null) {
+				SHARED.put(key, list);
+			}
+			return list;
+		}
+	}
+
+	/**
+	 * Compiles a case insensitive pattern for a regex or returns the one previously compiled for it.
+	 * @param regex Regex to compile.
+	 * @return Shared compiled pattern.
+	 */
+	@Nonnull
+	static Pattern compile(@Nonnull final String regex) {
+		final Pattern cached = PATTERN_CACHE.get(regex);
+		if (cached != null) {
+			return cached;
+		}
+		return PATTERN_CACHE.computeIfAbsent(regex, r -> Pattern.compile(r, Pattern.CASE_INSENSITIVE));
+	}
+
+	/**
+	 * Takes this thread's matcher for a pattern and resets it to an input. The caller must reset it to an empty
+	 * string after use so that the matcher doesn't keep the input from being collected, and must not use two
+	 * matchers for the same pattern at once.
+	 */
+	@Nonnull
+	private static Matcher reusableMatcher(@Nonnull final Pattern pattern, @Nonnull final CharSequence input) {
+		final Map<Pattern, Matcher> matchers = MATCHERS.get();
+		Matcher matcher = matchers.get(pattern);
+		if (matcher == null) {
+			if (matchers.size() >= MAX_REUSED_MATCHERS) {
+				matchers.clear();
+			}
+			matcher = pattern.matcher("");
+			matchers.put(pattern, matcher);
+		}
+		return matcher.reset(input);
+	}
+
+	/**
+	 * Drops the compiled patterns and shared lists, such as when the application is destroyed. Lists that are still
+	 * in use keep working, and are no longer shared under their keys.
+	 */
+	public static void clearCaches() {
+		PATTERN_CACHE.clear();
+		SHARED.clear();
+		LinearPattern.clearCache();
+	}
+
+	@Nonnull
+	private static Pattern[] compile(@Nonnull final List<ContentReplacer> replacerList) {
+		final Pattern[] patterns = new Pattern[replacerList.size()];
+		for (int i = 0; i < patterns.length; i++) {
+			patterns[i] = compile(replacerList.get(i).pattern());
+		}
+		return patterns;
+	}
+
+	/**
+	 * Returns the compiled patterns, compiling them again if this instance was deserialized.
+	 */
+	@Nonnull
+	Pattern[] patterns() {
+		Pattern[] p = patterns;
+		if (p == null) {
+			p = compile(replacerList);
+			patterns = p;
+		}
+		return p;
+	}
+
+	@Nonnull
+	private CombinedPattern combined() {
+		CombinedPattern c = combined;
+		if (c == null) {
+			c = new CombinedPattern(patterns());
+			combined = c;
+		}
+		return c;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * The key that the list is shared under.
+	 * @return null if the list isn't shared
+	 * @see Builder#setKey(String)
+	 */
+	@Nullable
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Serializes a shared list as a reference to its key.
+	 */
+	private Object writeReplace() {
+		return key == null ? this : new SharedReference(key);
+	}
+
+	/**
+	 * What a shared list is serialized as.
+	 */
+	private static final class SharedReference implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final String key;
+
+		private SharedReference(@Nonnull final String key) {
+			this.key = key;
+		}
+
+		private Object readResolve() throws ObjectStreamException {
+			final ContentReplacerList list = SHARED.get(key);
+			if (list == null) {
+				throw new InvalidObjectException("No ContentReplacerList has been built with key: " + key);
+			}
+			return list;
+		}
+	}
+
+	/**
+	 * Feeds everything other than the input that determines the result of {@link #replace(String)} into a hasher:
+	 * the mode, the patterns, the replacement strings and the signatures of any {@link ContentReplacementWriter}s and
+	 * {@link ContentScanner}s. Two lists with the same signature produce the same output, even if they are different
+	 * instances (such as copies made by deserialization). The replacement strings are read on every call because
+	 * subclasses may compute them.
+	 * @param hasher Hasher to feed.
+	 */
+	void putSignature(@Nonnull final Hasher hasher) {
+		HashCode digest = patternDigest;
+		if (digest == null) {
+			final Hasher patternHasher = Hashing.sha256().newHasher();
+			patternHasher.putInt(mode.ordinal());
+			for (final ContentReplacer replacer: replacerList) {
+				final String pattern = replacer.pattern();
+				patternHasher.putInt(pattern.length()).putUnencodedChars(pattern);
+			}
+			digest = patternHasher.hash();
+			patternDigest = digest;
+		}
+		hasher.putBytes(digest.asBytes());
+		for (final ContentReplacer replacer: replacerList) {
+			final String replacement = replacer.replacement();
+			hasher.putInt(replacement.length()).putUnencodedChars(replacement);
+			final ContentReplacementWriter writer = replacer.writer();
+			hasher.putBoolean(writer != null);
+			if (writer != null) {
+				final String signature = writer.signature();
+				hasher.putInt(signature.length()).putUnencodedChars(signature);
+			}
+			final ContentScanner scanner = replacer.scanner();
+			hasher.putBoolean(scanner != null);
+			if (scanner != null) {
+				final String signature = scanner.signature();
+				hasher.putInt(signature.length()).putUnencodedChars(signature);
+			}
 		}
 	}
 
 	/**
-	 * Sequentially applies the content replacers contained within this list against an input string.
+	 * Applies the content replacers contained within this list against an input string, using the list's
+	 * {@link Mode}.
 	 * @param input String to apply replacements to.
 	 * @return Replaced string.
 	 */
 	public String replace(final String input) {
+		return replace(input, UnaryOperator.identity());
+	}
+
+	/**
+	 * Applies the content replacers, passing every string that is matched against through a wrapper first. This
+	 * allows the matching to be observed or interrupted, as done by {@link ContentReplacementBudget}.
+	 * @param input String to apply replacements to.
+	 * @param wrapper Wraps each string that is about to be scanned.
+	 * @return Replaced string.
+	 */
+	@Nonnull
+	String replace(@Nonnull final String input, @Nonnull final UnaryOperator<CharSequence> wrapper) {
+		final ContentReplacementMetrics metrics = ContentReplacementMetrics.active();
+		final long start = metrics == null ? 0 : System.nanoTime();
+		final String s = mode == Mode.SINGLE_PASS ?
+				replaceSinglePass(wrapper.apply(input), false, metrics) :
+				replaceSequential(input, wrapper, metrics);
+		if (metrics != null) {
+			metrics.listApplied(this, input.length(), System.nanoTime() - start);
+		}
+		return s;
+	}
+
+	/**
+	 * Applies each replacer in turn to the output of the previous one.
+	 * @param metrics Receives the measurements of each replacer, or null if nothing is measured.
+	 */
+	@Nonnull
+	private String replaceSequential(
+			@Nonnull final String input,
+			@Nonnull final UnaryOperator<CharSequence> wrapper,
+			@Nullable final ContentReplacementMetrics metrics) {
+		final Pattern[] p = patterns();
 		String s = input;
-		for (final ContentReplacer replacer: replacerList) {
-			s = StringUtils.replaceAllCaseInsensitive(s, replacer.pattern(), replacer.replacement());
+		for (int i = 0; i < p.length; i++) {
+			final ContentReplacer replacer = replacerList.get(i);
+			final CharSequence cs = wrapper.apply(s);
+			if (!mightMatch(replacer, cs)) {
+				if (metrics != null) {
+					metrics.replacerSkipped(replacer, cs.length());
+				}
+				continue;
+			}
+			if (replacer.scanner() == null && replacer.writer() == null && metrics == null) {
+				final Matcher m = reusableMatcher(p[i], cs);
+				try {
+					s = m.replaceAll(replacer.replacement());
+				} finally {
+					m.reset("");
+				}
+			} else {
+				s = replaceAll(replacer, p[i], cs, metrics);
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Escapes markup in the input and applies the content replacers in a single pass. The patterns are matched
+	 * against the unescaped input, only the text between matches is escaped, and the replacement strings are written
+	 * unescaped (text inserted by group references such as {@code $1} is escaped). The output is the same as
+	 * {@link org.apache.wicket.util.string.Strings#escapeMarkup(CharSequence, boolean, boolean)} with the replacements
+	 * made afterwards, except that patterns see characters such as '&lt;' and '&amp;' instead of their entities.
+	 * <p>
+	 * Replacements follow the precedence of {@link Mode#SINGLE_PASS} whatever the list's mode, because the output
+	 * can't be rescanned once it has been escaped.
+	 * @param input String to escape and apply replacements to.
+	 * @return Escaped and replaced string.
+	 */
+	public String replaceEscaped(final String input) {
+		return replaceEscaped(input, UnaryOperator.identity());
+	}
+
+	/**
+	 * Equivalent of {@link #replaceEscaped(String)} that passes the input through a wrapper before it is scanned, as
+	 * done by {@link #replace(String, UnaryOperator)}.
+	 * @param input String to escape and apply replacements to.
+	 * @param wrapper Wraps the string that is about to be scanned.
+	 * @return Escaped and replaced string.
+	 */
+	@Nonnull
+	String replaceEscaped(@Nonnull final String input, @Nonnull final UnaryOperator<CharSequence> wrapper) {
+		final ContentReplacementMetrics metrics = ContentReplacementMetrics.active();
+		final long start = metrics == null ? 0 : System.nanoTime();
+		final String s = replaceSinglePass(wrapper.apply(input), true, metrics);
+		if (metrics != null) {
+			metrics.listApplied(this, input.length(), System.nanoTime() - start);
 		}
 		return s;
 	}
+
+	/**
+	 * Applies the content replacers and passes the output to a consumer in chunks instead of building a string, so
+	 * that a large text doesn't exist in memory as several full copies. The consumer must use each chunk before it
+	 * returns, as the chunk's buffer is reused for the next one; input without any replacements is passed on as is.
+	 * <p>
+	 * Only single pass replacements can be streamed: if escape is false and the list's mode is
+	 * {@link Mode#SEQUENTIAL}, the output is built as a string by {@link #replace(String)} and passed on whole.
+	 * @param input String to apply replacements to.
+	 * @param escape True to escape the input in the same pass, as done by {@link #replaceEscaped(String)}.
+	 * @param sink Consumer of the output.
+	 */
+	public void replace(
+			@Nonnull final CharSequence input,
+			final boolean escape,
+			@Nonnull final Consumer<CharSequence> sink) {
+		if (!escape && mode == Mode.SEQUENTIAL) {
+			sink.accept(replace(input.toString()));
+			return;
+		}
+		final ContentReplacementMetrics metrics = ContentReplacementMetrics.active();
+		final long start = metrics == null ? 0 : System.nanoTime();
+		final Output out = Output.toSink(sink);
+		if (replaceSinglePass(input, escape, out, metrics)) {
+			out.finish();
+		} else {
+			sink.accept(input);
+		}
+		if (metrics != null) {
+			metrics.listApplied(this, input.length(), System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Applies the content replacers and appends the output to a buffer, so that a caller assembling a larger text,
+	 * or reusing one buffer for many strings, doesn't need a string to be built for each input. The input may be any
+	 * character sequence, such as a view of part of another text.
+	 * <p>
+	 * Only single pass replacements are appended directly: if escape is false and the list's mode is
+	 * {@link Mode#SEQUENTIAL}, the output is built as a string by {@link #replace(String)} and then appended.
+	 * @param input Text to apply replacements to.
+	 * @param escape True to escape the input in the same pass, as done by {@link #replaceEscaped(String)}.
+	 * @param out Buffer that the output is appended to.
+	 */
+	public void replace(@Nonnull final CharSequence input, final boolean escape, @Nonnull final StringBuilder out) {
+		if (!escape && mode == Mode.SEQUENTIAL) {
+			out.append(replace(input.toString()));
+			return;
+		}
+		final ContentReplacementMetrics metrics = ContentReplacementMetrics.active();
+		final long start = metrics == null ? 0 : System.nanoTime();
+		if (!replaceSinglePass(input, escape, new Output(out, null), metrics)) {
+			out.append(input);
+		}
+		if (metrics != null) {
+			metrics.listApplied(this, input.length(), System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Indicates if any replacer matches the input. This and the other match detection methods don't build any
+	 * replacement strings, so they are much cheaper than comparing the output of {@link #replace(String)} to its
+	 * input.
+	 * <p>
+	 * The detection methods look for matches in the input with the precedence of {@link Mode#SINGLE_PASS}, whatever
+	 * the list's mode: the leftmost match wins, the replacer added first wins at the same position, and matches
+	 * don't overlap.
+	 * @param input Text to search.
+	 * @return True if there is at least one match.
+	 */
+	public boolean containsMatch(@Nonnull final CharSequence input) {
+		return find(input, 1, null) > 0;
+	}
+
+	/**
+	 * Counts the matches in the input, following the precedence described in {@link #containsMatch(CharSequence)}.
+	 * @param input Text to search.
+	 * @return Number of matches.
+	 */
+	public int countMatches(@Nonnull final CharSequence input) {
+		return find(input, Integer.MAX_VALUE, null);
+	}
+
+	/**
+	 * Finds the leftmost match in the input, following the precedence described in
+	 * {@link #containsMatch(CharSequence)}.
+	 * @param input Text to search.
+	 * @return Null if there are no matches.
+	 */
+	@Nullable
+	public ContentMatch findFirst(@Nonnull final CharSequence input) {
+		final List<ContentMatch> matches = new ArrayList<>(1);
+		find(input, 1, matches);
+		return matches.isEmpty() ? null : matches.get(0);
+	}
+
+	/**
+	 * Finds all matches in the input from left to right, following the precedence described in
+	 * {@link #containsMatch(CharSequence)}. These are the matches that a {@link Mode#SINGLE_PASS} list replaces.
+	 * @param input Text to search.
+	 * @return Matches, empty if there are none.
+	 */
+	@Nonnull
+	public List<ContentMatch> findAll(@Nonnull final CharSequence input) {
+		final List<ContentMatch> matches = new ArrayList<>();
+		find(input, Integer.MAX_VALUE, matches);
+		return matches;
+	}
+
+	/**
+	 * Finds matches from left to right.
+	 * @param input Text to search.
+	 * @param limit Maximum number of matches to find.
+	 * @param matches Receives the matches found, or null if they only need to be counted.
+	 * @return Number of matches found.
+	 */
+	private int find(@Nonnull final CharSequence input, final int limit, @Nullable final List<ContentMatch> matches) {
+		final int[] count = {0};
+		scan(input, 0, (m, index, replacer) -> {
+			if (matches != null) {
+				matches.add(new ContentMatch(m.start(), m.end(), index, replacer));
+			}
+			return ++count[0] < limit;
+		});
+		return count[0];
+	}
+
+	/**
+	 * Receives the matches found by {@link #scan(CharSequence, int, MatchVisitor)}.
+	 */
+	interface MatchVisitor {
+		/**
+		 * @param match The match, which is only valid until this method returns.
+		 * @param index Index of the replacer that matched.
+		 * @param replacer The replacer that matched.
+		 * @return False to stop scanning.
+		 */
+		boolean visit(@Nonnull MatchResult match, int index, @Nonnull ContentReplacer replacer);
+	}
+
+	/**
+	 * Finds matches from left to right, starting at an index, with the precedence of {@link Mode#SINGLE_PASS}. Text
+	 * before the index is still seen by lookbehind and word boundaries.
+	 * @param input Text to search.
+	 * @param from Index to start searching at.
+	 * @param visitor Receives each match.
+	 * @return False if the visitor stopped the scan.
+	 */
+	boolean scan(@Nonnull final CharSequence input, final int from, @Nonnull final MatchVisitor visitor) {
+		if (!anyMightMatch(input)) {
+			return true;
+		}
+		final Cursor[] cursors = cursors(input, true);
+		try {
+			int next = from;
+			while (next <= input.length()) {
+				final int best = next(cursors, input, next, null);
+				if (best < 0) {
+					break;
+				}
+				final MatchResult m = cursors[best].match;
+				if (!visitor.visit(m, best, replacerList.get(best))) {
+					return false;
+				}
+				next = m.end() == m.start() ? m.end() + 1 : m.end();
+			}
+			return true;
+		} finally {
+			for (final Cursor cursor: cursors) {
+				cursor.release();
+			}
+		}
+	}
+
+	/**
+	 * Equivalent of {@link Matcher#replaceAll(String)} for one replacer, which finds the matches with the replacer's
+	 * scanner if it has one.
+	 * @param metrics Receives the number of matches and the time taken, or null if nothing is measured.
+	 */
+	@Nonnull
+	private static String replaceAll(
+			@Nonnull final ContentReplacer replacer,
+			@Nonnull final Pattern pattern,
+			@Nonnull final CharSequence input,
+			@Nullable final ContentReplacementMetrics metrics) {
+		final long start = metrics == null ? 0 : System.nanoTime();
+		final ContentScanner scanner = replacer.scanner();
+		final Matcher matcher = scanner == null ? reusableMatcher(pattern, input) : null;
+		final ScanResult scanResult = scanner == null ? null : new ScanResult();
+		try {
+			StringBuilder sb = null;
+			int matches = 0;
+			int last = 0;
+			int from = 0;
+			while (from <= input.length() &&
+					(scanner == null ? matcher.find(from) : scanner.find(input, from, scanResult))) {
+				final MatchResult m = scanner == null ? matcher : scanResult;
+				if (sb == null) {
+					sb = new StringBuilder(input.length() + 64);
+				}
+				sb.append(input, last, m.start());
+				writeReplacement(replacer, input, m, sb, false);
+				matches++;
+				last = m.end();
+				// same as Matcher: an empty match moves the search forward by one
+				from = m.end() == m.start() ? m.end() + 1 : m.end();
+			}
+			final String s = sb == null ? input.toString() : sb.append(input, last, input.length()).toString();
+			if (metrics != null) {
+				metrics.replacerApplied(replacer, input.length(), matches, System.nanoTime() - start);
+			}
+			return s;
+		} finally {
+			if (matcher != null) {
+				matcher.reset("");
+			}
+		}
+	}
+
+	/**
+	 * Runs a replacer's {@link ContentReplacer#prefilter() prefilter}, if it has one.
+	 * @return False if the replacer's pattern can't match the input.
+	 */
+	private static boolean mightMatch(@Nonnull final ContentReplacer replacer, @Nonnull final CharSequence input) {
+		final ContentPrefilter prefilter = replacer.prefilter();
+		return prefilter == null || prefilter.mightMatch(input);
+	}
+
+	/**
+	 * Indicates if any replacer's pattern might match the input.
+	 */
+	private boolean anyMightMatch(@Nonnull final CharSequence input) {
+		for (final ContentReplacer replacer: replacerList) {
+			if (mightMatch(replacer, input)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean hasScanner() {
+		for (final ContentReplacer replacer: replacerList) {
+			if (replacer.scanner() != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Destination of a single pass replacement: either one string built in this thread's reusable buffer, or chunks
+	 * of roughly {@link #CHUNK_SIZE} characters passed to a consumer as they fill up.
+	 */
+	private static final class Output {
+		private final StringBuilder sb;
+		private final Consumer<CharSequence> sink;
+
+		private Output(@Nonnull final StringBuilder sb, @Nullable final Consumer<CharSequence> sink) {
+			this.sb = sb;
+			this.sink = sink;
+		}
+
+		/**
+		 * Writes into this thread's output buffer to build a string.
+		 */
+		@Nonnull
+		private static Output toBuffer(final int capacity) {
+			final StringBuilder sb = BUFFER.get();
+			sb.setLength(0);
+			sb.ensureCapacity(capacity);
+			return new Output(sb, null);
+		}
+
+		/**
+		 * Writes chunks to a consumer, using this thread's output buffer for each chunk.
+		 */
+		@Nonnull
+		private static Output toSink(@Nonnull final Consumer<CharSequence> sink) {
+			final StringBuilder sb = BUFFER.get();
+			sb.setLength(0);
+			sb.ensureCapacity(CHUNK_SIZE);
+			return new Output(sb, sink);
+		}
+
+		/**
+		 * Appends part of the input, escaping it if required.
+		 */
+		private void append(@Nonnull final CharSequence s, final int start, final int end, final boolean escape) {
+			if (sink == null) {
+				appendText(sb, s, start, end, escape);
+				return;
+			}
+			int from = start;
+			while (from < end) {
+				final int to = Math.min(end, from + Math.max(1, CHUNK_SIZE - sb.length()));
+				appendText(sb, s, from, to, escape);
+				flushIfFull();
+				from = to;
+			}
+		}
+
+		private void flushIfFull() {
+			if (sink != null && sb.length() >= CHUNK_SIZE) {
+				sink.accept(sb);
+				sb.setLength(0);
+			}
+		}
+
+		/**
+		 * Passes any remaining output to the consumer, or returns the built string.
+		 * @return null if writing to a consumer
+		 */
+		@Nullable
+		private String finish() {
+			if (sink != null) {
+				if (sb.length() > 0) {
+					sink.accept(sb);
+				}
+				sb.setLength(0);
+				return null;
+			}
+			final String s = sb.toString();
+			// don't let one huge string pin memory for the thread's lifetime
+			if (sb.capacity() > MAX_REUSED_BUFFER) {
+				BUFFER.remove();
+			}
+			return s;
+		}
+	}
+
+	@Nonnull
+	private String replaceSinglePass(
+			@Nonnull final CharSequence input,
+			final boolean escape,
+			@Nullable final ContentReplacementMetrics metrics) {
+		final Output out = Output.toBuffer(input.length() + 64);
+		if (!replaceSinglePass(input, escape, out, metrics)) {
+			return input.toString();
+		}
+		return out.finish();
+	}
+
+	/**
+	 * Applies the replacers in a single pass, writing the result to an output.
+	 * @param metrics Receives the measurements of each replacer, or null if nothing is measured.
+	 * @return False if nothing was written because there are no matches and the input isn't escaped, in which case
+	 * the output is the input itself.
+	 */
+	private boolean replaceSinglePass(
+			@Nonnull final CharSequence input,
+			final boolean escape,
+			@Nonnull final Output out,
+			@Nullable final ContentReplacementMetrics metrics) {
+		if (!anyMightMatch(input)) {
+			if (metrics != null) {
+				for (final ContentReplacer replacer: replacerList) {
+					metrics.replacerSkipped(replacer, input.length());
+				}
+			}
+			return noReplacements(input, escape, out);
+		}
+		if (hasScanner()) {
+			return replaceWithCursors(input, escape, out, metrics);
+		}
+		final CombinedPattern c = combined();
+		final Matcher m = c.pattern.matcher(input);
+		final int[] matches = metrics == null ? null : new int[replacerList.size()];
+		if (!m.find()) {
+			if (metrics != null) {
+				reportMerged(metrics, input.length(), matches);
+			}
+			return noReplacements(input, escape, out);
+		}
+
+		ReplacerMatch replacerMatch = null;
+		int last = 0;
+		do {
+			final int r = c.matchedReplacer(m);
+			if (matches != null) {
+				matches[r]++;
+			}
+			out.append(input, last, m.start(), escape);
+			final ContentReplacer replacer = replacerList.get(r);
+			final ContentReplacementWriter writer = replacer.writer();
+			if (writer == null) {
+				appendReplacement(out.sb, m, c.groupIndexes[r], c.groupCounts[r], replacer.replacement(), escape);
+			} else {
+				if (replacerMatch == null) {
+					replacerMatch = new ReplacerMatch(m);
+				}
+				writer.append(input, replacerMatch.of(c.groupIndexes[r], c.groupCounts[r]), out.sb, escape);
+			}
+			out.flushIfFull();
+			last = m.end();
+		} while (m.find());
+		out.append(input, last, input.length(), escape);
+		if (metrics != null) {
+			reportMerged(metrics, input.length(), matches);
+		}
+		return true;
+	}
+
+	/**
+	 * Reports the matches found by the merged pattern, whose time can't be split between the replacers.
+	 */
+	private void reportMerged(
+			@Nonnull final ContentReplacementMetrics metrics,
+			final int inputLength,
+			@Nonnull final int[] matches) {
+		for (int i = 0; i < matches.length; i++) {
+			final ContentReplacer replacer = replacerList.get(i);
+			metrics.replacerApplied(replacer, inputLength, matches[i], ContentReplacementMetrics.UNKNOWN_NANOS);
+		}
+	}
+
+	private static boolean noReplacements(
+			@Nonnull final CharSequence input,
+			final boolean escape,
+			@Nonnull final Output out) {
+		if (!escape) {
+			return false;
+		}
+		out.append(input, 0, input.length(), true);
+		return true;
+	}
+
+	/**
+	 * Creates a cursor for each replacer.
+	 * @param reuseMatchers True to use this thread's reusable matchers, which must then be released.
+	 */
+	@Nonnull
+	private Cursor[] cursors(@Nonnull final CharSequence input, final boolean reuseMatchers) {
+		final Pattern[] p = patterns();
+		final Cursor[] cursors = new Cursor[p.length];
+		for (int i = 0; i < cursors.length; i++) {
+			// a list containing the same regex twice needs a separate matcher for each
+			final boolean reuse = reuseMatchers && indexOf(p, p[i]) == i;
+			cursors[i] = new Cursor(replacerList.get(i), p[i], input, reuse);
+		}
+		return cursors;
+	}
+
+	private static int indexOf(@Nonnull final Pattern[] patterns, @Nonnull final Pattern pattern) {
+		for (int i = 0; i < patterns.length; i++) {
+			if (patterns[i] == pattern) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the cursor holding the leftmost match at or after an index; if several cursors match at the same
+	 * position, the one for the replacer added first wins.
+	 * @param nanos Accumulates the time spent by each cursor, or null if it isn't measured.
+	 * @return Index of the cursor, or -1 if there are no more matches.
+	 */
+	private static int next(
+			@Nonnull final Cursor[] cursors,
+			@Nonnull final CharSequence input,
+			final int from,
+			@Nullable final long[] nanos) {
+		int best = -1;
+		for (int i = 0; i < cursors.length; i++) {
+			final boolean found;
+			if (nanos == null) {
+				found = cursors[i].advance(input, from);
+			} else {
+				final long start = System.nanoTime();
+				found = cursors[i].advance(input, from);
+				nanos[i] += System.nanoTime() - start;
+			}
+			if (!found) {
+				continue;
+			}
+			if (best < 0 || cursors[i].match.start() < cursors[best].match.start()) {
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Single pass over the input that tracks the next match of each replacer separately.
+	 */
+	private boolean replaceWithCursors(
+			@Nonnull final CharSequence input,
+			final boolean escape,
+			@Nonnull final Output out,
+			@Nullable final ContentReplacementMetrics metrics) {
+		final Cursor[] cursors = cursors(input, false);
+		final long[] nanos = metrics == null ? null : new long[cursors.length];
+		final int[] matches = metrics == null ? null : new int[cursors.length];
+		boolean replaced = false;
+		int last = 0;
+		int from = 0;
+		while (from <= input.length()) {
+			final int best = next(cursors, input, from, nanos);
+			if (best < 0) {
+				break;
+			}
+
+			final MatchResult m = cursors[best].match;
+			out.append(input, last, m.start(), escape);
+			writeReplacement(replacerList.get(best), input, m, out.sb, escape);
+			out.flushIfFull();
+			if (matches != null) {
+				matches[best]++;
+			}
+			replaced = true;
+			last = m.end();
+			from = m.end() == m.start() ? m.end() + 1 : m.end();
+		}
+		if (metrics != null) {
+			for (int i = 0; i < cursors.length; i++) {
+				if (cursors[i].ruledOut) {
+					metrics.replacerSkipped(replacerList.get(i), input.length());
+				} else {
+					metrics.replacerApplied(replacerList.get(i), input.length(), matches[i], nanos[i]);
+				}
+			}
+		}
+		if (!replaced) {
+			return noReplacements(input, escape, out);
+		}
+		out.append(input, last, input.length(), escape);
+		return true;
+	}
+
+	/**
+	 * Appends the replacement for a match of one replacer, using the replacer's {@link ContentReplacementWriter} if it
+	 * has one.
+	 * @param replacer Replacer that matched.
+	 * @param input Text being replaced.
+	 * @param m Match of the replacer's own pattern or scanner.
+	 * @param sb Buffer to append to.
+	 * @param escape True if the output is escaped.
+	 */
+	static void writeReplacement(
+			@Nonnull final ContentReplacer replacer,
+			@Nonnull final CharSequence input,
+			@Nonnull final MatchResult m,
+			@Nonnull final StringBuilder sb,
+			final boolean escape) {
+		final ContentReplacementWriter writer = replacer.writer();
+		if (writer == null) {
+			appendReplacement(sb, m, 0, m.groupCount(), replacer.replacement(), escape);
+		} else {
+			writer.append(input, m, sb, escape);
+		}
+	}
+
+	/**
+	 * The match of one replacer's pattern within the merged pattern, with the groups numbered as in the replacer's
+	 * own pattern. One instance is reused for all the matches in a string.
+	 */
+	private static final class ReplacerMatch implements MatchResult {
+		private final Matcher m;
+		private int groupIndex;
+		private int groupCount;
+
+		private ReplacerMatch(@Nonnull final Matcher m) {
+			this.m = m;
+		}
+
+		@Nonnull
+		private ReplacerMatch of(final int groupIndex, final int groupCount) {
+			this.groupIndex = groupIndex;
+			this.groupCount = groupCount;
+			return this;
+		}
+
+		/**
+		 * Index in the merged pattern of a group of the replacer's pattern.
+		 */
+		private int mergedGroup(final int group) {
+			if (group < 0 || group > groupCount) {
+				throw new IndexOutOfBoundsException("No group " + group);
+			}
+			return groupIndex + group;
+		}
+
+		@Override
+		public int start() {
+			return m.start(groupIndex);
+		}
+
+		@Override
+		public int start(final int group) {
+			return m.start(mergedGroup(group));
+		}
+
+		@Override
+		public int end() {
+			return m.end(groupIndex);
+		}
+
+		@Override
+		public int end(final int group) {
+			return m.end(mergedGroup(group));
+		}
+
+		@Override
+		public String group() {
+			return m.group(groupIndex);
+		}
+
+		@Override
+		public String group(final int group) {
+			return m.group(mergedGroup(group));
+		}
+
+		@Override
+		public int groupCount() {
+			return groupCount;
+		}
+	}
+
+	/**
+	 * Appends part of the input to a buffer.
+	 * @param sb Buffer to append to.
+	 * @param s Input.
+	 * @param start Index of the first character to append.
+	 * @param end Index after the last character to append.
+	 * @param escape True to escape markup the same way as
+	 * {@link org.apache.wicket.util.string.Strings#escapeMarkup(CharSequence, boolean, boolean)} with both flags off.
+	 */
+	static void appendText(
+			@Nonnull final StringBuilder sb,
+			@Nonnull final CharSequence s,
+			final int start,
+			final int end,
+			final boolean escape) {
+		if (!escape) {
+			sb.append(s, start, end);
+			return;
+		}
+		int last = start;
+		for (int i = start; i < end; i++) {
+			final char c = s.charAt(i);
+			final String entity;
+			switch (c) {
+				case '<':
+					entity = "&lt;";
+					break;
+				case '>':
+					entity = "&gt;";
+					break;
+				case '&':
+					entity = "&amp;";
+					break;
+				case '"':
+					entity = "&quot;";
+					break;
+				case '\'':
+					entity = "&#039;";
+					break;
+				default:
+					if (c >= ' ' || c == '\t' || c == '\n' || c == '\r') {
+						continue;
+					}
+					entity = null;
+			}
+			sb.append(s, last, i);
+			if (entity == null) {
+				// other control characters are written as numeric character references
+				sb.append("&#").append((int) c).append(';');
+			} else {
+				sb.append(entity);
+			}
+			last = i + 1;
+		}
+		sb.append(s, last, end);
+	}
+
+	/**
+	 * Appends a replacement string to a buffer, following the same syntax as {@link Matcher#appendReplacement} but
+	 * resolving numbered group references relative to the replacer's own pattern inside the merged pattern.
+	 * @param sb Buffer to append to.
+	 * @param m Match, which must be a {@link Matcher} if the replacement refers to a named group.
+	 * @param groupIndex Index of the group enclosing the replacer's pattern.
+	 * @param groupCount Number of groups in the replacer's pattern.
+	 * @param replacement Replacement string.
+	 * @param escape True to escape markup in the text inserted by group references.
+	 */
+	static void appendReplacement(
+			@Nonnull final StringBuilder sb,
+			@Nonnull final MatchResult m,
+			final int groupIndex,
+			final int groupCount,
+			@Nonnull final String replacement,
+			final boolean escape) {
+		final int length = replacement.length();
+		int i = 0;
+		while (i < length) {
+			final char c = replacement.charAt(i++);
+			if (c == '\\') {
+				if (i == length) {
+					throw new IllegalArgumentException("character to be escaped is missing");
+				}
+				sb.append(replacement.charAt(i++));
+			} else if (c == '$') {
+				if (i == length) {
+					throw new IllegalArgumentException("Illegal group reference: group index is missing");
+				}
+				final String value;
+				if (replacement.charAt(i) == '{') {
+					final int close = replacement.indexOf('}', i);
+					if (close < 0) {
+						throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+					}
+					if (!(m instanceof Matcher)) {
+						throw new IllegalArgumentException("Named group references require a regex match");
+					}
+					value = ((Matcher) m).group(replacement.substring(i + 1, close));
+					i = close + 1;
+				} else {
+					int n = replacement.charAt(i++) - '0';
+					if (n < 0 || n > 9) {
+						throw new IllegalArgumentException("Illegal group reference");
+					}
+					// same as Matcher: consume further digits while they form a valid group number
+					while (i < length) {
+						final int next = replacement.charAt(i) - '0';
+						if (next < 0 || next > 9 || n * 10 + next > groupCount) {
+							break;
+						}
+						n = n * 10 + next;
+						i++;
+					}
+					if (n > groupCount) {
+						throw new IndexOutOfBoundsException("No group " + n);
+					}
+					value = m.group(groupIndex + n);
+				}
+				if (value != null) {
+					appendText(sb, value, 0, value.length(), escape);
+				}
+			} else {
+				sb.append(c);
+			}
+		}
+	}
 }
@@ -0,0 +1,256 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.google.common.collect.ImmutableMap;
+import com.pushinginertia.commons.core.validation.ValidateAs;
+import org.apache.wicket.Application;
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.util.time.Duration;
+import org.apache.wicket.util.watch.ModificationWatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Application-wide registry of named {@link ContentReplacerList}s, so that the replacement rules can be changed while
+ * the application is running. A {@link ContentReplacementModel} created with a rule set name looks the list up here
+ * each time it renders, instead of holding (and serializing into the page) the list itself.
+ * <p>
+ * The rule sets are held in an immutable, versioned {@link Snapshot}. Every change builds a new snapshot and swaps it
+ * in atomically, so a render that has looked up a list keeps using it even if the rules change before it completes.
+ * Rule sets can be registered in code with {@link #put(String, ContentReplacerList)} or loaded from a properties file
+ * (see {@link ContentReplacerRuleSets} for the format) with {@link #load(File)}; {@link #watch(File, Duration)} also
+ * reloads the file whenever it's modified. Patterns are compiled while the file is loaded, on the watcher's thread,
+ * so requests never wait for a recompilation. If the file is invalid, the error is logged and the previous rule sets
+ * stay in use.
+ * <p>
+ * No registry is registered by default: call {@link #set(Application, ContentReplacerRegistry)} from
+ * {@link Application#init()} to enable one. The {@link com.pushinginertia.wicket.core.Initializer} stops its watcher
+ * when the application is destroyed.
+ */
+public class ContentReplacerRegistry {
+	private static final Logger LOG = LoggerFactory.getLogger(ContentReplacerRegistry.class);
+
+	private static final MetaDataKey<ContentReplacerRegistry> KEY = new MetaDataKey<ContentReplacerRegistry>() {
+		private static final long serialVersionUID = 1L;
+	};
+
+	/**
+	 * An immutable view of the rule sets at one point in time.
+	 */
+	public static final class Snapshot {
+		private final long version;
+		private final ImmutableMap<String, ContentReplacerList> ruleSets;
+
+		private Snapshot(final long version, @Nonnull final ImmutableMap<String, ContentReplacerList> ruleSets) {
+			this.version = version;
+			this.ruleSets = ruleSets;
+		}
+
+		/**
+		 * Number of changes made to the registry before this snapshot was taken.
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * Looks up a rule set.
+		 * @param name name of the rule set
+		 * @return null if there is no rule set with the name
+		 */
+		@Nullable
+		public ContentReplacerList get(@Nonnull final String name) {
+			return ruleSets.get(name);
+		}
+
+		@Nonnull
+		public Set<String> getNames() {
+			return ruleSets.keySet();
+		}
+
+		@Override
+		public String toString() {
+			return "Snapshot{version=" + version + ", names=" + ruleSets.keySet() + '}';
+		}
+	}
+
+	private final AtomicReference<Snapshot> snapshot =
+			new AtomicReference<>(new Snapshot(0, ImmutableMap.<String, ContentReplacerList>of()));
+	private ModificationWatcher watcher;
+
+	/**
+	 * Retrieves the registry for the application of the current thread.
+	 * @return null if there is no application on this thread or no registry is registered
+	 */
+	@Nullable
+	public static ContentReplacerRegistry get() {
+		return Application.exists() ? get(Application.get()) : null;
+	}
+
+	/**
+	 * Retrieves the registry for an application.
+	 * @param application application to look up
+	 * @return null if no registry is registered
+	 */
+	@Nullable
+	public static ContentReplacerRegistry get(@Nonnull final Application application) {
+		return application.getMetaData(KEY);
+	}
+
+	/**
+	 * Registers the registry used by an application.
+	 * @param application application to register the registry for
+	 * @param registry registry to use, or null to remove it
+	 */
+	public static void set(@Nonnull final Application application, @Nullable final ContentReplacerRegistry registry) {
+		application.setMetaData(KEY, registry);
+	}
+
+	/**
+	 * The current rule sets. Use the same snapshot for everything that must see a consistent set of rules.
+	 */
+	@Nonnull
+	public Snapshot snapshot() {
+		return snapshot.get();
+	}
+
+	/**
+	 * Looks up a rule set in the current snapshot.
+	 * @param name name of the rule set
+	 * @return null if there is no rule set with the name
+	 */
+	@Nullable
+	public ContentReplacerList get(@Nonnull final String name) {
+		return snapshot.get().get(name);
+	}
+
+	/**
+	 * Adds or replaces a rule set.
+	 * @param name name of the rule set
+	 * @param replacerList rules to apply
+	 */
+	public void put(@Nonnull final String name, @Nonnull final ContentReplacerList replacerList) {
+		ValidateAs.notNull(name, "name");
+		ValidateAs.notNull(replacerList, "replacerList");
+		putAll(ImmutableMap.of(name, replacerList));
+	}
+
+	/**
+	 * Adds or replaces several rule sets at once. Rule sets with other names are kept.
+	 * @param ruleSets rules to apply keyed by rule set name
+	 */
+	public void putAll(@Nonnull final Map<String, ContentReplacerList> ruleSets) {
+		update(current -> {
+			final Map<String, ContentReplacerList> merged = new HashMap<>(current);
+			merged.putAll(ruleSets);
+			return merged;
+		});
+	}
+
+	/**
+	 * Removes a rule set. Models that refer to it fail to render until a rule set with the name is added again.
+	 * @param name name of the rule set
+	 */
+	public void remove(@Nonnull final String name) {
+		update(current -> {
+			final Map<String, ContentReplacerList> removed = new HashMap<>(current);
+			removed.remove(name);
+			return removed;
+		});
+	}
+
+	/**
+	 * Swaps in a new snapshot built from the current one, retrying if another change is made concurrently.
+	 */
+	private void update(@Nonnull final UnaryOperator<Map<String, ContentReplacerList>> change) {
+		Snapshot current;
+		Snapshot next;
+		do {
+			current = snapshot.get();
+			next = new Snapshot(current.version + 1, ImmutableMap.copyOf(change.apply(current.ruleSets)));
+		} while (!snapshot.compareAndSet(current, next));
+		LOG.info("Content replacer rule sets changed: {}", next);
+	}
+
+	/**
+	 * Loads the rule sets defined in a properties file, adding them to the registry or replacing those with the same
+	 * names. Nothing changes if the file is invalid.
+	 * @param file properties file encoded in UTF-8
+	 * @throws IOException if the file can't be read
+	 * @throws IllegalArgumentException if a rule set in the file is invalid
+	 */
+	public void load(@Nonnull final File file) throws IOException {
+		final Properties properties = new Properties();
+		try (final InputStream in = Files.newInputStream(file.toPath());
+				final Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		putAll(ContentReplacerRuleSets.parse(properties));
+	}
+
+	/**
+	 * Loads the rule sets defined in a properties file and reloads them whenever the file is modified. The file is
+	 * checked from a background thread. Only one file is watched at a time: this stops watching any other file.
+	 * @param file properties file encoded in UTF-8
+	 * @param pollFrequency how often the file's modification time is checked
+	 * @throws IOException if the file can't be read
+	 * @throws IllegalArgumentException if a rule set in the file is invalid
+	 */
+	public synchronized void watch(@Nonnull final File file, @Nonnull final Duration pollFrequency) throws IOException {
+		load(file);
+		stopWatching();
+		watcher = new ModificationWatcher(pollFrequency);
+		watcher.add(new org.apache.wicket.util.file.File(file), () -> {
+			try {
+				load(file);
+			} catch (final IOException | RuntimeException e) {
+				LOG.error("Failed to reload content replacer rule sets from {}, keeping the previous rules", file, e);
+			}
+		});
+	}
+
+	/**
+	 * Stops reloading the watched file, if any.
+	 */
+	public synchronized void stopWatching() {
+		if (watcher != null) {
+			watcher.destroy();
+			watcher = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ContentReplacerRegistry{" + snapshot.get() + '}';
+	}
+}
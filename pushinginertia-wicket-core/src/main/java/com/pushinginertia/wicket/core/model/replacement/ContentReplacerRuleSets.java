@@ -0,0 +1,248 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Builds {@link ContentReplacerList}s from rule sets defined in a properties file. Every key starts with the name of
+ * a rule set; the rule set's mode is optional and each rule is numbered, rules being applied in numeric order:
+ * <pre>
+ * chat.mode=SINGLE_PASS
+ * chat.1.type=email
+ * chat.1.domains=gmail, hotmail, yahoo, outlook, live
+ * chat.1.replacement=&lt;a href="/contact"&gt;email link&lt;/a&gt;
+ * chat.2.type=number
+ * chat.2.minNumbers=7
+ * chat.2.replacement=[number]
+ * chat.3.pattern=\\bskype\\b
+ * chat.3.replacement=[blocked]
+ * chat.4.type=newline
+ * </pre>
+ * The types of rule are:
+ * <ul>
+ *     <li>{@code regex} (the default): matches {@code pattern}, as done by {@link RegexContentReplacer}</li>
+ *     <li>{@code email}: matches emails, as done by {@link EmailContentReplacer}. If {@code domains} lists email
+ *     domains (separated by commas or whitespace), misspellings of those domains are matched too, with the list
+ *     compiled by {@link EmailContentReplacerPatternProvider#forDomainTrie}. If {@code linear} is true, matching is
+ *     done in linear time by {@link LinearEmailContentReplacerPatternProvider}.</li>
+ *     <li>{@code number}: matches sequences of at least {@code minNumbers} digits, as done by
+ *     {@link NumberSequenceContentReplacer}</li>
+ *     <li>{@code webLink}: matches links, as done by {@link WebLinkContentReplacer}</li>
+ *     <li>{@code weChat}: matches WeChat references, as done by {@link WeChatContentReplacer}</li>
+ *     <li>{@code newline}: replaces newlines with &lt;br/&gt; tags, as done by {@link NewlineContentReplacer}</li>
+ * </ul>
+ * Every type other than {@code newline} needs a {@code replacement}.
+ */
+final class ContentReplacerRuleSets {
+	private static final class EmailRule extends EmailContentReplacer {
+		private static final long serialVersionUID = 1L;
+
+		private final String replacement;
+
+		private EmailRule(
+				@Nonnull final IEmailContentReplacerPatternProvider provider,
+				@Nonnull final String replacement) {
+			super(provider);
+			this.replacement = replacement;
+		}
+
+		@Nonnull
+		@Override
+		public String replacement() {
+			return replacement;
+		}
+	}
+
+	private static final class NumberRule extends NumberSequenceContentReplacer {
+		private static final long serialVersionUID = 1L;
+
+		private final String replacement;
+
+		private NumberRule(final int minNumbers, @Nonnull final String replacement) {
+			super(minNumbers);
+			this.replacement = replacement;
+		}
+
+		@Nonnull
+		@Override
+		public String replacement() {
+			return replacement;
+		}
+	}
+
+	private static final class WebLinkRule extends WebLinkContentReplacer {
+		private static final long serialVersionUID = 1L;
+
+		private final String replacement;
+
+		private WebLinkRule(@Nonnull final String replacement) {
+			this.replacement = replacement;
+		}
+
+		@Nonnull
+		@Override
+		public String replacement() {
+			return replacement;
+		}
+	}
+
+	private static final class WeChatRule extends WeChatContentReplacer {
+		private static final long serialVersionUID = 1L;
+
+		private final String replacement;
+
+		private WeChatRule(@Nonnull final String replacement) {
+			this.replacement = replacement;
+		}
+
+		@Nonnull
+		@Override
+		public String replacement() {
+			return replacement;
+		}
+	}
+
+	private ContentReplacerRuleSets() {}
+
+	/**
+	 * Builds every rule set defined in a properties file. The patterns are compiled here, so the returned lists are
+	 * ready to use.
+	 * @param properties Rule set definitions.
+	 * @return Lists keyed by rule set name.
+	 * @throws IllegalArgumentException If a rule set is invalid.
+	 */
+	@Nonnull
+	static Map<String, ContentReplacerList> parse(@Nonnull final Properties properties) {
+		final Map<String, ContentReplacerList.Mode> modes = new HashMap<>();
+		final Map<String, TreeMap<Integer, Map<String, String>>> rules = new TreeMap<>();
+		for (final String key: properties.stringPropertyNames()) {
+			final String value = properties.getProperty(key);
+			final String[] parts = key.split("\\.", 3);
+			final String name = parts[0];
+			if (parts.length == 2 && "mode".equals(parts[1])) {
+				modes.put(name, parseMode(key, value.trim()));
+				rules.computeIfAbsent(name, n -> new TreeMap<>());
+			} else if (parts.length == 3) {
+				rules.computeIfAbsent(name, n -> new TreeMap<>())
+						.computeIfAbsent(parseIndex(key, parts[1]), i -> new HashMap<>())
+						.put(parts[2], value);
+			} else {
+				throw invalid(key, "expected <ruleSet>.mode or <ruleSet>.<index>.<attribute>");
+			}
+		}
+
+		final Map<String, ContentReplacerList> ruleSets = new HashMap<>();
+		for (final Map.Entry<String, TreeMap<Integer, Map<String, String>>> ruleSet: rules.entrySet()) {
+			final String name = ruleSet.getKey();
+			final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+			builder.setMode(modes.getOrDefault(name, ContentReplacerList.Mode.SEQUENTIAL));
+			for (final Map.Entry<Integer, Map<String, String>> rule: ruleSet.getValue().entrySet()) {
+				builder.add(newReplacer(name + '.' + rule.getKey(), rule.getValue()));
+			}
+			try {
+				ruleSets.put(name, builder.build());
+			} catch (final IllegalArgumentException e) {
+				throw new IllegalArgumentException("Invalid rule set [" + name + "]: " + e.getMessage(), e);
+			}
+		}
+		return ruleSets;
+	}
+
+	@Nonnull
+	private static ContentReplacer newReplacer(@Nonnull final String prefix, @Nonnull final Map<String, String> rule) {
+		final String type = rule.getOrDefault("type", "regex").trim();
+		switch (type) {
+			case "regex":
+				return new RegexContentReplacer(
+						required(prefix, rule, "pattern"),
+						required(prefix, rule, "replacement"));
+			case "email":
+				return new EmailRule(emailProvider(rule), required(prefix, rule, "replacement"));
+			case "number":
+				final String minNumbers = required(prefix, rule, "minNumbers");
+				try {
+					return new NumberRule(Integer.parseInt(minNumbers), required(prefix, rule, "replacement"));
+				} catch (final NumberFormatException e) {
+					throw invalid(prefix + ".minNumbers", "not a number: " + minNumbers);
+				}
+			case "webLink":
+				return new WebLinkRule(required(prefix, rule, "replacement"));
+			case "weChat":
+				return new WeChatRule(required(prefix, rule, "replacement"));
+			case "newline":
+				return NewlineContentReplacer.INSTANCE;
+			default:
+				throw invalid(prefix + ".type", "unknown type: " + type);
+		}
+	}
+
+	@Nonnull
+	private static EmailContentReplacer.IEmailContentReplacerPatternProvider emailProvider(
+			@Nonnull final Map<String, String> rule) {
+		final boolean linear = Boolean.parseBoolean(rule.get("linear"));
+		final String domains = rule.get("domains");
+		if (domains == null || domains.trim().isEmpty()) {
+			return linear ?
+					LinearEmailContentReplacerPatternProvider.forDefaultRegex() :
+					EmailContentReplacerPatternProvider.forDefaultRegex();
+		}
+		final List<String> domainList = Arrays.asList(domains.trim().split("[,\\s]+"));
+		return linear ?
+				LinearEmailContentReplacerPatternProvider.forDomainTrie(domainList) :
+				EmailContentReplacerPatternProvider.forDomainTrie(domainList);
+	}
+
+	@Nonnull
+	private static String required(
+			@Nonnull final String prefix,
+			@Nonnull final Map<String, String> rule,
+			@Nonnull final String attribute) {
+		final String value = rule.get(attribute);
+		if (value == null) {
+			throw invalid(prefix + '.' + attribute, "missing");
+		}
+		return value;
+	}
+
+	@Nonnull
+	private static ContentReplacerList.Mode parseMode(@Nonnull final String key, @Nonnull final String value) {
+		try {
+			return ContentReplacerList.Mode.valueOf(value);
+		} catch (final IllegalArgumentException e) {
+			throw invalid(key, "unknown mode: " + value);
+		}
+	}
+
+	private static int parseIndex(@Nonnull final String key, @Nonnull final String index) {
+		try {
+			return Integer.parseInt(index);
+		} catch (final NumberFormatException e) {
+			throw invalid(key, "rule index is not a number: " + index);
+		}
+	}
+
+	@Nonnull
+	private static IllegalArgumentException invalid(@Nonnull final String key, @Nonnull final String message) {
+		return new IllegalArgumentException("Invalid rule [" + key + "]: " + message);
+	}
+}
@@ -0,0 +1,48 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+
+/**
+ * Finds matches in a string without going through {@link java.util.regex}. A {@link ContentReplacer} that returns a
+ * scanner from {@link ContentReplacer#scanner()} is matched with the scanner instead of its compiled
+ * {@link ContentReplacer#pattern()}, which allows hand-written or linear-time matchers to be plugged into a
+ * {@link ContentReplacerList}.
+ */
+public interface ContentScanner extends Serializable {
+	/**
+	 * Finds the leftmost match that starts at or after a given index, following the same rules as
+	 * {@link java.util.regex.Matcher#find(int)}.
+	 * @param input Text to search.
+	 * @param from Index to start searching from.
+	 * @param result Receives the position of the match if one is found.
+	 * @return True if a match was found.
+	 */
+	public boolean find(@Nonnull CharSequence input, int from, @Nonnull ScanResult result);
+
+	/**
+	 * Identifies the matches of this scanner in the key of the {@link ContentReplacementCache}: two scanners with the
+	 * same signature must find the same matches in the same input. The default is the class name, which suits
+	 * scanners without any configuration.
+	 * @return Non-null string.
+	 */
+	@Nonnull
+	public default String signature() {
+		return getClass().getName();
+	}
+}
@@ -0,0 +1,156 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A trie of email domains that is written out as a regex with shared prefixes factored out, so that "gmail", "gmx"
+ * and "hotmail" become {@code (?:g\s*m\s*(?:a\s*i\s*l|x)|h\s*o\s*t\s*m\s*a\s*i\s*l)}. A plain alternation of the
+ * domains tries every domain in turn at every candidate position, so its cost grows with the length of the list; in
+ * the factored regex at most one branch per distinct character is tried at each step, which keeps the cost
+ * independent of the number of domains. Like {@link EmailContentReplacerPatternProvider#constructEmailDomainRegex},
+ * whitespace is allowed between the characters of a domain.
+ * <p>
+ * The regex finds the same matches as the alternation of the domains in list order, given that it's only ever
+ * followed by optional parts (such as the top level domain). Such an alternation always settles on the first listed
+ * domain that matches, so a domain that extends an earlier listed one (such as "gmailx" after "gmail") can never be
+ * matched and is dropped. Every remaining domain is then listed before any domain that is a prefix of it, and the
+ * trie tries longer domains first to match that order.
+ */
+final class DomainTrie {
+	private static final class Node {
+		private final Map<Character, Node> children = new TreeMap<>();
+		private boolean terminal;
+	}
+
+	private final Node root = new Node();
+	private int size;
+
+	/**
+	 * Builds the trie for a list of domains.
+	 * @param domains Domains in order of preference, matched literally and case insensitively. Empty strings are
+	 * ignored.
+	 */
+	DomainTrie(@Nonnull final Collection<String> domains) {
+		for (final String domain: domains) {
+			add(domain.toLowerCase());
+		}
+	}
+
+	private void add(@Nonnull final String domain) {
+		if (domain.isEmpty()) {
+			return;
+		}
+		Node node = root;
+		for (int i = 0; i < domain.length(); i++) {
+			if (node.terminal) {
+				// an earlier domain is a prefix of this one and always matches first
+				return;
+			}
+			node = node.children.computeIfAbsent(domain.charAt(i), c -> new Node());
+		}
+		if (!node.terminal) {
+			node.terminal = true;
+			size++;
+		}
+	}
+
+	/**
+	 * Number of domains that can be matched, after dropping duplicates and domains extending earlier ones.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Writes the trie as a regex, to be compiled with {@link java.util.regex.Pattern#CASE_INSENSITIVE}. Groups are
+	 * non-capturing.
+	 * @return A regex that matches no input if the trie is empty.
+	 */
+	@Nonnull
+	String toRegex() {
+		if (root.children.isEmpty()) {
+			// an empty character class never matches
+			return "[^\\s\\S]";
+		}
+		final StringBuilder sb = new StringBuilder();
+		appendChildren(sb, root, "");
+		return sb.toString();
+	}
+
+	/**
+	 * Appends a separator followed by the alternation of a node's children.
+	 */
+	private static void appendChildren(
+			@Nonnull final StringBuilder sb,
+			@Nonnull final Node node,
+			@Nonnull final String separator) {
+		final List<Map.Entry<Character, Node>> children = new ArrayList<>(node.children.entrySet());
+		final boolean group = children.size() > 1;
+		sb.append(separator);
+		if (group) {
+			sb.append("(?:");
+		}
+		for (int i = 0; i < children.size(); i++) {
+			if (i > 0) {
+				sb.append('|');
+			}
+			appendLiteral(sb, children.get(i).getKey());
+			appendNode(sb, children.get(i).getValue());
+		}
+		if (group) {
+			sb.append(')');
+		}
+	}
+
+	/**
+	 * Appends what may follow a node's character: nothing, its children, or optionally its children if a domain
+	 * ends at the node. The optional group is greedy, so the longer domains are tried first.
+	 */
+	private static void appendNode(@Nonnull final StringBuilder sb, @Nonnull final Node node) {
+		if (node.children.isEmpty()) {
+			return;
+		}
+		if (node.terminal) {
+			sb.append("(?:");
+			appendChildren(sb, node, "\\s*");
+			sb.append(")?");
+		} else {
+			appendChildren(sb, node, "\\s*");
+		}
+	}
+
+	private static void appendLiteral(@Nonnull final StringBuilder sb, final char c) {
+		if (Character.isLetterOrDigit(c)) {
+			sb.append(c);
+		} else if (c < 128) {
+			sb.append('\\').append(c);
+		} else {
+			sb.append(String.format("\\u%04x", (int) c));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DomainTrie{size=" + size + '}';
+	}
+}
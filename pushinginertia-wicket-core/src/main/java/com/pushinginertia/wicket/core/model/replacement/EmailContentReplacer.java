@@ -1,6 +1,7 @@
 package com.pushinginertia.wicket.core.model.replacement;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.Serializable;
 
 /**
@@ -13,6 +14,12 @@ public abstract class EmailContentReplacer implements ContentReplacer {
 		public String pattern();
 	}
 
+	/**
+	 * The built-in email patterns can't match without an '@' sign, the word "at" or "(a)".
+	 */
+	private static final ContentPrefilter PREFILTER =
+			TriggerPrefilter.builder().chars("@\uff20\ufe6b").literals("at", "(a)").build();
+
 	private final IEmailContentReplacerPatternProvider provider;
 
 	public EmailContentReplacer() {
@@ -28,4 +35,26 @@ public abstract class EmailContentReplacer implements ContentReplacer {
 	public final String pattern() {
 		return provider.pattern();
 	}
+
+	/**
+	 * Uses the provider for matching if it's also a {@link ContentScanner}, such as
+	 * {@link LinearEmailContentReplacerPatternProvider}.
+	 */
+	@Nullable
+	@Override
+	public final ContentScanner scanner() {
+		return provider instanceof ContentScanner ? (ContentScanner) provider : null;
+	}
+
+	/**
+	 * Skips text without an '@' sign or its spelled out variations when one of the built-in providers is used.
+	 */
+	@Nullable
+	@Override
+	public final ContentPrefilter prefilter() {
+		final boolean builtIn =
+				provider instanceof EmailContentReplacerPatternProvider ||
+				provider instanceof LinearEmailContentReplacerPatternProvider;
+		return builtIn ? PREFILTER : null;
+	}
 }
@@ -1,6 +1,13 @@
 package com.pushinginertia.wicket.core.model.replacement;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.stream.Collectors;
 
@@ -55,12 +62,28 @@ public class EmailContentReplacerPatternProvider implements EmailContentReplacer
 			"([a-z]{1,5}|([a-z] ){1,5})[a-z]";  // generic top level domain
 
 	private static final EmailContentReplacerPatternProvider DEFAULT_REGEX =
-			new EmailContentReplacerPatternProvider(EMAIL_REGEX);
+			new EmailContentReplacerPatternProvider(EMAIL_REGEX, null, false);
+
+	/**
+	 * Providers created by deserialization, shared by every deserialized copy of the same provider.
+	 */
+	private static final Cache<SerializedForm, EmailContentReplacerPatternProvider> DESERIALIZED =
+			CacheBuilder.newBuilder().weakValues().build();
 
 	private final String pattern;
+	/**
+	 * Domains the pattern was built from, or null for the default regex.
+	 */
+	private final ImmutableList<String> emailDomains;
+	private final boolean domainTrie;
 
-	private EmailContentReplacerPatternProvider(@Nonnull final String pattern) {
+	private EmailContentReplacerPatternProvider(
+			@Nonnull final String pattern,
+			@Nullable final ImmutableList<String> emailDomains,
+			final boolean domainTrie) {
 		this.pattern = pattern;
+		this.emailDomains = emailDomains;
+		this.domainTrie = domainTrie;
 	}
 
 	public static EmailContentReplacerPatternProvider forDefaultRegex() {
@@ -76,6 +99,22 @@ public class EmailContentReplacerPatternProvider implements EmailContentReplacer
 	 */
 	public EmailContentReplacerPatternProvider(@Nonnull final Collection<String> emailDomains) {
 		this.pattern = '(' + EMAIL_REGEX + '|' + LOCAL_PART + AT_DOT + constructEmailDomainRegex(emailDomains) + ')';
+		this.emailDomains = ImmutableList.copyOf(emailDomains);
+		this.domainTrie = false;
+	}
+
+	/**
+	 * Matches the same emails as {@link #EmailContentReplacerPatternProvider(Collection)}, but the domain list is
+	 * compiled into a {@link DomainTrie} so that the cost of matching doesn't grow with the number of domains. This is
+	 * the better choice for long domain lists. Domains are matched literally: regex metacharacters in them are
+	 * escaped.
+	 * @param emailDomains Domains to match, in order of preference.
+	 */
+	public static EmailContentReplacerPatternProvider forDomainTrie(@Nonnull final Collection<String> emailDomains) {
+		return new EmailContentReplacerPatternProvider(
+				'(' + EMAIL_REGEX + '|' + LOCAL_PART + AT_DOT + constructEmailDomainTrieRegex(emailDomains) + ')',
+				ImmutableList.copyOf(emailDomains),
+				true);
 	}
 
 	/**
@@ -94,6 +133,14 @@ public class EmailContentReplacerPatternProvider implements EmailContentReplacer
 		return SUBDOMAIN + "*" + baseDomain + COMMON_TLDS;
 	}
 
+	/**
+	 * Same as {@link #constructEmailDomainRegex(Collection)} with the domains compiled into a {@link DomainTrie}.
+	 */
+	@Nonnull
+	static String constructEmailDomainTrieRegex(@Nonnull final Collection<String> emailDomains) {
+		return SUBDOMAIN + "*" + new DomainTrie(emailDomains).toRegex() + COMMON_TLDS;
+	}
+
 	private static String insertRegexWhitespace(@Nonnull final String s) {
 		final StringBuilder sb = new StringBuilder();
 		for (int i = 0; i < s.length(); i++) {
@@ -105,6 +152,56 @@ public class EmailContentReplacerPatternProvider implements EmailContentReplacer
 		return sb.toString();
 	}
 
+	/**
+	 * Serializes the domain list instead of the regex built from it, which is several kilobytes long.
+	 */
+	private Object writeReplace() {
+		return new SerializedForm(emailDomains == null ? null : emailDomains.toArray(new String[0]), domainTrie);
+	}
+
+	/**
+	 * What a provider is serialized as. The regex is built again on deserialization, once per distinct domain list,
+	 * and the default regex resolves to {@link #forDefaultRegex()}.
+	 */
+	private static final class SerializedForm implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final String[] emailDomains;
+		private final boolean domainTrie;
+
+		private SerializedForm(@Nullable final String[] emailDomains, final boolean domainTrie) {
+			this.emailDomains = emailDomains;
+			this.domainTrie = domainTrie;
+		}
+
+		private Object readResolve() {
+			if (emailDomains == null) {
+				return DEFAULT_REGEX;
+			}
+			return DESERIALIZED.asMap().computeIfAbsent(this, form -> {
+				final ImmutableList<String> domains = ImmutableList.copyOf(emailDomains);
+				return domainTrie ? forDomainTrie(domains) : new EmailContentReplacerPatternProvider(domains);
+			});
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof SerializedForm)) {
+				return false;
+			}
+			final SerializedForm that = (SerializedForm) o;
+			return domainTrie == that.domainTrie && Arrays.equals(emailDomains, that.emailDomains);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Arrays.hashCode(emailDomains) + (domainTrie ? 1 : 0);
+		}
+	}
+
 	@Override
 	public String pattern() {
 		return pattern;
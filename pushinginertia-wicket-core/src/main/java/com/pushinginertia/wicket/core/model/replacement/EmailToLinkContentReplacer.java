@@ -16,34 +16,66 @@
 package com.pushinginertia.wicket.core.model.replacement;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
- * Replaces email addresses found in a string with a link to a given page with some given text.
+ * Replaces email addresses found in a string with a link to a given page with some given text. The link can carry a
+ * {@link ContentLinkToken} computed from the matched address.
  */
 public class EmailToLinkContentReplacer extends EmailContentReplacer {
 	private static final long serialVersionUID = 2L;
 
 	private final String linkRef;
 	private final String linkName;
+	/**
+	 * Null if this instance was deserialized from a version without a writer.
+	 */
+	private final LinkContentReplacementWriter writer;
 
 	public EmailToLinkContentReplacer(final String linkRef, final String linkName) {
 		this.linkRef = linkRef;
 		this.linkName = linkName;
+		this.writer = new LinkContentReplacementWriter(linkRef, linkName, null);
 	}
 
 	public EmailToLinkContentReplacer(
 			@Nonnull final String linkRef,
 			@Nonnull final String linkName,
 			@Nonnull final IEmailContentReplacerPatternProvider provider) {
+		this(linkRef, linkName, provider, null);
+	}
+
+	/**
+	 * Creates a replacer whose links carry a token computed from each matched address.
+	 * @param linkRef Page to link to.
+	 * @param linkName Text of the link.
+	 * @param provider Pattern to match addresses with.
+	 * @param token Query parameter added to the link, or null for none.
+	 */
+	public EmailToLinkContentReplacer(
+			@Nonnull final String linkRef,
+			@Nonnull final String linkName,
+			@Nonnull final IEmailContentReplacerPatternProvider provider,
+			@Nullable final ContentLinkToken token) {
 		super(provider);
 		this.linkRef = linkRef;
 		this.linkName = linkName;
+		this.writer = new LinkContentReplacementWriter(linkRef, linkName, token);
 	}
 
+	/**
+	 * The link without any token.
+	 */
 	@Nonnull
 	@Override
 	public String replacement() {
-		return "<a href=\"" + linkRef + "\">" + linkName + "</a>";
+		return writer == null ? "<a href=\"" + linkRef + "\">" + linkName + "</a>" : writer.link();
+	}
+
+	@Nullable
+	@Override
+	public ContentReplacementWriter writer() {
+		return writer;
 	}
 
 	@Override
@@ -0,0 +1,180 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import javax.annotation.Nonnull;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * See {@link ContentLinkToken#sha256(String, String)}.
+ * <p>
+ * The secret never leaves memory: a token is serialized as just its parameter name and is deserialized as the token
+ * most recently created with the same parameter name, which must be created again before pages are deserialized in a
+ * new JVM. The matched text is hashed with the entities written by
+ * {@link org.apache.wicket.util.string.Strings#escapeMarkup(CharSequence, boolean, boolean)} decoded, so a match has
+ * the same token whether the model escapes its string before the replacements or in the same pass.
+ */
+final class HashedContentLinkToken implements ContentLinkToken {
+	private static final long serialVersionUID = 1L;
+
+	private static final HashFunction HASH_FUNCTION = Hashing.sha256();
+
+	/**
+	 * Digits of the token, one per 4 bits of the hash. Without digits, vowels and 'x', the token can't contain a
+	 * number, a number word or anything else that a built-in replacer matches, so that it's left alone by the
+	 * replacers after the one that wrote it in a {@link ContentReplacerList.Mode#SEQUENTIAL} list.
+	 */
+	private static final char[] TOKEN_DIGITS = "bcdfghjkmnpqrstv".toCharArray();
+
+	/**
+	 * Entities written by {@link org.apache.wicket.util.string.Strings#escapeMarkup(CharSequence, boolean, boolean)}
+	 * and the characters they stand for.
+	 */
+	private static final String[] ENTITIES = {"&lt;", "&gt;", "&amp;", "&quot;", "&#039;"};
+	private static final char[] ENTITY_CHARS = {'<', '>', '&', '"', '\''};
+
+	private static final ConcurrentMap<String, HashedContentLinkToken> REGISTRY = new ConcurrentHashMap<>();
+
+	private final String parameterName;
+	private final String secret;
+	/**
+	 * Identifies the secret in {@link #signature()} without giving it away.
+	 */
+	private final String secretDigest;
+
+	private HashedContentLinkToken(@Nonnull final String parameterName, @Nonnull final String secret) {
+		this.parameterName = ValidateAs.notNull(parameterName, "parameterName");
+		this.secret = ValidateAs.notNull(secret, "secret");
+		this.secretDigest = HASH_FUNCTION.hashUnencodedChars(secret).toString();
+	}
+
+	/**
+	 * Creates a token and registers it under its parameter name, replacing any token previously registered.
+	 * @param parameterName Name of the query parameter.
+	 * @param secret Key mixed into the hash.
+	 * @return New token.
+	 */
+	@Nonnull
+	static HashedContentLinkToken create(@Nonnull final String parameterName, @Nonnull final String secret) {
+		final HashedContentLinkToken token = new HashedContentLinkToken(parameterName, secret);
+		REGISTRY.put(parameterName, token);
+		return token;
+	}
+
+	@Nonnull
+	@Override
+	public String parameterName() {
+		return parameterName;
+	}
+
+	@Override
+	public void append(
+			@Nonnull final CharSequence input,
+			final int start,
+			final int end,
+			@Nonnull final StringBuilder out) {
+		final Hasher hasher = HASH_FUNCTION.newHasher();
+		hasher.putInt(secret.length()).putUnencodedChars(secret);
+		int i = start;
+		while (i < end) {
+			final char c = input.charAt(i);
+			final int entity = c == '&' ? entityAt(input, i, end) : -1;
+			if (entity < 0) {
+				hasher.putChar(c);
+				i++;
+			} else {
+				hasher.putChar(ENTITY_CHARS[entity]);
+				i += ENTITIES[entity].length();
+			}
+		}
+		final long bits = hasher.hash().asLong();
+		for (int shift = 60; shift >= 0; shift -= 4) {
+			out.append(TOKEN_DIGITS[(int) (bits >>> shift) & 0xf]);
+		}
+	}
+
+	/**
+	 * Finds which of {@link #ENTITIES} starts at an index.
+	 * @return index into {@link #ENTITIES}, or -1 if none ends before {@code end}
+	 */
+	private static int entityAt(@Nonnull final CharSequence input, final int index, final int end) {
+		for (int e = 0; e < ENTITIES.length; e++) {
+			final String entity = ENTITIES[e];
+			if (index + entity.length() <= end && regionMatches(input, index, entity)) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean regionMatches(
+			@Nonnull final CharSequence input,
+			final int index,
+			@Nonnull final String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (input.charAt(index + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Nonnull
+	@Override
+	public String signature() {
+		return "sha256:" + parameterName + ':' + secretDigest;
+	}
+
+	@Override
+	public String toString() {
+		return "HashedContentLinkToken{parameterName=" + parameterName + '}';
+	}
+
+	private Object writeReplace() {
+		return new Reference(parameterName);
+	}
+
+	/**
+	 * What a token is serialized as.
+	 */
+	private static final class Reference implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final String parameterName;
+
+		private Reference(@Nonnull final String parameterName) {
+			this.parameterName = parameterName;
+		}
+
+		private Object readResolve() throws ObjectStreamException {
+			final HashedContentLinkToken token = REGISTRY.get(parameterName);
+			if (token == null) {
+				throw new InvalidObjectException("No ContentLinkToken has been created with parameter name: " +
+						parameterName);
+			}
+			return token;
+		}
+	}
+}
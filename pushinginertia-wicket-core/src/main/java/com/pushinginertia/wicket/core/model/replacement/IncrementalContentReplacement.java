@@ -0,0 +1,421 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.MatchResult;
+
+/**
+ * Keeps the result of applying a {@link ContentReplacerList} to a text up to date while the text is edited, such as
+ * a long message that is previewed on every autosave. Only a window around each edit is scanned again and spliced
+ * into the previous result, so the matching cost of an edit depends on the size of the edit and not on the size of
+ * the text.
+ * <p>
+ * The text is divided into segments at line breaks that no match crosses. After an edit, scanning restarts at the
+ * segment boundary at least {@link #getMaxMatchLength()} characters before the edit and stops at the first boundary
+ * after the edit where the new segments line up with the old ones, so everything outside that window is reused. The
+ * result is the same as {@link ContentReplacerList#replaceEscaped(String)} (when escaping) or
+ * {@link ContentReplacerList#replace(String)} of a {@link ContentReplacerList.Mode#SINGLE_PASS} list, provided that
+ * no match, including any lookahead, is longer than the maximum match length and no pattern looks behind past a line
+ * break (which includes anchoring to the start of the text). Replacements follow the precedence of
+ * {@link ContentReplacerList.Mode#SINGLE_PASS} whatever the list's mode.
+ * <p>
+ * A text without line breaks is a single segment and is scanned in full on every edit. Instances aren't thread safe.
+ */
+public class IncrementalContentReplacement implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default bound on the length of a match that is guaranteed to be found.
+	 */
+	public static final int DEFAULT_MAX_MATCH_LENGTH = 256;
+
+	/**
+	 * A run of whole lines that no match crosses.
+	 */
+	private static final class Segment implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final int inputLength;
+		private final int outputLength;
+
+		private Segment(final int inputLength, final int outputLength) {
+			this.inputLength = inputLength;
+			this.outputLength = outputLength;
+		}
+	}
+
+	/**
+	 * A range of a string, viewed without copying. Matching against a window around an edit keeps the prefilters
+	 * and any replacer that finds nothing near the edit from reading the rest of the text.
+	 */
+	private static final class Window implements CharSequence {
+		private final String s;
+		private final int offset;
+		private final int length;
+
+		private Window(@Nonnull final String s, final int start, final int end) {
+			this.s = s;
+			this.offset = start;
+			this.length = end - start;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(final int index) {
+			if (index < 0 || index >= length) {
+				throw new StringIndexOutOfBoundsException(index);
+			}
+			return s.charAt(offset + index);
+		}
+
+		@Override
+		public CharSequence subSequence(final int start, final int end) {
+			if (start < 0 || end > length || start > end) {
+				throw new StringIndexOutOfBoundsException("[" + start + ", " + end + ") of length " + length);
+			}
+			return s.subSequence(offset + start, offset + end);
+		}
+
+		@Nonnull
+		@Override
+		public String toString() {
+			return s.substring(offset, offset + length);
+		}
+	}
+
+	/**
+	 * Scans the new text from a segment boundary, building new segments until they line up with the old ones.
+	 */
+	private final class Rescan implements ContentReplacerList.MatchVisitor {
+		private final String text;
+		/**
+		 * Index after the edited text in the new text; the old segments can only be reused after this.
+		 */
+		private final int editEnd;
+		/**
+		 * Change in length made by the edit.
+		 */
+		private final int delta;
+		private final int windowStart;
+		private final List<Segment> added = new ArrayList<>();
+		private final StringBuilder out = new StringBuilder();
+		private int segmentStart;
+		private int segmentOutputStart;
+		/**
+		 * Index after the last character written to the output.
+		 */
+		private int last;
+		/**
+		 * Index to search for the next match from.
+		 */
+		private int from;
+		/**
+		 * Index of the next character checked for a line break.
+		 */
+		private int lineCheck;
+		/**
+		 * Matches starting at or after this index are ignored as the end of the scanned window may have cut them
+		 * short.
+		 */
+		private int trusted;
+		/**
+		 * The part of the text being scanned, which the positions of the matches are relative to.
+		 */
+		private CharSequence window;
+		/**
+		 * Index of the first old segment that hasn't been replaced, with its input and output start.
+		 */
+		private int old;
+		private int oldStart;
+		private int oldOutputStart;
+		private boolean synced;
+
+		private Rescan(
+				@Nonnull final String text,
+				final int editEnd,
+				final int delta,
+				final int first,
+				final int inputStart,
+				final int outputStart) {
+			this.text = text;
+			this.editEnd = editEnd;
+			this.delta = delta;
+			this.windowStart = inputStart;
+			this.segmentStart = inputStart;
+			this.last = inputStart;
+			this.from = inputStart;
+			this.lineCheck = inputStart;
+			this.old = first;
+			this.oldStart = inputStart;
+			this.oldOutputStart = outputStart;
+		}
+
+		/**
+		 * Scans until the segments line up or the end of the text is reached.
+		 * @param initialEnd End of the first window of the text to scan.
+		 */
+		private void run(final int initialEnd) {
+			final int length = text.length();
+			int windowEnd = initialEnd;
+			while (true) {
+				final boolean whole = windowEnd == length;
+				trusted = whole ? length + 1 : windowEnd - maxMatchLength;
+				window = whole && windowStart == 0 ? text : new Window(text, windowStart, windowEnd);
+				replacerList.scan(window, from - windowStart, this);
+				if (synced) {
+					return;
+				}
+				// no matches start between from and trusted
+				if (whole) {
+					if (!closeSegments(length)) {
+						appendText(length);
+						if (segmentStart < length) {
+							added.add(new Segment(length - segmentStart, out.length() - segmentOutputStart));
+						}
+						old = segments.size();
+						oldOutputStart = output.length();
+					}
+					return;
+				}
+				if (closeSegments(trusted)) {
+					return;
+				}
+				windowEnd = (int) Math.min(length, 2L * windowEnd - windowStart);
+			}
+		}
+
+		@Override
+		public boolean visit(
+				@Nonnull final MatchResult match,
+				final int index,
+				@Nonnull final ContentReplacer replacer) {
+			// the match is relative to the window
+			final int start = windowStart + match.start();
+			final int end = windowStart + match.end();
+			if (start >= trusted || closeSegments(start)) {
+				return false;
+			}
+			appendText(start);
+			ContentReplacerList.writeReplacement(replacer, window, match, out, escape);
+			last = end;
+			from = end == start ? end + 1 : end;
+			return true;
+		}
+
+		private void appendText(final int end) {
+			ContentReplacerList.appendText(out, text, last, end, escape);
+			last = end;
+		}
+
+		/**
+		 * Ends a segment at every line start from {@link #from} up to an index, which no match may cover.
+		 * @return True if the segments have lined up with the old ones.
+		 */
+		private boolean closeSegments(final int end) {
+			for (int i = Math.max(lineCheck, Math.max(from - 1, segmentStart)); i < end; i++) {
+				if (text.charAt(i) != '\n') {
+					continue;
+				}
+				final int lineStart = i + 1;
+				appendText(lineStart);
+				added.add(new Segment(lineStart - segmentStart, out.length() - segmentOutputStart));
+				segmentStart = lineStart;
+				segmentOutputStart = out.length();
+				if (lineStart >= editEnd && linesUp(lineStart - delta)) {
+					synced = true;
+					return true;
+				}
+			}
+			lineCheck = Math.max(lineCheck, end);
+			return false;
+		}
+
+		/**
+		 * Indicates if an old segment starts at an index of the old text.
+		 */
+		private boolean linesUp(final int oldIndex) {
+			while (old < segments.size() && oldStart < oldIndex) {
+				final Segment segment = segments.get(old++);
+				oldStart += segment.inputLength;
+				oldOutputStart += segment.outputLength;
+			}
+			return old < segments.size() && oldStart == oldIndex;
+		}
+	}
+
+	private final ContentReplacerList replacerList;
+	private final boolean escape;
+	private final int maxMatchLength;
+	private final List<Segment> segments = new ArrayList<>();
+	private String input = "";
+	private String output = "";
+
+	/**
+	 * Creates an instance for an empty text with a maximum match length of {@link #DEFAULT_MAX_MATCH_LENGTH}.
+	 * @param replacerList Replacers to apply.
+	 * @param escape True to escape the text in the same pass, as done by
+	 * {@link ContentReplacerList#replaceEscaped(String)}.
+	 */
+	public IncrementalContentReplacement(@Nonnull final ContentReplacerList replacerList, final boolean escape) {
+		this(replacerList, escape, DEFAULT_MAX_MATCH_LENGTH);
+	}
+
+	/**
+	 * Creates an instance for an empty text.
+	 * @param replacerList Replacers to apply.
+	 * @param escape True to escape the text in the same pass, as done by
+	 * {@link ContentReplacerList#replaceEscaped(String)}.
+	 * @param maxMatchLength Length of the longest match that is guaranteed to be found; a longer window is scanned
+	 * on each edit.
+	 */
+	public IncrementalContentReplacement(
+			@Nonnull final ContentReplacerList replacerList,
+			final boolean escape,
+			final int maxMatchLength) {
+		this.replacerList = ValidateAs.notNull(replacerList, "replacerList");
+		this.escape = escape;
+		this.maxMatchLength = ValidateAs.positive(maxMatchLength, "maxMatchLength");
+	}
+
+	public int getMaxMatchLength() {
+		return maxMatchLength;
+	}
+
+	/**
+	 * The current text.
+	 */
+	@Nonnull
+	public String getInput() {
+		return input;
+	}
+
+	/**
+	 * The current text with replacements made.
+	 */
+	@Nonnull
+	public String getOutput() {
+		return output;
+	}
+
+	/**
+	 * Replaces the whole text and scans all of it.
+	 * @param text New text.
+	 * @return New output.
+	 */
+	@Nonnull
+	public String reset(@Nonnull final String text) {
+		ValidateAs.notNull(text, "text");
+		segments.clear();
+		output = "";
+		input = text;
+		final Rescan rescan = new Rescan(text, Integer.MAX_VALUE, 0, 0, 0, 0);
+		rescan.run(text.length());
+		splice(rescan, 0, 0);
+		return output;
+	}
+
+	/**
+	 * Replaces part of the text and scans the window around it.
+	 * @param start Index of the first character that is replaced.
+	 * @param end Index after the last character that is replaced.
+	 * @param text Text to insert in place of the range, which is empty to delete it.
+	 * @return New output.
+	 */
+	@Nonnull
+	public String edit(final int start, final int end, @Nonnull final String text) {
+		ValidateAs.notNull(text, "text");
+		if (start < 0 || start > end || end > input.length()) {
+			throw new IndexOutOfBoundsException(
+					"Invalid range [" + start + ", " + end + ") for text of length " + input.length());
+		}
+		final String newInput = input.substring(0, start) + text + input.substring(end);
+
+		// restart at the boundary of the segment that contains the first character a match reaching the edit could
+		// start at
+		final int restart = Math.max(0, start - maxMatchLength);
+		int first = 0;
+		int inputStart = 0;
+		int outputStart = 0;
+		while (first < segments.size() && inputStart + segments.get(first).inputLength <= restart) {
+			inputStart += segments.get(first).inputLength;
+			outputStart += segments.get(first).outputLength;
+			first++;
+		}
+
+		input = newInput;
+		final int editEnd = start + text.length();
+		final int delta = text.length() - (end - start);
+		final Rescan rescan = new Rescan(newInput, editEnd, delta, first, inputStart, outputStart);
+		// the first window lets the segments line up at the line start after the edit
+		int lineEnd = editEnd;
+		while (lineEnd < newInput.length() && newInput.charAt(lineEnd) != '\n') {
+			lineEnd++;
+		}
+		rescan.run((int) Math.min(newInput.length(), lineEnd + 1L + maxMatchLength));
+		splice(rescan, first, outputStart);
+		return output;
+	}
+
+	/**
+	 * Replaces the text with a new version, scanning only the window around the part that differs. This suits
+	 * callers that receive the whole text after each change: the changed range is found by comparing the two
+	 * versions, which is much cheaper than matching.
+	 * @param text New text.
+	 * @return New output.
+	 */
+	@Nonnull
+	public String update(@Nonnull final String text) {
+		ValidateAs.notNull(text, "text");
+		final int maxCommon = Math.min(input.length(), text.length());
+		int prefix = 0;
+		while (prefix < maxCommon && input.charAt(prefix) == text.charAt(prefix)) {
+			prefix++;
+		}
+		if (prefix == input.length() && prefix == text.length()) {
+			return output;
+		}
+		int suffix = 0;
+		while (suffix < maxCommon - prefix &&
+				input.charAt(input.length() - 1 - suffix) == text.charAt(text.length() - 1 - suffix)) {
+			suffix++;
+		}
+		return edit(prefix, input.length() - suffix, text.substring(prefix, text.length() - suffix));
+	}
+
+	/**
+	 * Replaces the old segments and output covered by a rescan with the new ones.
+	 */
+	private void splice(@Nonnull final Rescan rescan, final int first, final int outputStart) {
+		segments.subList(first, rescan.old).clear();
+		segments.addAll(first, rescan.added);
+		output = output.substring(0, outputStart) + rescan.out + output.substring(rescan.oldOutputStart);
+	}
+
+	@Override
+	public String toString() {
+		return "IncrementalContentReplacement{inputLength=" + input.length() + ", segments=" + segments.size() + '}';
+	}
+}
@@ -0,0 +1,265 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import javax.annotation.Nonnull;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates {@link ContentReplacementMetrics} in memory and publishes them as an MXBean. Replacers are grouped by
+ * class and pattern, so that copies of a replacer (such as those made when a page is deserialized) are counted
+ * together. Call {@link #install()} from {@link org.apache.wicket.Application#init()} to start measuring and
+ * {@link #uninstall()} when the application is destroyed.
+ */
+public class JmxContentReplacementMetrics extends ContentReplacementMetrics implements ContentReplacementMetricsMXBean {
+	/**
+	 * Name that {@link #install()} registers the MXBean under.
+	 */
+	public static final String OBJECT_NAME = "com.pushinginertia.wicket:type=ContentReplacementMetrics";
+
+	/**
+	 * Each histogram bucket covers input lengths up to four times longer than the previous one: below 16, below 64,
+	 * and so on, with the last bucket for 64K and longer.
+	 */
+	private static final int HISTOGRAM_BUCKETS = 8;
+
+	/**
+	 * Counters for one group of replacers, or for all lists or models.
+	 */
+	private static final class Counters {
+		private final LongAdder invocations = new LongAdder();
+		private final LongAdder skipped = new LongAdder();
+		private final LongAdder matches = new LongAdder();
+		private final LongAdder timedInvocations = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder[] histogram = new LongAdder[HISTOGRAM_BUCKETS];
+
+		private Counters() {
+			for (int i = 0; i < histogram.length; i++) {
+				histogram[i] = new LongAdder();
+			}
+		}
+
+		private void add(final int inputLength, final long nanos) {
+			invocations.increment();
+			histogram[bucket(inputLength)].increment();
+			if (nanos >= 0) {
+				timedInvocations.increment();
+				this.nanos.add(nanos);
+			}
+		}
+
+		@Nonnull
+		private long[] histogram() {
+			final long[] counts = new long[histogram.length];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = histogram[i].sum();
+			}
+			return counts;
+		}
+	}
+
+	/**
+	 * Counters by replacer name.
+	 */
+	private final ConcurrentMap<String, Counters> byName = new ConcurrentHashMap<>();
+
+	/**
+	 * Counters by replacer instance, so that the name is only built once for each replacer. Keys are compared by
+	 * identity and weakly referenced.
+	 */
+	private final LoadingCache<ContentReplacer, Counters> byReplacer =
+			CacheBuilder.newBuilder()
+					.weakKeys()
+					.build(CacheLoader.from(replacer -> byName.computeIfAbsent(name(replacer), n -> new Counters())));
+
+	private volatile Counters lists = new Counters();
+	private volatile Counters models = new Counters();
+	private final LongAdder budgetTrips = new LongAdder();
+
+	/**
+	 * Index of the histogram bucket for an input length.
+	 */
+	static int bucket(final int inputLength) {
+		final int log2 = 31 - Integer.numberOfLeadingZeros(inputLength);
+		return Math.max(0, Math.min(HISTOGRAM_BUCKETS - 1, log2 / 2 - 1));
+	}
+
+	@Nonnull
+	private static String name(@Nonnull final ContentReplacer replacer) {
+		final String className = replacer.getClass().getName();
+		return className.substring(className.lastIndexOf('.') + 1) +
+				String.format("[%08x]", replacer.pattern().hashCode());
+	}
+
+	/**
+	 * Registers this as an MXBean under {@link #OBJECT_NAME} with the platform MBean server and installs it with
+	 * {@link ContentReplacementMetrics#set(ContentReplacementMetrics)}.
+	 * @throws IllegalStateException if the MXBean can't be registered, such as when another instance is installed
+	 */
+	public void install() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (final JMException e) {
+			throw new IllegalStateException("Unable to register MXBean: " + OBJECT_NAME, e);
+		}
+		ContentReplacementMetrics.set(this);
+	}
+
+	/**
+	 * Stops measuring and unregisters the MXBean, if this instance is installed.
+	 */
+	public void uninstall() {
+		if (ContentReplacementMetrics.get() != this) {
+			return;
+		}
+		ContentReplacementMetrics.set(null);
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (final JMException e) {
+			throw new IllegalStateException("Unable to unregister MXBean: " + OBJECT_NAME, e);
+		}
+	}
+
+	@Override
+	public void replacerApplied(
+			@Nonnull final ContentReplacer replacer,
+			final int inputLength,
+			final int matches,
+			final long nanos) {
+		final Counters counters = byReplacer.getUnchecked(replacer);
+		counters.add(inputLength, nanos);
+		counters.matches.add(matches);
+	}
+
+	@Override
+	public void replacerSkipped(@Nonnull final ContentReplacer replacer, final int inputLength) {
+		final Counters counters = byReplacer.getUnchecked(replacer);
+		counters.add(inputLength, UNKNOWN_NANOS);
+		counters.skipped.increment();
+	}
+
+	@Override
+	public void listApplied(@Nonnull final ContentReplacerList list, final int inputLength, final long nanos) {
+		lists.add(inputLength, nanos);
+	}
+
+	@Override
+	public void modelRendered(final int inputLength, final long nanos) {
+		models.add(inputLength, nanos);
+	}
+
+	@Override
+	public void budgetTripped(final int inputLength) {
+		budgetTrips.increment();
+	}
+
+	@Override
+	public String[] getInputLengthBuckets() {
+		final String[] names = new String[HISTOGRAM_BUCKETS];
+		for (int i = 0; i < names.length - 1; i++) {
+			names[i] = "<" + (16 << (2 * i));
+		}
+		names[names.length - 1] = ">=" + (16 << (2 * (names.length - 2)));
+		return names;
+	}
+
+	@Override
+	public List<ReplacerStatistics> getReplacers() {
+		final List<ReplacerStatistics> statistics = new ArrayList<>(byName.size());
+		for (final Map.Entry<String, Counters> entry: byName.entrySet()) {
+			final Counters c = entry.getValue();
+			statistics.add(new ReplacerStatistics(
+					entry.getKey(),
+					c.invocations.sum(),
+					c.skipped.sum(),
+					c.matches.sum(),
+					c.timedInvocations.sum(),
+					c.nanos.sum(),
+					c.histogram()));
+		}
+		statistics.sort((a, b) -> a.getName().compareTo(b.getName()));
+		return statistics;
+	}
+
+	@Override
+	public long getListApplications() {
+		return lists.invocations.sum();
+	}
+
+	@Override
+	public long getListNanos() {
+		return lists.nanos.sum();
+	}
+
+	@Override
+	public long[] getListInputLengthHistogram() {
+		return lists.histogram();
+	}
+
+	@Override
+	public long getModelRenders() {
+		return models.invocations.sum();
+	}
+
+	@Override
+	public long getModelNanos() {
+		return models.nanos.sum();
+	}
+
+	@Override
+	public long[] getModelInputLengthHistogram() {
+		return models.histogram();
+	}
+
+	@Override
+	public long getBudgetTrips() {
+		return budgetTrips.sum();
+	}
+
+	@Override
+	public void reset() {
+		// measurements made while resetting may be lost, which doesn't matter for statistics
+		byReplacer.invalidateAll();
+		byName.clear();
+		lists = new Counters();
+		models = new Counters();
+		budgetTrips.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "JmxContentReplacementMetrics{replacers=" + byName.size() + ", listApplications=" +
+				getListApplications() + ", modelRenders=" + getModelRenders() + '}';
+	}
+}
@@ -0,0 +1,99 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+
+/**
+ * Detects the same obfuscated emails as {@link EmailContentReplacerPatternProvider} but matches them with
+ * {@link LinearPattern} instead of {@link java.util.regex}. The email regex nests repeating groups that can each
+ * consume spaced out letters, so the backtracking regex engine takes super-linear time on long runs of text like
+ * "a a a a ..."; this provider finds the same matches in linear time, which makes it safe for hostile input.
+ * <p>
+ * Pass an instance to {@link EmailContentReplacer}'s constructor; {@link #pattern()} still returns the equivalent
+ * regex.
+ */
+public class LinearEmailContentReplacerPatternProvider
+		implements EmailContentReplacer.IEmailContentReplacerPatternProvider, ContentScanner {
+	private static final long serialVersionUID = 1L;
+
+	private static final LinearEmailContentReplacerPatternProvider DEFAULT_REGEX =
+			new LinearEmailContentReplacerPatternProvider(EmailContentReplacerPatternProvider.forDefaultRegex());
+
+	private final EmailContentReplacerPatternProvider provider;
+	/**
+	 * Compiled form of the provider's pattern, rebuilt on first use after deserialization.
+	 */
+	private transient volatile LinearPattern linearPattern;
+
+	private LinearEmailContentReplacerPatternProvider(@Nonnull final EmailContentReplacerPatternProvider provider) {
+		this.provider = provider;
+		this.linearPattern = LinearPattern.compile(provider.pattern());
+	}
+
+	/**
+	 * Matches the same emails as {@link EmailContentReplacerPatternProvider#forDefaultRegex()}.
+	 */
+	public static LinearEmailContentReplacerPatternProvider forDefaultRegex() {
+		return DEFAULT_REGEX;
+	}
+
+	/**
+	 * Matches the same emails as {@link EmailContentReplacerPatternProvider#EmailContentReplacerPatternProvider(Collection)}.
+	 * @param emailDomains Domains to match.
+	 */
+	public LinearEmailContentReplacerPatternProvider(@Nonnull final Collection<String> emailDomains) {
+		this(new EmailContentReplacerPatternProvider(emailDomains));
+	}
+
+	/**
+	 * Matches the same emails as {@link EmailContentReplacerPatternProvider#forDomainTrie(Collection)}.
+	 * @param emailDomains Domains to match, in order of preference.
+	 */
+	public static LinearEmailContentReplacerPatternProvider forDomainTrie(
+			@Nonnull final Collection<String> emailDomains) {
+		return new LinearEmailContentReplacerPatternProvider(
+				EmailContentReplacerPatternProvider.forDomainTrie(emailDomains));
+	}
+
+	@Nonnull
+	private LinearPattern linearPattern() {
+		LinearPattern p = linearPattern;
+		if (p == null) {
+			p = LinearPattern.compile(provider.pattern());
+			linearPattern = p;
+		}
+		return p;
+	}
+
+	/**
+	 * Resolves a deserialized copy of the default provider to the shared instance.
+	 */
+	private Object readResolve() {
+		return provider == EmailContentReplacerPatternProvider.forDefaultRegex() ? DEFAULT_REGEX : this;
+	}
+
+	@Override
+	public String pattern() {
+		return provider.pattern();
+	}
+
+	@Override
+	public boolean find(@Nonnull final CharSequence input, final int from, @Nonnull final ScanResult result) {
+		return linearPattern().find(input, from, result);
+	}
+}
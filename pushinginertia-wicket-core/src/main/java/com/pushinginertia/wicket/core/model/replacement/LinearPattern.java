@@ -0,0 +1,878 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A case insensitive regex engine that runs in time linear in the length of the input (times the size of the
+ * compiled program), regardless of how the regex nests its quantifiers. The regex is compiled into a program for a
+ * Pike VM that advances every viable thread one character at a time, so there's no backtracking.
+ * <p>
+ * Matches are identical to those found by {@link java.util.regex.Pattern} compiled with
+ * {@link java.util.regex.Pattern#CASE_INSENSITIVE}: the leftmost match wins and, among matches at the same position,
+ * the one preferred by greedy quantifiers and alternation order. Only the subset of the syntax used by the content
+ * replacers is supported: literals, escapes, character classes with ranges, {@code . \s \S \d \D \w \W \b},
+ * groups (capturing groups are treated as non-capturing), alternation and greedy quantifiers
+ * ({@code * + ? {n} {n,} {n,m}}). Anything else causes an {@link IllegalArgumentException} when compiling. Input is
+ * processed per UTF-16 char and {@code \b} treats letters, digits and '_' as word characters.
+ */
+final class LinearPattern {
+	/**
+	 * Compiled programs keyed by regex and held weakly, for the same reason as the pattern cache in
+	 * {@link ContentReplacerList}.
+	 */
+	private static final ConcurrentMap<String, LinearPattern> CACHE =
+			CacheBuilder.newBuilder().weakValues().<String, LinearPattern>build().asMap();
+
+	/**
+	 * Arrays of the two {@link ThreadList}s used by {@link #find(CharSequence, int, ScanResult)} on each thread,
+	 * sized for the largest program that the thread has run (see {@link ThreadList#ThreadList(int[][], int)}). Only
+	 * arrays are kept, so that a thread doesn't hold on to any pattern or class of the application.
+	 */
+	private static final ThreadLocal<int[][]> SCRATCH = new ThreadLocal<>();
+
+	private static final byte CHAR = 0;
+	private static final byte SPLIT = 1;
+	private static final byte JMP = 2;
+	private static final byte WORD_BOUNDARY = 3;
+	private static final byte MATCH = 4;
+
+	private final String regex;
+	private final byte[] op;
+	/**
+	 * Target of a {@link #JMP} or preferred target of a {@link #SPLIT}.
+	 */
+	private final int[] x;
+	/**
+	 * Second target of a {@link #SPLIT}.
+	 */
+	private final int[] y;
+	/**
+	 * Character class tested by a {@link #CHAR} instruction.
+	 */
+	private final CharClass[] classes;
+	/**
+	 * Characters that can begin a match, used to skip quickly through text that can't match. Null if this can't be
+	 * determined (for example if the regex matches the empty string).
+	 */
+	private final CharClass startClass;
+
+	private LinearPattern(@Nonnull final String regex, @Nonnull final Program program) {
+		this.regex = regex;
+		this.op = Arrays.copyOf(program.op, program.size);
+		this.x = Arrays.copyOf(program.x, program.size);
+		this.y = Arrays.copyOf(program.y, program.size);
+		this.classes = program.classes.toArray(new CharClass[program.size]);
+		this.startClass = computeStartClass();
+	}
+
+	/**
+	 * Compiles a regex or returns the program previously compiled for it.
+	 * @param regex Regex to compile, matched case insensitively.
+	 * @return Shared compiled program.
+	 * @throws IllegalArgumentException If the regex uses unsupported syntax.
+	 */
+	@Nonnull
+	static LinearPattern compile(@Nonnull final String regex) {
+		final LinearPattern cached = CACHE.get(regex);
+		if (cached != null) {
+			return cached;
+		}
+		return CACHE.computeIfAbsent(regex, r -> {
+			final Program program = new Program();
+			new Parser(r).parse().emit(program);
+			program.add(MATCH, null);
+			return new LinearPattern(r, program);
+		});
+	}
+
+	/**
+	 * Drops the compiled programs.
+	 */
+	static void clearCache() {
+		CACHE.clear();
+	}
+
+	@Nonnull
+	String regex() {
+		return regex;
+	}
+
+	/**
+	 * Finds the leftmost match starting at or after a given index.
+	 * @param input Text to search.
+	 * @param from Index to start searching from.
+	 * @param result Receives the match.
+	 * @return True if a match was found.
+	 */
+	boolean find(@Nonnull final CharSequence input, final int from, @Nonnull final ScanResult result) {
+		final int length = input.length();
+		if (from < 0 || from > length) {
+			return false;
+		}
+
+		int[][] scratch = SCRATCH.get();
+		if (scratch == null || scratch[0].length < op.length) {
+			scratch = ThreadList.scratch(op.length);
+			SCRATCH.set(scratch);
+		}
+		ThreadList current = new ThreadList(scratch, 0).clear();
+		ThreadList next = new ThreadList(scratch, 1).clear();
+		int matchStart = -1;
+		int matchEnd = -1;
+		int pos = from;
+		while (true) {
+			if (matchStart < 0) {
+				if (current.size == 0 && startClass != null) {
+					while (pos < length && !startClass.matches(input.charAt(pos))) {
+						pos++;
+					}
+					if (pos == length) {
+						break;
+					}
+				}
+				// a new thread has lower priority than every thread that started earlier
+				addThread(current, 0, pos, pos, input);
+			} else if (current.size == 0) {
+				break;
+			}
+
+			final boolean hasChar = pos < length;
+			final char c = hasChar ? input.charAt(pos) : 0;
+			for (int i = 0; i < current.size; i++) {
+				final int pc = current.pc[i];
+				if (op[pc] == MATCH) {
+					// threads after this one have lower priority and are discarded
+					matchStart = current.start[i];
+					matchEnd = pos;
+					break;
+				}
+				if (hasChar && classes[pc].matches(c)) {
+					addThread(next, pc + 1, pos + 1, current.start[i], input);
+				}
+			}
+			if (!hasChar) {
+				break;
+			}
+
+			final ThreadList t = current;
+			current = next;
+			next = t.clear();
+			pos++;
+		}
+
+		if (matchStart < 0) {
+			return false;
+		}
+		result.set(input, matchStart, matchEnd);
+		return true;
+	}
+
+	/**
+	 * Adds the thread for an instruction to a list, following jumps, splits and assertions in priority order.
+	 */
+	private void addThread(
+			@Nonnull final ThreadList list,
+			final int pc0,
+			final int pos,
+			final int start,
+			@Nonnull final CharSequence input) {
+		final int[] stack = list.stack;
+		int sp = 0;
+		stack[sp++] = pc0;
+		while (sp > 0) {
+			final int pc = stack[--sp];
+			if (!list.visit(pc)) {
+				continue;
+			}
+			switch (op[pc]) {
+				case JMP:
+					stack[sp++] = x[pc];
+					break;
+				case SPLIT:
+					stack[sp++] = y[pc];
+					stack[sp++] = x[pc];
+					break;
+				case WORD_BOUNDARY:
+					if (isWordBoundary(input, pos)) {
+						stack[sp++] = pc + 1;
+					}
+					break;
+				default:
+					list.add(pc, start);
+			}
+		}
+	}
+
+	private static boolean isWordBoundary(@Nonnull final CharSequence input, final int pos) {
+		final boolean before = pos > 0 && isWordChar(input.charAt(pos - 1));
+		final boolean after = pos < input.length() && isWordChar(input.charAt(pos));
+		return before != after;
+	}
+
+	private static boolean isWordChar(final char c) {
+		return c == '_' || Character.isLetterOrDigit(c);
+	}
+
+	@Nullable
+	private CharClass computeStartClass() {
+		final CharClass.Builder builder = new CharClass.Builder();
+		final boolean[] seen = new boolean[op.length];
+		final int[] stack = new int[op.length * 2 + 2];
+		int sp = 0;
+		stack[sp++] = 0;
+		while (sp > 0) {
+			final int pc = stack[--sp];
+			if (seen[pc]) {
+				continue;
+			}
+			seen[pc] = true;
+			switch (op[pc]) {
+				case JMP:
+					stack[sp++] = x[pc];
+					break;
+				case SPLIT:
+					stack[sp++] = y[pc];
+					stack[sp++] = x[pc];
+					break;
+				case WORD_BOUNDARY:
+					stack[sp++] = pc + 1;
+					break;
+				case CHAR:
+					if (!builder.addAll(classes[pc])) {
+						return null;
+					}
+					break;
+				default:
+					// the empty string matches
+					return null;
+			}
+		}
+		return builder.build(false);
+	}
+
+	@Override
+	public String toString() {
+		return "LinearPattern{" + regex + '}';
+	}
+
+	/**
+	 * Threads that are alive at one position of the input, in priority order.
+	 */
+	private static final class ThreadList {
+		/**
+		 * Number of arrays in the scratch space of one list.
+		 */
+		private static final int ARRAYS = 4;
+
+		private final int[] pc;
+		private final int[] start;
+		private final int[] visited;
+		private final int[] stack;
+		/**
+		 * Generation of each list in the scratch space, which outlives the list.
+		 */
+		private final int[] generations;
+		private final int index;
+		private int generation;
+		private int size;
+
+		/**
+		 * Uses one list's part of a scratch space made by {@link #scratch(int)}.
+		 * @param index 0 or 1
+		 */
+		private ThreadList(@Nonnull final int[][] scratch, final int index) {
+			pc = scratch[index * ARRAYS];
+			start = scratch[index * ARRAYS + 1];
+			visited = scratch[index * ARRAYS + 2];
+			stack = scratch[index * ARRAYS + 3];
+			generations = scratch[2 * ARRAYS];
+			this.index = index;
+			generation = generations[index];
+		}
+
+		/**
+		 * Allocates the arrays of two lists for programs of up to a given size, followed by their generations.
+		 */
+		@Nonnull
+		private static int[][] scratch(final int programSize) {
+			final int[][] scratch = new int[2 * ARRAYS + 1][];
+			for (int i = 0; i < 2 * ARRAYS; i += ARRAYS) {
+				scratch[i] = new int[programSize];
+				scratch[i + 1] = new int[programSize];
+				scratch[i + 2] = new int[programSize];
+				scratch[i + 3] = new int[programSize * 2 + 2];
+			}
+			scratch[2 * ARRAYS] = new int[2];
+			return scratch;
+		}
+
+		@Nonnull
+		private ThreadList clear() {
+			size = 0;
+			if (++generation == 0) {
+				Arrays.fill(visited, 0);
+				generation = 1;
+			}
+			generations[index] = generation;
+			return this;
+		}
+
+		/**
+		 * Marks an instruction as visited at this position.
+		 * @return False if it was already visited by a thread of higher priority.
+		 */
+		private boolean visit(final int instruction) {
+			if (visited[instruction] == generation) {
+				return false;
+			}
+			visited[instruction] = generation;
+			return true;
+		}
+
+		private void add(final int instruction, final int threadStart) {
+			pc[size] = instruction;
+			start[size] = threadStart;
+			size++;
+		}
+	}
+
+	/**
+	 * A set of chars, stored as a bitmap for ASCII and a list of ranges for everything else.
+	 */
+	static final class CharClass {
+		private final long ascii0;
+		private final long ascii1;
+		private final char[] ranges;
+		private final boolean negated;
+
+		private CharClass(final long ascii0, final long ascii1, @Nonnull final char[] ranges, final boolean negated) {
+			this.ascii0 = ascii0;
+			this.ascii1 = ascii1;
+			this.ranges = ranges;
+			this.negated = negated;
+		}
+
+		boolean matches(final char c) {
+			final boolean in;
+			if (c < 64) {
+				in = (ascii0 & (1L << c)) != 0;
+			} else if (c < 128) {
+				in = (ascii1 & (1L << (c - 64))) != 0;
+			} else {
+				in = inRanges(c);
+			}
+			return in != negated;
+		}
+
+		private boolean inRanges(final char c) {
+			for (int i = 0; i < ranges.length; i += 2) {
+				if (c >= ranges[i] && c <= ranges[i + 1]) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		static final class Builder {
+			private long ascii0;
+			private long ascii1;
+			private final StringBuilder ranges = new StringBuilder();
+
+			@Nonnull
+			Builder add(final char c) {
+				return addRange(c, c);
+			}
+
+			@Nonnull
+			Builder addRange(final char from, final char to) {
+				for (int c = from; c <= to && c < 128; c++) {
+					if (c < 64) {
+						ascii0 |= 1L << c;
+					} else {
+						ascii1 |= 1L << (c - 64);
+					}
+				}
+				if (to >= 128) {
+					ranges.append((char) Math.max(from, 128)).append(to);
+				}
+				return this;
+			}
+
+			@Nonnull
+			Builder addAll(@Nonnull final String chars) {
+				for (int i = 0; i < chars.length(); i++) {
+					add(chars.charAt(i));
+				}
+				return this;
+			}
+
+			/**
+			 * Adds all members of another class.
+			 * @return False if the class is negated and can't be merged.
+			 */
+			boolean addAll(@Nonnull final CharClass other) {
+				if (other.negated) {
+					return false;
+				}
+				ascii0 |= other.ascii0;
+				ascii1 |= other.ascii1;
+				ranges.append(other.ranges);
+				return true;
+			}
+
+			/**
+			 * Adds the other case of every ASCII letter in the class, which is how
+			 * {@link java.util.regex.Pattern#CASE_INSENSITIVE} matches without
+			 * {@link java.util.regex.Pattern#UNICODE_CASE}.
+			 */
+			@Nonnull
+			Builder foldAsciiCase() {
+				for (char c = 'a'; c <= 'z'; c++) {
+					final char upper = (char) (c - 32);
+					final boolean lowerIn = (ascii1 & (1L << (c - 64))) != 0;
+					final boolean upperIn = (ascii1 & (1L << (upper - 64))) != 0;
+					if (lowerIn || upperIn) {
+						ascii1 |= (1L << (c - 64)) | (1L << (upper - 64));
+					}
+				}
+				return this;
+			}
+
+			@Nonnull
+			CharClass build(final boolean negated) {
+				return new CharClass(ascii0, ascii1, ranges.toString().toCharArray(), negated);
+			}
+		}
+	}
+
+	/**
+	 * Instructions being emitted by the compiler.
+	 */
+	private static final class Program {
+		private byte[] op = new byte[64];
+		private int[] x = new int[64];
+		private int[] y = new int[64];
+		private final List<CharClass> classes = new ArrayList<>();
+		private int size;
+
+		private int add(final byte instruction, @Nullable final CharClass charClass) {
+			if (size == op.length) {
+				op = Arrays.copyOf(op, size * 2);
+				x = Arrays.copyOf(x, size * 2);
+				y = Arrays.copyOf(y, size * 2);
+			}
+			op[size] = instruction;
+			classes.add(charClass);
+			return size++;
+		}
+	}
+
+	private abstract static class Node {
+		abstract void emit(@Nonnull Program p);
+	}
+
+	private static final class CharNode extends Node {
+		private final CharClass charClass;
+
+		private CharNode(@Nonnull final CharClass charClass) {
+			this.charClass = charClass;
+		}
+
+		@Override
+		void emit(@Nonnull final Program p) {
+			p.add(CHAR, charClass);
+		}
+	}
+
+	private static final class WordBoundaryNode extends Node {
+		@Override
+		void emit(@Nonnull final Program p) {
+			p.add(WORD_BOUNDARY, null);
+		}
+	}
+
+	private static final class ConcatNode extends Node {
+		private final List<Node> nodes;
+
+		private ConcatNode(@Nonnull final List<Node> nodes) {
+			this.nodes = nodes;
+		}
+
+		@Override
+		void emit(@Nonnull final Program p) {
+			for (final Node node: nodes) {
+				node.emit(p);
+			}
+		}
+	}
+
+	private static final class AlternationNode extends Node {
+		private final List<Node> alternatives;
+
+		private AlternationNode(@Nonnull final List<Node> alternatives) {
+			this.alternatives = alternatives;
+		}
+
+		@Override
+		void emit(@Nonnull final Program p) {
+			final List<Integer> jumps = new ArrayList<>();
+			final int last = alternatives.size() - 1;
+			for (int i = 0; i < last; i++) {
+				final int split = p.add(SPLIT, null);
+				p.x[split] = split + 1;
+				alternatives.get(i).emit(p);
+				jumps.add(p.add(JMP, null));
+				p.y[split] = p.size;
+			}
+			alternatives.get(last).emit(p);
+			for (final int jump: jumps) {
+				p.x[jump] = p.size;
+			}
+		}
+	}
+
+	private static final class RepeatNode extends Node {
+		private final Node node;
+		private final int min;
+		/**
+		 * Maximum number of repetitions, -1 if unbounded.
+		 */
+		private final int max;
+
+		private RepeatNode(@Nonnull final Node node, final int min, final int max) {
+			this.node = node;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		void emit(@Nonnull final Program p) {
+			for (int i = 0; i < min; i++) {
+				node.emit(p);
+			}
+			if (max < 0) {
+				final int split = p.add(SPLIT, null);
+				p.x[split] = split + 1;
+				node.emit(p);
+				final int jump = p.add(JMP, null);
+				p.x[jump] = split;
+				p.y[split] = p.size;
+			} else {
+				// optional repetitions are nested so that skipping one skips all that follow: x{1,3} == x(x(x)?)?
+				final int[] splits = new int[max - min];
+				for (int i = 0; i < splits.length; i++) {
+					splits[i] = p.add(SPLIT, null);
+					p.x[splits[i]] = splits[i] + 1;
+					node.emit(p);
+				}
+				for (final int split: splits) {
+					p.y[split] = p.size;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recursive descent parser for the supported regex syntax.
+	 */
+	private static final class Parser {
+		private static final String WHITESPACE = " \t\n\u000b\f\r";
+		private static final String LINE_TERMINATORS = "\n\r\u0085\u2028\u2029";
+
+		private final String regex;
+		private int pos;
+
+		private Parser(@Nonnull final String regex) {
+			this.regex = regex;
+		}
+
+		@Nonnull
+		private Node parse() {
+			final Node node = parseAlternation();
+			if (pos < regex.length()) {
+				throw error("Unmatched ')'");
+			}
+			return node;
+		}
+
+		@Nonnull
+		private IllegalArgumentException error(@Nonnull final String message) {
+			return new IllegalArgumentException(message + " near index " + pos + ": " + regex);
+		}
+
+		private boolean more() {
+			return pos < regex.length();
+		}
+
+		private char peek() {
+			return regex.charAt(pos);
+		}
+
+		@Nonnull
+		private Node parseAlternation() {
+			final List<Node> alternatives = new ArrayList<>();
+			alternatives.add(parseConcat());
+			while (more() && peek() == '|') {
+				pos++;
+				alternatives.add(parseConcat());
+			}
+			return alternatives.size() == 1 ? alternatives.get(0) : new AlternationNode(alternatives);
+		}
+
+		@Nonnull
+		private Node parseConcat() {
+			final List<Node> nodes = new ArrayList<>();
+			while (more() && peek() != '|' && peek() != ')') {
+				nodes.add(parseRepeat(parseAtom()));
+			}
+			return nodes.size() == 1 ? nodes.get(0) : new ConcatNode(nodes);
+		}
+
+		@Nonnull
+		private Node parseRepeat(@Nonnull final Node atom) {
+			Node node = atom;
+			while (more()) {
+				final char c = peek();
+				final int min;
+				final int max;
+				if (c == '*') {
+					pos++;
+					min = 0;
+					max = -1;
+				} else if (c == '+') {
+					pos++;
+					min = 1;
+					max = -1;
+				} else if (c == '?') {
+					pos++;
+					min = 0;
+					max = 1;
+				} else if (c == '{') {
+					pos++;
+					min = parseInt();
+					if (more() && peek() == ',') {
+						pos++;
+						max = more() && peek() == '}' ? -1 : parseInt();
+					} else {
+						max = min;
+					}
+					if (!more() || peek() != '}') {
+						throw error("Unclosed counted closure");
+					}
+					pos++;
+					if (max >= 0 && max < min) {
+						throw error("Illegal repetition range");
+					}
+				} else {
+					break;
+				}
+				if (more() && (peek() == '?' || peek() == '+')) {
+					throw error("Reluctant and possessive quantifiers are not supported");
+				}
+				node = new RepeatNode(node, min, max);
+			}
+			return node;
+		}
+
+		private int parseInt() {
+			final int start = pos;
+			while (more() && peek() >= '0' && peek() <= '9') {
+				pos++;
+			}
+			if (start == pos) {
+				throw error("Number expected");
+			}
+			return Integer.parseInt(regex.substring(start, pos));
+		}
+
+		@Nonnull
+		private Node parseAtom() {
+			final char c = regex.charAt(pos++);
+			switch (c) {
+				case '(':
+					if (more() && peek() == '?') {
+						pos++;
+						if (more() && peek() == ':') {
+							pos++;
+						} else if (more() && peek() == '<' && pos + 1 < regex.length()
+								&& Character.isLetter(regex.charAt(pos + 1))) {
+							// named group: treated like any other group
+							final int close = regex.indexOf('>', pos);
+							if (close < 0) {
+								throw error("Named group is missing trailing '>'");
+							}
+							pos = close + 1;
+						} else {
+							throw error("Unsupported group construct");
+						}
+					}
+					final Node group = parseAlternation();
+					if (!more() || peek() != ')') {
+						throw error("Unclosed group");
+					}
+					pos++;
+					return group;
+				case '[':
+					return new CharNode(parseClass());
+				case '.':
+					return new CharNode(new CharClass.Builder().addAll(LINE_TERMINATORS).build(true));
+				case '\\':
+					return parseEscape();
+				case '^':
+				case '$':
+					throw error("Anchors are not supported");
+				case '*':
+				case '+':
+				case '?':
+				case '{':
+					throw error("Dangling meta character '" + c + "'");
+				default:
+					return new CharNode(new CharClass.Builder().add(c).foldAsciiCase().build(false));
+			}
+		}
+
+		@Nonnull
+		private Node parseEscape() {
+			if (!more()) {
+				throw error("Unexpected end of regex");
+			}
+			final char c = regex.charAt(pos++);
+			switch (c) {
+				case 'b':
+					return new WordBoundaryNode();
+				case 's':
+				case 'S':
+				case 'd':
+				case 'D':
+				case 'w':
+				case 'W':
+					return new CharNode(predefined(Character.toLowerCase(c)).build(Character.isUpperCase(c)));
+				default:
+					return new CharNode(new CharClass.Builder().add(escapedChar(c)).foldAsciiCase().build(false));
+			}
+		}
+
+		@Nonnull
+		private static CharClass.Builder predefined(final char c) {
+			final CharClass.Builder builder = new CharClass.Builder();
+			switch (c) {
+				case 's':
+					return builder.addAll(WHITESPACE);
+				case 'd':
+					return builder.addRange('0', '9');
+				default:
+					return builder.addRange('a', 'z').addRange('A', 'Z').addRange('0', '9').add('_');
+			}
+		}
+
+		/**
+		 * Resolves an escape sequence that stands for a single character.
+		 */
+		private char escapedChar(final char c) {
+			switch (c) {
+				case 't':
+					return '\t';
+				case 'n':
+					return '\n';
+				case 'r':
+					return '\r';
+				case 'f':
+					return '\f';
+				case 'u':
+					if (pos + 4 > regex.length()) {
+						throw error("Illegal Unicode escape sequence");
+					}
+					try {
+						final char unicode = (char) Integer.parseInt(regex.substring(pos, pos + 4), 16);
+						pos += 4;
+						return unicode;
+					} catch (final NumberFormatException e) {
+						throw error("Illegal Unicode escape sequence");
+					}
+				default:
+					if (Character.isLetterOrDigit(c)) {
+						throw error("Unsupported escape sequence \\" + c);
+					}
+					return c;
+			}
+		}
+
+		@Nonnull
+		private CharClass parseClass() {
+			final CharClass.Builder builder = new CharClass.Builder();
+			boolean negated = false;
+			if (more() && peek() == '^') {
+				negated = true;
+				pos++;
+			}
+			boolean first = true;
+			while (true) {
+				if (!more()) {
+					throw error("Unclosed character class");
+				}
+				char c = regex.charAt(pos++);
+				if (c == ']' && !first) {
+					break;
+				}
+				first = false;
+				if (c == '[' || (c == '&' && more() && peek() == '&')) {
+					throw error("Nested classes and intersections are not supported");
+				}
+				if (c == '\\') {
+					if (!more()) {
+						throw error("Unclosed character class");
+					}
+					final char e = regex.charAt(pos++);
+					if (e == 's' || e == 'd' || e == 'w') {
+						builder.addAll(predefined(e).build(false));
+						continue;
+					}
+					if (e == 'S' || e == 'D' || e == 'W' || e == 'b') {
+						throw error("Unsupported escape sequence in character class \\" + e);
+					}
+					c = escapedChar(e);
+				}
+				// a '-' is a range unless it's at the end of the class
+				if (pos + 1 < regex.length() && peek() == '-' && regex.charAt(pos + 1) != ']') {
+					pos++;
+					char to = regex.charAt(pos++);
+					if (to == '\\') {
+						if (!more()) {
+							throw error("Unclosed character class");
+						}
+						to = escapedChar(regex.charAt(pos++));
+					}
+					if (to < c) {
+						throw error("Illegal character range");
+					}
+					builder.addRange(c, to);
+				} else {
+					builder.add(c);
+				}
+			}
+			return builder.foldAsciiCase().build(negated);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.regex.MatchResult;
+
+/**
+ * Writes the link of {@link EmailToLinkContentReplacer} and {@link NumberSequenceToLinkContentReplacer}. The constant
+ * parts of the link are concatenated once, so a match costs a few appends plus the {@link ContentLinkToken}, if any.
+ * The link is written as given, without the expansion of '$' and '\' done for replacement strings.
+ */
+final class LinkContentReplacementWriter implements ContentReplacementWriter {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The whole link without a token.
+	 */
+	private final String link;
+	/**
+	 * The link up to the value of the token, or null if there's no token.
+	 */
+	private final String prefix;
+	/**
+	 * The link after the value of the token, or null if there's no token.
+	 */
+	private final String suffix;
+	private final ContentLinkToken token;
+
+	LinkContentReplacementWriter(
+			@Nonnull final String linkRef,
+			@Nonnull final String linkName,
+			@Nullable final ContentLinkToken token) {
+		this.link = "<a href=\"" + linkRef + "\">" + linkName + "</a>";
+		this.token = token;
+		if (token == null) {
+			this.prefix = null;
+			this.suffix = null;
+		} else {
+			// the token goes at the end of the query, before any fragment
+			final int hash = linkRef.indexOf('#');
+			final String path = hash < 0 ? linkRef : linkRef.substring(0, hash);
+			final String fragment = hash < 0 ? "" : linkRef.substring(hash);
+			final String separator = path.indexOf('?') < 0 ? "?" : "&amp;";
+			this.prefix = "<a href=\"" + path + separator + token.parameterName() + '=';
+			this.suffix = fragment + "\">" + linkName + "</a>";
+		}
+	}
+
+	/**
+	 * The whole link without a token, which the replacers return as their replacement string.
+	 */
+	@Nonnull
+	String link() {
+		return link;
+	}
+
+	@Override
+	public void append(
+			@Nonnull final CharSequence input,
+			@Nonnull final MatchResult match,
+			@Nonnull final StringBuilder out,
+			final boolean escape) {
+		if (token == null) {
+			out.append(link);
+		} else {
+			out.append(prefix);
+			token.append(input, match.start(), match.end(), out);
+			out.append(suffix);
+		}
+	}
+
+	@Nonnull
+	@Override
+	public String signature() {
+		return token == null ? link : prefix + '\u0000' + token.signature() + '\u0000' + suffix;
+	}
+}
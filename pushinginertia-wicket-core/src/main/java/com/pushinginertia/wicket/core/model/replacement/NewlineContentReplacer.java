@@ -16,6 +16,7 @@
 package com.pushinginertia.wicket.core.model.replacement;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Replaces newlines entered by a user into &lt;br&gt; tags for HTML presentation.
@@ -25,8 +26,14 @@ public class NewlineContentReplacer implements ContentReplacer {
 
 	public static final NewlineContentReplacer INSTANCE = new NewlineContentReplacer();
 
+	private static final ContentPrefilter PREFILTER = TriggerPrefilter.builder().chars("\n").build();
+
 	private NewlineContentReplacer() {}
 
+	private Object readResolve() {
+		return INSTANCE;
+	}
+
 	@Nonnull
 	@Override
 	public String pattern() {
@@ -38,4 +45,10 @@ public class NewlineContentReplacer implements ContentReplacer {
 	public String replacement() {
 		return "<br/>";
 	}
+
+	@Nullable
+	@Override
+	public ContentPrefilter prefilter() {
+		return PREFILTER;
+	}
 }
@@ -1,10 +1,12 @@
 package com.pushinginertia.wicket.core.model.replacement;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Replaces a sequence of numbers in a block of text content (presumably identifying a phone number or some other
- * identification number).
+ * identification number). Matching is done by a {@link NumberSequenceScanner}, which normalizes the many ways of
+ * writing a number and runs in linear time; {@link #pattern()} is a regex that matches the most common of them.
  */
 public abstract class NumberSequenceContentReplacer implements ContentReplacer {
 	private static final long serialVersionUID = 1L;
@@ -33,11 +35,33 @@ public abstract class NumberSequenceContentReplacer implements ContentReplacer {
 	 */
 	private static final String BASE_REGEX_PRE = "([\\(\uff08]\\s*)?" + NUM + SEP + NUM + "){";
 	private static final String BASE_REGEX_POST = ",}(\\s*[\uff09\\)])?";
+	/**
+	 * The ASCII digits and number words.
+	 */
+	private static final ContentPrefilter ASCII_TRIGGERS =
+			TriggerPrefilter.builder()
+					.range('0', '9')
+					.literals("cero", "zero", "oh", "one", "two", "three", "four")
+					.literals("five", "six", "seven", "eight", "nine")
+					.build();
+	/**
+	 * Every match contains an ASCII digit or number word, or another character read as a number by the scanner.
+	 */
+	private static final ContentPrefilter PREFILTER = new ContentPrefilter() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public boolean mightMatch(@Nonnull final CharSequence input) {
+			return ASCII_TRIGGERS.mightMatch(input) || NumberSequenceScanner.containsNonAsciiNumber(input);
+		}
+	};
 
 	private final String pattern;
+	private final NumberSequenceScanner scanner;
 
 	public NumberSequenceContentReplacer(final int minNumbers) {
 		this.pattern = BASE_REGEX_PRE + (minNumbers - 1) + BASE_REGEX_POST;
+		this.scanner = new NumberSequenceScanner(minNumbers);
 	}
 
 	@Nonnull
@@ -46,6 +70,22 @@ public abstract class NumberSequenceContentReplacer implements ContentReplacer {
 		return pattern;
 	}
 
+	/**
+	 * Matches with a {@link NumberSequenceScanner}. Null if this instance was deserialized from a version without a
+	 * scanner, in which case the {@link #pattern()} is used.
+	 */
+	@Nullable
+	@Override
+	public final ContentScanner scanner() {
+		return scanner;
+	}
+
+	@Nullable
+	@Override
+	public final ContentPrefilter prefilter() {
+		return PREFILTER;
+	}
+
 	@Override
 	public String toString() {
 		return "NumberSequenceContentReplacer{" + pattern + '}';
@@ -0,0 +1,242 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Finds sequences of numbers for {@link NumberSequenceContentReplacer} in linear time. Instead of matching a regex
+ * with large character classes and word alternations inside a repeated group, the input is read as a stream of
+ * tokens: every way of writing a single number is normalized to a number token, separators to a separator token and
+ * anything else ends the sequence. Each token keeps the span of the original text that it was read from, so matches
+ * are reported (and replaced) in the original text.
+ * <p>
+ * The following are read as numbers, comparable to folding the input with NFKC and a table of number words:
+ * <ul>
+ *     <li>decimal digits in any script, including fullwidth and mathematical digits</li>
+ *     <li>other numeric characters such as circled, parenthesized and superscript numbers</li>
+ *     <li>Chinese numerals zero to ten, including the financial forms</li>
+ *     <li>the English number words "zero" to "nine", "cero" and "oh", in any case and also in fullwidth letters</li>
+ * </ul>
+ * Separators are the characters {@code ()._*,} and space, their fullwidth forms, the ideographic space and any dash.
+ * A sequence may also be enclosed in parentheses. For the characters and words matched by
+ * {@link NumberSequenceContentReplacer#pattern()}, the matches are identical to those of the regex: number words
+ * can overlap (as in "twone" or "sevenine"), so a sequence that's too short is read again from the character after
+ * its start. Only positions inside the tokens of that sequence can start another number, which keeps the scan linear
+ * for a given minimum number of numbers.
+ */
+final class NumberSequenceScanner implements ContentScanner {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Chinese numerals for zero to ten, followed by the financial forms (simplified and traditional).
+	 */
+	private static final String CHINESE_NUMERALS =
+			"\u96f6\u3007\u4e00\u4e8c\u4e09\u56db\u4e94\u516d\u4e03\u516b\u4e5d\u5341" +
+			"\u58f9\u8d30\u8cb3\u53c1\u53c3\u8086\u4f0d\u9646\u9678\u67d2\u634c\u7396\u62fe";
+
+	/**
+	 * Number words in lower case. None is a prefix of another, so at most one can start at any position.
+	 */
+	private static final String[] WORDS = {
+			"zero", "cero", "oh", "one", "two", "three", "four", "five", "six", "seven", "eight", "nine"
+	};
+
+	/**
+	 * Offset from a fullwidth ASCII form (U+FF01 to U+FF5E) to the ASCII character.
+	 */
+	private static final int FULLWIDTH_OFFSET = 0xfee0;
+
+	private final int minNumbers;
+
+	NumberSequenceScanner(final int minNumbers) {
+		this.minNumbers = ValidateAs.positive(minNumbers, "minNumbers");
+	}
+
+	@Nonnull
+	@Override
+	public String signature() {
+		return getClass().getName() + ':' + minNumbers;
+	}
+
+	@Override
+	public boolean find(@Nonnull final CharSequence input, final int from, @Nonnull final ScanResult result) {
+		final int length = input.length();
+		int count = 0;
+		int first = -1;
+		int last = -1;
+		int i = Math.max(from, 0);
+		while (i < length) {
+			final int end = numberEnd(input, i);
+			if (end > 0) {
+				if (count == 0) {
+					first = i;
+				}
+				count++;
+				last = end;
+				i = end;
+			} else if (count > 0 && isSeparator(input.charAt(i))) {
+				i++;
+			} else if (count >= minNumbers) {
+				break;
+			} else {
+				// another sequence may start inside any token of this one, as "nine" does in "sevenine"
+				i = count > 0 ? first + 1 : i + 1;
+				count = 0;
+			}
+		}
+		if (count < minNumbers) {
+			return false;
+		}
+		result.set(input, openingParenthesis(input, from, first), closingParenthesis(input, last));
+		return true;
+	}
+
+	/**
+	 * Reads a number token.
+	 * @return Index after the token, or -1 if there's no number at the index.
+	 */
+	static int numberEnd(@Nonnull final CharSequence input, final int index) {
+		final char c = input.charAt(index);
+		if (c < 128) {
+			if (c >= '0' && c <= '9') {
+				return index + 1;
+			}
+			return wordEnd(input, index);
+		}
+		if (isFullwidthLetter(c)) {
+			return wordEnd(input, index);
+		}
+		if (CHINESE_NUMERALS.indexOf(c) >= 0) {
+			return index + 1;
+		}
+		final int codePoint = Character.codePointAt(input, index);
+		final int type = Character.getType(codePoint);
+		if (type == Character.DECIMAL_DIGIT_NUMBER ||
+				(type == Character.OTHER_NUMBER && Character.getNumericValue(codePoint) >= 0)) {
+			return index + Character.charCount(codePoint);
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads a number word, ignoring case and width.
+	 * @return Index after the word, or -1 if no word starts at the index.
+	 */
+	private static int wordEnd(@Nonnull final CharSequence input, final int index) {
+		final int length = input.length();
+		for (final String word: WORDS) {
+			if (index + word.length() > length) {
+				continue;
+			}
+			int i = 0;
+			while (i < word.length() && fold(input.charAt(index + i)) == word.charAt(i)) {
+				i++;
+			}
+			if (i == word.length()) {
+				return index + i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Maps a fullwidth ASCII form to ASCII and an upper case ASCII letter to lower case.
+	 */
+	private static char fold(final char c) {
+		final char ascii = c >= '\uff01' && c <= '\uff5e' ? (char) (c - FULLWIDTH_OFFSET) : c;
+		return ascii >= 'A' && ascii <= 'Z' ? (char) (ascii + ('a' - 'A')) : ascii;
+	}
+
+	private static boolean isFullwidthLetter(final char c) {
+		return (c >= '\uff21' && c <= '\uff3a') || (c >= '\uff41' && c <= '\uff5a');
+	}
+
+	private static boolean isSeparator(final char c) {
+		switch (fold(c)) {
+			case '(':
+			case ')':
+			case '.':
+			case '_':
+			case '*':
+			case ',':
+			case ' ':
+			case '\u3000':
+			case '\u2212':
+				return true;
+			default:
+				return Character.getType(c) == Character.DASH_PUNCTUATION;
+		}
+	}
+
+	private static boolean isOpeningParenthesis(final char c) {
+		return c == '(' || c == '\uff08';
+	}
+
+	private static boolean isClosingParenthesis(final char c) {
+		return c == ')' || c == '\uff09';
+	}
+
+	/**
+	 * Same as {@code \s} in a regex.
+	 */
+	private static boolean isWhitespace(final char c) {
+		return c == ' ' || (c >= '\t' && c <= '\r');
+	}
+
+	/**
+	 * Extends the start of a sequence back over an opening parenthesis and any whitespace after it.
+	 */
+	private static int openingParenthesis(@Nonnull final CharSequence input, final int from, final int first) {
+		int i = first;
+		while (i > from && isWhitespace(input.charAt(i - 1))) {
+			i--;
+		}
+		return i > from && isOpeningParenthesis(input.charAt(i - 1)) ? i - 1 : first;
+	}
+
+	/**
+	 * Extends the end of a sequence over any whitespace and a closing parenthesis.
+	 */
+	private static int closingParenthesis(@Nonnull final CharSequence input, final int last) {
+		int i = last;
+		while (i < input.length() && isWhitespace(input.charAt(i))) {
+			i++;
+		}
+		return i < input.length() && isClosingParenthesis(input.charAt(i)) ? i + 1 : last;
+	}
+
+	/**
+	 * Indicates if a string contains a number that isn't ASCII, which the ASCII triggers of
+	 * {@link NumberSequenceContentReplacer}'s prefilter would miss.
+	 */
+	static boolean containsNonAsciiNumber(@Nonnull final CharSequence input) {
+		for (int i = 0; i < input.length(); i++) {
+			final char c = input.charAt(i);
+			if (c >= 128 && (isFullwidthLetter(c) || numberEnd(input, i) > 0)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "NumberSequenceScanner{minNumbers=" + minNumbers + '}';
+	}
+}
@@ -16,31 +16,62 @@
 package com.pushinginertia.wicket.core.model.replacement;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Replaces a sequence of numbers in a block of text content (presumably identifying a phone number or some other
- * identification number) with a link to a given page with some given text.
+ * identification number) with a link to a given page with some given text. The link can carry a
+ * {@link ContentLinkToken} computed from the matched sequence.
  */
 public class NumberSequenceToLinkContentReplacer extends NumberSequenceContentReplacer {
 	private static final long serialVersionUID = 3L;
 
 	private final String linkRef;
 	private final String linkName;
+	/**
+	 * Null if this instance was deserialized from a version without a writer.
+	 */
+	private final LinkContentReplacementWriter writer;
 
 	public NumberSequenceToLinkContentReplacer(final int minNumbers, final String linkRef, final String linkName) {
+		this(minNumbers, linkRef, linkName, null);
+	}
+
+	/**
+	 * Creates a replacer whose links carry a token computed from each matched sequence.
+	 * @param minNumbers Minimum count of numbers in a sequence.
+	 * @param linkRef Page to link to.
+	 * @param linkName Text of the link.
+	 * @param token Query parameter added to the link, or null for none.
+	 */
+	public NumberSequenceToLinkContentReplacer(
+			final int minNumbers,
+			@Nonnull final String linkRef,
+			@Nonnull final String linkName,
+			@Nullable final ContentLinkToken token) {
 		super(minNumbers);
 		this.linkRef = linkRef;
 		this.linkName = linkName;
+		this.writer = new LinkContentReplacementWriter(linkRef, linkName, token);
 	}
 
+	/**
+	 * The link without any token.
+	 */
 	@Nonnull
 	@Override
 	public String replacement() {
-		return "<a href=\"" + linkRef + "\">" + linkName + "</a>";
+		return writer == null ? "<a href=\"" + linkRef + "\">" + linkName + "</a>" : writer.link();
+	}
+
+	@Nullable
+	@Override
+	public ContentReplacementWriter writer() {
+		return writer;
 	}
 
 	@Override
 	public String toString() {
 		return "NumberSequenceToLinkContentReplacer{linkRef=" + linkRef + ", linkName=" + linkName + '}';
 	}
-}
+}
\ No newline at end of file
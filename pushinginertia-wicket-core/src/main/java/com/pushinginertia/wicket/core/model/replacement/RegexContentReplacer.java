@@ -0,0 +1,54 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.pushinginertia.commons.core.validation.ValidateAs;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Replaces matches of an arbitrary regex with a fixed replacement, for rules that are defined in configuration
+ * rather than code (see {@link ContentReplacerRegistry}). The replacement may refer to groups as in
+ * {@link java.util.regex.Matcher#appendReplacement(StringBuffer, String)}.
+ */
+public class RegexContentReplacer implements ContentReplacer {
+	private static final long serialVersionUID = 1L;
+
+	private final String pattern;
+	private final String replacement;
+
+	public RegexContentReplacer(@Nonnull final String pattern, @Nonnull final String replacement) {
+		this.pattern = ValidateAs.notNull(pattern, "pattern");
+		this.replacement = ValidateAs.notNull(replacement, "replacement");
+	}
+
+	@Nonnull
+	@Override
+	public String pattern() {
+		return pattern;
+	}
+
+	@Nonnull
+	@Override
+	public String replacement() {
+		return replacement;
+	}
+
+	@Override
+	public String toString() {
+		return "RegexContentReplacer{pattern=" + pattern + ", replacement=" + replacement + '}';
+	}
+}
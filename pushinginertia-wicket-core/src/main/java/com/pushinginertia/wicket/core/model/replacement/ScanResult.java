@@ -0,0 +1,103 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+import java.util.regex.MatchResult;
+
+/**
+ * Position of a match found by a {@link ContentScanner}. Instances are mutable so that one instance can be reused for
+ * every match in a string. Scanners don't capture groups, so only group 0 (the whole match) is available.
+ */
+public final class ScanResult implements MatchResult {
+	private CharSequence input;
+	private int start = -1;
+	private int end = -1;
+
+	/**
+	 * Records a match.
+	 * @param input Text that was searched.
+	 * @param start Index of the first character of the match.
+	 * @param end Index after the last character of the match.
+	 */
+	public void set(@Nonnull final CharSequence input, final int start, final int end) {
+		if (start < 0 || end < start || end > input.length()) {
+			throw new IndexOutOfBoundsException(
+					"Invalid match [" + start + ", " + end + ") for input of length " + input.length());
+		}
+		this.input = input;
+		this.start = start;
+		this.end = end;
+	}
+
+	private void checkMatch() {
+		if (input == null) {
+			throw new IllegalStateException("No match available");
+		}
+	}
+
+	private static void checkGroup(final int group) {
+		if (group != 0) {
+			throw new IndexOutOfBoundsException("No group " + group);
+		}
+	}
+
+	@Override
+	public int start() {
+		checkMatch();
+		return start;
+	}
+
+	@Override
+	public int start(final int group) {
+		checkGroup(group);
+		return start();
+	}
+
+	@Override
+	public int end() {
+		checkMatch();
+		return end;
+	}
+
+	@Override
+	public int end(final int group) {
+		checkGroup(group);
+		return end();
+	}
+
+	@Override
+	public String group() {
+		checkMatch();
+		return input.subSequence(start, end).toString();
+	}
+
+	@Override
+	public String group(final int group) {
+		checkGroup(group);
+		return group();
+	}
+
+	@Override
+	public int groupCount() {
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return "ScanResult{start=" + start + ", end=" + end + '}';
+	}
+}
@@ -0,0 +1,194 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link ContentPrefilter} for patterns that can't match unless the text contains at least one of a set of trigger
+ * characters or literal strings, such as '@' or "http". Literals are compared case insensitively for ASCII letters,
+ * the same as a pattern compiled with {@link java.util.regex.Pattern#CASE_INSENSITIVE}. The text is scanned once.
+ */
+public final class TriggerPrefilter implements ContentPrefilter {
+	private static final long serialVersionUID = 1L;
+
+	public static class Builder {
+		private final StringBuilder chars = new StringBuilder();
+		private final List<String> literals = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * Adds trigger characters, which are compared exactly.
+		 */
+		public Builder chars(@Nonnull final String chars) {
+			this.chars.append(chars);
+			return this;
+		}
+
+		/**
+		 * Adds a range of trigger characters.
+		 * @param first First character in the range.
+		 * @param last Last character in the range (inclusive).
+		 */
+		public Builder range(final char first, final char last) {
+			for (char c = first; c <= last; c++) {
+				chars.append(c);
+			}
+			return this;
+		}
+
+		/**
+		 * Adds trigger literals, compared case insensitively for ASCII letters.
+		 */
+		public Builder literals(@Nonnull final String... literals) {
+			for (final String literal: literals) {
+				if (literal.isEmpty()) {
+					throw new IllegalArgumentException("Literals can't be empty");
+				}
+				this.literals.add(toLowerAscii(literal));
+			}
+			return this;
+		}
+
+		public TriggerPrefilter build() {
+			return new TriggerPrefilter(this);
+		}
+	}
+
+	/**
+	 * Triggers in the ASCII range: characters that trigger by themselves, and the lower case first characters of
+	 * literals.
+	 */
+	private final boolean[] asciiChars = new boolean[128];
+	private final boolean[] asciiLiteralStarts = new boolean[128];
+	/**
+	 * Sorted non-ASCII trigger characters.
+	 */
+	private final char[] otherChars;
+	private final char[] otherLiteralStarts;
+	private final String[] literals;
+
+	private TriggerPrefilter(@Nonnull final Builder builder) {
+		final StringBuilder other = new StringBuilder();
+		for (int i = 0; i < builder.chars.length(); i++) {
+			final char c = builder.chars.charAt(i);
+			if (c < 128) {
+				asciiChars[c] = true;
+			} else {
+				other.append(c);
+			}
+		}
+		otherChars = sorted(other);
+
+		final StringBuilder otherStarts = new StringBuilder();
+		for (final String literal: builder.literals) {
+			final char c = literal.charAt(0);
+			if (c < 128) {
+				asciiLiteralStarts[c] = true;
+			} else {
+				otherStarts.append(c);
+			}
+		}
+		otherLiteralStarts = sorted(otherStarts);
+		literals = builder.literals.toArray(new String[builder.literals.size()]);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	@Nonnull
+	private static char[] sorted(@Nonnull final CharSequence s) {
+		final char[] chars = s.toString().toCharArray();
+		Arrays.sort(chars);
+		return chars;
+	}
+
+	@Nonnull
+	private static String toLowerAscii(@Nonnull final String s) {
+		final char[] chars = s.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = toLowerAscii(chars[i]);
+		}
+		return new String(chars);
+	}
+
+	private static char toLowerAscii(final char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	@Override
+	public boolean mightMatch(@Nonnull final CharSequence input) {
+		final int length = input.length();
+		for (int i = 0; i < length; i++) {
+			// trigger characters are compared exactly, and only literals ignore case
+			final char c = input.charAt(i);
+			final boolean literalStart;
+			if (c < 128) {
+				if (asciiChars[c]) {
+					return true;
+				}
+				literalStart = asciiLiteralStarts[toLowerAscii(c)];
+			} else {
+				if (Arrays.binarySearch(otherChars, c) >= 0) {
+					return true;
+				}
+				literalStart = Arrays.binarySearch(otherLiteralStarts, c) >= 0;
+			}
+			if (literalStart && literalAt(input, i)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Indicates if any literal occurs at an index.
+	 */
+	private boolean literalAt(@Nonnull final CharSequence input, final int index) {
+		for (final String literal: literals) {
+			if (regionMatches(input, index, literal)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean regionMatches(
+			@Nonnull final CharSequence input,
+			final int index,
+			@Nonnull final String lowerCaseLiteral) {
+		if (index + lowerCaseLiteral.length() > input.length()) {
+			return false;
+		}
+		for (int i = 0; i < lowerCaseLiteral.length(); i++) {
+			if (toLowerAscii(input.charAt(index + i)) != lowerCaseLiteral.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "TriggerPrefilter{literals=" + Arrays.toString(literals) + '}';
+	}
+}
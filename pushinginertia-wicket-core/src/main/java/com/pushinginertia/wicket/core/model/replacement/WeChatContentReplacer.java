@@ -16,6 +16,7 @@
 package com.pushinginertia.wicket.core.model.replacement;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Replaces WeChat ID references in blocks of text.
@@ -26,9 +27,24 @@ public abstract class WeChatContentReplacer implements ContentReplacer {
 	private static final String PATTERN =
 			"(微 ?信号?|wechat)(\\s*id)?\\s*[:：]?\\s*[a-zA-Z0-9_\\.]+([(（].*[)）])?";
 
+	/**
+	 * Every match starts with "微" or "wechat".
+	 */
+	private static final ContentPrefilter PREFILTER =
+			TriggerPrefilter.builder().chars("微").literals("wechat").build();
+
 	@Nonnull
 	@Override
 	public String pattern() {
 		return PATTERN;
 	}
+
+	/**
+	 * Skips text that doesn't contain "微" or "wechat", unless a subclass changes the pattern.
+	 */
+	@Nullable
+	@Override
+	public ContentPrefilter prefilter() {
+		return PATTERN.equals(pattern()) ? PREFILTER : null;
+	}
 }
@@ -16,9 +16,13 @@
 package com.pushinginertia.wicket.core.model.replacement;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
- * Replaces common ways that users might enter links to other sites with static replacement text.
+ * Replaces common ways that users might enter links to other sites with static replacement text. By default links are
+ * found with a regex. Subclasses can opt into a linear-time scanner with {@link #WebLinkContentReplacer(boolean)},
+ * which also covers internationalized hosts, fullwidth dots and suffixes of more than one label (see
+ * {@link WebLinkScanner}), and so replaces more text than the regex.
  */
 public abstract class WebLinkContentReplacer implements ContentReplacer {
 	private static final long serialVersionUID = 1L;
@@ -32,10 +36,52 @@ public abstract class WebLinkContentReplacer implements ContentReplacer {
 	 */
 	private static final String LINK_REGEX =
 			"(https?://([a-z0-9-]+\\.)+[a-z]{2,}" + LINK_PATH + "|www\\s*\\.\\s*[a-z0-9-]+\\s*\\.\\s*[a-z]{2,7}" + LINK_PATH + ")";
+	/**
+	 * Every link starts with "http" or "www", which the scanner also reads in fullwidth letters.
+	 */
+	private static final ContentPrefilter PREFILTER =
+			TriggerPrefilter.builder().literals("http", "www").chars("\uff28\uff37\uff48\uff57").build();
+
+	private final boolean useScanner;
+
+	/**
+	 * Creates a replacer that finds links with the regex.
+	 */
+	public WebLinkContentReplacer() {
+		this(false);
+	}
+
+	/**
+	 * Creates a replacer.
+	 * @param useScanner True to find links with a {@link WebLinkScanner} and the bundled public suffixes instead of the
+	 * regex.
+	 */
+	public WebLinkContentReplacer(final boolean useScanner) {
+		this.useScanner = useScanner;
+	}
 
 	@Nonnull
 	@Override
 	public String pattern() {
 		return LINK_REGEX;
 	}
+
+	/**
+	 * Matches with a {@link WebLinkScanner} and the bundled public suffixes if the scanner was opted into, unless a
+	 * subclass changes the pattern.
+	 */
+	@Nullable
+	@Override
+	public ContentScanner scanner() {
+		return useScanner && LINK_REGEX.equals(pattern()) ? WebLinkScanner.forDefaultSuffixes() : null;
+	}
+
+	/**
+	 * Skips text that doesn't contain "http" or "www", unless a subclass changes the pattern.
+	 */
+	@Nullable
+	@Override
+	public ContentPrefilter prefilter() {
+		return LINK_REGEX.equals(pattern()) ? PREFILTER : null;
+	}
 }
@@ -0,0 +1,453 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.google.common.collect.Ordering;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Finds links for {@link WebLinkContentReplacer} in linear time. A link starts with "http://", "https://" or "www"
+ * followed by a dot, and the host that follows is read as a sequence of labels separated by dots. A match never reads
+ * more than {@link #MAX_HOST_LENGTH} characters of a host, and the labels read for a "www" link are reused by the
+ * links that start within them, so each character is read a bounded number of times.
+ * <ul>
+ *     <li>After "http://", the host ends with the last label that starts with at least two letters, of which only the
+ *     letters are included (as in the regex), or with the last punycode label.</li>
+ *     <li>After "www", the host ends with the last label that is a known public suffix, such as "com" in
+ *     "www.example.com" or "uk" in "www.example.co.uk". Whitespace is allowed around the first two dots, as in
+ *     "www . example . com". Without a known suffix, the host ends as in the regex: after two to seven letters at the
+ *     start of the second label.</li>
+ * </ul>
+ * A path starting with '/' extends the link up to the next space or line break. Labels may contain letters and digits
+ * in any script, so internationalized hosts are found in both Unicode and punycode form. Besides '.', the fullwidth
+ * and ideographic full stops separate labels, and fullwidth ASCII letters are read as their ASCII forms.
+ * <p>
+ * Wherever {@link WebLinkContentReplacer#pattern()} matches, this scanner finds a link starting at the same position,
+ * which may extend further to cover the whole host.
+ */
+final class WebLinkScanner implements ContentScanner {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Longest host (in characters, including dots) that is read; the longest host allowed in DNS.
+	 */
+	private static final int MAX_HOST_LENGTH = 253;
+
+	/**
+	 * Most letters taken from the second label after "www" when no known suffix is found, as in the regex.
+	 */
+	private static final int MAX_FALLBACK_SUFFIX_LENGTH = 7;
+
+	/**
+	 * Offset from a fullwidth ASCII form (U+FF01 to U+FF5E) to the ASCII character.
+	 */
+	private static final int FULLWIDTH_OFFSET = 0xfee0;
+
+	private static final WebLinkScanner DEFAULT = new WebLinkScanner(loadSuffixes("public-suffixes.txt"));
+
+	/**
+	 * Known public suffixes in lower case.
+	 */
+	private final Set<String> suffixes;
+	private final int maxSuffixLength;
+
+	/**
+	 * Value of {@link #signature()}, computed on first use.
+	 */
+	private transient volatile String signature;
+
+	/**
+	 * Creates a scanner.
+	 * @param suffixes Public suffixes that end the host of a "www" link, in any case.
+	 */
+	WebLinkScanner(@Nonnull final Collection<String> suffixes) {
+		this.suffixes = new HashSet<>();
+		int maxLength = 0;
+		for (final String suffix: suffixes) {
+			this.suffixes.add(lowerCase(suffix, 0, suffix.length()));
+			maxLength = Math.max(maxLength, suffix.length());
+		}
+		this.maxSuffixLength = maxLength;
+	}
+
+	/**
+	 * Scanner for the public suffixes bundled in the resource "public-suffixes.txt".
+	 */
+	@Nonnull
+	static WebLinkScanner forDefaultSuffixes() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Reads a list of suffixes, one per line, skipping blank lines and comments starting with '#'.
+	 * @param resource Name of the resource relative to this class.
+	 * @return Suffixes as listed.
+	 */
+	@Nonnull
+	static Set<String> loadSuffixes(@Nonnull final String resource) {
+		final InputStream in = WebLinkScanner.class.getResourceAsStream(resource);
+		if (in == null) {
+			throw new IllegalStateException("Missing resource: " + resource);
+		}
+		try (final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			final Set<String> suffixes = new HashSet<>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && line.charAt(0) != '#') {
+					suffixes.add(line);
+				}
+			}
+			return suffixes;
+		} catch (final IOException e) {
+			throw new IllegalStateException("Unable to read resource: " + resource, e);
+		}
+	}
+
+	/**
+	 * The class name and a digest of the suffixes.
+	 */
+	@Nonnull
+	@Override
+	public String signature() {
+		String s = signature;
+		if (s == null) {
+			final Hasher hasher = Hashing.sha256().newHasher();
+			for (final String suffix: Ordering.natural().sortedCopy(suffixes)) {
+				hasher.putInt(suffix.length()).putUnencodedChars(suffix);
+			}
+			s = getClass().getName() + ':' + hasher.hash();
+			signature = s;
+		}
+		return s;
+	}
+
+	@Override
+	public boolean find(@Nonnull final CharSequence input, final int from, @Nonnull final ScanResult result) {
+		HostLabels labels = null;
+		for (int i = from; i < input.length(); i++) {
+			final char c = fold(input.charAt(i));
+			final int end;
+			if (c == 'h') {
+				end = httpLinkEnd(input, i);
+			} else if (c == 'w') {
+				if (labels == null) {
+					labels = new HostLabels(input);
+				}
+				end = wwwLinkEnd(input, i, labels);
+			} else {
+				continue;
+			}
+			if (end >= 0) {
+				result.set(input, i, end);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads a link starting with "http://" or "https://".
+	 * @return Index after the link, or -1 if there's none at the index.
+	 */
+	private static int httpLinkEnd(@Nonnull final CharSequence input, final int start) {
+		int i = literalEnd(input, start, "http");
+		if (i < 0) {
+			return -1;
+		}
+		if (i < input.length() && fold(input.charAt(i)) == 's') {
+			i++;
+		}
+		i = literalEnd(input, i, "://");
+		if (i < 0) {
+			return -1;
+		}
+
+		final int limit = Math.min(input.length(), i + MAX_HOST_LENGTH);
+		int hostEnd = -1;
+		int labelStart = i;
+		boolean first = true;
+		while (true) {
+			final int labelEnd = labelEnd(input, labelStart, limit);
+			if (labelEnd == labelStart) {
+				break;
+			}
+			if (!first) {
+				final int suffixEnd = suffixEnd(input, labelStart, labelEnd);
+				if (suffixEnd >= 0) {
+					hostEnd = suffixEnd;
+				}
+			}
+			if (labelEnd >= limit || !isDot(input.charAt(labelEnd))) {
+				break;
+			}
+			labelStart = labelEnd + 1;
+			first = false;
+		}
+		return hostEnd < 0 ? -1 : pathEnd(input, hostEnd);
+	}
+
+	/**
+	 * The end of the suffix of a link after "http://" in a label: a punycode label or the letters at its start.
+	 * @return Index after the suffix, or -1 if the label doesn't start with a suffix.
+	 */
+	private static int suffixEnd(@Nonnull final CharSequence input, final int start, final int end) {
+		if (end - start > 4 && literalEnd(input, start, "xn--") >= 0) {
+			return end;
+		}
+		// letters in ASCII or in another script, but not both, so that text right after the link isn't taken along
+		final boolean ascii = isAsciiLetter(fold(input.charAt(start)));
+		int i = start;
+		while (i < end && (ascii ? isAsciiLetter(fold(input.charAt(i))) : isNonAsciiLetter(input.charAt(i)))) {
+			i++;
+		}
+		return i - start >= 2 ? i : -1;
+	}
+
+	/**
+	 * Reads a link starting with "www" and a dot.
+	 * @return Index after the link, or -1 if there's none at the index.
+	 */
+	private int wwwLinkEnd(@Nonnull final CharSequence input, final int start, @Nonnull final HostLabels labels) {
+		int i = literalEnd(input, start, "www");
+		if (i < 0) {
+			return -1;
+		}
+		i = spacedDotEnd(input, i);
+		if (i < 0) {
+			return -1;
+		}
+
+		final int limit = Math.min(input.length(), i + MAX_HOST_LENGTH);
+		final int firstLabelEnd = labelEnd(input, i, limit);
+		if (firstLabelEnd == i) {
+			return -1;
+		}
+		final int secondLabelStart = spacedDotEnd(input, firstLabelEnd);
+		if (secondLabelStart < 0 || secondLabelStart >= limit) {
+			return -1;
+		}
+
+		int hostEnd = labels.suffixEnd(secondLabelStart, limit);
+		if (hostEnd < 0) {
+			int letters = 0;
+			while (secondLabelStart + letters < input.length() &&
+					letters < MAX_FALLBACK_SUFFIX_LENGTH &&
+					isAsciiLetter(fold(input.charAt(secondLabelStart + letters)))) {
+				letters++;
+			}
+			if (letters < 2) {
+				return -1;
+			}
+			hostEnd = secondLabelStart + letters;
+		}
+		return pathEnd(input, hostEnd);
+	}
+
+	private boolean isSuffix(@Nonnull final CharSequence input, final int start, final int end) {
+		return end - start <= maxSuffixLength && suffixes.contains(lowerCase(input, start, end));
+	}
+
+	/**
+	 * The labels after the second label of "www" links, which are separated by dots without whitespace. The hosts of
+	 * links starting at successive "www"s overlap (as in "www.1www.1www.1"), so the labels are read once per call to
+	 * {@link #find(CharSequence, int, ScanResult)} and shared by the links that start within them.
+	 */
+	private final class HostLabels {
+		private final CharSequence input;
+		/**
+		 * Start of the first label read, or -1 if none has been read.
+		 */
+		private int start = -1;
+		/**
+		 * Start of the label being read.
+		 */
+		private int labelStart;
+		/**
+		 * Index reached in the label being read.
+		 */
+		private int index;
+		/**
+		 * End of the last label read that is a known suffix, or -1 if none is.
+		 */
+		private int suffixEnd;
+		/**
+		 * True once the host has ended.
+		 */
+		private boolean ended;
+
+		HostLabels(@Nonnull final CharSequence input) {
+			this.input = input;
+		}
+
+		/**
+		 * Finds the end of the last label that is a known suffix in a host.
+		 * @param from Start of the first label of the host.
+		 * @param limit Index that the labels must end by.
+		 * @return Index after the suffix, or -1 if no label is a known suffix.
+		 */
+		int suffixEnd(final int from, final int limit) {
+			// a label start in the labels already read follows a dot, as labels don't contain dots
+			if (start < 0 || from < start || from > labelStart || from > start && !isDot(input.charAt(from - 1))) {
+				start = from;
+				labelStart = from;
+				index = from;
+				suffixEnd = -1;
+				ended = false;
+			}
+			while (!ended) {
+				while (index < limit && isLabelChar(input.charAt(index))) {
+					index++;
+				}
+				if (index == limit && index < input.length() && isLabelChar(input.charAt(index))) {
+					// the label goes beyond the limit: read on with the limit of a later link
+					break;
+				}
+				if (index == labelStart) {
+					ended = true;
+				} else {
+					if (isSuffix(input, labelStart, index)) {
+						suffixEnd = index;
+					}
+					if (index == input.length() || !isDot(input.charAt(index))) {
+						ended = true;
+					} else {
+						index++;
+						labelStart = index;
+					}
+				}
+			}
+			return suffixEnd > from ? suffixEnd : -1;
+		}
+	}
+
+	/**
+	 * Matches a literal in lower case ASCII, ignoring case and fullwidth forms.
+	 * @return Index after the literal, or -1 if it isn't at the index.
+	 */
+	private static int literalEnd(@Nonnull final CharSequence input, final int start, @Nonnull final String literal) {
+		if (start + literal.length() > input.length()) {
+			return -1;
+		}
+		for (int i = 0; i < literal.length(); i++) {
+			if (fold(input.charAt(start + i)) != literal.charAt(i)) {
+				return -1;
+			}
+		}
+		return start + literal.length();
+	}
+
+	/**
+	 * Reads a dot with optional whitespace on either side.
+	 * @return Index after the whitespace that follows the dot, or -1 if there's no dot.
+	 */
+	private static int spacedDotEnd(@Nonnull final CharSequence input, final int start) {
+		int i = start;
+		while (i < input.length() && isWhitespace(input.charAt(i))) {
+			i++;
+		}
+		if (i == input.length() || !isDot(input.charAt(i))) {
+			return -1;
+		}
+		i++;
+		while (i < input.length() && isWhitespace(input.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static int labelEnd(@Nonnull final CharSequence input, final int start, final int limit) {
+		int i = start;
+		while (i < limit && isLabelChar(input.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static int pathEnd(@Nonnull final CharSequence input, final int start) {
+		if (start == input.length() || input.charAt(start) != '/') {
+			return start;
+		}
+		int i = start + 1;
+		while (i < input.length() && input.charAt(i) != ' ' && input.charAt(i) != '\n') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Maps fullwidth ASCII forms to ASCII and ASCII letters to lower case.
+	 */
+	private static char fold(final char c) {
+		final char ascii = c >= '\uff01' && c <= '\uff5e' ? (char) (c - FULLWIDTH_OFFSET) : c;
+		return ascii >= 'A' && ascii <= 'Z' ? (char) (ascii + ('a' - 'A')) : ascii;
+	}
+
+	@Nonnull
+	private static String lowerCase(@Nonnull final CharSequence s, final int start, final int end) {
+		final char[] chars = new char[end - start];
+		for (int i = start; i < end; i++) {
+			chars[i - start] = Character.toLowerCase(fold(s.charAt(i)));
+		}
+		return new String(chars);
+	}
+
+	private static boolean isAsciiLetter(final char c) {
+		return c >= 'a' && c <= 'z';
+	}
+
+	private static boolean isNonAsciiLetter(final char c) {
+		return c >= '\u0080' && !(c >= '\uff01' && c <= '\uff5e') && Character.isLetter(c);
+	}
+
+	private static boolean isLabelChar(final char c) {
+		final char folded = fold(c);
+		if (folded < '\u0080') {
+			return isAsciiLetter(folded) || folded >= '0' && folded <= '9' || folded == '-';
+		}
+		return Character.isLetterOrDigit(c);
+	}
+
+	/**
+	 * The full stop and its fullwidth, halfwidth and ideographic forms.
+	 */
+	private static boolean isDot(final char c) {
+		return c == '.' || c == '\uff0e' || c == '\uff61' || c == '\u3002';
+	}
+
+	/**
+	 * The characters matched by "\s" in a regex.
+	 */
+	private static boolean isWhitespace(final char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000b' || c == '\f' || c == '\r';
+	}
+
+	@Override
+	public String toString() {
+		return "WebLinkScanner{suffixes=" + suffixes.size() + '}';
+	}
+}
@@ -0,0 +1,209 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.form.behavior;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class IllegalValueMatcherTest {
+	/**
+	 * Illegal words as they were matched before {@link IllegalValueMatcher}, token by token.
+	 */
+	private static boolean containsToken(final Set<String> illegalValuesLowerCase, final String input) {
+		final Splitter splitter = Splitter.on(CharMatcher.anyOf(". -&/")).omitEmptyStrings().trimResults();
+		for (final String token: splitter.split(input.toLowerCase())) {
+			if (illegalValuesLowerCase.contains(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static byte[] serialize(final Object o) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(o);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(final byte[] bytes) throws IOException, ClassNotFoundException {
+		try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return in.readObject();
+		}
+	}
+
+	@Test
+	public void ofWords() {
+		final IllegalValueMatcher badWords = IllegalValueMatcher.ofWords(ImmutableSet.of("badword1", "badword2"));
+		Assert.assertTrue(badWords.matches("A sentence with badword1."));
+		Assert.assertTrue(badWords.matches("Badword2 in the sentence."));
+		Assert.assertFalse(badWords.matches("Badword is ok."));
+		final IllegalValueMatcher names = IllegalValueMatcher.ofWords(ImmutableSet.of("john", "jane"));
+		Assert.assertTrue(names.matches("Mister John"));
+		Assert.assertTrue(names.matches("Jane"));
+	}
+
+	@Test
+	public void wordsMatchLikeTokens() {
+		final Set<String> words = ImmutableSet.of("test", "asdf", "na", "a", "nana", "émile");
+		final IllegalValueMatcher matcher = IllegalValueMatcher.ofWords(words);
+		final String[] fragments = {"test", "Test", "TESTS", "asdf", "n", "a", "A", "na", "x", "Émile", ".", " ", "-",
+				"&", "/", "  ", "_"};
+		final Random random = new Random(24L);
+		for (int i = 0; i < 50000; i++) {
+			final StringBuilder sb = new StringBuilder();
+			final int count = random.nextInt(8);
+			for (int j = 0; j < count; j++) {
+				sb.append(fragments[random.nextInt(fragments.length)]);
+			}
+			final String s = sb.toString();
+			Assert.assertEquals(s, containsToken(words, s), matcher.matches(s));
+		}
+	}
+
+	@Test
+	public void phrases() {
+		final IllegalValueMatcher matcher = IllegalValueMatcher.builder().addWord("John Doe").build();
+		Assert.assertTrue(matcher.matches("john doe"));
+		Assert.assertTrue(matcher.matches("JOHN  DOE"));
+		Assert.assertTrue(matcher.matches("Mr. John-Doe"));
+		Assert.assertFalse(matcher.matches("Johnny Doe"));
+		Assert.assertFalse(matcher.matches("John Doering"));
+		Assert.assertFalse(matcher.matches("John"));
+	}
+
+	@Test
+	public void substrings() {
+		final IllegalValueMatcher matcher =
+				IllegalValueMatcher.builder()
+						.addSubstring("dummy")
+						.addSubstring("xx")
+						.addWord("test")
+						.build();
+		Assert.assertTrue(matcher.matches("Dummyname"));
+		Assert.assertTrue(matcher.matches("Mcdummy"));
+		Assert.assertTrue(matcher.matches("Maxxine"));
+		Assert.assertTrue(matcher.matches("a test"));
+		Assert.assertFalse(matcher.matches("Testing"));
+		Assert.assertFalse(matcher.matches("Max Xavier"));
+	}
+
+	@Test
+	public void foldsCase() {
+		final IllegalValueMatcher matcher = IllegalValueMatcher.ofWords(ImmutableSet.of("sam", "ÉMILE", "σοσ"));
+		Assert.assertTrue(matcher.matches("SAM"));
+		Assert.assertTrue(matcher.matches("ſam"));
+		Assert.assertTrue(matcher.matches("émile"));
+		Assert.assertTrue(matcher.matches("ΣΟς"));
+		Assert.assertFalse(matcher.matches("emile"));
+	}
+
+	@Test
+	public void emptyValues() {
+		final IllegalValueMatcher matcher = IllegalValueMatcher.ofWords(ImmutableSet.of("", " ", ". -"));
+		Assert.assertFalse(matcher.matches(""));
+		Assert.assertFalse(matcher.matches(" "));
+		Assert.assertFalse(matcher.matches("John Smith"));
+	}
+
+	@Test
+	public void largeDictionary() {
+		final Random random = new Random(24L);
+		final List<String> words = new ArrayList<>();
+		for (int i = 0; i < 50000; i++) {
+			final char[] word = new char[3 + random.nextInt(8)];
+			for (int j = 0; j < word.length; j++) {
+				word[j] = (char) ('a' + random.nextInt(26));
+			}
+			words.add(new String(word));
+		}
+		final IllegalValueMatcher matcher = IllegalValueMatcher.ofWords(words);
+		final Set<String> set = ImmutableSet.copyOf(words);
+		for (int i = 0; i < 1000; i++) {
+			final String name = words.get(random.nextInt(words.size())) + ' ' + words.get(random.nextInt(words.size()));
+			Assert.assertTrue(name, matcher.matches(name.toUpperCase()));
+			final String misspelled = name.substring(1);
+			Assert.assertEquals(misspelled, containsToken(set, misspelled), matcher.matches(misspelled));
+		}
+	}
+
+	@Test
+	public void internWords() {
+		final IllegalValueMatcher matcher = IllegalValueMatcher.internWords(Arrays.asList("test", "asdf"));
+		Assert.assertSame(matcher, IllegalValueMatcher.internWords(ImmutableSet.of("asdf", "test", "test")));
+		Assert.assertNotSame(matcher, IllegalValueMatcher.internWords(ImmutableSet.of("asdf", "Test")));
+		Assert.assertSame(matcher, IllegalValueMatcher.get(matcher.getKey()));
+		Assert.assertTrue(matcher.matches("Test Smith"));
+	}
+
+	@Test
+	public void registeredMatcherSerializedAsKey() throws Exception {
+		final List<String> words = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			words.add("word" + i);
+		}
+		final IllegalValueMatcher matcher =
+				IllegalValueMatcher.builder().key("IllegalValueMatcherTest.registered").addWords(words).build();
+		final byte[] bytes = serialize(matcher);
+		Assert.assertTrue(String.valueOf(bytes.length), bytes.length < 500);
+		Assert.assertSame(matcher, deserialize(bytes));
+
+		IllegalValueMatcher.unregister("IllegalValueMatcherTest.registered");
+		try {
+			deserialize(bytes);
+			Assert.fail();
+		} catch (final InvalidObjectException e) {
+			Assert.assertTrue(e.getMessage().contains("IllegalValueMatcherTest.registered"));
+		}
+	}
+
+	@Test
+	public void internedMatcherSerializedAsWords() throws Exception {
+		IllegalValueMatcher matcher = IllegalValueMatcher.internWords(ImmutableSet.of("interned", "words"));
+		final String key = matcher.getKey();
+		final byte[] bytes = serialize(matcher);
+		Assert.assertTrue(new String(bytes, StandardCharsets.ISO_8859_1).contains("interned"));
+		Assert.assertSame(matcher, deserialize(bytes));
+
+		// once the matcher is collected, it's rebuilt from its words
+		matcher = null;
+		for (int i = 0; i < 50 && IllegalValueMatcher.get(key) != null; i++) {
+			System.gc();
+			Thread.sleep(10L);
+		}
+		final IllegalValueMatcher rebuilt = (IllegalValueMatcher) deserialize(bytes);
+		Assert.assertEquals(key, rebuilt.getKey());
+		Assert.assertSame(rebuilt, IllegalValueMatcher.get(key));
+		Assert.assertTrue(rebuilt.matches("Words"));
+	}
+}
@@ -0,0 +1,137 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.form.behavior;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+public class NameRuleEngineTest {
+	/**
+	 * Passes every name, slowly.
+	 */
+	private static final NameRule SLOW_PASS = name -> {
+		final long start = System.nanoTime();
+		while (System.nanoTime() - start < 10000) {
+			// spin
+		}
+		return NameRule.Result.PASS;
+	};
+	private static final NameRule REJECT_FAMILY_NAME = name -> NameRule.Result.REJECT_FAMILY_NAME;
+
+	@Test
+	public void appliesRulesInOrder() {
+		final NameRuleEngine engine = NameRuleEngine.builder().addStandardRules().build();
+		Assert.assertNull(engine.apply(new FullName("John", "Smith")));
+
+		final NameRuleEngine.Rejection rejection = engine.apply(new FullName("John2", "example.com"));
+		Assert.assertNotNull(rejection);
+		Assert.assertEquals(StandardNameRule.ILLEGAL_CHARS, rejection.getRule());
+		Assert.assertEquals(NameRule.Result.REJECT_FIRST_NAME, rejection.getResult());
+
+		Assert.assertEquals(2, engine.getApplications());
+		final List<NameRuleStatistics> statistics = engine.getRules();
+		Assert.assertEquals(StandardNameRule.values().length, statistics.size());
+		Assert.assertEquals("LENGTH_WITHOUT_DOT", statistics.get(0).getRule());
+		Assert.assertEquals(2, statistics.get(0).getApplications());
+		Assert.assertEquals(0, statistics.get(0).getRejections());
+		Assert.assertEquals("ILLEGAL_CHARS", statistics.get(2).getRule());
+		Assert.assertEquals(2, statistics.get(2).getApplications());
+		Assert.assertEquals(1, statistics.get(2).getRejections());
+		Assert.assertEquals(1, statistics.get(3).getApplications());
+	}
+
+	@Test
+	public void enableAndDisable() {
+		final NameRuleEngine engine =
+				NameRuleEngine.builder()
+						.addStandardRules()
+						.disable(StandardNameRule.DOMAIN)
+						.build();
+		final FullName name = new FullName("John", "example.com");
+		Assert.assertNull(engine.apply(name));
+		Assert.assertFalse(engine.getRules().get(StandardNameRule.DOMAIN.ordinal()).isEnabled());
+
+		engine.setRuleEnabled("DOMAIN", true);
+		final NameRuleEngine.Rejection rejection = engine.apply(name);
+		Assert.assertNotNull(rejection);
+		Assert.assertEquals(StandardNameRule.DOMAIN, rejection.getRule());
+		Assert.assertEquals(NameRule.Result.REJECT_FAMILY_NAME, rejection.getResult());
+
+		engine.setEnabled(StandardNameRule.DOMAIN, false);
+		Assert.assertNull(engine.apply(name));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void disableRuleNotAdded() {
+		NameRuleEngine.builder().add(StandardNameRule.TITLE).disable(StandardNameRule.DOMAIN).build();
+	}
+
+	@Test
+	public void adaptiveOrder() {
+		final NameRuleEngine fixed = NameRuleEngine.builder().add(SLOW_PASS).add(REJECT_FAMILY_NAME).build();
+		final NameRuleEngine adaptive =
+				NameRuleEngine.builder().add(SLOW_PASS).add(REJECT_FAMILY_NAME).adaptive(16).build();
+		final FullName name = new FullName("John", "Smith");
+		for (int i = 0; i < 100; i++) {
+			Assert.assertEquals(REJECT_FAMILY_NAME, fixed.apply(name).getRule());
+			Assert.assertEquals(REJECT_FAMILY_NAME, adaptive.apply(name).getRule());
+		}
+		Assert.assertEquals(Arrays.asList(SLOW_PASS, REJECT_FAMILY_NAME), fixed.getOrder());
+		Assert.assertEquals(Arrays.asList(REJECT_FAMILY_NAME, SLOW_PASS), adaptive.getOrder());
+		Assert.assertTrue(adaptive.getRules().get(1).getApplications() < 100);
+	}
+
+	@Test
+	public void deserializedNamedEngineIsShared() throws Exception {
+		final NameRuleEngine engine =
+				NameRuleEngine.builder().name("NameRuleEngineTest.shared").addStandardRules().build();
+		Assert.assertSame(engine, NameRuleEngine.get("NameRuleEngineTest.shared"));
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(engine);
+		}
+		try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			Assert.assertSame(engine, in.readObject());
+		}
+	}
+
+	@Test
+	public void registerMBean() throws Exception {
+		final NameRuleEngine engine =
+				NameRuleEngine.builder().name("NameRuleEngineTest.mbean").addStandardRules().build();
+		engine.apply(new FullName("John", "Smith"));
+		engine.registerMBean();
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name =
+					new ObjectName("com.pushinginertia.wicket:type=NameRuleEngine,name=\"NameRuleEngineTest.mbean\"");
+			Assert.assertEquals(1L, server.getAttribute(name, "Applications"));
+		} finally {
+			engine.unregisterMBean();
+		}
+	}
+}
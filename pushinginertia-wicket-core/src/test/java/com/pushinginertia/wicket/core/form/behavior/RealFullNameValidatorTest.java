@@ -16,26 +16,35 @@
 package com.pushinginertia.wicket.core.form.behavior;
 
 import com.google.common.collect.ImmutableSet;
+import com.pushinginertia.commons.lang.CharUtils;
+import com.pushinginertia.commons.lang.StringUtils;
+import org.apache.wicket.markup.html.form.TextField;
+import org.apache.wicket.util.tester.WicketTester;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.regex.Pattern;
+
 public class RealFullNameValidatorTest {
-	@Test
-	public void containsIllegalValue() {
-		Assert.assertTrue(
-				RealFullNameValidator.containsIllegalValue(
-						ImmutableSet.of("badword1", "badword2"),
-						"A sentence with badword1."));
-		Assert.assertTrue(
-				RealFullNameValidator.containsIllegalValue(
-						ImmutableSet.of("badword1", "badword2"),
-						"Badword2 in the sentence."));
-		Assert.assertFalse(
-				RealFullNameValidator.containsIllegalValue(
-						ImmutableSet.of("badword1", "badword2"),
-						"Badword is ok."));
-		Assert.assertTrue(RealFullNameValidator.containsIllegalValue(ImmutableSet.of("john", "jane"), "Mister John"));
-		Assert.assertTrue(RealFullNameValidator.containsIllegalValue(ImmutableSet.of("john", "jane"), "Jane"));
+	private static final ObjectName STANDARD_ENGINE_NAME = objectName(RealFullNameValidator.ENGINE_NAME);
+
+	private static ObjectName objectName(final String engineName) {
+		try {
+			return new ObjectName(
+					NameRuleEngine.OBJECT_NAME_DOMAIN + ":type=NameRuleEngine,name=" + ObjectName.quote(engineName));
+		} catch (final MalformedObjectNameException e) {
+			throw new IllegalStateException(e);
+		}
 	}
 
 	@Test
@@ -106,4 +115,182 @@ public class RealFullNameValidatorTest {
 		Assert.assertTrue(RealFullNameValidator.firstAndLastAreLetters("成松"));
 		Assert.assertTrue(RealFullNameValidator.firstAndLastAreLetters("Éva"));
 	}
+
+	/**
+	 * The rules as they were implemented before {@link NameFeatures}, one pass per rule.
+	 */
+	private static class ReferenceRules {
+		private static final char[] ILLEGAL_CHARS = "0123456789!@#$%^*()+_=<>?:;\"[]{}|~\\".toCharArray();
+		private static final char[] VOWELS = "aeiou".toCharArray();
+		private static final char[] CONSONANTS = "bcdfghjklmnpqrstvwxz".toCharArray();
+		private static final ImmutableSet<String> TITLES = ImmutableSet.of("MR", "MRS", "MS", "MISS", "DR");
+
+		static boolean satisfiesLengthWithoutDot(final String input) {
+			if (input.length() < (StringUtils.isLatin(input) ? 2 : 1)) {
+				return false;
+			}
+			return input.length() != 2 || input.indexOf('.') < 0;
+		}
+
+		static boolean containsTitle(final String input) {
+			final String upper = input.toUpperCase();
+			final int idx = upper.indexOf('.') < 0 ? upper.indexOf(' ') :
+					upper.indexOf(' ') < 0 ? upper.indexOf('.') : Math.min(upper.indexOf('.'), upper.indexOf(' '));
+			return TITLES.contains(idx < 0 ? upper : upper.substring(0, idx));
+		}
+
+		static boolean allVowelsOrConsonants(final String input) {
+			int vowels = 0;
+			int consonants = 0;
+			int either = 0;
+			for (final char c: org.apache.commons.lang3.StringUtils.stripAccents(input).toLowerCase().toCharArray()) {
+				if (CharUtils.inCharArray(c, VOWELS) >= 0) {
+					vowels++;
+					either++;
+				} else if (CharUtils.inCharArray(c, CONSONANTS) >= 0) {
+					consonants++;
+					either++;
+				} else if (c != ' ' && c != '.') {
+					either++;
+				}
+			}
+			return vowels == either || consonants == either;
+		}
+
+		static boolean firstAndLastAreLetters(final String input) {
+			return input.isEmpty() ||
+					Character.isLetter(Character.toLowerCase(input.charAt(0))) &&
+					Character.isLetter(Character.toLowerCase(input.charAt(input.length() - 1)));
+		}
+	}
+
+	@Test
+	public void featuresMatchReferenceRules() {
+		final String[] fragments = {
+				"a", "E", "i", "o", "U", "y", "b", "C", "z", "H", "x", "\u00e1", "\u00c9", "\u00f6", "\u0151",
+				"\u0301", "\u0141", "\u00df", "\u0130", "\u0131", "\u017f", "\u6e05", "\uc804", "\ud83d\ude00",
+				".", " ", "&", "/", "-", "'", "1", "@", "\n", "\u2028", "Mr", "MRS", "Miss", "dr", "Mi\u00df", "com",
+				"example"
+		};
+		final Random random = new Random(21L);
+		for (int i = 0; i < 50000; i++) {
+			final StringBuilder sb = new StringBuilder();
+			final int count = random.nextInt(6);
+			for (int j = 0; j < count; j++) {
+				sb.append(fragments[random.nextInt(fragments.length)]);
+			}
+			final String s = sb.toString();
+			final NameFeatures features = new NameFeatures(s);
+			Assert.assertEquals(s, ReferenceRules.satisfiesLengthWithoutDot(s), features.satisfiesLengthWithoutDot);
+			Assert.assertEquals(
+					s,
+					CharUtils.inCharArray(s, ReferenceRules.ILLEGAL_CHARS) >= 0,
+					features.containsIllegalChar);
+			Assert.assertEquals(s, ReferenceRules.containsTitle(s), features.containsTitle);
+			Assert.assertEquals(s, ReferenceRules.allVowelsOrConsonants(s), features.allVowelsOrConsonants);
+			Assert.assertEquals(s, Pattern.matches(".*[a-z0-9]\\.[a-z]{2}.*", s), features.isDomain);
+			Assert.assertEquals(
+					s,
+					StringUtils.charFrequencyInString('&', s) > 1 || StringUtils.charFrequencyInString('/', s) > 1,
+					features.exceedsOneCharLimits);
+			Assert.assertEquals(s, ReferenceRules.firstAndLastAreLetters(s), features.firstAndLastAreLetters);
+		}
+	}
+
+	@Test
+	public void isPlausibleName() {
+		Assert.assertTrue(RealFullNameValidator.isPlausibleName("John", true));
+		Assert.assertTrue(RealFullNameValidator.isPlausibleName("\u00c9va", true));
+		Assert.assertTrue(RealFullNameValidator.isPlausibleName("\u6e05", false));
+		Assert.assertFalse(RealFullNameValidator.isPlausibleName("Mr. Smith", true));
+		Assert.assertTrue(RealFullNameValidator.isPlausibleName("Mr. Smith", false));
+		Assert.assertFalse(RealFullNameValidator.isPlausibleName("john2", false));
+		Assert.assertFalse(RealFullNameValidator.isPlausibleName("example.com", false));
+		Assert.assertFalse(RealFullNameValidator.isPlausibleName("Brr", false));
+		Assert.assertFalse(RealFullNameValidator.isPlausibleName("A & B & C", false));
+	}
+
+	@Test
+	public void standardRules() {
+		Assert.assertEquals(NameRule.Result.PASS, StandardNameRule.TITLE.apply(new FullName("John", "Smith")));
+		Assert.assertEquals(
+				NameRule.Result.REJECT_FIRST_NAME,
+				StandardNameRule.TITLE.apply(new FullName("Mr. John", "Smith")));
+		Assert.assertEquals(NameRule.Result.PASS, StandardNameRule.TITLE.apply(new FullName("John", "Mr. Smith")));
+		Assert.assertEquals(
+				NameRule.Result.REJECT_FAMILY_NAME,
+				StandardNameRule.DOMAIN.apply(new FullName("John", "example.com")));
+		Assert.assertEquals(
+				NameRule.Result.REJECT_FIRST_NAME,
+				StandardNameRule.DISTINCT.apply(new FullName("John", "JOHN")));
+		Assert.assertEquals(NameRule.Result.PASS, StandardNameRule.DISTINCT.apply(new FullName("John", "Smith")));
+	}
+
+	private static RealFullNameValidator roundTrip(final RealFullNameValidator validator)
+			throws IOException, ClassNotFoundException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(validator);
+		}
+		try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return (RealFullNameValidator) in.readObject();
+		}
+	}
+
+	@Test
+	public void defaultEnginesSharedAfterSerialization() throws Exception {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final WicketTester tester = new WicketTester();
+		try {
+			final RealFullNameValidator standard =
+					new RealFullNameValidator(new TextField<>("first"), new TextField<>("family"));
+			Assert.assertSame(standard.getEngine(), roundTrip(standard).getEngine());
+			Assert.assertFalse(server.isRegistered(STANDARD_ENGINE_NAME));
+
+			RealFullNameValidator.registerMBeans();
+			Assert.assertTrue(server.isRegistered(STANDARD_ENGINE_NAME));
+
+			final IllegalValueMatcher matcher =
+					IllegalValueMatcher.builder().key("RealFullNameValidatorTest.shared").addWord("asdf").build();
+			final RealFullNameValidator illegalValues =
+					new RealFullNameValidator(new TextField<>("first"), new TextField<>("family"), matcher);
+			Assert.assertSame(illegalValues.getEngine(), roundTrip(illegalValues).getEngine());
+			Assert.assertSame(
+					illegalValues.getEngine(),
+					NameRuleEngine.get(RealFullNameValidator.ENGINE_NAME + ":RealFullNameValidatorTest.shared"));
+			Assert.assertNotSame(standard.getEngine(), illegalValues.getEngine());
+			Assert.assertTrue(server.isRegistered(
+					objectName(RealFullNameValidator.ENGINE_NAME + ":RealFullNameValidatorTest.shared")));
+
+			RealFullNameValidator.unregisterMBeans();
+			Assert.assertFalse(server.isRegistered(STANDARD_ENGINE_NAME));
+		} finally {
+			RealFullNameValidator.unregisterMBeans();
+			tester.destroy();
+			IllegalValueMatcher.unregister("RealFullNameValidatorTest.shared");
+		}
+	}
+
+	@Test
+	public void otherMBeanLeftAlone() throws Exception {
+		// as registered by another application in the same JVM
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final NameRuleEngine other = NameRuleEngine.builder().addStandardRules().build();
+		server.registerMBean(other, STANDARD_ENGINE_NAME);
+		try {
+			RealFullNameValidator.registerMBeans();
+			RealFullNameValidator.unregisterMBeans();
+			Assert.assertTrue(server.isRegistered(STANDARD_ENGINE_NAME));
+		} finally {
+			server.unregisterMBean(STANDARD_ENGINE_NAME);
+		}
+	}
+
+	@Test
+	public void illegalValuesNameRule() {
+		final IllegalValuesNameRule rule = new IllegalValuesNameRule(ImmutableSet.of("Test", "asdf"));
+		Assert.assertEquals(NameRule.Result.PASS, rule.apply(new FullName("John", "Smith")));
+		Assert.assertEquals(NameRule.Result.REJECT_FIRST_NAME, rule.apply(new FullName("TEST", "Smith")));
+		Assert.assertEquals(NameRule.Result.REJECT_FAMILY_NAME, rule.apply(new FullName("John", "Smith-Asdf")));
+	}
 }
@@ -0,0 +1,84 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.markup.html.basic;
+
+import com.pushinginertia.wicket.core.model.replacement.ContentReplacementModel;
+import com.pushinginertia.wicket.core.model.replacement.ContentReplacerList;
+import com.pushinginertia.wicket.core.model.replacement.EmailToLinkContentReplacer;
+import com.pushinginertia.wicket.core.model.replacement.NewlineContentReplacer;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContentReplacementLabelTest {
+	private final WicketTester tester = new WicketTester();
+
+	private static ContentReplacementModel newModel(final String s, final ContentReplacerList.Mode mode) {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(new EmailToLinkContentReplacer("/contact", "email link"));
+		builder.add(NewlineContentReplacer.INSTANCE);
+		builder.setMode(mode);
+		return new ContentReplacementModel(Model.of(s), builder.build());
+	}
+
+	private void assertRendered(final ContentReplacementModel model) {
+		final String expected = model.getObject();
+		tester.startComponentInPage(new ContentReplacementLabel("label", model));
+		final String response = tester.getLastResponseAsString();
+		Assert.assertTrue(response, response.contains("<span wicket:id=\"label\">" + expected + "</span>"));
+	}
+
+	@After
+	public void tearDown() {
+		tester.destroy();
+	}
+
+	@Test
+	public void shortText() {
+		final ContentReplacementModel model =
+				newModel("<b>contact me</b> at\nuser at gmail.com.", ContentReplacerList.Mode.SEQUENTIAL);
+		model.setEscapeModelString(true);
+		Assert.assertEquals(
+				"&lt;b&gt;contact me&lt;/b&gt; at<br/><a href=\"/contact\">email link</a>.",
+				model.getObject());
+		assertRendered(model);
+	}
+
+	@Test
+	public void longText() {
+		final StringBuilder sb = new StringBuilder();
+		while (sb.length() < 50000) {
+			sb.append("<b>contact me</b> at user").append(sb.length()).append("@gmail.com & say hi\n");
+		}
+		for (final ContentReplacerList.Mode mode: ContentReplacerList.Mode.values()) {
+			final ContentReplacementModel model = newModel(sb.toString(), mode);
+			assertRendered(model);
+			model.setEscapeModelString(true);
+			assertRendered(model);
+			model.setFusedEscape(true);
+			assertRendered(model);
+		}
+	}
+
+	@Test
+	public void nullText() {
+		final ContentReplacementModel model = newModel(null, ContentReplacerList.Mode.SEQUENTIAL);
+		tester.startComponentInPage(new ContentReplacementLabel("label", model));
+		Assert.assertTrue(tester.getLastResponseAsString().contains("<span wicket:id=\"label\"></span>"));
+	}
+}
@@ -0,0 +1,166 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class ContentLinkTokenTest {
+	private static final ContentLinkToken TOKEN = ContentLinkToken.sha256("c", "secret");
+
+	private static String token(final String contact) {
+		final StringBuilder sb = new StringBuilder();
+		TOKEN.append(contact, 0, contact.length(), sb);
+		return sb.toString();
+	}
+
+	private static ContentReplacerList newList(
+			final ContentReplacerList.Mode mode,
+			final ContentReplacer... replacers) {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		for (final ContentReplacer replacer: replacers) {
+			builder.add(replacer);
+		}
+		builder.setMode(mode);
+		return builder.build();
+	}
+
+	@Test
+	public void tokenPerMatch() {
+		final EmailToLinkContentReplacer email =
+				new EmailToLinkContentReplacer(
+						"/contact",
+						"email link",
+						EmailContentReplacerPatternProvider.forDefaultRegex(),
+						TOKEN);
+		final NumberSequenceToLinkContentReplacer number =
+				new NumberSequenceToLinkContentReplacer(7, "/contact?from=profile", "number link", TOKEN);
+		final String input = "<b>a@b.com</b>\ncall 123 456 7890 or c@d.com";
+		final String expected =
+				"<a href=\"/contact?c=" + token("a@b.com") + "\">email link</a>&lt;/b&gt;<br/>call " +
+				"<a href=\"/contact?from=profile&amp;c=" + token("123 456 7890") + "\">number link</a> or " +
+				"<a href=\"/contact?c=" + token("c@d.com") + "\">email link</a>";
+		for (final ContentReplacerList.Mode mode: ContentReplacerList.Mode.values()) {
+			final ContentReplacerList list = newList(mode, email, number, NewlineContentReplacer.INSTANCE);
+			Assert.assertEquals(mode.name(), "&lt;b&gt;" + expected, list.replaceEscaped(input));
+		}
+		Assert.assertEquals(16, token("a@b.com").length());
+		Assert.assertNotEquals(token("a@b.com"), token("c@d.com"));
+		Assert.assertEquals("<a href=\"/contact\">email link</a>", email.replacement());
+	}
+
+	@Test
+	public void tokenNotReplacedByLaterReplacers() {
+		final EmailToLinkContentReplacer email =
+				new EmailToLinkContentReplacer(
+						"/contact",
+						"email link",
+						EmailContentReplacerPatternProvider.forDefaultRegex(),
+						TOKEN);
+		final NumberSequenceToLinkContentReplacer number =
+				new NumberSequenceToLinkContentReplacer(7, "/call", "phone");
+		final ContentReplacerList list = newList(ContentReplacerList.Mode.SEQUENTIAL, email, number);
+		final Random random = new Random(19L);
+		for (int i = 0; i < 2000; i++) {
+			final String contact = "user" + random.nextInt() + "@example.com";
+			final String token = token(contact);
+			Assert.assertTrue(token, token.matches("[bcdfghjkmnpqrstv]{16}"));
+			Assert.assertEquals(
+					contact,
+					"<a href=\"/contact?c=" + token + "\">email link</a>",
+					list.replace(contact));
+		}
+	}
+
+	@Test
+	public void tokenBeforeFragment() {
+		final NumberSequenceToLinkContentReplacer number =
+				new NumberSequenceToLinkContentReplacer(7, "/contact?from=profile#form", "number link", TOKEN);
+		Assert.assertEquals(
+				"<a href=\"/contact?from=profile&amp;c=" + token("123 456 7890") + "#form\">number link</a>",
+				newList(ContentReplacerList.Mode.SEQUENTIAL, number).replace("123 456 7890"));
+		final NumberSequenceToLinkContentReplacer noQuery =
+				new NumberSequenceToLinkContentReplacer(7, "/contact#form", "number link", TOKEN);
+		Assert.assertEquals(
+				"<a href=\"/contact?c=" + token("123 456 7890") + "#form\">number link</a>",
+				newList(ContentReplacerList.Mode.SEQUENTIAL, noQuery).replace("123 456 7890"));
+	}
+
+	@Test
+	public void withoutToken() {
+		final NumberSequenceToLinkContentReplacer number =
+				new NumberSequenceToLinkContentReplacer(7, "/contact", "number link");
+		Assert.assertEquals("<a href=\"/contact\">number link</a>", number.replacement());
+		Assert.assertEquals(
+				"call <a href=\"/contact\">number link</a>",
+				newList(ContentReplacerList.Mode.SEQUENTIAL, number).replace("call 123 456 7890"));
+	}
+
+	@Test
+	public void secretChangesSignature() {
+		final ContentLinkToken otherSecret = ContentLinkToken.sha256("d", "other secret");
+		final Hasher hasher1 = Hashing.sha256().newHasher();
+		final Hasher hasher2 = Hashing.sha256().newHasher();
+		newList(
+				ContentReplacerList.Mode.SEQUENTIAL,
+				new NumberSequenceToLinkContentReplacer(7, "/contact", "number link", TOKEN))
+				.putSignature(hasher1);
+		newList(
+				ContentReplacerList.Mode.SEQUENTIAL,
+				new NumberSequenceToLinkContentReplacer(7, "/contact", "number link", otherSecret))
+				.putSignature(hasher2);
+		Assert.assertNotEquals(hasher1.hash(), hasher2.hash());
+		Assert.assertFalse(TOKEN.signature().contains("secret"));
+	}
+
+	@Test
+	public void tokenSurvivesSerialization() throws Exception {
+		final EmailToLinkContentReplacer email =
+				ContentReplacerListTest.roundTrip(
+						new EmailToLinkContentReplacer(
+								"/contact",
+								"email link",
+								EmailContentReplacerPatternProvider.forDefaultRegex(),
+								TOKEN));
+		Assert.assertEquals(
+				"<a href=\"/contact?c=" + token("a@b.com") + "\">email link</a>",
+				newList(ContentReplacerList.Mode.SINGLE_PASS, email).replace("a@b.com"));
+	}
+
+	@Test
+	public void secretNotSerialized() throws Exception {
+		final ContentLinkToken token = ContentLinkToken.sha256("e", "hunter2");
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(token);
+		}
+		Assert.assertFalse(new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1).contains("hunter2"));
+		Assert.assertSame(token, ContentReplacerListTest.roundTrip(token));
+	}
+
+	@Test
+	public void escapedMatchHasSameToken() {
+		Assert.assertEquals(token("<a&b>\"'"), token("&lt;a&amp;b&gt;&quot;&#039;"));
+		Assert.assertNotEquals(token("a&b"), token("a&amp"));
+	}
+}
@@ -0,0 +1,144 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+public class ContentReplacementBatchTest {
+	private static ForkJoinPool pool;
+
+	@BeforeClass
+	public static void setUpPool() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@AfterClass
+	public static void shutDownPool() throws InterruptedException {
+		pool.shutdown();
+		pool.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	private static ContentReplacerList newList() {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(new EmailToLinkContentReplacer("/contact", "email link"));
+		builder.add(NewlineContentReplacer.INSTANCE);
+		return builder.build();
+	}
+
+	private static List<String> texts(final int count) {
+		final List<String> texts = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			texts.add(i % 3 == 0 ? "message " + i + "\nwrite to user" + i + "@gmail.com" : "<b>message " + i + "</b>");
+		}
+		return texts;
+	}
+
+	@Test
+	public void orderedSameAsSerial() throws InterruptedException {
+		final ContentReplacerList list = newList();
+		final List<String> texts = texts(1000);
+		final List<String> expected = new ArrayList<>();
+		final List<String> expectedEscaped = new ArrayList<>();
+		for (final String s: texts) {
+			expected.add(list.replace(s));
+			expectedEscaped.add(list.replaceEscaped(s));
+		}
+
+		final List<String> actual = new ArrayList<>();
+		final ContentReplacementBatch.Stats stats =
+				ContentReplacementBatch.builder(list)
+						.executor(pool)
+						.chunkSize(7)
+						.maxChunksInFlight(3)
+						.build()
+						.process(texts.iterator(), s -> s, (s, result) -> actual.add(result));
+		Assert.assertEquals(expected, actual);
+		Assert.assertEquals(1000, stats.getTexts());
+		long chars = 0;
+		for (final String s: texts) {
+			chars += s.length();
+		}
+		Assert.assertEquals(chars, stats.getChars());
+
+		actual.clear();
+		ContentReplacementBatch.builder(list)
+				.executor(pool)
+				.chunkSize(10)
+				.escape(true)
+				.build()
+				.process(texts.iterator(), s -> s, (s, result) -> actual.add(result));
+		Assert.assertEquals(expectedEscaped, actual);
+	}
+
+	@Test
+	public void unorderedDeliversEverything() throws InterruptedException {
+		final ContentReplacerList list = newList();
+		final List<String> texts = texts(500);
+		final List<String> expected = new ArrayList<>();
+		for (final String s: texts) {
+			expected.add(s + " => " + list.replace(s));
+		}
+
+		final List<String> actual = new ArrayList<>();
+		ContentReplacementBatch.builder(list)
+				.executor(pool)
+				.chunkSize(3)
+				.ordered(false)
+				.build()
+				.process(texts.iterator(), s -> s, (s, result) -> actual.add(s + " => " + result));
+		Collections.sort(expected);
+		Collections.sort(actual);
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void nullText() throws InterruptedException {
+		final List<String> actual = new ArrayList<>();
+		final ContentReplacementBatch.Stats stats =
+				ContentReplacementBatch.builder(newList())
+						.build()
+						.process(Collections.singletonList("a").iterator(), s -> null, (s, result) -> actual.add(result));
+		Assert.assertEquals(Collections.singletonList((String) null), actual);
+		Assert.assertEquals(1, stats.getTexts());
+		Assert.assertEquals(0, stats.getChars());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void exceptionPropagates() throws InterruptedException {
+		ContentReplacementBatch.builder(newList())
+				.executor(pool)
+				.chunkSize(5)
+				.build()
+				.process(
+						texts(100).iterator(),
+						s -> {
+							if (s.startsWith("<b>message 50<")) {
+								throw new IllegalArgumentException(s);
+							}
+							return s;
+						},
+						(s, result) -> {});
+	}
+}
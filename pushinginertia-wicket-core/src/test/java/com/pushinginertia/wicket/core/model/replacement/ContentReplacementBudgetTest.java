@@ -0,0 +1,106 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import org.apache.wicket.model.Model;
+import org.apache.wicket.util.time.Duration;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContentReplacementBudgetTest {
+	private static final EmailToLinkContentReplacer EMAIL_TO_LINK =
+			new EmailToLinkContentReplacer("/contact", "email link");
+
+	private static ContentReplacementModel newModel(final String s, final ContentReplacementBudget budget) {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(EMAIL_TO_LINK);
+		builder.add(NewlineContentReplacer.INSTANCE);
+		final ContentReplacementModel model = new ContentReplacementModel(Model.of(s), builder.build());
+		model.setBudget(budget);
+		return model;
+	}
+
+	/**
+	 * Text that makes the backtracking email regex take super-linear time. It ends with "at" so that the email
+	 * replacer's prefilter doesn't skip it.
+	 */
+	private static String hostileText(final int length) {
+		final StringBuilder sb = new StringBuilder("<b>");
+		while (sb.length() < length) {
+			sb.append("a ");
+		}
+		return sb.append("at").toString();
+	}
+
+	@Test
+	public void normalTextUnaffected() {
+		final ContentReplacementBudget budget =
+				ContentReplacementBudget.builder()
+						.maxInputLength(1000)
+						.maxCharReads(100000)
+						.maxDuration(Duration.seconds(10))
+						.build();
+		final long trips = ContentReplacementBudget.getTripCount();
+		final ContentReplacementModel model = newModel("<b>contact me</b> at\nuser at gmail.com.", budget);
+		Assert.assertEquals("<b>contact me</b> at<br/><a href=\"/contact\">email link</a>.", model.getObject());
+		Assert.assertEquals(trips, ContentReplacementBudget.getTripCount());
+	}
+
+	@Test
+	public void charReadsExceeded() {
+		final ContentReplacementBudget budget = ContentReplacementBudget.builder().maxCharReads(100000).build();
+		final long trips = ContentReplacementBudget.getTripCount();
+		final String s = hostileText(5000);
+		final ContentReplacementModel model = newModel(s, budget);
+		Assert.assertEquals(s, model.getObject());
+		Assert.assertEquals(trips + 1, ContentReplacementBudget.getTripCount());
+
+		model.setEscapeModelString(true);
+		Assert.assertEquals("&lt;b&gt;" + s.substring(3), model.getObject());
+		Assert.assertEquals(trips + 2, ContentReplacementBudget.getTripCount());
+	}
+
+	@Test
+	public void durationExceeded() {
+		final ContentReplacementBudget budget =
+				ContentReplacementBudget.builder()
+						.maxDuration(Duration.milliseconds(1))
+						.fallback(ContentReplacementBudget.Fallback.MASK)
+						.build();
+		final long trips = ContentReplacementBudget.getTripCount();
+		final String s = hostileText(50000);
+		final ContentReplacementModel model = newModel(s, budget);
+		Assert.assertEquals(s.replaceAll("\\S", "*"), model.getObject());
+		Assert.assertEquals(trips + 1, ContentReplacementBudget.getTripCount());
+	}
+
+	@Test
+	public void inputLengthExceeded() {
+		final ContentReplacementBudget budget =
+				ContentReplacementBudget.builder()
+						.maxInputLength(10)
+						.fallback(ContentReplacementBudget.Fallback.MASK)
+						.build();
+		final long trips = ContentReplacementBudget.getTripCount();
+		final ContentReplacementModel model = newModel("email: user@gmail.com", budget);
+		Assert.assertEquals("****** **************", model.getObject());
+		Assert.assertEquals(trips + 1, ContentReplacementBudget.getTripCount());
+
+		model.setObject("user@x.co");
+		Assert.assertEquals("<a href=\"/contact\">email link</a>", model.getObject());
+		Assert.assertEquals(trips + 1, ContentReplacementBudget.getTripCount());
+	}
+}
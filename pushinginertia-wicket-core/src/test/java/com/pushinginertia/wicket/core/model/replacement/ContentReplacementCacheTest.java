@@ -0,0 +1,106 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import org.apache.wicket.model.Model;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ContentReplacementCacheTest {
+	private static ContentReplacerList newList(final String linkName) {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(new EmailToLinkContentReplacer("/contact", linkName));
+		return builder.build();
+	}
+
+	@Test
+	public void hitsAndMisses() throws Exception {
+		final ContentReplacementCache cache = new ContentReplacementCache(ContentReplacementCache.DEFAULT_MAX_CHARS);
+		final ContentReplacerList list = newList("email link");
+		final AtomicInteger renders = new AtomicInteger();
+		final String input = "write to user@gmail.com";
+
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals(
+					"write to <a href=\"/contact\">email link</a>",
+					cache.get(list, false, false, input, () -> {
+						renders.incrementAndGet();
+						return list.replace(input);
+					}));
+		}
+		Assert.assertEquals(1, renders.get());
+		Assert.assertEquals(1, cache.stats().missCount());
+		Assert.assertEquals(2, cache.stats().hitCount());
+
+		// a deserialized copy of the list has the same signature
+		cache.get(ContentReplacerListTest.roundTrip(list), false, false, input, () -> "unused");
+		Assert.assertEquals(3, cache.stats().hitCount());
+
+		// the escape flag, replacement strings and input are all part of the key
+		Assert.assertEquals("escaped", cache.get(list, true, false, input, () -> "escaped"));
+		Assert.assertEquals("other link", cache.get(newList("other link"), false, false, input, () -> "other link"));
+		Assert.assertEquals("other input", cache.get(list, false, false, input + ' ', () -> "other input"));
+		Assert.assertEquals(4, cache.stats().missCount());
+		Assert.assertEquals(4, cache.size());
+	}
+
+	@Test
+	public void evictsWhenFull() {
+		final ContentReplacementCache cache = new ContentReplacementCache(1000);
+		final ContentReplacerList list = newList("email link");
+		for (int i = 0; i < 100; i++) {
+			final String input = "text " + i;
+			cache.get(list, false, false, input, () -> input);
+		}
+		Assert.assertTrue(cache.size() < 100);
+		Assert.assertTrue(cache.stats().evictionCount() > 0);
+	}
+
+	@Test
+	public void budgetFallbackNotCached() {
+		final WicketTester tester = new WicketTester();
+		try {
+			final ContentReplacementCache cache =
+					new ContentReplacementCache(ContentReplacementCache.DEFAULT_MAX_CHARS);
+			ContentReplacementCache.set(tester.getApplication(), cache);
+			final ContentReplacerList list = newList("email link");
+			final String s = "email: user@gmail.com";
+
+			final ContentReplacementModel budgeted = new ContentReplacementModel(Model.of(s), list);
+			budgeted.setBudget(
+					ContentReplacementBudget.builder()
+							.maxInputLength(10)
+							.fallback(ContentReplacementBudget.Fallback.MASK)
+							.build());
+			Assert.assertEquals("****** **************", budgeted.getObject());
+			Assert.assertEquals(0, cache.size());
+
+			final ContentReplacementModel unbudgeted = new ContentReplacementModel(Model.of(s), list);
+			Assert.assertEquals("email: <a href=\"/contact\">email link</a>", unbudgeted.getObject());
+			Assert.assertEquals(1, cache.size());
+		} finally {
+			tester.destroy();
+		}
+	}
+
+	@Test
+	public void noApplication() {
+		Assert.assertNull(ContentReplacementCache.get());
+	}
+}
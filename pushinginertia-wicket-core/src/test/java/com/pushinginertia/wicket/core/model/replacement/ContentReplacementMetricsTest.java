@@ -0,0 +1,233 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import org.apache.wicket.model.Model;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ContentReplacementMetricsTest {
+	private static final String INPUT = "mail <b>me</b> at user@gmail.com\nbye";
+
+	/**
+	 * Records each call as a string, with times reduced to "timed" or "untimed".
+	 */
+	private static final class RecordingMetrics extends ContentReplacementMetrics {
+		private final List<String> calls = new ArrayList<>();
+
+		@Nonnull
+		private static String name(@Nonnull final ContentReplacer replacer) {
+			return replacer.getClass().getSimpleName();
+		}
+
+		@Override
+		public synchronized void replacerApplied(
+				@Nonnull final ContentReplacer replacer,
+				final int inputLength,
+				final int matches,
+				final long nanos) {
+			Assert.assertTrue(nanos >= 0 || nanos == UNKNOWN_NANOS);
+			final String timed = nanos >= 0 ? " timed" : " untimed";
+			calls.add(name(replacer) + " applied to " + inputLength + ": " + matches + timed);
+		}
+
+		@Override
+		public synchronized void replacerSkipped(@Nonnull final ContentReplacer replacer, final int inputLength) {
+			calls.add(name(replacer) + " skipped for " + inputLength);
+		}
+
+		@Override
+		public synchronized void listApplied(
+				@Nonnull final ContentReplacerList list,
+				final int inputLength,
+				final long nanos) {
+			Assert.assertTrue(nanos >= 0);
+			calls.add("list applied to " + inputLength);
+		}
+
+		@Override
+		public synchronized void modelRendered(final int inputLength, final long nanos) {
+			Assert.assertTrue(nanos >= 0);
+			calls.add("model rendered " + inputLength);
+		}
+
+		@Override
+		public synchronized void budgetTripped(final int inputLength) {
+			calls.add("budget tripped for " + inputLength);
+		}
+	}
+
+	@Nonnull
+	private static ContentReplacerList newList(@Nonnull final ContentReplacerList.Mode mode, final boolean scanner) {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(new EmailToLinkContentReplacer("/contact", "email link"));
+		builder.add(new RegexContentReplacer("<b>(\\w+)</b>", "[$1]"));
+		if (scanner) {
+			builder.add(new NumberSequenceToLinkContentReplacer(3, "/contact", "number link"));
+		}
+		builder.add(NewlineContentReplacer.INSTANCE);
+		builder.setMode(mode);
+		return builder.build();
+	}
+
+	@After
+	public void tearDown() {
+		ContentReplacementMetrics.set(null);
+	}
+
+	@Test
+	public void noneByDefault() {
+		Assert.assertSame(ContentReplacementMetrics.NONE, ContentReplacementMetrics.get());
+		Assert.assertNull(ContentReplacementMetrics.active());
+		ContentReplacementMetrics.set(ContentReplacementMetrics.NONE);
+		Assert.assertNull(ContentReplacementMetrics.active());
+	}
+
+	@Test
+	public void sequential() {
+		final ContentReplacerList list = newList(ContentReplacerList.Mode.SEQUENTIAL, true);
+		final String expected = list.replace(INPUT);
+		final RecordingMetrics metrics = new RecordingMetrics();
+		ContentReplacementMetrics.set(metrics);
+		Assert.assertEquals(expected, list.replace(INPUT));
+		Assert.assertEquals(
+				Arrays.asList(
+						"EmailToLinkContentReplacer applied to 36: 1 timed",
+						"RegexContentReplacer applied to 55: 1 timed",
+						"NumberSequenceToLinkContentReplacer skipped for 50",
+						"NewlineContentReplacer applied to 50: 1 timed",
+						"list applied to 36"),
+				metrics.calls);
+	}
+
+	@Test
+	public void singlePassMerged() {
+		final ContentReplacerList list = newList(ContentReplacerList.Mode.SINGLE_PASS, false);
+		final String expected = list.replaceEscaped(INPUT);
+		final RecordingMetrics metrics = new RecordingMetrics();
+		ContentReplacementMetrics.set(metrics);
+		Assert.assertEquals(expected, list.replaceEscaped(INPUT));
+		Assert.assertEquals(
+				Arrays.asList(
+						"EmailToLinkContentReplacer applied to 36: 1 untimed",
+						"RegexContentReplacer applied to 36: 1 untimed",
+						"NewlineContentReplacer applied to 36: 1 untimed",
+						"list applied to 36"),
+				metrics.calls);
+
+		// the newline replacer has no prefilter, so the merged pattern runs
+		metrics.calls.clear();
+		Assert.assertEquals("bye", list.replace("bye"));
+		Assert.assertEquals(
+				Arrays.asList(
+						"EmailToLinkContentReplacer applied to 3: 0 untimed",
+						"RegexContentReplacer applied to 3: 0 untimed",
+						"NewlineContentReplacer applied to 3: 0 untimed",
+						"list applied to 3"),
+				metrics.calls);
+	}
+
+	@Test
+	public void singlePassWithScanner() {
+		final ContentReplacerList list = newList(ContentReplacerList.Mode.SINGLE_PASS, true);
+		final StringBuilder expected = new StringBuilder();
+		list.replace(INPUT, true, expected::append);
+		final RecordingMetrics metrics = new RecordingMetrics();
+		ContentReplacementMetrics.set(metrics);
+		final StringBuilder sb = new StringBuilder();
+		list.replace(INPUT, true, sb::append);
+		Assert.assertEquals(expected.toString(), sb.toString());
+		Assert.assertEquals(
+				Arrays.asList(
+						"EmailToLinkContentReplacer applied to 36: 1 timed",
+						"RegexContentReplacer applied to 36: 1 timed",
+						"NumberSequenceToLinkContentReplacer skipped for 36",
+						"NewlineContentReplacer applied to 36: 1 timed",
+						"list applied to 36"),
+				metrics.calls);
+	}
+
+	@Test
+	public void modelAndBudget() {
+		final RecordingMetrics metrics = new RecordingMetrics();
+		ContentReplacementMetrics.set(metrics);
+		final ContentReplacementModel model =
+				new ContentReplacementModel(Model.of(INPUT), newList(ContentReplacerList.Mode.SINGLE_PASS, false));
+		model.setBudget(ContentReplacementBudget.builder().maxInputLength(10).build());
+		Assert.assertEquals(INPUT, model.getObject());
+		Assert.assertEquals(Arrays.asList("budget tripped for 36", "model rendered 36"), metrics.calls);
+	}
+
+	@Test
+	public void inputLengthBuckets() {
+		final int[] lengths = {0, 15, 16, 63, 64, 255, 256, 16383, 16384, 65535, 65536, Integer.MAX_VALUE};
+		final int[] buckets = {0, 0, 1, 1, 2, 2, 3, 5, 6, 6, 7, 7};
+		for (int i = 0; i < lengths.length; i++) {
+			Assert.assertEquals("length " + lengths[i], buckets[i], JmxContentReplacementMetrics.bucket(lengths[i]));
+		}
+	}
+
+	@Test
+	public void jmx() throws Exception {
+		final JmxContentReplacementMetrics metrics = new JmxContentReplacementMetrics();
+		metrics.install();
+		try {
+			Assert.assertSame(metrics, ContentReplacementMetrics.get());
+			final ContentReplacerList list = newList(ContentReplacerList.Mode.SEQUENTIAL, false);
+			list.replace(INPUT);
+			// a copy of a replacer is counted with the original
+			ContentReplacerListTest.roundTrip(list).replace("bye");
+
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(JmxContentReplacementMetrics.OBJECT_NAME);
+			Assert.assertEquals(2L, server.getAttribute(name, "ListApplications"));
+			Assert.assertArrayEquals(
+					new long[] {1, 1, 0, 0, 0, 0, 0, 0},
+					(long[]) server.getAttribute(name, "ListInputLengthHistogram"));
+			Assert.assertEquals(
+					Arrays.asList("<16", "<64", "<256", "<1024", "<4096", "<16384", "<65536", ">=65536"),
+					Arrays.asList((String[]) server.getAttribute(name, "InputLengthBuckets")));
+
+			final CompositeData[] replacers = (CompositeData[]) server.getAttribute(name, "Replacers");
+			Assert.assertEquals(3, replacers.length);
+			final CompositeData email = replacers[0];
+			Assert.assertTrue((String) email.get("name"), ((String) email.get("name")).startsWith("EmailToLink"));
+			Assert.assertEquals(2L, email.get("invocations"));
+			Assert.assertEquals(1L, email.get("skipped"));
+			Assert.assertEquals(1L, email.get("matches"));
+			Assert.assertEquals(1L, email.get("timedInvocations"));
+
+			server.invoke(name, "reset", null, null);
+			Assert.assertEquals(0L, server.getAttribute(name, "ListApplications"));
+			Assert.assertEquals(0, metrics.getReplacers().size());
+		} finally {
+			metrics.uninstall();
+		}
+		Assert.assertSame(ContentReplacementMetrics.NONE, ContentReplacementMetrics.get());
+		Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+				new ObjectName(JmxContentReplacementMetrics.OBJECT_NAME)));
+	}
+}
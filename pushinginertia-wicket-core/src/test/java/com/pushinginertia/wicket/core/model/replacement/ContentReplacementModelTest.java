@@ -138,6 +138,27 @@ public class ContentReplacementModelTest {
 				model.getObject());
 	}
 
+	@Test
+	public void emailToLinkWithFusedEscape() {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(EMAIL_TO_LINK);
+		final ContentReplacementModel model =
+				new ContentReplacementModel(
+						Model.of("you can <b>contact me</b> at user@gmail.com or user+3@gmail.com blah blah blah."),
+						builder.build());
+		model.setEscapeModelString(true);
+		model.setFusedEscape(true);
+		Assert.assertEquals(
+				"you can &lt;b&gt;contact me&lt;/b&gt; at <a href=\"/contact\">email link</a> or <a href=\"/contact\">email link</a> blah blah blah.",
+				model.getObject());
+
+		// the pattern sees the unescaped "<at>"
+		model.setObject("<b>contact me</b> at user<at>gmail.com.");
+		Assert.assertEquals(
+				"&lt;b&gt;contact me&lt;/b&gt; at <a href=\"/contact\">email link</a>.",
+				model.getObject());
+	}
+
 	@Test
 	public void numberToLink() {
 		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
@@ -0,0 +1,466 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.wicket.util.string.Strings;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public class ContentReplacerListTest {
+	private static final EmailToLinkContentReplacer EMAIL_TO_LINK =
+			new EmailToLinkContentReplacer("/contact", "email link");
+
+	private static final NumberSequenceToLinkContentReplacer NUMBER_TO_LINK =
+			new NumberSequenceToLinkContentReplacer(7, "/contact", "number link");
+
+	private static class SimpleContentReplacer implements ContentReplacer {
+		private static final long serialVersionUID = 1L;
+
+		private final String pattern;
+		private final String replacement;
+
+		SimpleContentReplacer(final String pattern, final String replacement) {
+			this.pattern = pattern;
+			this.replacement = replacement;
+		}
+
+		@Nonnull
+		@Override
+		public String pattern() {
+			return pattern;
+		}
+
+		@Nonnull
+		@Override
+		public String replacement() {
+			return replacement;
+		}
+	}
+
+	private static ContentReplacerList newList(final ContentReplacerList.Mode mode, final ContentReplacer... replacers) {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		for (final ContentReplacer replacer: replacers) {
+			builder.add(replacer);
+		}
+		builder.setMode(mode);
+		return builder.build();
+	}
+
+	private static ContentReplacerList newList() {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(EMAIL_TO_LINK);
+		builder.add(NewlineContentReplacer.INSTANCE);
+		return builder.build();
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T extends Serializable> T roundTrip(final T o) throws IOException, ClassNotFoundException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(o);
+		}
+		try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return (T) in.readObject();
+		}
+	}
+
+	static int serializedSize(final Serializable o) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(o);
+		}
+		return bytes.size();
+	}
+
+	@Test
+	public void patternsSharedAcrossLists() {
+		final ContentReplacerList list1 = newList();
+		final ContentReplacerList list2 = newList();
+		Assert.assertSame(list1.patterns()[0], list2.patterns()[0]);
+		Assert.assertSame(list1.patterns()[1], list2.patterns()[1]);
+	}
+
+	@Test
+	public void clearCaches() {
+		final Pattern pattern = ContentReplacerList.compile("clear[0-9]");
+		final LinearPattern linearPattern = LinearPattern.compile("clear[0-9]");
+		Assert.assertSame(pattern, ContentReplacerList.compile("clear[0-9]"));
+		Assert.assertSame(linearPattern, LinearPattern.compile("clear[0-9]"));
+		ContentReplacerList.clearCaches();
+		Assert.assertNotSame(pattern, ContentReplacerList.compile("clear[0-9]"));
+		Assert.assertNotSame(linearPattern, LinearPattern.compile("clear[0-9]"));
+	}
+
+	@Test
+	public void replaceAfterDeserialization() throws Exception {
+		final ContentReplacerList list = roundTrip(newList());
+		Assert.assertSame(newList().patterns()[0], list.patterns()[0]);
+		Assert.assertEquals(
+				"write to <a href=\"/contact\">email link</a><br/>thanks",
+				list.replace("write to User@Example.com\nthanks"));
+	}
+
+	@Test
+	public void singlePassMatchesSequentialWithoutOverlap() {
+		final ContentReplacerList sequential =
+				newList(ContentReplacerList.Mode.SEQUENTIAL, EMAIL_TO_LINK, NUMBER_TO_LINK, NewlineContentReplacer.INSTANCE);
+		final ContentReplacerList singlePass =
+				newList(ContentReplacerList.Mode.SINGLE_PASS, EMAIL_TO_LINK, NUMBER_TO_LINK, NewlineContentReplacer.INSTANCE);
+		final String[] inputs = {
+				"",
+				"nothing to replace here",
+				"call (123) 456-7890\nor write to user at gmail dot com\n\nthanks",
+				"user@example.com and 1 2 3 4 5 6 7 8 at the end"
+		};
+		for (final String input: inputs) {
+			Assert.assertEquals(input, sequential.replace(input), singlePass.replace(input));
+		}
+	}
+
+	@Test
+	public void singlePassPrecedence() {
+		final ContentReplacer fooToBar = new SimpleContentReplacer("foo", "bar");
+		final ContentReplacer barToBaz = new SimpleContentReplacer("bar", "baz");
+		final ContentReplacer foobar = new SimpleContentReplacer("foobar", "[foobar]");
+
+		// replacement output isn't rescanned
+		Assert.assertEquals("baz", newList(ContentReplacerList.Mode.SEQUENTIAL, fooToBar, barToBaz).replace("foo"));
+		Assert.assertEquals("bar", newList(ContentReplacerList.Mode.SINGLE_PASS, fooToBar, barToBaz).replace("foo"));
+
+		// earlier replacer wins at the same position
+		Assert.assertEquals("barbar", newList(ContentReplacerList.Mode.SINGLE_PASS, fooToBar, foobar).replace("foobar"));
+		Assert.assertEquals("[foobar]", newList(ContentReplacerList.Mode.SINGLE_PASS, foobar, fooToBar).replace("foobar"));
+
+		// leftmost match wins regardless of replacer order
+		Assert.assertEquals("baz bar", newList(ContentReplacerList.Mode.SINGLE_PASS, fooToBar, barToBaz).replace("bar foo"));
+	}
+
+	@Test
+	public void singlePassGroupReferences() {
+		final ContentReplacerList list =
+				newList(
+						ContentReplacerList.Mode.SINGLE_PASS,
+						new SimpleContentReplacer("(x)(y)", "$2$1"),
+						new SimpleContentReplacer("(a)(b)(c)", "$3$2$1\\$"));
+		Assert.assertEquals("yx cba$ YX", list.replace("xy abc XY"));
+	}
+
+	@Test
+	public void replaceEscapedMatchesEscapeMarkup() {
+		final ContentReplacerList list = newList(ContentReplacerList.Mode.SEQUENTIAL, NewlineContentReplacer.INSTANCE);
+		final char[] chars = {'a', ' ', '<', '>', '&', '"', '\'', '\t', '\r', '\u0000', '\u001f', '\u007f', '\u00e9', '\u4e2d'};
+		final Random random = new Random(7L);
+		for (int i = 0; i < 1000; i++) {
+			final StringBuilder sb = new StringBuilder();
+			final int length = random.nextInt(20);
+			for (int j = 0; j < length; j++) {
+				sb.append(chars[random.nextInt(chars.length)]);
+			}
+			final String input = sb.toString();
+			Assert.assertEquals(Strings.escapeMarkup(input, false, false).toString(), list.replaceEscaped(input));
+		}
+		Assert.assertEquals("&lt;b&gt;<br/>&amp;", list.replaceEscaped("<b>\n&"));
+	}
+
+	@Test
+	public void replaceEscapedMatchesUnescapedText() {
+		final ContentReplacerList list =
+				newList(
+						ContentReplacerList.Mode.SEQUENTIAL,
+						EMAIL_TO_LINK,
+						new SimpleContentReplacer("name=(\\S+)", "<i>$1</i>"),
+						NewlineContentReplacer.INSTANCE);
+		// without fusing, the escaped "<at>" is no longer recognized
+		Assert.assertEquals(
+				"&lt;b&gt;user&lt;at&gt;gmail.com&lt;/b&gt;",
+				list.replace(Strings.escapeMarkup("<b>user<at>gmail.com</b>", false, false).toString()));
+		Assert.assertEquals(
+				"&lt;b&gt;<a href=\"/contact\">email link</a>&lt;/b&gt;",
+				list.replaceEscaped("<b>user<at>gmail.com</b>"));
+		// text inserted by group references is escaped
+		Assert.assertEquals("<i>&lt;script&gt;</i><br/>", list.replaceEscaped("name=<script>\n"));
+	}
+
+	@Test
+	public void replaceToConsumerInChunks() {
+		final ContentReplacerList list =
+				newList(ContentReplacerList.Mode.SINGLE_PASS, EMAIL_TO_LINK, NewlineContentReplacer.INSTANCE);
+		final StringBuilder sb = new StringBuilder();
+		while (sb.length() < 5 * ContentReplacerList.CHUNK_SIZE) {
+			sb.append("<write> to user").append(sb.length()).append("@gmail.com\n");
+		}
+		final String input = sb.toString();
+
+		for (final boolean escape: new boolean[] {false, true}) {
+			final List<String> chunks = new ArrayList<>();
+			list.replace(input, escape, chunk -> chunks.add(chunk.toString()));
+			Assert.assertTrue(chunks.size() > 1);
+			for (final String chunk: chunks) {
+				Assert.assertTrue(chunk.length() < ContentReplacerList.CHUNK_SIZE + 64);
+			}
+			Assert.assertEquals(escape ? list.replaceEscaped(input) : list.replace(input), String.join("", chunks));
+		}
+
+		// without replacements, the input is passed on as is
+		final List<CharSequence> chunks = new ArrayList<>();
+		list.replace("nothing to replace", false, chunks::add);
+		Assert.assertEquals(1, chunks.size());
+		Assert.assertEquals("nothing to replace", chunks.get(0));
+	}
+
+	@Test
+	public void prefilterSkipsReplacer() {
+		final ContentReplacer digits = new SimpleContentReplacer("[0-9]+", "#") {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public ContentPrefilter prefilter() {
+				// deliberately wrong so that skipping is visible
+				return TriggerPrefilter.builder().chars("!").build();
+			}
+		};
+		for (final ContentReplacerList.Mode mode: ContentReplacerList.Mode.values()) {
+			final ContentReplacerList list = newList(mode, digits);
+			Assert.assertEquals("123", list.replace("123"));
+			Assert.assertEquals("#!", list.replace("123!"));
+		}
+	}
+
+	@Test
+	public void findMatches() {
+		final ContentReplacerList list =
+				newList(ContentReplacerList.Mode.SEQUENTIAL, EMAIL_TO_LINK, NUMBER_TO_LINK, NewlineContentReplacer.INSTANCE);
+		final String input = "call 123 456 7890\nor write to user@gmail.com";
+
+		Assert.assertTrue(list.containsMatch(input));
+		Assert.assertEquals(3, list.countMatches(input));
+		Assert.assertEquals(new ContentMatch(5, 17, 1, NUMBER_TO_LINK), list.findFirst(input));
+		Assert.assertEquals(
+				Arrays.asList(
+						new ContentMatch(5, 17, 1, NUMBER_TO_LINK),
+						new ContentMatch(17, 18, 2, NewlineContentReplacer.INSTANCE),
+						new ContentMatch(30, 44, 0, EMAIL_TO_LINK)),
+				list.findAll(input));
+
+		Assert.assertFalse(list.containsMatch("nothing to see here"));
+		Assert.assertEquals(0, list.countMatches("nothing to see here"));
+		Assert.assertNull(list.findFirst("nothing to see here"));
+		Assert.assertTrue(list.findAll("").isEmpty());
+	}
+
+	@Test
+	public void findMatchesWithSamePatternTwice() {
+		final ContentReplacer fooToBar = new SimpleContentReplacer("foo", "bar");
+		final ContentReplacer fooToBaz = new SimpleContentReplacer("foo", "baz");
+		final ContentReplacer o = new SimpleContentReplacer("o", "0");
+		final ContentReplacerList list = newList(ContentReplacerList.Mode.SEQUENTIAL, o, fooToBar, fooToBaz);
+		// the leftmost match wins over the replacer added first
+		Assert.assertEquals(
+				Arrays.asList(new ContentMatch(0, 3, 1, fooToBar), new ContentMatch(4, 5, 0, o)),
+				list.findAll("foo o"));
+		final ContentReplacerList list2 = newList(ContentReplacerList.Mode.SEQUENTIAL, fooToBar, fooToBaz, o);
+		Assert.assertEquals(
+				Arrays.asList(new ContentMatch(0, 3, 0, fooToBar), new ContentMatch(4, 7, 0, fooToBar)),
+				list2.findAll("foo foo"));
+		Assert.assertEquals(3, list2.countMatches("foo foo o"));
+	}
+
+	@Test
+	public void findMatchesWithScanner() {
+		final EmailToLinkContentReplacer linear =
+				new EmailToLinkContentReplacer(
+						"/contact",
+						"email link",
+						LinearEmailContentReplacerPatternProvider.forDefaultRegex());
+		final ContentReplacerList list =
+				newList(ContentReplacerList.Mode.SEQUENTIAL, linear, NewlineContentReplacer.INSTANCE);
+		Assert.assertEquals(
+				Arrays.asList(
+						new ContentMatch(0, 14, 0, linear),
+						new ContentMatch(14, 15, 1, NewlineContentReplacer.INSTANCE)),
+				list.findAll("user@gmail.com\n"));
+	}
+
+	/**
+	 * Replaces "name=..." like {@code <i>$1</i>}, but through a {@link ContentReplacementWriter}.
+	 */
+	private static final ContentReplacer NAME_WRITER = new SimpleContentReplacer("name=(\\S+)", "<i>$1</i>") {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public ContentReplacementWriter writer() {
+			return (input, match, out, escape) -> {
+				out.append("<i>");
+				ContentReplacementWriter.appendText(out, input, match.start(1), match.end(1), escape);
+				out.append("</i>");
+			};
+		}
+	};
+
+	@Test
+	public void writerMatchesReplacementString() {
+		final EmailToLinkContentReplacer linear =
+				new EmailToLinkContentReplacer(
+						"/contact",
+						"email link",
+						LinearEmailContentReplacerPatternProvider.forDefaultRegex());
+		final ContentReplacer nameReplacement = new SimpleContentReplacer("name=(\\S+)", "<i>$1</i>");
+		final String input = "<b>name=<x>\nuser@gmail.com name=(a)</b>\n";
+		for (final ContentReplacerList.Mode mode: ContentReplacerList.Mode.values()) {
+			// with a scanner in the list, the single pass mode runs the replacers side by side instead of merged
+			for (final ContentReplacer email: new ContentReplacer[] {EMAIL_TO_LINK, linear}) {
+				final ContentReplacerList expected =
+						newList(mode, email, nameReplacement, NewlineContentReplacer.INSTANCE);
+				final ContentReplacerList list = newList(mode, email, NAME_WRITER, NewlineContentReplacer.INSTANCE);
+				Assert.assertEquals(mode.name(), expected.replace(input), list.replace(input));
+				Assert.assertEquals(mode.name(), expected.replaceEscaped(input), list.replaceEscaped(input));
+			}
+		}
+		final ContentReplacerList list =
+				newList(ContentReplacerList.Mode.SINGLE_PASS, EMAIL_TO_LINK, NAME_WRITER, NewlineContentReplacer.INSTANCE);
+		Assert.assertEquals(
+				"&lt;b&gt;<i>&lt;x&gt;</i><br/><a href=\"/contact\">email link</a> <i>(a)&lt;/b&gt;</i><br/>",
+				list.replaceEscaped(input));
+	}
+
+	@Test
+	public void replaceCharSequenceAppendsToBuilder() {
+		for (final ContentReplacerList.Mode mode: ContentReplacerList.Mode.values()) {
+			final ContentReplacerList list = newList(mode, NAME_WRITER, NewlineContentReplacer.INSTANCE);
+			final StringBuilder out = new StringBuilder("> ");
+			list.replace(new StringBuilder("name=<x>\n"), false, out);
+			list.replace("name=<y>", true, out);
+			list.replace("", true, out);
+			list.replace("plain", false, out);
+			Assert.assertEquals(mode.name(), "> <i><x></i><br/><i>&lt;y&gt;</i>plain", out.toString());
+		}
+	}
+
+	@Test
+	public void writerChangesSignature() {
+		final ContentReplacer nameReplacement = new SimpleContentReplacer("name=(\\S+)", "<i>$1</i>");
+		final Hasher withWriter = Hashing.sha256().newHasher();
+		newList(ContentReplacerList.Mode.SEQUENTIAL, NAME_WRITER).putSignature(withWriter);
+		final Hasher withoutWriter = Hashing.sha256().newHasher();
+		newList(ContentReplacerList.Mode.SEQUENTIAL, nameReplacement).putSignature(withoutWriter);
+		Assert.assertNotEquals(withoutWriter.hash(), withWriter.hash());
+	}
+
+	@Test
+	public void scannerChangesSignature() {
+		final HashCode com = scannerSignature(new WebLinkScanner(Arrays.asList("com")));
+		Assert.assertEquals(com, scannerSignature(new WebLinkScanner(Arrays.asList("COM"))));
+		Assert.assertNotEquals(com, scannerSignature(new WebLinkScanner(Arrays.asList("com", "org"))));
+		Assert.assertNotEquals(com, scannerSignature(null));
+	}
+
+	private static HashCode scannerSignature(final ContentScanner scanner) {
+		final ContentReplacer replacer = new SimpleContentReplacer("www\\.\\S+", "[link]") {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public ContentScanner scanner() {
+				return scanner;
+			}
+		};
+		final Hasher hasher = Hashing.sha256().newHasher();
+		newList(ContentReplacerList.Mode.SEQUENTIAL, replacer).putSignature(hasher);
+		return hasher.hash();
+	}
+
+	@Test
+	public void sharedListSerializedAsKey() throws IOException, ClassNotFoundException {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(EMAIL_TO_LINK);
+		builder.add(NewlineContentReplacer.INSTANCE);
+		builder.setKey("ContentReplacerListTest.shared");
+		final ContentReplacerList shared = builder.build();
+		Assert.assertEquals("ContentReplacerListTest.shared", shared.getKey());
+		Assert.assertSame(shared, roundTrip(shared));
+		Assert.assertTrue(serializedSize(shared) < 200);
+
+		// building the list again with the same key replaces it
+		final ContentReplacerList rebuilt = builder.build();
+		Assert.assertSame(rebuilt, roundTrip(shared));
+
+		// a key that isn't registered in the JVM that deserializes the list
+		final ContentReplacerList.Builder unregistered = new ContentReplacerList.Builder();
+		unregistered.setKey("ContentReplacerListTest.registered");
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(unregistered.build());
+		}
+		final byte[] serialized =
+				new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1)
+						.replace(".registered", ".unregister")
+						.getBytes(StandardCharsets.ISO_8859_1);
+		try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+			in.readObject();
+			Assert.fail("Resolved an unregistered key");
+		} catch (final InvalidObjectException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void providersSerializedCompactly() throws IOException, ClassNotFoundException {
+		final List<String> domains = new ArrayList<>(EmailContentReplacerTest.COMMON_EMAIL_DOMAINS);
+		for (int i = 0; i < 100; i++) {
+			domains.add("domain" + i);
+		}
+		final EmailContentReplacerPatternProvider provider = new EmailContentReplacerPatternProvider(domains);
+		Assert.assertTrue(serializedSize(provider) < provider.pattern().length());
+
+		final EmailContentReplacerPatternProvider copy1 = roundTrip(provider);
+		final EmailContentReplacerPatternProvider copy2 = roundTrip(provider);
+		Assert.assertEquals(provider.pattern(), copy1.pattern());
+		Assert.assertSame(copy1, copy2);
+
+		final EmailContentReplacerPatternProvider trie = EmailContentReplacerPatternProvider.forDomainTrie(domains);
+		Assert.assertEquals(trie.pattern(), roundTrip(trie).pattern());
+
+		Assert.assertSame(
+				EmailContentReplacerPatternProvider.forDefaultRegex(),
+				roundTrip(EmailContentReplacerPatternProvider.forDefaultRegex()));
+		Assert.assertSame(
+				LinearEmailContentReplacerPatternProvider.forDefaultRegex(),
+				roundTrip(LinearEmailContentReplacerPatternProvider.forDefaultRegex()));
+		Assert.assertSame(NewlineContentReplacer.INSTANCE, roundTrip(NewlineContentReplacer.INSTANCE));
+
+		final EmailToLinkContentReplacer replacer = new EmailToLinkContentReplacer("/contact", "email link", provider);
+		Assert.assertEquals(
+				"<a href=\"/contact\">email link</a>",
+				newList(ContentReplacerList.Mode.SEQUENTIAL, roundTrip(replacer)).replace("user at g mail.com"));
+	}
+}
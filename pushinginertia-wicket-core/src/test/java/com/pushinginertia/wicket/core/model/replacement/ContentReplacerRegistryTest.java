@@ -0,0 +1,174 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import org.apache.wicket.model.Model;
+import org.apache.wicket.util.tester.WicketTester;
+import org.apache.wicket.util.time.Duration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+
+public class ContentReplacerRegistryTest {
+	private final WicketTester tester = new WicketTester();
+
+	@After
+	public void tearDown() {
+		tester.destroy();
+	}
+
+	private static ContentReplacerList list(final String pattern, final String replacement) {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(new RegexContentReplacer(pattern, replacement));
+		return builder.build();
+	}
+
+	private static File ruleFile(final String... lines) throws IOException {
+		final File file = File.createTempFile("rules", ".properties");
+		file.deleteOnExit();
+		Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+		return file;
+	}
+
+	@Test
+	public void parse() {
+		final Properties properties = new Properties();
+		properties.setProperty("chat.mode", "SINGLE_PASS");
+		properties.setProperty("chat.1.type", "email");
+		properties.setProperty("chat.1.domains", "gmail, hotmail");
+		properties.setProperty("chat.1.replacement", "[email]");
+		properties.setProperty("chat.2.type", "number");
+		properties.setProperty("chat.2.minNumbers", "7");
+		properties.setProperty("chat.2.replacement", "[number]");
+		properties.setProperty("chat.10.type", "newline");
+		properties.setProperty("chat.3.pattern", "\\bskype\\b");
+		properties.setProperty("chat.3.replacement", "[blocked]");
+		properties.setProperty("profile.1.type", "webLink");
+		properties.setProperty("profile.1.replacement", "[link]");
+
+		final Map<String, ContentReplacerList> ruleSets = ContentReplacerRuleSets.parse(properties);
+		Assert.assertEquals(2, ruleSets.size());
+		final ContentReplacerList chat = ruleSets.get("chat");
+		Assert.assertEquals(ContentReplacerList.Mode.SINGLE_PASS, chat.getMode());
+		Assert.assertEquals(
+				"write to [email] or call [number] on [blocked]<br/>bye",
+				chat.replace("write to user at g mail.com or call 555 1234 567 on Skype\nbye"));
+		Assert.assertEquals("see [link] now", ruleSets.get("profile").replace("see www.example.com now"));
+	}
+
+	@Test
+	public void invalidRules() {
+		// key and value pairs for each invalid rule set
+		final String[][] invalid = {
+				{"chat.1.type", "unknown", "chat.1.replacement", "b"},
+				{"chat.1.pattern", "[a-z", "chat.1.replacement", "b"},
+				{"chat.1.pattern", "a"},
+				{"chat.x.pattern", "a", "chat.x.replacement", "b"},
+				{"chat.mode", "PARALLEL"},
+				{"chat", "a"}
+		};
+		for (final String[] rule: invalid) {
+			final Properties properties = new Properties();
+			for (int i = 0; i < rule.length; i += 2) {
+				properties.setProperty(rule[i], rule[i + 1]);
+			}
+			try {
+				ContentReplacerRuleSets.parse(properties);
+				Assert.fail("Accepted " + properties);
+			} catch (final IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void snapshots() {
+		final ContentReplacerRegistry registry = new ContentReplacerRegistry();
+		final ContentReplacerRegistry.Snapshot empty = registry.snapshot();
+		Assert.assertEquals(0, empty.getVersion());
+
+		registry.put("a", list("x", "y"));
+		registry.put("b", list("x", "z"));
+		final ContentReplacerRegistry.Snapshot before = registry.snapshot();
+		Assert.assertEquals(2, before.getVersion());
+
+		registry.put("a", list("x", "w"));
+		registry.remove("b");
+		Assert.assertEquals(4, registry.snapshot().getVersion());
+		Assert.assertEquals("w", registry.get("a").replace("x"));
+		Assert.assertNull(registry.get("b"));
+
+		// earlier snapshots are unaffected by later changes
+		Assert.assertTrue(empty.getNames().isEmpty());
+		Assert.assertEquals("y", before.get("a").replace("x"));
+		Assert.assertEquals("z", before.get("b").replace("x"));
+	}
+
+	@Test
+	public void modelUsesCurrentRuleSet() throws IOException {
+		Assert.assertNull(ContentReplacerRegistry.get());
+		final ContentReplacerRegistry registry = new ContentReplacerRegistry();
+		ContentReplacerRegistry.set(tester.getApplication(), registry);
+		final ContentReplacementModel model = new ContentReplacementModel(Model.of("call 5551234567"), "chat");
+		try {
+			model.getObject();
+			Assert.fail("Rendered without a rule set");
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+
+		registry.load(ruleFile("chat.1.type=number", "chat.1.minNumbers=7", "chat.1.replacement=[number]"));
+		Assert.assertEquals("call [number]", model.getObject());
+
+		registry.load(ruleFile("chat.1.type=number", "chat.1.minNumbers=7", "chat.1.replacement=[phone]"));
+		Assert.assertEquals("call [phone]", model.getObject());
+
+		try {
+			registry.load(ruleFile("chat.1.type=number", "chat.1.minNumbers=seven", "chat.1.replacement=[x]"));
+			Assert.fail("Loaded an invalid rule");
+		} catch (final IllegalArgumentException e) {
+			Assert.assertEquals("call [phone]", model.getObject());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void watch() throws IOException, InterruptedException {
+		final ContentReplacerRegistry registry = new ContentReplacerRegistry();
+		final File file = ruleFile("a.1.pattern=x", "a.1.replacement=y");
+		registry.watch(file, Duration.milliseconds(20));
+		try {
+			Assert.assertEquals("y", registry.get("a").replace("x"));
+
+			final long version = registry.snapshot().getVersion();
+			Files.write(file.toPath(), Arrays.asList("a.1.pattern=x", "a.1.replacement=z"), StandardCharsets.UTF_8);
+			Assert.assertTrue(file.setLastModified(file.lastModified() + 2000));
+			while (registry.snapshot().getVersion() == version) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals("z", registry.get("a").replace("x"));
+		} finally {
+			registry.stopWatching();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DomainTrieTest {
+	/**
+	 * Domains that are prefixes of each other, listed in both orders.
+	 */
+	private static final List<String> DOMAINS =
+			ImmutableList.of("gmail", "hotmail", "hot", "gmailx", "yahoo", "outlook", "live", "g", "ho", "mail");
+
+	private static final String[] FRAGMENTS = {
+			"a", "x", "1", ".", " ", "  ", "\n", "@", "at", "AT", "(at)", "dot", "com", "co", "uk", "ru",
+			"g", "gmail", "g mail", "hot", "hotmail", "ho t", "yahoo", "outlook", "live", "mail", "mailxru", "user"
+	};
+
+	@Nonnull
+	private static List<String> matches(@Nonnull final String regex, @Nonnull final String input) {
+		final Matcher m = Pattern.compile(regex, Pattern.CASE_INSENSITIVE).matcher(input);
+		final List<String> matches = new ArrayList<>();
+		while (m.find()) {
+			matches.add(m.start() + "-" + m.end());
+		}
+		return matches;
+	}
+
+	@Test
+	public void regex() {
+		final DomainTrie trie = new DomainTrie(ImmutableList.of("gmail", "GMX", "hotmail", "hot", "gmailx", "a-b"));
+		Assert.assertEquals(5, trie.size());
+		Assert.assertEquals(
+				"(?:a\\s*\\-\\s*b|g\\s*m\\s*(?:a\\s*i\\s*l|x)|h\\s*o\\s*t(?:\\s*m\\s*a\\s*i\\s*l)?)",
+				trie.toRegex());
+
+		Assert.assertEquals("h\\s*o\\s*t", new DomainTrie(ImmutableList.of("hot", "hotmail")).toRegex());
+	}
+
+	@Test
+	public void empty() {
+		final DomainTrie trie = new DomainTrie(ImmutableList.of(""));
+		Assert.assertEquals(0, trie.size());
+		Assert.assertEquals(Collections.emptyList(), matches(trie.toRegex(), "gmail \n 123"));
+	}
+
+	@Test
+	public void sameMatchesAsAlternation() {
+		final String alternation = new EmailContentReplacerPatternProvider(DOMAINS).pattern();
+		final String trie = EmailContentReplacerPatternProvider.forDomainTrie(DOMAINS).pattern();
+		final LinearEmailContentReplacerPatternProvider linear =
+				LinearEmailContentReplacerPatternProvider.forDomainTrie(DOMAINS);
+		final ScanResult result = new ScanResult();
+
+		final List<String> inputs = new ArrayList<>();
+		Collections.addAll(inputs, LinearEmailContentReplacerPatternProviderTest.EMAILS);
+		Collections.addAll(inputs, LinearEmailContentReplacerPatternProviderTest.NOT_EMAILS);
+		final Random random = new Random(1212L);
+		for (int i = 0; i < 3000; i++) {
+			final StringBuilder sb = new StringBuilder();
+			final int fragments = 1 + random.nextInt(20);
+			for (int j = 0; j < fragments; j++) {
+				sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+			inputs.add(sb.toString());
+		}
+
+		for (final String input: inputs) {
+			final List<String> expected = matches(alternation, input);
+			Assert.assertEquals("Input [" + input + ']', expected, matches(trie, input));
+
+			final List<String> scanned = new ArrayList<>();
+			int from = 0;
+			while (from <= input.length() && linear.find(input, from, result)) {
+				scanned.add(result.start() + "-" + result.end());
+				from = result.end() == result.start() ? result.end() + 1 : result.end();
+			}
+			Assert.assertEquals("Input [" + input + ']', expected, scanned);
+		}
+	}
+}
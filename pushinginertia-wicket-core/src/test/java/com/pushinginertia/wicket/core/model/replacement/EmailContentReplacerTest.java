@@ -17,7 +17,7 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class EmailContentReplacerTest {
-	private static final Set<String> COMMON_EMAIL_DOMAINS =
+	static final Set<String> COMMON_EMAIL_DOMAINS =
 			ImmutableSet.of("gmail", "hotmail", "yahoo", "outlook", "live");
 
 	private static class EmailContentReplacerMock extends EmailContentReplacer {
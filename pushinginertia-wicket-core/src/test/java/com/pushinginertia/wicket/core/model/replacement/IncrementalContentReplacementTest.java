@@ -0,0 +1,156 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Random;
+
+public class IncrementalContentReplacementTest {
+	/**
+	 * Fragments that build emails, number sequences, markup and line breaks, including matches that span lines.
+	 */
+	private static final String[] FRAGMENTS = {
+			"user", " at ", "@", "gmail", ".com", " dot ", "1", "23", "one", " ", "-", "(", ")", "<b>", "</b>", "&",
+			"x", "word", "\n", "\n\n", " \n", "\r\n"
+	};
+
+	private static ContentReplacerList newList() {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(new EmailToLinkContentReplacer("/contact", "email link"));
+		builder.add(new NumberSequenceToLinkContentReplacer(3, "/contact", "number link"));
+		builder.add(new RegexContentReplacer("<b>(\\w+)</b>", "<strong>$1</strong>"));
+		builder.add(NewlineContentReplacer.INSTANCE);
+		builder.setMode(ContentReplacerList.Mode.SINGLE_PASS);
+		return builder.build();
+	}
+
+	@Nonnull
+	private static String randomText(@Nonnull final Random random, final int fragments) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < fragments; i++) {
+			sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+		}
+		return sb.toString();
+	}
+
+	@Nonnull
+	private static String expected(
+			@Nonnull final ContentReplacerList list,
+			final boolean escape,
+			@Nonnull final String input) {
+		return escape ? list.replaceEscaped(input) : list.replace(input);
+	}
+
+	private static void randomEdits(final boolean escape) {
+		final ContentReplacerList list = newList();
+		final Random random = new Random(escape ? 16L : 61L);
+		for (int doc = 0; doc < 20; doc++) {
+			final IncrementalContentReplacement incremental = new IncrementalContentReplacement(list, escape, 64);
+			String input = randomText(random, random.nextInt(300));
+			Assert.assertEquals(expected(list, escape, input), incremental.reset(input));
+			for (int i = 0; i < 100; i++) {
+				final int start = random.nextInt(input.length() + 1);
+				final int end = Math.min(input.length(), start + random.nextInt(random.nextBoolean() ? 3 : 40));
+				final String text = randomText(random, random.nextInt(4));
+				input = input.substring(0, start) + text + input.substring(end);
+				final String output = incremental.edit(start, end, text);
+				Assert.assertEquals("after edit " + i + " of [" + input + ']', expected(list, escape, input), output);
+				Assert.assertEquals(input, incremental.getInput());
+			}
+		}
+	}
+
+	@Test
+	public void randomEditsSameAsFullReplacement() {
+		randomEdits(false);
+	}
+
+	@Test
+	public void randomEditsSameAsFullEscapedReplacement() {
+		randomEdits(true);
+	}
+
+	@Test
+	public void update() {
+		final ContentReplacerList list = newList();
+		final IncrementalContentReplacement incremental = new IncrementalContentReplacement(list, true);
+		Assert.assertEquals("", incremental.getOutput());
+		Assert.assertEquals("a<br/>b", incremental.update("a\nb"));
+		Assert.assertEquals(
+				"a<br/>mail <a href=\"/contact\">email link</a><br/>b",
+				incremental.update("a\nmail user at gmail.com\nb"));
+		Assert.assertEquals("a<br/>mail user at gmail<br/>b", incremental.update("a\nmail user at gmail\nb"));
+		Assert.assertEquals("a<br/>mail user at gmail<br/>b", incremental.update("a\nmail user at gmail\nb"));
+		Assert.assertEquals("&lt;b&gt;", incremental.update("<b>"));
+		Assert.assertEquals("", incremental.update(""));
+	}
+
+	/**
+	 * A prefilter that records the length of the longest text it's asked about.
+	 */
+	private static final class LengthRecordingReplacer extends RegexContentReplacer {
+		private static final long serialVersionUID = 1L;
+
+		private int maxLength;
+
+		private LengthRecordingReplacer() {
+			super("secret", "[hidden]");
+		}
+
+		@Nullable
+		@Override
+		public ContentPrefilter prefilter() {
+			return input -> {
+				maxLength = Math.max(maxLength, input.length());
+				return true;
+			};
+		}
+	}
+
+	@Test
+	public void onlyWindowAroundEditScanned() {
+		final LengthRecordingReplacer replacer = new LengthRecordingReplacer();
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(replacer);
+		builder.add(NewlineContentReplacer.INSTANCE);
+		builder.setMode(ContentReplacerList.Mode.SINGLE_PASS);
+		final ContentReplacerList list = builder.build();
+
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			sb.append("line ").append(i).append(" of a long text\n");
+		}
+		final String input = sb.toString();
+		final IncrementalContentReplacement incremental = new IncrementalContentReplacement(list, false);
+		incremental.reset(input);
+		Assert.assertEquals(input.length(), replacer.maxLength);
+
+		replacer.maxLength = 0;
+		final int middle = input.indexOf("line 1000 ");
+		final String output = incremental.edit(middle, middle + 4, "secret");
+		Assert.assertTrue("scanned " + replacer.maxLength, replacer.maxLength < 4 * 256);
+		Assert.assertEquals(list.replace(incremental.getInput()), output);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void invalidRange() {
+		new IncrementalContentReplacement(newList(), false).edit(0, 1, "x");
+	}
+}
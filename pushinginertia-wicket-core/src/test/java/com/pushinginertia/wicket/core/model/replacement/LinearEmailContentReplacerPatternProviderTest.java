@@ -0,0 +1,191 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class LinearEmailContentReplacerPatternProviderTest {
+	/**
+	 * Fragments that random inputs are assembled from, chosen to exercise every part of the email regex.
+	 */
+	private static final String[] FRAGMENTS = {
+			"a", "b", "Z", "1", "_", "-", "%", "+", ".", "..", " ", "  ", "\n", "\t",
+			"@", "＠", "﹫", "at", "AT", "(a)", "(at)", "[at]", "{at}", "<at>", "(@)", "(", ")", "<", ">",
+			"dot", "(dot)", "<period>", "gmail", "g mail", "hot", "mail", "yahoo", "outlook", "live",
+			"com", "co", "uk", "net", "example", "user", "é", "中"
+	};
+
+	/**
+	 * Strings that are entirely an email, as matched by the pattern built from
+	 * {@link EmailContentReplacerTest#COMMON_EMAIL_DOMAINS}.
+	 */
+	static final String[] EMAILS = {
+			"user1234 [at] example.com",
+			"user1234 {at} example.com",
+			"user1234[at]example.com",
+			"user1234{at}example.com",
+			"user1234at example.com",
+			"user(at)example dot com",
+			"a.b @out look . com",
+			"a.b (at) out look . com",
+			"username at yahoo com",
+			"username@gmail",
+			"user_1234@yahoocom",
+			"user(a)example.com",
+			"user(at)example(period)com",
+			// seen as (user)(@)(example.com)
+			"user)(@)(example.com",
+			"user)(at)(example.com",
+			"user (at) (example) dot com",
+			"user at yahoo. com",
+			"user.name (at) gmail . com",
+			"user at gmail com",
+			"User1234 at. hotmail..com",
+			"Someone at Gmail.Com",
+			"user123 @ hotmail . com",
+			"user999 <at> gmail <dot> com",
+			"user999<at>gmail<dot>com"
+	};
+
+	/**
+	 * Strings that must not be matched as a whole by the same pattern.
+	 */
+	static final String[] NOT_EMAILS = {
+			"transportation. And",
+			"I like to eat meat pies.",
+			"we eat meat every night",
+			"a private bathroom. There are other"
+	};
+
+	private static final LinearEmailContentReplacerPatternProvider DEFAULT =
+			LinearEmailContentReplacerPatternProvider.forDefaultRegex();
+	private static final LinearEmailContentReplacerPatternProvider WITH_DOMAINS =
+			new LinearEmailContentReplacerPatternProvider(EmailContentReplacerTest.COMMON_EMAIL_DOMAINS);
+
+	/**
+	 * Lists the spans of all matches found by {@link Matcher#find()}.
+	 */
+	@Nonnull
+	private static List<String> regexMatches(@Nonnull final String regex, @Nonnull final String input) {
+		final Matcher m = Pattern.compile(regex, Pattern.CASE_INSENSITIVE).matcher(input);
+		final List<String> matches = new ArrayList<>();
+		while (m.find()) {
+			matches.add(m.start() + "-" + m.end());
+		}
+		return matches;
+	}
+
+	/**
+	 * Lists the spans of all matches found by a scanner, advancing the same way as {@link Matcher#find()}.
+	 */
+	@Nonnull
+	private static List<String> scannerMatches(@Nonnull final ContentScanner scanner, @Nonnull final String input) {
+		final ScanResult m = new ScanResult();
+		final List<String> matches = new ArrayList<>();
+		int from = 0;
+		while (from <= input.length() && scanner.find(input, from, m)) {
+			matches.add(m.start() + "-" + m.end());
+			from = m.end() == m.start() ? m.end() + 1 : m.end();
+		}
+		return matches;
+	}
+
+	private static void assertSameMatches(
+			@Nonnull final LinearEmailContentReplacerPatternProvider provider,
+			@Nonnull final String input) {
+		Assert.assertEquals(
+				"Input [" + input + ']',
+				regexMatches(provider.pattern(), input),
+				scannerMatches(provider, input));
+	}
+
+	@Test
+	public void sameAsRegexOnTestCorpus() {
+		for (final String email: EMAILS) {
+			// every email is matched in full, as with Matcher.matches()
+			Assert.assertEquals(email, "0-" + email.length(), scannerMatches(WITH_DOMAINS, email).get(0));
+			assertSameMatches(WITH_DOMAINS, email);
+			assertSameMatches(DEFAULT, email);
+			assertSameMatches(WITH_DOMAINS, "contact me: " + email + ". thanks!");
+		}
+		for (final String notEmail: NOT_EMAILS) {
+			assertSameMatches(WITH_DOMAINS, notEmail);
+			assertSameMatches(DEFAULT, notEmail);
+		}
+	}
+
+	@Test
+	public void sameAsRegexOnRandomInput() {
+		final Random random = new Random(4242L);
+		for (int i = 0; i < 3000; i++) {
+			final StringBuilder sb = new StringBuilder();
+			final int fragments = 1 + random.nextInt(30);
+			for (int j = 0; j < fragments; j++) {
+				sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+			final String input = sb.toString();
+			assertSameMatches(DEFAULT, input);
+			assertSameMatches(WITH_DOMAINS, input);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void linearOnHostileInput() {
+		final StringBuilder sb = new StringBuilder();
+		while (sb.length() < 50000) {
+			sb.append("a ");
+		}
+		Assert.assertTrue(scannerMatches(WITH_DOMAINS, sb.toString()).isEmpty());
+	}
+
+	@Test
+	public void contentReplacerListUsesScanner() {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(new EmailToLinkContentReplacer("/contact", "email link", WITH_DOMAINS));
+		final ContentReplacerList list = builder.build();
+		Assert.assertEquals(
+				"write to <a href=\"/contact\">email link</a> or <a href=\"/contact\">email link</a>.",
+				list.replace("write to user at gmail dot com or u s e r @ g m a i l . c o m."));
+	}
+
+	@Test
+	public void patternsShareScratchSpace() {
+		// a small and a large program alternate on the same thread
+		final LinearPattern small = LinearPattern.compile("a[0-9]+");
+		final ScanResult result = new ScanResult();
+		final String input = "user at gmail dot com a12 b a3";
+		for (int i = 0; i < 3; i++) {
+			Assert.assertTrue(small.find(input, 0, result));
+			Assert.assertEquals("22-25", result.start() + "-" + result.end());
+			Assert.assertEquals(regexMatches(WITH_DOMAINS.pattern(), input), scannerMatches(WITH_DOMAINS, input));
+			Assert.assertTrue(small.find(input, 25, result));
+			Assert.assertEquals("28-30", result.start() + "-" + result.end());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedSyntax() {
+		LinearPattern.compile("a(?=b)");
+	}
+}
@@ -0,0 +1,151 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class NumberSequenceScannerTest {
+	/**
+	 * Fragments made of the characters and words that the regex knows about, plus filler.
+	 */
+	private static final String[] FRAGMENTS = {
+			"1", "23", "0", "9", "one", "ONE", "Two", "oh", "zero", "cero", "seven", "nine", "eight", "three",
+			"five", "o", "ne", "bone", "ph",
+			" ", "  ", "-", "–", ".", "_", "*", ",", "(", ")", "( ", " )", "（", "）", "　", "\n", "\t",
+			"①", "⑩", "⒛", "⓪", "❶", "➓", "１", "９", "七", "十", "〇", "a", "x", "call", "é", "中"
+	};
+
+	private static final NumberSequenceContentReplacer[] REPLACERS = {replacer(1), replacer(3), replacer(7)};
+
+	@Nonnull
+	private static NumberSequenceContentReplacer replacer(final int minNumbers) {
+		return new NumberSequenceContentReplacer(minNumbers) {
+			private static final long serialVersionUID = 1L;
+
+			@Nonnull
+			@Override
+			public String replacement() {
+				return "[number]";
+			}
+		};
+	}
+
+	@Nonnull
+	private static List<String> regexMatches(@Nonnull final String regex, @Nonnull final String input) {
+		final Matcher m = Pattern.compile(regex, Pattern.CASE_INSENSITIVE).matcher(input);
+		final List<String> matches = new ArrayList<>();
+		while (m.find()) {
+			matches.add(m.start() + "-" + m.end());
+		}
+		return matches;
+	}
+
+	@Nonnull
+	private static List<String> scannerMatches(@Nonnull final ContentScanner scanner, @Nonnull final String input) {
+		final ScanResult m = new ScanResult();
+		final List<String> matches = new ArrayList<>();
+		int from = 0;
+		while (from <= input.length() && scanner.find(input, from, m)) {
+			matches.add(m.start() + "-" + m.end());
+			from = m.end() == m.start() ? m.end() + 1 : m.end();
+		}
+		return matches;
+	}
+
+	@Test
+	public void sameAsRegexOnRandomInput() {
+		final Random random = new Random(1515L);
+		for (int i = 0; i < 5000; i++) {
+			final StringBuilder sb = new StringBuilder();
+			final int fragments = 1 + random.nextInt(25);
+			for (int j = 0; j < fragments; j++) {
+				sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+			final String input = sb.toString();
+			for (final NumberSequenceContentReplacer replacer: REPLACERS) {
+				Assert.assertEquals(
+						replacer + " on [" + input + ']',
+						regexMatches(replacer.pattern(), input),
+						scannerMatches(replacer.scanner(), input));
+			}
+		}
+	}
+
+	@Test
+	public void overlappingWords() {
+		final String[] inputs = {
+				"sevenine 1 2 3 4 5 6", "oneight 1 2 3 4 5 6", "eightwo 1 2 3 4 5 6", "fiveight 1 2 3 4 5 6",
+				"twone 1 2 3 4 5 6", "1 sevenine 2 3 4 5 6", "threeightwone 2 3 4 5 6"
+		};
+		for (final String input: inputs) {
+			Assert.assertEquals(
+					input,
+					regexMatches(REPLACERS[2].pattern(), input),
+					scannerMatches(REPLACERS[2].scanner(), input));
+		}
+		Assert.assertEquals("[4-20]", scannerMatches(REPLACERS[2].scanner(), "sevenine 1 2 3 4 5 6").toString());
+	}
+
+	@Test
+	public void variantsMissedByRegex() {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(REPLACERS[2]);
+		final ContentReplacerList list = builder.build();
+		final String[] variants = {
+				"٥٥٥١٢٣٤",      // Arabic-Indic digits
+				"𝟏𝟐𝟑 4567",       // mathematical bold digits
+				"555—123—4567",                          // em dashes
+				"５５５－１２３－４５６７",                              // fullwidth hyphens
+				"ｏｎｅ ｔｗｏ ｔｈｒｅｅ 4567",                          // fullwidth words
+				"伍伍伍壹贰叁肆",                                     // financial numerals
+				"㈤㈤㈤㈠㈡㈢㈣",                                      // parenthesized ideographs
+				"⁵⁵⁵¹²³⁴"                                          // superscripts
+		};
+		for (final String variant: variants) {
+			Assert.assertEquals(variant, "call [number] now", list.replace("call " + variant + " now"));
+		}
+	}
+
+	@Test
+	public void originalSpansReplaced() {
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(REPLACERS[2]);
+		builder.add(NewlineContentReplacer.INSTANCE);
+		builder.setMode(ContentReplacerList.Mode.SINGLE_PASS);
+		final ContentReplacerList list = builder.build();
+		Assert.assertEquals(
+				"a [number]<br/>b [number] c",
+				list.replace("a ( 555 ) １２３-ｆｏｕｒ５６7\nb 𝟓𝟓𝟓 1234 c"));
+		Assert.assertEquals("123 456 and 7", list.replace("123 456 and 7"));
+	}
+
+	@Test(timeout = 10000)
+	public void linearOnLongInput() {
+		final StringBuilder sb = new StringBuilder();
+		while (sb.length() < 200000) {
+			sb.append("1 2 3 4 5 6 x ");
+		}
+		Assert.assertTrue(scannerMatches(REPLACERS[2].scanner(), sb.toString()).isEmpty());
+	}
+}
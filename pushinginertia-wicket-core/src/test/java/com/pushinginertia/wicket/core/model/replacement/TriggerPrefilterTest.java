@@ -0,0 +1,152 @@
+/* Copyright (c) 2011-2018 Pushing Inertia
+ * All rights reserved.  http://pushinginertia.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pushinginertia.wicket.core.model.replacement;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public class TriggerPrefilterTest {
+	/**
+	 * Fragments that random inputs are assembled from: triggers of the built-in replacers, near misses and filler.
+	 */
+	private static final String[] FRAGMENTS = {
+			"a", "t", "at", "AT", "(a)", "(A)", "@", "＠", "﹫", "gmail", "com", ".", " dot ", " ", "\n", "\t",
+			"1", "９", "①", "⓪", "❶", "七", "〇", "٣", "壹", "ｏｎｅ", "one", "Two", "ZERO", "cero", "oh", "o", "h", "seven",
+			"(", ")", "-", "http", "HTTP", "s://", "www", "W", "w", "example", "/path", "wechat", "WeChat", "微", "微 信",
+			"信号", ":", "id", "é", "中", "x", "y"
+	};
+
+	private static final ContentReplacer[] REPLACERS = {
+			new EmailToLinkContentReplacer("/contact", "email link"),
+			new EmailToLinkContentReplacer(
+					"/contact",
+					"email link",
+					new EmailContentReplacerPatternProvider(EmailContentReplacerTest.COMMON_EMAIL_DOMAINS)),
+			new EmailToLinkContentReplacer(
+					"/contact",
+					"email link",
+					LinearEmailContentReplacerPatternProvider.forDefaultRegex()),
+			new NumberSequenceToLinkContentReplacer(2, "/contact", "number link"),
+			new NumberSequenceToLinkContentReplacer(7, "/contact", "number link"),
+			new WebLinkContentReplacer() {
+				private static final long serialVersionUID = 1L;
+
+				@Nonnull
+				@Override
+				public String replacement() {
+					return "[web link]";
+				}
+			},
+			new WeChatContentReplacer() {
+				private static final long serialVersionUID = 1L;
+
+				@Nonnull
+				@Override
+				public String replacement() {
+					return "[blocked]";
+				}
+			},
+			NewlineContentReplacer.INSTANCE
+	};
+
+	@Test
+	public void triggers() {
+		final TriggerPrefilter prefilter =
+				TriggerPrefilter.builder().chars("@\n").range('0', '9').literals("http", "wechat", "微信").build();
+		Assert.assertFalse(prefilter.mightMatch(""));
+		Assert.assertFalse(prefilter.mightMatch("nothing to see here, we chat over htt"));
+		Assert.assertFalse(prefilter.mightMatch("微"));
+		Assert.assertTrue(prefilter.mightMatch("user@"));
+		Assert.assertTrue(prefilter.mightMatch("line\nline"));
+		Assert.assertTrue(prefilter.mightMatch("room 7"));
+		Assert.assertTrue(prefilter.mightMatch("go to HTTP"));
+		Assert.assertTrue(prefilter.mightMatch("my WeChat"));
+		Assert.assertTrue(prefilter.mightMatch("加微信"));
+	}
+
+	@Test
+	public void charsComparedExactly() {
+		final TriggerPrefilter prefilter = TriggerPrefilter.builder().chars("Q").range('A', 'C').literals("x").build();
+		Assert.assertTrue(prefilter.mightMatch("a Q"));
+		Assert.assertTrue(prefilter.mightMatch("ABC"));
+		Assert.assertTrue(prefilter.mightMatch("X"));
+		Assert.assertFalse(prefilter.mightMatch("q abc"));
+	}
+
+	@Test
+	public void builtInReplacersHavePrefilters() {
+		for (final ContentReplacer replacer: REPLACERS) {
+			Assert.assertNotNull(replacer.toString(), replacer.prefilter());
+			Assert.assertFalse(replacer.toString(), replacer.prefilter().mightMatch("Hello, how is it going?"));
+		}
+	}
+
+	@Test
+	public void noPrefilterForChangedPattern() {
+		final WebLinkContentReplacer replacer = new WebLinkContentReplacer() {
+			private static final long serialVersionUID = 1L;
+
+			@Nonnull
+			@Override
+			public String pattern() {
+				return "example\\.com";
+			}
+
+			@Nonnull
+			@Override
+			public String replacement() {
+				return "[web link]";
+			}
+		};
+		Assert.assertNull(replacer.prefilter());
+	}
+
+	/**
+	 * A prefilter must never rule out a string that the replacer's pattern matches.
+	 */
+	@Test
+	public void neverRulesOutAMatch() {
+		final Random random = new Random(99L);
+		final Pattern[] patterns = new Pattern[REPLACERS.length];
+		for (int i = 0; i < REPLACERS.length; i++) {
+			patterns[i] = Pattern.compile(REPLACERS[i].pattern(), Pattern.CASE_INSENSITIVE);
+		}
+		for (int n = 0; n < 5000; n++) {
+			final StringBuilder sb = new StringBuilder();
+			final int fragments = 1 + random.nextInt(12);
+			for (int j = 0; j < fragments; j++) {
+				sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+			final String input = sb.toString();
+			for (int i = 0; i < REPLACERS.length; i++) {
+				final ContentScanner scanner = REPLACERS[i].scanner();
+				if (patterns[i].matcher(input).find() ||
+						(scanner != null && scanner.find(input, 0, new ScanResult()))) {
+					Assert.assertTrue(
+							REPLACERS[i] + " ruled out [" + input + ']',
+							REPLACERS[i].prefilter().mightMatch(input));
+				}
+			}
+		}
+		for (final String email: LinearEmailContentReplacerPatternProviderTest.EMAILS) {
+			Assert.assertTrue(email, REPLACERS[1].prefilter().mightMatch(email));
+		}
+	}
+}
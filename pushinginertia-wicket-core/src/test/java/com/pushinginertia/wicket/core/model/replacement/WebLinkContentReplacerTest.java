@@ -20,6 +20,8 @@ import org.junit.Test;
 
 import javax.annotation.Nonnull;
 import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,6 +34,37 @@ public class WebLinkContentReplacerTest {
 		}
 	}
 
+	private static class CountingCharSequence implements CharSequence {
+		private final String s;
+		private long reads;
+
+		CountingCharSequence(final String s) {
+			this.s = s;
+		}
+
+		@Override
+		public int length() {
+			return s.length();
+		}
+
+		@Override
+		public char charAt(final int index) {
+			reads++;
+			return s.charAt(index);
+		}
+
+		@Override
+		public CharSequence subSequence(final int start, final int end) {
+			return s.subSequence(start, end);
+		}
+
+		@Nonnull
+		@Override
+		public String toString() {
+			return s;
+		}
+	}
+
 	private final WebLinkContentReplacer replacer = new WebLinkContentReplacerMock();
 	private Pattern replacerPattern =
 			Pattern.compile(replacer.pattern(), Pattern.CASE_INSENSITIVE);
@@ -54,4 +87,120 @@ public class WebLinkContentReplacerTest {
 		assertStringMatchesWebLinkPattern("https://www.example.com/page/4682734");
 		assertStringMatchesWebLinkPattern("https://www.abcdefgh/path/to/page");
 	}
-}
\ No newline at end of file
+
+	private static String findLink(final String s) {
+		final ScanResult result = new ScanResult();
+		return WebLinkScanner.forDefaultSuffixes().find(s, 0, result) ? result.group() : null;
+	}
+
+	@Test
+	public void scannerFindsLinks() {
+		Assert.assertEquals("www. example. com", findLink("see www. example. com for more"));
+		Assert.assertEquals("https://www.example.com/page/4682734", findLink("https://www.example.com/page/4682734"));
+		Assert.assertEquals("HTTP://Example.COM/a?b=c", findLink("go to HTTP://Example.COM/a?b=c\nnow"));
+		// multi-label suffixes, where the regex stops at "co"
+		Assert.assertEquals("www.example.co.uk/path", findLink("at www.example.co.uk/path today"));
+		// a sentence that goes on after a link isn't taken along
+		Assert.assertEquals("www.example.com", findLink("www.example.com. It was"));
+		Assert.assertEquals("www.example.com", findLink("www.example.com.Thanks"));
+		Assert.assertEquals("http://example.com", findLink("http://example.com\u770b\u770b"));
+		// internationalized hosts and fullwidth forms
+		Assert.assertEquals("http://\u043f\u0440\u0438\u043c\u0435\u0440.\u0440\u0444/x",
+				findLink("http://\u043f\u0440\u0438\u043c\u0435\u0440.\u0440\u0444/x y"));
+		Assert.assertEquals("https://xn--e1afmkfd.xn--p1ai", findLink("https://xn--e1afmkfd.xn--p1ai"));
+		Assert.assertEquals("www.\u4f8b\u3048.\u4e2d\u56fd", findLink("www.\u4f8b\u3048.\u4e2d\u56fd"));
+		Assert.assertEquals(
+				"\uff57\uff57\uff57\uff0eexample\u3002\uff43\uff4f\uff4d",
+				findLink("\uff57\uff57\uff57\uff0eexample\u3002\uff43\uff4f\uff4d"));
+		// without a known suffix, the end is the same as in the regex
+		Assert.assertEquals("www.example.communi", findLink("www.example.community"));
+		// links starting within the host of an earlier "www" that has no link
+		Assert.assertEquals("www.xq.zz", findLink("www.a.1www.xq.zz"));
+
+		Assert.assertNull(findLink("http://localhost/path"));
+		Assert.assertNull(findLink("www.example"));
+		Assert.assertNull(findLink("wwwexample.com"));
+	}
+
+	@Test
+	public void scannerFindsRegexMatches() {
+		final String[] fragments = {
+				"http://", "https://", "HTTPS://", "www", "WWW", ".", ".", " . ", " ", "\n", "example", "com", "co",
+				"uk", "a", "1", "-", "communication", "/path?x=1", "/", "\u4e2d\u56fd", "\uff0e", "xn--p1ai"
+		};
+		final Random random = new Random(20L);
+		final ScanResult result = new ScanResult();
+		for (int i = 0; i < 20000; i++) {
+			final StringBuilder sb = new StringBuilder();
+			final int count = random.nextInt(8);
+			for (int j = 0; j < count; j++) {
+				sb.append(fragments[random.nextInt(fragments.length)]);
+			}
+			final String s = sb.toString();
+			final Matcher m = replacerPattern.matcher(s);
+			int from = 0;
+			while (from <= s.length() && m.find(from)) {
+				Assert.assertTrue(s, WebLinkScanner.forDefaultSuffixes().find(s, m.start(), result));
+				Assert.assertEquals(s, m.start(), result.start());
+				Assert.assertTrue(s, result.end() >= m.end());
+				from = m.end() + 1;
+			}
+		}
+	}
+
+	@Test
+	public void scannerReadsLinear() {
+		final char[] chars = new char[100000];
+		for (int i = 0; i < chars.length; i += 5) {
+			chars[i] = '1';
+			Arrays.fill(chars, i + 1, i + 4, 'w');
+			chars[i + 4] = '.';
+		}
+		final CountingCharSequence s = new CountingCharSequence("www." + new String(chars));
+		Assert.assertFalse(WebLinkScanner.forDefaultSuffixes().find(s, 0, new ScanResult()));
+		Assert.assertTrue(Long.toString(s.reads), s.reads < 10L * s.length());
+	}
+
+	@Test
+	public void regexByDefault() {
+		final WebLinkContentReplacer link = new WebLinkContentReplacer() {
+			private static final long serialVersionUID = 1L;
+
+			@Nonnull
+			@Override
+			public String replacement() {
+				return "[link]";
+			}
+		};
+		Assert.assertNull(link.scanner());
+		final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+		builder.add(link);
+		Assert.assertEquals(
+				"see [link].uk and \uff57\uff57\uff57\uff0eexample\uff0ecom",
+				builder.build().replace("see www.example.co.uk and \uff57\uff57\uff57\uff0eexample\uff0ecom"));
+	}
+
+	@Test
+	public void replaceWithScanner() {
+		final WebLinkContentReplacer link = new WebLinkContentReplacer(true) {
+			private static final long serialVersionUID = 1L;
+
+			@Nonnull
+			@Override
+			public String replacement() {
+				return "[link]";
+			}
+		};
+		Assert.assertNotNull(link.scanner());
+		for (final ContentReplacerList.Mode mode: ContentReplacerList.Mode.values()) {
+			final ContentReplacerList.Builder builder = new ContentReplacerList.Builder();
+			builder.add(link);
+			builder.add(NewlineContentReplacer.INSTANCE);
+			builder.setMode(mode);
+			final ContentReplacerList list = builder.build();
+			Assert.assertEquals(
+					"see [link] and [link]<br/>ok",
+					list.replace("see www.example.co.uk and \uff57\uff57\uff57\uff0eexample\uff0ecom\nok"));
+		}
+	}
+}